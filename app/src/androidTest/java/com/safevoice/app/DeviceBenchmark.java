@@ -0,0 +1,90 @@
+package com.safevoice.app;
+
+import static org.junit.Assume.assumeTrue;
+
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.util.Locale;
+
+/**
+ * The on-device counterpart of the JVM MicroBenchmark, for code that needs the Android
+ * graphics stack or TFLite.
+ *
+ * Benchmarks are instrumented tests that call {@link #assumeEnabled()} first, so a plain
+ * connectedAndroidTest run skips them. Run them with
+ * {@code ./gradlew connectedDebugAndroidTest -Pandroid.testInstrumentationRunnerArguments.benchmarks=true}
+ * and read the results from logcat under the DeviceBenchmark tag. Each measurement warms the
+ * operation up, then reports wall time and the bytes ART allocated per operation on the
+ * calling thread.
+ */
+public final class DeviceBenchmark {
+
+    private static final String TAG = "DeviceBenchmark";
+
+    /**
+     * One benchmarked operation. The return value is folded into a sink so the JIT cannot
+     * discard the work.
+     */
+    public interface Operation {
+        long run();
+    }
+
+    public static final class Result {
+        public final String name;
+        public final double nanosPerOp;
+        public final double bytesPerOp;
+
+        Result(String name, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-48s %12.1f ns/op %12.1f B/op", name, nanosPerOp, bytesPerOp);
+        }
+    }
+
+    private static volatile long sink;
+
+    private DeviceBenchmark() {}
+
+    /**
+     * Skips the calling test unless benchmarks were requested.
+     */
+    public static void assumeEnabled() {
+        assumeTrue("Pass the benchmarks=true instrumentation argument to enable device benchmarks.",
+                Boolean.parseBoolean(InstrumentationRegistry.getArguments().getString("benchmarks")));
+    }
+
+    /**
+     * Runs the operation warmupOps times untimed, then measureOps times timed, and logs
+     * the result.
+     */
+    @SuppressWarnings("deprecation")
+    public static Result measure(String name, int warmupOps, int measureOps, Operation operation) {
+        long accumulator = 0;
+        for (int i = 0; i < warmupOps; i++) {
+            accumulator += operation.run();
+        }
+        // Deprecated for being costly to the runtime, which is fine in a benchmark; ART still counts.
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < measureOps; i++) {
+            accumulator += operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        long allocated = Debug.getThreadAllocSize();
+        sink += accumulator;
+
+        Result result = new Result(name, (double) elapsed / measureOps, (double) allocated / measureOps);
+        Log.i(TAG, result.toString());
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.safevoice.app.DeviceBenchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+/**
+ * Time and allocation per embedding for every bundled model variant, from a Bitmap (with and
+ * without a caller-owned output array) and straight from a copied camera frame. The
+ * allocation-free paths should report close to 0 B/op once warmed up.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FaceVerifierBenchmark {
+
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+
+    @Test
+    public void embeddingPaths() throws IOException {
+        DeviceBenchmark.assumeEnabled();
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        boolean ranAny = false;
+        for (FaceVerifier.ModelVariant variant : FaceVerifier.ModelVariant.values()) {
+            FaceVerifier verifier;
+            try {
+                verifier = new FaceVerifier(context, variant);
+            } catch (IOException e) {
+                // This variant is not bundled.
+                continue;
+            }
+            ranAny = true;
+            try {
+                benchmark(verifier, variant.name());
+            } finally {
+                verifier.close();
+            }
+        }
+        assumeTrue("No face model is bundled.", ranAny);
+    }
+
+    private static void benchmark(final FaceVerifier verifier, String label) {
+        verifier.warmUp();
+        final Bitmap face = Bitmap.createBitmap(160, 200, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < face.getHeight(); y++) {
+            for (int x = 0; x < face.getWidth(); x++) {
+                face.setPixel(x, y, 0xFF000000 | (x << 16) | (y << 8) | ((x + y) & 0xFF));
+            }
+        }
+        final float[] out = new float[FaceVerifier.EMBEDDING_SIZE];
+
+        DeviceBenchmark.measure(label + " bitmap, new array", 20, 100, new DeviceBenchmark.Operation() {
+            @Override
+            public long run() {
+                return Float.floatToIntBits(verifier.getFaceEmbedding(face)[0]);
+            }
+        });
+        DeviceBenchmark.measure(label + " bitmap, reused array", 20, 100, new DeviceBenchmark.Operation() {
+            @Override
+            public long run() {
+                verifier.getFaceEmbedding(face, out);
+                return Float.floatToIntBits(out[0]);
+            }
+        });
+
+        try (SyntheticYuv.DeviceImage image = new SyntheticYuv.DeviceImage(FRAME_WIDTH, FRAME_HEIGHT)) {
+            final Nv21Frame frame = Nv21Frame.copyOf(image.image, 270);
+            final Rect faceBox = new Rect(120, 200, 360, 440);
+            try {
+                DeviceBenchmark.measure(label + " NV21 frame, 270 degrees", 20, 100, new DeviceBenchmark.Operation() {
+                    @Override
+                    public long run() {
+                        return verifier.getFaceEmbedding(frame, faceBox, out) ? Float.floatToIntBits(out[0]) : 0;
+                    }
+                });
+            } finally {
+                frame.release();
+            }
+        }
+        face.recycle();
+    }
+}
@@ -0,0 +1,69 @@
+package com.safevoice.app.utils;
+
+import android.media.Image;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.safevoice.app.DeviceBenchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ImageUtils.toNv21 at common camera resolutions, against the plain concatenation of the
+ * three plane buffers it replaced (which allocated a frame-sized array per frame and ignored
+ * strides). Frames come from an ImageWriter, so the plane layout, and with it the bulk or
+ * per-sample chroma path, is this device's own.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageUtilsBenchmark {
+
+    private static final int[][] RESOLUTIONS = {{640, 480}, {1280, 720}, {1920, 1080}};
+
+    @Test
+    public void toNv21AtCameraResolutions() {
+        DeviceBenchmark.assumeEnabled();
+        for (int[] resolution : RESOLUTIONS) {
+            try (SyntheticYuv.DeviceImage deviceImage = new SyntheticYuv.DeviceImage(resolution[0], resolution[1])) {
+                final Image image = deviceImage.image;
+                String label = resolution[0] + "x" + resolution[1]
+                        + " (chroma pixel stride " + image.getPlanes()[1].getPixelStride() + ")";
+
+                DeviceBenchmark.measure("toNv21, pooled, " + label, 50, 300, new DeviceBenchmark.Operation() {
+                    @Override
+                    public long run() {
+                        byte[] nv21 = ImageUtils.toNv21(image);
+                        long length = nv21.length;
+                        ByteArrayPool.shared().release(nv21);
+                        return length;
+                    }
+                });
+                DeviceBenchmark.measure("plane concatenation, " + label, 50, 300, new DeviceBenchmark.Operation() {
+                    @Override
+                    public long run() {
+                        return concatenatePlanes(image).length;
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * The conversion toNv21 replaced.
+     */
+    private static byte[] concatenatePlanes(Image image) {
+        ByteBuffer yBuffer = image.getPlanes()[0].getBuffer().duplicate();
+        ByteBuffer uBuffer = image.getPlanes()[1].getBuffer().duplicate();
+        ByteBuffer vBuffer = image.getPlanes()[2].getBuffer().duplicate();
+        int ySize = yBuffer.remaining();
+        int uSize = uBuffer.remaining();
+        int vSize = vBuffer.remaining();
+        byte[] nv21 = new byte[ySize + uSize + vSize];
+        yBuffer.get(nv21, 0, ySize);
+        vBuffer.get(nv21, ySize, vSize);
+        uBuffer.get(nv21, ySize + vSize, uSize);
+        return nv21;
+    }
+}
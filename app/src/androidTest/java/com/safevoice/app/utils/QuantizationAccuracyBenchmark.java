@@ -0,0 +1,244 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.safevoice.app.DeviceBenchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the quantized face model against the float32 one on labeled face pairs, to check
+ * that shipping the quantized model does not cost verification accuracy.
+ *
+ * A fixture set is a directory of cropped face images plus a pairs.csv with one pair per
+ * line: "first.jpg,second.jpg,1" for the same person and "...,0" for different people.
+ * Lines starting with # are ignored. The fixture set is read from this test APK's assets,
+ * in the face_pairs directory.
+ *
+ * Whatever the images, each one's float32 and int8 embeddings must agree closely; the
+ * accuracy figures are only meaningful with real labeled face crops, so they are logged
+ * under the DeviceBenchmark tag rather than asserted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QuantizationAccuracyBenchmark {
+
+    private static final String TAG = "DeviceBenchmark";
+    private static final String FIXTURE_DIRECTORY = "face_pairs";
+    private static final String PAIRS_FILE = "pairs.csv";
+    // The match threshold KycActivity uses.
+    private static final double MATCH_THRESHOLD = 0.8;
+    // The lowest acceptable mean cosine similarity between the two models' embeddings of an image.
+    private static final double MIN_MEAN_AGREEMENT = 0.95;
+
+    /**
+     * Two face crops and whether they show the same person.
+     */
+    private static class FacePair {
+        private final Bitmap first;
+        private final Bitmap second;
+        private final boolean samePerson;
+
+        FacePair(Bitmap first, Bitmap second, boolean samePerson) {
+            this.first = first;
+            this.second = second;
+            this.samePerson = samePerson;
+        }
+    }
+
+    /**
+     * The outcome of one comparison.
+     */
+    private static class Report {
+        private final int pairs;
+        private final int floatCorrect;
+        private final int quantizedCorrect;
+        private final int decisionsChanged;
+        private final double meanEmbeddingAgreement;
+        private final double minEmbeddingAgreement;
+
+        Report(int pairs, int floatCorrect, int quantizedCorrect, int decisionsChanged,
+               double meanEmbeddingAgreement, double minEmbeddingAgreement) {
+            this.pairs = pairs;
+            this.floatCorrect = floatCorrect;
+            this.quantizedCorrect = quantizedCorrect;
+            this.decisionsChanged = decisionsChanged;
+            this.meanEmbeddingAgreement = meanEmbeddingAgreement;
+            this.minEmbeddingAgreement = minEmbeddingAgreement;
+        }
+
+        public double getFloatAccuracy() {
+            return pairs == 0 ? 0.0 : floatCorrect / (double) pairs;
+        }
+
+        public double getQuantizedAccuracy() {
+            return pairs == 0 ? 0.0 : quantizedCorrect / (double) pairs;
+        }
+
+        /**
+         * @return Quantized minus float accuracy; negative means the quantized model is worse.
+         */
+        public double getAccuracyDelta() {
+            return getQuantizedAccuracy() - getFloatAccuracy();
+        }
+
+        /**
+         * @return How many pairs the two models decided differently.
+         */
+        public int getDecisionsChanged() {
+            return decisionsChanged;
+        }
+
+        /**
+         * @return The mean cosine similarity between each image's float and quantized embeddings.
+         */
+        public double getMeanEmbeddingAgreement() {
+            return meanEmbeddingAgreement;
+        }
+
+        public double getMinEmbeddingAgreement() {
+            return minEmbeddingAgreement;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "pairs=%d float=%.2f%% quantized=%.2f%% delta=%+.2f%% changed=%d agreement mean=%.4f min=%.4f",
+                    pairs, getFloatAccuracy() * 100, getQuantizedAccuracy() * 100, getAccuracyDelta() * 100,
+                    decisionsChanged, meanEmbeddingAgreement, minEmbeddingAgreement);
+        }
+    }
+
+    @Test
+    public void quantizedModelAgreesWithFloatModel() throws IOException {
+        DeviceBenchmark.assumeEnabled();
+        Context targetContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        FaceVerifier floatVerifier = loadIfBundled(targetContext, FaceVerifier.ModelVariant.FLOAT32);
+        assumeTrue("The float32 face model is not bundled.", floatVerifier != null);
+        FaceVerifier quantizedVerifier = loadIfBundled(targetContext, FaceVerifier.ModelVariant.QUANTIZED);
+        if (quantizedVerifier == null) {
+            floatVerifier.close();
+            assumeTrue("The int8 face model is not bundled.", false);
+        }
+
+        try {
+            AssetManager fixtures = InstrumentationRegistry.getInstrumentation().getContext().getAssets();
+            List<FacePair> pairs = loadPairs(fixtures, FIXTURE_DIRECTORY);
+            assertFalse("No face pairs in " + FIXTURE_DIRECTORY + "/" + PAIRS_FILE, pairs.isEmpty());
+
+            Report report = compare(floatVerifier, quantizedVerifier, pairs, MATCH_THRESHOLD);
+            assertTrue("Float32 and int8 embeddings disagree: " + report,
+                    report.getMeanEmbeddingAgreement() >= MIN_MEAN_AGREEMENT);
+        } finally {
+            floatVerifier.close();
+            quantizedVerifier.close();
+        }
+    }
+
+    /**
+     * @return The verifier, or null if this variant is not bundled.
+     */
+    private static FaceVerifier loadIfBundled(Context context, FaceVerifier.ModelVariant variant) {
+        try {
+            return new FaceVerifier(context, variant);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads a fixture set from the assets folder.
+     *
+     * @param directory The asset directory holding pairs.csv and the images.
+     */
+    private static List<FacePair> loadPairs(AssetManager assetManager, String directory) throws IOException {
+        List<FacePair> pairs = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(assetManager.open(directory + "/" + PAIRS_FILE)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length != 3) {
+                    Log.w(TAG, "Skipping malformed line: " + line);
+                    continue;
+                }
+                pairs.add(new FacePair(
+                        loadBitmap(assetManager, directory + "/" + fields[0].trim()),
+                        loadBitmap(assetManager, directory + "/" + fields[1].trim()),
+                        "1".equals(fields[2].trim())));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Embeds every pair with both models and scores their match decisions against the labels.
+     *
+     * @param threshold The similarity above which a pair counts as the same person.
+     */
+    private static Report compare(FaceVerifier floatVerifier, FaceVerifier quantizedVerifier,
+                                 List<FacePair> pairs, double threshold) {
+        int floatCorrect = 0;
+        int quantizedCorrect = 0;
+        int decisionsChanged = 0;
+        double agreementSum = 0.0;
+        double agreementMin = 1.0;
+        int embeddings = 0;
+
+        for (FacePair pair : pairs) {
+            float[] floatFirst = floatVerifier.getFaceEmbedding(pair.first);
+            float[] floatSecond = floatVerifier.getFaceEmbedding(pair.second);
+            float[] quantizedFirst = quantizedVerifier.getFaceEmbedding(pair.first);
+            float[] quantizedSecond = quantizedVerifier.getFaceEmbedding(pair.second);
+
+            boolean floatMatch = floatVerifier.calculateSimilarity(floatFirst, floatSecond) > threshold;
+            boolean quantizedMatch = floatVerifier.calculateSimilarity(quantizedFirst, quantizedSecond) > threshold;
+            if (floatMatch == pair.samePerson) floatCorrect++;
+            if (quantizedMatch == pair.samePerson) quantizedCorrect++;
+            if (floatMatch != quantizedMatch) decisionsChanged++;
+
+            double first = floatVerifier.calculateSimilarity(floatFirst, quantizedFirst);
+            double second = floatVerifier.calculateSimilarity(floatSecond, quantizedSecond);
+            agreementSum += first + second;
+            agreementMin = Math.min(agreementMin, Math.min(first, second));
+            embeddings += 2;
+        }
+
+        Report report = new Report(pairs.size(), floatCorrect, quantizedCorrect, decisionsChanged,
+                embeddings == 0 ? 0.0 : agreementSum / embeddings, embeddings == 0 ? 0.0 : agreementMin);
+        Log.i(TAG, "Face model float32 vs int8: " + report);
+        return report;
+    }
+
+    private static Bitmap loadBitmap(AssetManager assetManager, String path) throws IOException {
+        try (InputStream in = assetManager.open(path)) {
+            Bitmap bitmap = BitmapFactory.decodeStream(in);
+            if (bitmap == null) {
+                throw new IOException("Could not decode " + path);
+            }
+            return bitmap;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.safevoice.app.utils;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.ImageWriter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Synthetic YUV 4:2:0 frames for the image pipeline's device tests and benchmarks.
+ *
+ * The pattern is smooth, so JPEG at quality 100 barely changes it, and asymmetric in both
+ * axes and all three channels, so a flipped or wrongly rotated crop does not match it.
+ */
+final class SyntheticYuv {
+
+    private SyntheticYuv() {}
+
+    static int luma(int x, int y, int width, int height) {
+        return 16 + (150 * x / width) + (70 * y / height);
+    }
+
+    static int u(int cx, int cy, int chromaWidth, int chromaHeight) {
+        return 64 + (128 * cx / chromaWidth);
+    }
+
+    static int v(int cx, int cy, int chromaWidth, int chromaHeight) {
+        return 192 - (128 * cy / chromaHeight);
+    }
+
+    /**
+     * @return The pattern as NV21: the Y plane, then interleaved V and U.
+     */
+    static byte[] nv21(int width, int height) {
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        byte[] nv21 = new byte[width * height + 2 * chromaWidth * chromaHeight];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                nv21[y * width + x] = (byte) luma(x, y, width, height);
+            }
+        }
+        int o = width * height;
+        for (int cy = 0; cy < chromaHeight; cy++) {
+            for (int cx = 0; cx < chromaWidth; cx++) {
+                nv21[o++] = (byte) v(cx, cy, chromaWidth, chromaHeight);
+                nv21[o++] = (byte) u(cx, cy, chromaWidth, chromaHeight);
+            }
+        }
+        return nv21;
+    }
+
+    /**
+     * @return The Y plane of the pattern with each row padded to rowStride bytes.
+     */
+    static ByteBuffer paddedLuma(int width, int height, int rowStride) {
+        byte[] plane = new byte[rowStride * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                plane[y * rowStride + x] = (byte) luma(x, y, width, height);
+            }
+        }
+        return ByteBuffer.wrap(plane);
+    }
+
+    /**
+     * A YUV_420_888 Image dequeued from an ImageWriter, so its plane layout (strides,
+     * interleaving) is whatever this device's camera HAL produces.
+     */
+    static final class DeviceImage implements AutoCloseable {
+        final Image image;
+        private final ImageReader reader;
+        private final ImageWriter writer;
+
+        DeviceImage(int width, int height) {
+            reader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, 2);
+            writer = ImageWriter.newInstance(reader.getSurface(), 2);
+            image = writer.dequeueInputImage();
+            fill(image);
+        }
+
+        private static void fill(Image image) {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            Image.Plane[] planes = image.getPlanes();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    planes[0].getBuffer().put(y * planes[0].getRowStride() + x * planes[0].getPixelStride(),
+                            (byte) luma(x, y, width, height));
+                }
+            }
+            int chromaWidth = width / 2;
+            int chromaHeight = height / 2;
+            for (int cy = 0; cy < chromaHeight; cy++) {
+                for (int cx = 0; cx < chromaWidth; cx++) {
+                    planes[1].getBuffer().put(cy * planes[1].getRowStride() + cx * planes[1].getPixelStride(),
+                            (byte) u(cx, cy, chromaWidth, chromaHeight));
+                    planes[2].getBuffer().put(cy * planes[2].getRowStride() + cx * planes[2].getPixelStride(),
+                            (byte) v(cx, cy, chromaWidth, chromaHeight));
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            image.close();
+            writer.close();
+            reader.close();
+        }
+    }
+}
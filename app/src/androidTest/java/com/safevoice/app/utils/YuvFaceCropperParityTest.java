@@ -0,0 +1,175 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Checks YuvFaceCropper against the path it replaced: compress the sensor-space crop to JPEG,
+ * decode it, rotate it upright and scale it to the model input with filtering. Both run on
+ * the same synthetic frame at every rotation, so a wrong rotation mapping shows up as a large
+ * difference, while resampling and JPEG rounding stay within a few levels.
+ */
+@RunWith(AndroidJUnit4.class)
+public class YuvFaceCropperParityTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int OUT_WIDTH = 112;
+    private static final int OUT_HEIGHT = 224;
+
+    // Mean and worst absolute difference per channel, in [0, 255] levels.
+    private static final double MAX_MEAN_ERROR = 3.0;
+    private static final int MAX_PIXEL_ERROR = 16;
+
+    // Upright boxes with even edges, as YuvImage crops on even coordinates.
+    private static final Rect LANDSCAPE_BOX = new Rect(100, 40, 200, 200);
+    private static final Rect PORTRAIT_BOX = new Rect(60, 80, 180, 280);
+
+    private final byte[] nv21 = SyntheticYuv.nv21(WIDTH, HEIGHT);
+
+    @Test
+    public void matchesJpegPathAtZeroDegrees() {
+        assertParity(0, LANDSCAPE_BOX);
+    }
+
+    @Test
+    public void matchesJpegPathAtNinetyDegrees() {
+        assertParity(90, PORTRAIT_BOX);
+    }
+
+    @Test
+    public void matchesJpegPathAt180Degrees() {
+        assertParity(180, LANDSCAPE_BOX);
+    }
+
+    @Test
+    public void matchesJpegPathAt270Degrees() {
+        assertParity(270, PORTRAIT_BOX);
+    }
+
+    @Test
+    public void ninetyAndTwoSeventyAreNotInterchangeable() {
+        // Guards the test itself: the pattern must tell the two sideways rotations apart.
+        float[] cropped = cropFromNv21(90, PORTRAIT_BOX);
+        double meanError = meanError(cropped, referenceCrop(270, PORTRAIT_BOX));
+        assertTrue("mean error " + meanError, meanError > 20);
+    }
+
+    @Test
+    public void paddedLumaRowsGiveTheSameOutput() {
+        int rowStride = WIDTH + 64;
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            Rect box = (rotation % 180 == 0) ? LANDSCAPE_BOX : PORTRAIT_BOX;
+            YuvFaceCropper cropper = new YuvFaceCropper(OUT_WIDTH, OUT_HEIGHT);
+            float[] padded = new float[cropper.getOutputLength()];
+            assertTrue(cropper.crop(SyntheticYuv.paddedLuma(WIDTH, HEIGHT, rowStride), rowStride, 1,
+                    uPlane(), vPlane(), WIDTH, 2, WIDTH, HEIGHT, rotation, box, padded));
+            assertArrayEquals("rotation " + rotation, cropFromNv21(rotation, box), padded, 0f);
+        }
+    }
+
+    private void assertParity(int rotation, Rect box) {
+        float[] cropped = cropFromNv21(rotation, box);
+        int[] reference = referenceCrop(rotation, box);
+
+        int worst = 0;
+        for (int i = 0; i < reference.length; i++) {
+            int pixel = reference[i];
+            worst = Math.max(worst, Math.abs(level(cropped[i * 3]) - ((pixel >> 16) & 0xFF)));
+            worst = Math.max(worst, Math.abs(level(cropped[i * 3 + 1]) - ((pixel >> 8) & 0xFF)));
+            worst = Math.max(worst, Math.abs(level(cropped[i * 3 + 2]) - (pixel & 0xFF)));
+        }
+        double meanError = meanError(cropped, reference);
+        String summary = String.format(Locale.US, "rotation %d: mean error %.2f, worst %d", rotation, meanError, worst);
+        assertTrue(summary, meanError <= MAX_MEAN_ERROR);
+        assertTrue(summary, worst <= MAX_PIXEL_ERROR);
+    }
+
+    private float[] cropFromNv21(int rotation, Rect box) {
+        YuvFaceCropper cropper = new YuvFaceCropper(OUT_WIDTH, OUT_HEIGHT);
+        float[] out = new float[cropper.getOutputLength()];
+        ByteBuffer yPlane = ByteBuffer.wrap(nv21, 0, WIDTH * HEIGHT).slice();
+        assertTrue(cropper.crop(yPlane, WIDTH, 1, uPlane(), vPlane(), WIDTH, 2, WIDTH, HEIGHT, rotation, box, out));
+        return out;
+    }
+
+    private ByteBuffer uPlane() {
+        return ByteBuffer.wrap(nv21, WIDTH * HEIGHT + 1, nv21.length - WIDTH * HEIGHT - 1).slice();
+    }
+
+    private ByteBuffer vPlane() {
+        return ByteBuffer.wrap(nv21, WIDTH * HEIGHT, nv21.length - WIDTH * HEIGHT).slice();
+    }
+
+    /**
+     * The old path: JPEG-compress the box in sensor coordinates, decode, rotate upright, scale.
+     *
+     * @return ARGB pixels of the model input, row by row.
+     */
+    private int[] referenceCrop(int rotation, Rect uprightBox) {
+        YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, WIDTH, HEIGHT, null);
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        assertTrue(yuvImage.compressToJpeg(toSensor(uprightBox, rotation), 100, jpeg));
+        byte[] bytes = jpeg.toByteArray();
+        Bitmap sensorCrop = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+
+        Matrix rotate = new Matrix();
+        rotate.postRotate(rotation);
+        Bitmap upright = Bitmap.createBitmap(sensorCrop, 0, 0, sensorCrop.getWidth(), sensorCrop.getHeight(), rotate, true);
+        Bitmap scaled = Bitmap.createScaledBitmap(upright, OUT_WIDTH, OUT_HEIGHT, true);
+
+        int[] pixels = new int[OUT_WIDTH * OUT_HEIGHT];
+        scaled.getPixels(pixels, 0, OUT_WIDTH, 0, 0, OUT_WIDTH, OUT_HEIGHT);
+        return pixels;
+    }
+
+    /**
+     * Maps an upright box back to the sensor frame, the inverse of the rotation ML Kit applies.
+     */
+    private static Rect toSensor(Rect box, int rotation) {
+        switch (rotation) {
+            case 90:
+                return new Rect(box.top, HEIGHT - box.right, box.bottom, HEIGHT - box.left);
+            case 180:
+                return new Rect(WIDTH - box.right, HEIGHT - box.bottom, WIDTH - box.left, HEIGHT - box.top);
+            case 270:
+                return new Rect(WIDTH - box.bottom, box.left, WIDTH - box.top, box.right);
+            default:
+                return new Rect(box);
+        }
+    }
+
+    private static double meanError(float[] cropped, int[] reference) {
+        long total = 0;
+        for (int i = 0; i < reference.length; i++) {
+            int pixel = reference[i];
+            total += Math.abs(level(cropped[i * 3]) - ((pixel >> 16) & 0xFF));
+            total += Math.abs(level(cropped[i * 3 + 1]) - ((pixel >> 8) & 0xFF));
+            total += Math.abs(level(cropped[i * 3 + 2]) - (pixel & 0xFF));
+        }
+        return (double) total / (reference.length * 3);
+    }
+
+    /**
+     * Undoes YuvFaceCropper's [-1, 1] normalization.
+     */
+    private static int level(float normalized) {
+        return Math.round(normalized * 128f + 127.5f);
+    }
+}
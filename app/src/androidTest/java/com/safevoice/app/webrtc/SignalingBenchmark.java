@@ -0,0 +1,97 @@
+package com.safevoice.app.webrtc;
+
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.safevoice.app.DeviceBenchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures WebRTC call setup under simulated signaling delays, with no Firebase project.
+ *
+ * Each run connects two WebRTCManagers in this process, one calling the other, over a
+ * LoopbackSignalingTransport with every signal delayed by LatencyInjectingSignalingTransport.
+ * The run records the time from prepareCall() until both ends report the call as
+ * established, and how many offers, answers and ICE candidates were signaled on the way.
+ * The peer connections are real, so this includes ICE checks over the local interfaces and
+ * audio setup. The calls' quality records are not saved, so they never mix with real calls
+ * in the exported stats.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SignalingBenchmark {
+
+    private static final String TAG = "DeviceBenchmark";
+    private static final String CALLER_UID = "benchmark-caller";
+    private static final String CALLEE_UID = "benchmark-callee";
+    private static final long SETUP_TIMEOUT_MS = 20000;
+    private static final long JITTER_MS = 20;
+    private static final long JITTER_SEED = 42;
+
+    // One-way delays worth comparing: none, good Wi-Fi or LTE, a congested mobile link and a
+    // poor 2G/3G link.
+    private static final long[] DELAYS_MS = {0, 50, 150, 400};
+
+    @Test
+    public void callSetupUnderSignalingDelay() throws InterruptedException {
+        DeviceBenchmark.assumeEnabled();
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        for (long delayMs : DELAYS_MS) {
+            assertTrue("Call setup timed out at " + delayMs + " ms delay", measure(context, delayMs));
+        }
+    }
+
+    /**
+     * Sets up one call and logs its setup time and signal counts.
+     *
+     * @return false if the call did not connect within SETUP_TIMEOUT_MS.
+     */
+    private static boolean measure(Context context, long delayMs) throws InterruptedException {
+        LoopbackSignalingTransport.Network network = new LoopbackSignalingTransport.Network();
+        final CountDownLatch connected = new CountDownLatch(2);
+        WebRTCManager.WebRTCListener listener = new WebRTCManager.WebRTCListener() {
+            @Override
+            public void onWebRTCCallEstablished() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onWebRTCCallEnded() {}
+        };
+
+        WebRTCManager caller = new WebRTCManager(context, listener, new LatencyInjectingSignalingTransport(
+                new LoopbackSignalingTransport(network, CALLER_UID), delayMs, JITTER_MS, JITTER_SEED));
+        WebRTCManager callee = new WebRTCManager(context, listener, new LatencyInjectingSignalingTransport(
+                new LoopbackSignalingTransport(network, CALLEE_UID), delayMs, JITTER_MS, JITTER_SEED + 1));
+        caller.setSaveCallStats(false);
+        callee.setSaveCallStats(false);
+
+        long setupMs = -1;
+        try {
+            long start = System.nanoTime();
+            String sessionId = caller.prepareCall(CALLEE_UID);
+            callee.answerCall(sessionId, CALLER_UID);
+            caller.startCall(CALLEE_UID);
+            if (connected.await(SETUP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                setupMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+        } finally {
+            caller.cleanup();
+            callee.cleanup();
+            network.shutdown();
+        }
+        Log.i(TAG, "Signaling delay " + delayMs + " ms: setup " + (setupMs >= 0 ? setupMs + " ms" : "timed out")
+                + ", " + network.getOfferCount() + " offer(s), " + network.getAnswerCount() + " answer(s), "
+                + network.getIceCandidateCount() + " candidate(s)");
+        return setupMs >= 0;
+    }
+}
@@ -11,6 +11,9 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.safevoice.app.databinding.ActivityEmergencyPopupBinding;
 import com.safevoice.app.services.FirebaseAlertService;
+import com.safevoice.app.utils.LocationStreamSubscriber;
+
+import java.util.Locale;
 
 public class EmergencyPopupActivity extends AppCompatActivity {
 
@@ -24,6 +27,7 @@ public class EmergencyPopupActivity extends AppCompatActivity {
     private String callerUid;
     private String sessionId;
     private String location;
+    private LocationStreamSubscriber locationSubscriber;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -57,6 +61,28 @@ public class EmergencyPopupActivity extends AppCompatActivity {
             binding.textEmergencyMessage.setText(message);
         }
 
+        // Follow the caller's live location while their emergency is active
+        if (callerUid != null) {
+            locationSubscriber = new LocationStreamSubscriber();
+            locationSubscriber.subscribe(callerUid, new LocationStreamSubscriber.Listener() {
+                @Override
+                public void onLocationUpdate(double latitude, double longitude, long timeMs, int accuracyMeters) {
+                    location = latitude + "," + longitude;
+                    String text = String.format(Locale.US, "Live location: %.6f, %.6f", latitude, longitude);
+                    if (accuracyMeters >= 0) {
+                        text += " (±" + accuracyMeters + " m)";
+                    }
+                    binding.textLiveLocation.setText(text);
+                    binding.textLiveLocation.setVisibility(View.VISIBLE);
+                }
+
+                @Override
+                public void onStreamEnded() {
+                    binding.textLiveLocation.setText("Live location sharing has ended.");
+                }
+            });
+        }
+
         // Set up button listeners
         binding.buttonJoinCall.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -94,6 +120,20 @@ public class EmergencyPopupActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        // A follow-up alert with a more precise location for the same emergency.
+        String updatedLocation = intent.getStringExtra(EXTRA_LOCATION);
+        if (updatedLocation != null) {
+            location = updatedLocation;
+        }
+        if (sessionId == null) {
+            sessionId = intent.getStringExtra(EXTRA_SESSION_ID);
+        }
+    }
+
     private void stopAndFinish() {
         FirebaseAlertService.stopAlarmSound();
         finish();
@@ -102,6 +142,9 @@ public class EmergencyPopupActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (locationSubscriber != null) {
+            locationSubscriber.unsubscribe();
+        }
         // Ensure the alarm stops if the activity is destroyed for any reason
         FirebaseAlertService.stopAlarmSound();
     }
@@ -1,11 +1,14 @@
 package com.safevoice.app;
 
 import android.annotation.SuppressLint;
-import android.graphics.Bitmap;
+import android.content.pm.ApplicationInfo;
+import android.graphics.ImageFormat;
 import android.graphics.Rect;
 import android.media.Image;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.Looper;
+import android.os.Trace;
 import android.util.Log;
 import android.view.View;
 import android.widget.Toast;
@@ -36,21 +39,50 @@ import com.google.mlkit.vision.text.TextRecognition;
 import com.google.mlkit.vision.text.TextRecognizer;
 import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 import com.safevoice.app.databinding.ActivityKycBinding;
+import com.safevoice.app.utils.EmbeddingGallery;
+import com.safevoice.app.utils.FaceModelHolder;
+import com.safevoice.app.utils.FaceQualityChecker;
 import com.safevoice.app.utils.FaceVerifier;
-import com.safevoice.app.utils.ImageUtils;
+import com.safevoice.app.utils.FaceVerificationSession;
+import com.safevoice.app.utils.LatencyHistogram;
+import com.safevoice.app.utils.NameVoter;
+import com.safevoice.app.utils.Nv21Frame;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class KycActivity extends AppCompatActivity {
 
     private static final String TAG = "KycActivity";
     private static final double FACE_MATCH_THRESHOLD = 0.8;
+    // Live frames are scored until the aggregate is this far from the threshold...
+    private static final double FACE_MATCH_EARLY_MARGIN = 0.05;
+    // ...or until this many frames have been scored, but never on fewer than the minimum.
+    private static final int LIVE_FRAMES_MIN = 3;
+    private static final int LIVE_FRAMES_MAX = 8;
+    // Gives up if the face stays unusable (blurred, off-angle) for this many frames.
+    private static final int LIVE_FRAMES_LIMIT = 45;
+    // ID card frames enrolled before moving on, so one bad frame cannot sink the match.
+    private static final int ID_FRAMES_TO_ENROLL = 3;
+    private static final String LABEL_ID_CARD = "id_card";
+    // OCR frames must agree on the name this many times, and this far ahead of any other
+    // reading, before it is accepted.
+    private static final int NAME_VOTES_TO_SETTLE = 3;
+    private static final int NAME_VOTE_LEAD = 2;
+    // One frame being detected while another is embedded.
+    private static final int MAX_FRAMES_IN_FLIGHT = 2;
+    private static final long STATS_OVERLAY_INTERVAL_MS = 500;
+    // Runs task listeners on whichever thread completes the task.
+    private static final Executor DIRECT = Runnable::run;
 
     private enum KycState {
         SCANNING_ID,
@@ -62,34 +94,61 @@ public class KycActivity extends AppCompatActivity {
     private ActivityKycBinding binding;
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
     private ExecutorService analysisExecutor;
-    private FaceVerifier faceVerifier;
+    private ExecutorService detectionExecutor;
+    private ExecutorService inferenceExecutor;
+    private KycImageAnalyzer imageAnalyzer;
+    // Set on the main thread once the shared model has loaded; null until then.
+    private volatile FaceVerifier faceVerifier;
     private ProcessCameraProvider cameraProvider;
 
     private volatile KycState currentState = KycState.SCANNING_ID;
-    private float[] idCardEmbedding = null;
-    private String verifiedName = null;
+    // The gallery and the live session are only touched on the inference executor.
+    private final EmbeddingGallery idCardGallery = new EmbeddingGallery(FaceVerifier.EMBEDDING_SIZE, ID_FRAMES_TO_ENROLL);
+    private volatile boolean idCardEnrolled = false;
+    private final FaceVerificationSession liveSession = new FaceVerificationSession(
+            FACE_MATCH_THRESHOLD, FACE_MATCH_EARLY_MARGIN, LIVE_FRAMES_MIN, LIVE_FRAMES_MAX, LIVE_FRAMES_LIMIT);
+    private final FaceQualityChecker faceQualityChecker = new FaceQualityChecker();
+    // Only touched on the inference executor.
+    private final NameVoter nameVoter = new NameVoter(NAME_VOTES_TO_SETTLE, NAME_VOTE_LEAD);
+    private volatile String verifiedName = null;
 
     private final AtomicBoolean isProcessing = new AtomicBoolean(false);
+    private final AtomicInteger framesInFlight = new AtomicInteger(0);
+
+    // Per-stage latencies: the frame copy, each ML Kit detector, the embedding model, and
+    // the whole time a frame is held from copy to release.
+    private final LatencyHistogram copyLatency = new LatencyHistogram("copy");
+    private final LatencyHistogram ocrLatency = new LatencyHistogram("ocr");
+    private final LatencyHistogram detectLatency = new LatencyHistogram("detect");
+    private final LatencyHistogram embedLatency = new LatencyHistogram("embed");
+    private final LatencyHistogram totalLatency = new LatencyHistogram("total");
+    private final LatencyHistogram[] stageLatencies = {copyLatency, ocrLatency, detectLatency, embedLatency, totalLatency};
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        Trace.beginSection("KycActivity.onCreate");
         super.onCreate(savedInstanceState);
         binding = ActivityKycBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
         analysisExecutor = Executors.newSingleThreadExecutor();
+        detectionExecutor = Executors.newSingleThreadExecutor();
+        inferenceExecutor = Executors.newSingleThreadExecutor();
 
-        try {
-            faceVerifier = new FaceVerifier(this);
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to load FaceVerifier model.", e);
-            Toast.makeText(this, "Error: Verification model could not be loaded.", Toast.LENGTH_LONG).show();
-            finish();
-            return;
-        }
+        // The model loads in the background while the camera starts; ID frames seen before
+        // it is ready are still read for the name, just not enrolled.
+        FaceModelHolder.getInstance(this).acquire(faceModelCallback);
 
+        imageAnalyzer = new KycImageAnalyzer();
         startCamera();
         updateUIForState();
+        Trace.endSection();
+
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            binding.textPipelineStats.setVisibility(View.VISIBLE);
+            mainHandler.post(statsOverlayUpdater);
+        }
     }
 
     private void startCamera() {
@@ -118,7 +177,7 @@ public class KycActivity extends AppCompatActivity {
                 .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                 .build();
 
-        imageAnalysis.setAnalyzer(analysisExecutor, new KycImageAnalyzer());
+        imageAnalysis.setAnalyzer(analysisExecutor, imageAnalyzer);
 
         try {
             cameraProvider.unbindAll();
@@ -164,13 +223,24 @@ public class KycActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Runs the KYC checks as a pipeline over camera frames. Each frame is copied into a
+     * pooled NV21 buffer and its ImageProxy closed at once. OCR and face detection run on the
+     * detection executor, and embedding inference runs on the inference executor, so the
+     * next frame is detected while the previous one is embedded. At most
+     * MAX_FRAMES_IN_FLIGHT frames are held; newer frames are dropped until one finishes.
+     */
     private class KycImageAnalyzer implements ImageAnalysis.Analyzer {
-        private final TextRecognizer textRecognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+        private final TextRecognizer textRecognizer;
         private final FaceDetector faceDetector;
 
         KycImageAnalyzer() {
+            textRecognizer = TextRecognition.getClient(new TextRecognizerOptions.Builder()
+                    .setExecutor(detectionExecutor)
+                    .build());
             FaceDetectorOptions options = new FaceDetectorOptions.Builder()
                     .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+                    .setExecutor(detectionExecutor)
                     .build();
             faceDetector = FaceDetection.getClient(options);
         }
@@ -178,95 +248,229 @@ public class KycActivity extends AppCompatActivity {
         @Override
         @SuppressLint("UnsafeOptInUsageError")
         public void analyze(@NonNull ImageProxy imageProxy) {
-            if (currentState != KycState.SCANNING_ID && currentState != KycState.SCANNING_FACE) {
+            KycState frameState = currentState;
+            if ((frameState != KycState.SCANNING_ID && frameState != KycState.SCANNING_FACE)
+                    || framesInFlight.get() >= MAX_FRAMES_IN_FLIGHT) {
                 imageProxy.close();
                 return;
             }
 
             Image mediaImage = imageProxy.getImage();
-            if (mediaImage == null) {
+            if (mediaImage == null || mediaImage.getFormat() != ImageFormat.YUV_420_888) {
                 imageProxy.close();
                 return;
             }
 
-            InputImage image = InputImage.fromMediaImage(mediaImage, imageProxy.getImageInfo().getRotationDegrees());
+            long copyStart = System.nanoTime();
+            Nv21Frame frame;
+            try {
+                frame = Nv21Frame.copyOf(mediaImage, imageProxy.getImageInfo().getRotationDegrees());
+            } finally {
+                imageProxy.close();
+            }
+            copyLatency.recordSince(copyStart);
+            framesInFlight.incrementAndGet();
 
-            if (currentState == KycState.SCANNING_ID) {
-                processIdCardImage(image, imageProxy).addOnCompleteListener(task -> imageProxy.close());
-            } else if (currentState == KycState.SCANNING_FACE) {
-                processLiveFaceImage(image, imageProxy).addOnCompleteListener(task -> imageProxy.close());
+            InputImage image = frame.toInputImage();
+            if (frameState == KycState.SCANNING_ID) {
+                processIdCardImage(image, frame);
             } else {
-                imageProxy.close();
+                processLiveFaceImage(image, frame);
             }
         }
 
-        private Task<Void> processIdCardImage(InputImage image, ImageProxy imageProxy) {
-            Task<Text> textRecognitionTask = (verifiedName == null) ? textRecognizer.process(image) : Tasks.forResult(null);
-            Task<List<Face>> faceDetectionTask = (idCardEmbedding == null) ? faceDetector.process(image) : Tasks.forResult(null);
-
-            return Tasks.whenAll(textRecognitionTask, faceDetectionTask)
-                .addOnSuccessListener(aVoid -> {
-                    if (verifiedName == null) {
-                        Text visionText = textRecognitionTask.getResult();
-                        if (visionText != null) {
-                            String name = extractNameFromText(visionText);
-                            if (name != null) verifiedName = name;
+        private void processIdCardImage(InputImage image, Nv21Frame frame) {
+            long detectStart = System.nanoTime();
+            Task<Text> textRecognitionTask = (verifiedName == null)
+                    ? textRecognizer.process(image).addOnCompleteListener(DIRECT, task -> ocrLatency.recordSince(detectStart))
+                    : Tasks.forResult(null);
+            Task<List<Face>> faceDetectionTask = (!idCardEnrolled)
+                    ? faceDetector.process(image).addOnCompleteListener(DIRECT, task -> detectLatency.recordSince(detectStart))
+                    : Tasks.forResult(null);
+
+            Tasks.whenAllComplete(textRecognitionTask, faceDetectionTask).addOnCompleteListener(DIRECT, done ->
+                    runInferenceStage(frame, KycState.SCANNING_ID, () -> {
+                        if (verifiedName == null && textRecognitionTask.isSuccessful()) {
+                            String name = nameVoter.offerFrame(ocrLines(textRecognitionTask.getResult()));
+                            if (name != null) {
+                                // Stops further text recognition.
+                                verifiedName = name;
+                                Log.d(TAG, "ID card name settled.");
+                            }
                         }
-                    }
 
-                    if (idCardEmbedding == null) {
-                        List<Face> faces = faceDetectionTask.getResult();
-                        if (faces != null && !faces.isEmpty()) {
-                            Bitmap croppedFace = ImageUtils.cropAndConvert(imageProxy, faces.get(0).getBoundingBox());
-                            if (croppedFace != null) idCardEmbedding = faceVerifier.getFaceEmbedding(croppedFace);
+                        if (!idCardEnrolled && faceDetectionTask.isSuccessful()) {
+                            List<Face> faces = faceDetectionTask.getResult();
+                            if (faces != null && !faces.isEmpty()) {
+                                float[] embedding = embedFace(frame, faces.get(0).getBoundingBox());
+                                if (embedding != null && idCardGallery.add(LABEL_ID_CARD, embedding) >= 0) {
+                                    idCardEnrolled = idCardGallery.size() >= ID_FRAMES_TO_ENROLL;
+                                }
+                            }
                         }
-                    }
 
-                    if (verifiedName != null && idCardEmbedding != null) {
-                        if (isProcessing.compareAndSet(false, true)) {
-                            runOnUiThread(() -> proceedToFaceScan());
+                        if (verifiedName != null && idCardEnrolled) {
+                            if (isProcessing.compareAndSet(false, true)) {
+                                runOnUiThread(() -> proceedToFaceScan());
+                            }
                         }
-                    }
-                });
+                    }));
         }
 
-        private Task<List<Face>> processLiveFaceImage(InputImage image, ImageProxy imageProxy) {
-            return faceDetector.process(image)
-                .addOnSuccessListener(faces -> {
-                    if (!faces.isEmpty() && isProcessing.compareAndSet(true, false)) {
-                        currentState = KycState.VERIFYING;
-                        updateUIForState();
-
-                        Bitmap croppedFace = ImageUtils.cropAndConvert(imageProxy, faces.get(0).getBoundingBox());
-                        if (croppedFace != null) {
-                            float[] liveEmbedding = faceVerifier.getFaceEmbedding(croppedFace);
-                            double similarity = faceVerifier.calculateSimilarity(idCardEmbedding, liveEmbedding);
-                            Log.i(TAG, "Face similarity score: " + similarity);
-
-                            if (similarity > FACE_MATCH_THRESHOLD) {
-                                handleVerificationSuccess();
-                            } else {
-                                handleVerificationFailure("Face does not match ID.");
-                            }
+        private void processLiveFaceImage(InputImage image, Nv21Frame frame) {
+            long detectStart = System.nanoTime();
+            faceDetector.process(image).addOnCompleteListener(DIRECT, task -> {
+                detectLatency.recordSince(detectStart);
+                List<Face> faces = task.isSuccessful() ? task.getResult() : null;
+                if (faces == null || faces.isEmpty()) {
+                    releaseFrame(frame);
+                    return;
+                }
+                runInferenceStage(frame, KycState.SCANNING_FACE, () -> scoreLiveFace(frame, faces.get(0)));
+            });
+        }
+
+        /**
+         * Hands a detected frame to the inference executor. The work is skipped if the
+         * activity has moved on from the state the frame was captured in, e.g. a back camera
+         * frame still in flight after switching to the face scan. The frame is released
+         * afterwards either way.
+         */
+        private void runInferenceStage(Nv21Frame frame, KycState frameState, Runnable work) {
+            try {
+                inferenceExecutor.execute(() -> {
+                    try {
+                        if (currentState == frameState) {
+                            work.run();
                         }
+                    } finally {
+                        releaseFrame(frame);
                     }
                 });
+            } catch (RejectedExecutionException e) {
+                // The activity is being destroyed.
+                releaseFrame(frame);
+            }
+        }
+
+        private void releaseFrame(Nv21Frame frame) {
+            totalLatency.recordSince(frame.getTimestampNanos());
+            frame.release();
+            framesInFlight.decrementAndGet();
+        }
+
+        void close() {
+            textRecognizer.close();
+            faceDetector.close();
+        }
+    }
+
+    /**
+     * Scores one live frame against the enrolled ID card and lets the session decide once
+     * the aggregate over several frames is confident. Frames whose face is blurred, too small
+     * or turned away are skipped before running the model. Runs on the inference executor.
+     */
+    private void scoreLiveFace(Nv21Frame frame, Face face) {
+        if (!isProcessing.get()) {
+            return;
+        }
+
+        FaceVerificationSession.Decision decision;
+        FaceQualityChecker.Result quality = faceQualityChecker.check(face, frame);
+        float[] liveEmbedding = (quality == FaceQualityChecker.Result.OK)
+                ? embedFace(frame, face.getBoundingBox()) : null;
+        if (liveEmbedding != null) {
+            // Best match across every enrolled ID card frame
+            EmbeddingGallery.Match match = idCardGallery.bestMatch(liveEmbedding);
+            float similarity = (match != null) ? match.getScore() : -1f;
+            decision = liveSession.onFrameScored(similarity);
+            Log.d(TAG, "Face similarity score: " + similarity + " (aggregate " + liveSession.getAggregateScore() + ")");
+        } else {
+            decision = liveSession.onFrameSkipped();
+            Log.d(TAG, "Skipped live frame: " + quality);
+        }
+
+        if (decision == FaceVerificationSession.Decision.PENDING || !isProcessing.compareAndSet(true, false)) {
+            return;
+        }
+        currentState = KycState.VERIFYING;
+        updateUIForState();
+        Log.i(TAG, "Face verification " + decision + " after " + liveSession.getScoreCount()
+                + " scored frame(s), aggregate " + liveSession.getAggregateScore());
+
+        switch (decision) {
+            case ACCEPT:
+                runOnUiThread(this::handleVerificationSuccess);
+                break;
+            case REJECT:
+                runOnUiThread(() -> handleVerificationFailure("Face does not match ID."));
+                break;
+            default:
+                runOnUiThread(() -> handleVerificationFailure("Could not get a clear view of your face."));
+                break;
         }
     }
 
-    private String extractNameFromText(Text visionText) {
-        if (visionText == null) return null;
+    /**
+     * Embeds a face from a copied frame on the inference executor.
+     *
+     * @return The embedding, or null if the face could not be cropped or the model has not
+     * loaded yet.
+     */
+    private float[] embedFace(Nv21Frame frame, Rect faceBox) {
+        FaceVerifier verifier = faceVerifier;
+        if (verifier == null) {
+            return null;
+        }
+        long embedStart = System.nanoTime();
+        float[] embedding = new float[FaceVerifier.EMBEDDING_SIZE];
+        boolean embedded = verifier.getFaceEmbedding(frame, faceBox, embedding);
+        embedLatency.recordSince(embedStart);
+        return embedded ? embedding : null;
+    }
+
+    /**
+     * Shows the pipeline's latency histograms over the camera preview. Only enabled in
+     * debuggable builds.
+     */
+    private final Runnable statsOverlayUpdater = new Runnable() {
+        @Override
+        public void run() {
+            StringBuilder stats = new StringBuilder();
+            for (LatencyHistogram histogram : stageLatencies) {
+                if (stats.length() > 0) stats.append('\n');
+                stats.append(histogram);
+            }
+            binding.textPipelineStats.setText(stats);
+            mainHandler.postDelayed(this, STATS_OVERLAY_INTERVAL_MS);
+        }
+    };
+
+    private final FaceModelHolder.Callback faceModelCallback = new FaceModelHolder.Callback() {
+        @Override
+        public void onModelReady(FaceVerifier verifier) {
+            faceVerifier = verifier;
+        }
+
+        @Override
+        public void onModelFailed(IOException error) {
+            Toast.makeText(KycActivity.this, "Error: Verification model could not be loaded.", Toast.LENGTH_LONG).show();
+            finish();
+        }
+    };
+
+    /**
+     * @return The recognized lines in reading order.
+     */
+    private static List<String> ocrLines(Text visionText) {
+        List<String> lines = new ArrayList<>();
+        if (visionText == null) return lines;
         for (Text.TextBlock block : visionText.getTextBlocks()) {
             for (Text.Line line : block.getLines()) {
-                String lineText = line.getText();
-                if (lineText.matches("([A-Z][a-zA-Z]*[.]?[ ]?){2,3}")) {
-                    if (!lineText.matches(".*[0-9].*") && lineText.length() < 30) {
-                        return lineText;
-                    }
-                }
+                lines.add(line.getText());
             }
         }
-        return null;
+        return lines;
     }
 
     // --- THIS IS THE CORRECTED METHOD ---
@@ -305,17 +509,32 @@ public class KycActivity extends AppCompatActivity {
         currentState = KycState.COMPLETE;
         updateUIForState();
         Toast.makeText(this, "Verification Failed: " + reason, Toast.LENGTH_LONG).show();
-        new android.os.Handler(Looper.getMainLooper()).postDelayed(this::finish, 3000);
+        mainHandler.postDelayed(this::finish, 3000);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        FaceModelHolder.getInstance(this).release(faceModelCallback);
+        faceVerifier = null;
         if (cameraProvider != null) {
             cameraProvider.unbindAll();
         }
+        mainHandler.removeCallbacks(statsOverlayUpdater);
+        if (imageAnalyzer != null) {
+            imageAnalyzer.close();
+        }
         if (analysisExecutor != null) {
             analysisExecutor.shutdown();
         }
+        if (detectionExecutor != null) {
+            detectionExecutor.shutdown();
+        }
+        if (inferenceExecutor != null) {
+            inferenceExecutor.shutdown();
+        }
+        for (LatencyHistogram histogram : stageLatencies) {
+            Log.d(TAG, histogram.toString());
+        }
     }
 }
\ No newline at end of file
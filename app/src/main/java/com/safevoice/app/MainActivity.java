@@ -18,6 +18,7 @@ import androidx.navigation.ui.NavigationUI;
 
 import com.safevoice.app.databinding.ActivityMainBinding;
 import com.safevoice.app.services.VoiceRecognitionService;
+import com.safevoice.app.utils.RecipientDirectory;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -57,6 +58,9 @@ public class MainActivity extends AppCompatActivity {
             NavigationUI.setupWithNavController(binding.navView, navController);
         }
 
+        // Keep contacts' FCM tokens cached so an emergency needs no lookups
+        RecipientDirectory.getInstance(this).sync();
+
         permissionLauncher = registerForActivityResult(new ActivityResultContracts.RequestMultiplePermissions(),
                 new ActivityResultCallback<Map<String, Boolean>>() {
                     @Override
@@ -0,0 +1,40 @@
+package com.safevoice.app.alerts;
+
+/**
+ * One way of reaching the user's contacts during an emergency (SMS, FCM, phone call, WebRTC).
+ * The AlertDispatcher runs every channel concurrently on its own worker thread, so
+ * implementations may block, but must respond to thread interruption because that is
+ * how a channel's deadline is enforced.
+ */
+public interface AlertChannel {
+
+    /**
+     * @return A short, stable name used in logs and in the DispatchReport.
+     */
+    String getName();
+
+    /**
+     * @return The deadline and retry policy for this channel.
+     */
+    ChannelPolicy getPolicy();
+
+    /**
+     * Told about each recipient the moment the alert has gone out to them.
+     */
+    interface DeliveryListener {
+        /**
+         * @param recipient The phone number or uid that was reached.
+         */
+        void onDelivered(String recipient);
+    }
+
+    /**
+     * Sends the alert. Called once per attempt on a dispatcher worker thread. An attempt that
+     * returns without reporting any delivery, in this or an earlier attempt, counts as failed.
+     *
+     * @param alert      The emergency to report.
+     * @param deliveries Must be told about every recipient as soon as they are reached.
+     * @throws Exception If this attempt failed and may be retried.
+     */
+    void send(EmergencyAlert alert, DeliveryListener deliveries) throws Exception;
+}
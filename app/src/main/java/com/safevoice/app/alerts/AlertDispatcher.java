@@ -0,0 +1,193 @@
+package com.safevoice.app.alerts;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fans an EmergencyAlert out to every AlertChannel at once on a bounded thread pool.
+ * Each channel gets its own deadline and retry policy, so a slow network read in one
+ * channel never delays the first SMS. Channels report each recipient as they reach them,
+ * so the first alert is timed when it actually goes out, and a channel that reaches nobody
+ * fails. When every channel has finished (or timed out), a DispatchReport with per-channel
+ * timings and recipient counts is delivered.
+ */
+public class AlertDispatcher {
+
+    private static final String TAG = "AlertDispatcher";
+    private static final int DEFAULT_MAX_THREADS = 4;
+
+    /**
+     * Progress callbacks. Both are invoked on a dispatcher thread, not the main thread.
+     */
+    public interface DispatchListener {
+        /**
+         * Called once, as soon as any channel has reached its first recipient.
+         */
+        void onFirstAlertSent(String channelName, long elapsedMs);
+
+        /**
+         * Called once every channel has succeeded, failed or timed out.
+         */
+        void onDispatchComplete(DispatchReport report);
+    }
+
+    private final ThreadPoolExecutor channelExecutor;
+    private final ScheduledExecutorService deadlineScheduler;
+
+    public AlertDispatcher() {
+        this(DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * @param maxThreads The maximum number of channels that run at the same time.
+     */
+    public AlertDispatcher(int maxThreads) {
+        channelExecutor = new ThreadPoolExecutor(maxThreads, maxThreads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        channelExecutor.allowCoreThreadTimeOut(true);
+        deadlineScheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Starts every channel and returns immediately.
+     *
+     * @param alert    The emergency to report.
+     * @param channels The channels to run. They all start at the same time.
+     * @param listener Receives the first-alert notification and the final report.
+     */
+    public void dispatch(final EmergencyAlert alert, final List<AlertChannel> channels, final DispatchListener listener) {
+        final long startMs = SystemClock.elapsedRealtime();
+        final int channelCount = channels.size();
+        final AtomicReferenceArray<DispatchReport.ChannelResult> results = new AtomicReferenceArray<>(channelCount);
+        final AtomicIntegerArray attempts = new AtomicIntegerArray(channelCount);
+        final AtomicIntegerArray reached = new AtomicIntegerArray(channelCount);
+        final AtomicLongArray firstDeliveredAt = new AtomicLongArray(channelCount);
+        final AtomicInteger remaining = new AtomicInteger(channelCount);
+        final AtomicBoolean firstAlertReported = new AtomicBoolean(false);
+
+        if (channelCount == 0) {
+            listener.onDispatchComplete(new DispatchReport(new ArrayList<DispatchReport.ChannelResult>(), 0));
+            return;
+        }
+
+        final ResultSink sink = new ResultSink() {
+            @Override
+            public void complete(int index, DispatchReport.ChannelResult result) {
+                // Only the first outcome counts: a worker that finishes after its deadline is ignored.
+                if (!results.compareAndSet(index, null, result)) {
+                    return;
+                }
+                Log.d(TAG, "Channel finished: " + result);
+                if (remaining.decrementAndGet() == 0) {
+                    List<DispatchReport.ChannelResult> all = new ArrayList<>();
+                    for (int i = 0; i < channelCount; i++) {
+                        all.add(results.get(i));
+                    }
+                    DispatchReport report = new DispatchReport(all, SystemClock.elapsedRealtime() - startMs);
+                    Log.i(TAG, report.toString());
+                    listener.onDispatchComplete(report);
+                }
+            }
+        };
+
+        for (int i = 0; i < channelCount; i++) {
+            final int index = i;
+            final AlertChannel channel = channels.get(i);
+            firstDeliveredAt.set(index, -1);
+            final AlertChannel.DeliveryListener deliveries = new AlertChannel.DeliveryListener() {
+                @Override
+                public void onDelivered(String recipient) {
+                    long elapsedMs = SystemClock.elapsedRealtime() - startMs;
+                    reached.incrementAndGet(index);
+                    firstDeliveredAt.compareAndSet(index, -1, elapsedMs);
+                    // Time to first alert is the first message actually out, not the first channel done.
+                    if (firstAlertReported.compareAndSet(false, true)) {
+                        listener.onFirstAlertSent(channel.getName(), elapsedMs);
+                    }
+                }
+            };
+            final Future<?> future = channelExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    runChannel(index, channel, alert, deliveries, startMs, attempts, reached, firstDeliveredAt, sink);
+                }
+            });
+            deadlineScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (results.get(index) == null) {
+                        future.cancel(true);
+                        sink.complete(index, new DispatchReport.ChannelResult(channel.getName(),
+                                DispatchReport.Status.TIMED_OUT, attempts.get(index), reached.get(index), -1,
+                                firstDeliveredAt.get(index), SystemClock.elapsedRealtime() - startMs, "Deadline exceeded"));
+                    }
+                }
+            }, channel.getPolicy().getDeadlineMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops accepting new dispatches and interrupts any channel that is still running.
+     */
+    public void shutdown() {
+        channelExecutor.shutdownNow();
+        deadlineScheduler.shutdownNow();
+    }
+
+    private void runChannel(int index, AlertChannel channel, EmergencyAlert alert, AlertChannel.DeliveryListener deliveries,
+                            long startMs, AtomicIntegerArray attempts, AtomicIntegerArray reached,
+                            AtomicLongArray firstDeliveredAt, ResultSink sink) {
+        ChannelPolicy policy = channel.getPolicy();
+        long channelStartMs = SystemClock.elapsedRealtime() - startMs;
+        String lastError = null;
+
+        while (attempts.get(index) < policy.getMaxAttempts() && !Thread.currentThread().isInterrupted()) {
+            attempts.incrementAndGet(index);
+            try {
+                channel.send(alert, deliveries);
+                if (reached.get(index) == 0) {
+                    // Nothing went out and nothing failed, so a retry would do the same.
+                    lastError = "No recipient reached";
+                    break;
+                }
+                sink.complete(index, new DispatchReport.ChannelResult(channel.getName(), DispatchReport.Status.SUCCEEDED,
+                        attempts.get(index), reached.get(index), channelStartMs, firstDeliveredAt.get(index),
+                        SystemClock.elapsedRealtime() - startMs, null));
+                return;
+            } catch (InterruptedException e) {
+                // The deadline fired; the timeout result has already been recorded.
+                return;
+            } catch (Exception e) {
+                lastError = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                Log.w(TAG, "Channel " + channel.getName() + " attempt " + attempts.get(index) + " failed: " + lastError);
+                if (attempts.get(index) < policy.getMaxAttempts()) {
+                    try {
+                        Thread.sleep(policy.getRetryBackoffMs());
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }
+        sink.complete(index, new DispatchReport.ChannelResult(channel.getName(), DispatchReport.Status.FAILED,
+                attempts.get(index), reached.get(index), channelStartMs, firstDeliveredAt.get(index),
+                SystemClock.elapsedRealtime() - startMs, lastError));
+    }
+
+    private interface ResultSink {
+        void complete(int index, DispatchReport.ChannelResult result);
+    }
+}
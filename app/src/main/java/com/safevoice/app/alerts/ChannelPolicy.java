@@ -0,0 +1,37 @@
+package com.safevoice.app.alerts;
+
+/**
+ * The deadline and retry policy of one AlertChannel.
+ */
+public final class ChannelPolicy {
+
+    private final long deadlineMs;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+
+    /**
+     * @param deadlineMs     Total time the channel may take, including retries.
+     * @param maxAttempts    How many times send() is tried before giving up. At least 1.
+     * @param retryBackoffMs Pause between two attempts.
+     */
+    public ChannelPolicy(long deadlineMs, int maxAttempts, long retryBackoffMs) {
+        if (deadlineMs <= 0 || maxAttempts < 1 || retryBackoffMs < 0) {
+            throw new IllegalArgumentException("Invalid channel policy.");
+        }
+        this.deadlineMs = deadlineMs;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getRetryBackoffMs() {
+        return retryBackoffMs;
+    }
+}
@@ -0,0 +1,133 @@
+package com.safevoice.app.alerts;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of one AlertDispatcher run: how each channel did and how long it took.
+ * All times are milliseconds relative to the moment dispatch started.
+ */
+public class DispatchReport {
+
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        TIMED_OUT
+    }
+
+    /**
+     * The result of one channel.
+     */
+    public static final class ChannelResult {
+        private final String channelName;
+        private final Status status;
+        private final int attempts;
+        private final int recipientsReached;
+        private final long startedAtMs;
+        private final long firstDeliveredAtMs;
+        private final long finishedAtMs;
+        private final String error;
+
+        public ChannelResult(String channelName, Status status, int attempts, int recipientsReached,
+                             long startedAtMs, long firstDeliveredAtMs, long finishedAtMs, String error) {
+            this.channelName = channelName;
+            this.status = status;
+            this.attempts = attempts;
+            this.recipientsReached = recipientsReached;
+            this.startedAtMs = startedAtMs;
+            this.firstDeliveredAtMs = firstDeliveredAtMs;
+            this.finishedAtMs = finishedAtMs;
+            this.error = error;
+        }
+
+        public String getChannelName() {
+            return channelName;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * @return How many recipients this channel reached, including any reached before a
+         * failure or timeout.
+         */
+        public int getRecipientsReached() {
+            return recipientsReached;
+        }
+
+        public long getStartedAtMs() {
+            return startedAtMs;
+        }
+
+        /**
+         * @return When the first recipient was reached, or -1 if none was.
+         */
+        public long getFirstDeliveredAtMs() {
+            return firstDeliveredAtMs;
+        }
+
+        public long getFinishedAtMs() {
+            return finishedAtMs;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return channelName + "=" + status + " (attempts=" + attempts + ", reached=" + recipientsReached
+                    + ", start=" + startedAtMs + "ms, firstDelivery=" + firstDeliveredAtMs + "ms, end=" + finishedAtMs
+                    + "ms" + (error != null ? ", error=" + error : "") + ")";
+        }
+    }
+
+    private final List<ChannelResult> results;
+    private final long totalMs;
+
+    public DispatchReport(List<ChannelResult> results, long totalMs) {
+        this.results = Collections.unmodifiableList(new ArrayList<>(results));
+        this.totalMs = totalMs;
+    }
+
+    public List<ChannelResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return The time until every channel finished.
+     */
+    public long getTotalMs() {
+        return totalMs;
+    }
+
+    /**
+     * @return The time until the first recipient was reached on any channel, or -1 if nobody
+     * was. A channel that failed after reaching some recipients still counts.
+     */
+    public long getTimeToFirstAlertMs() {
+        long first = -1;
+        for (ChannelResult result : results) {
+            long delivered = result.getFirstDeliveredAtMs();
+            if (delivered >= 0 && (first < 0 || delivered < first)) {
+                first = delivered;
+            }
+        }
+        return first;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "DispatchReport{firstAlert=" + getTimeToFirstAlertMs() + "ms, total=" + totalMs + "ms, " + results + "}";
+    }
+}
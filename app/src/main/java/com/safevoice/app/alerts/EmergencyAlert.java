@@ -0,0 +1,95 @@
+package com.safevoice.app.alerts;
+
+import android.location.Location;
+
+import androidx.annotation.Nullable;
+
+import com.safevoice.app.models.Contact;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable description of one emergency, shared by every AlertChannel.
+ * It is built once on the main thread and then read concurrently by the dispatcher's workers.
+ */
+public class EmergencyAlert {
+
+    private final String callerUid;
+    private final String callerName;
+    private final Location location;
+    private final Contact primaryContact;
+    private final List<Contact> priorityContacts;
+    private final String sessionId;
+
+    /**
+     * @param callerUid        The Firebase uid of the user in danger, or null when signed out.
+     * @param callerName       The name shown to recipients.
+     * @param location         The best known location, or null if none is available.
+     * @param primaryContact   The contact to call, or null if none is set.
+     * @param priorityContacts The in-app contacts to alert. Copied defensively.
+     * @param sessionId        The WebRTC session recipients can join, or null.
+     */
+    public EmergencyAlert(@Nullable String callerUid, String callerName, @Nullable Location location,
+                          @Nullable Contact primaryContact, List<Contact> priorityContacts, @Nullable String sessionId) {
+        this.callerUid = callerUid;
+        this.callerName = callerName;
+        this.location = location;
+        this.primaryContact = primaryContact;
+        this.priorityContacts = Collections.unmodifiableList(new ArrayList<>(priorityContacts));
+        this.sessionId = sessionId;
+    }
+
+    @Nullable
+    public String getCallerUid() {
+        return callerUid;
+    }
+
+    public String getCallerName() {
+        return callerName;
+    }
+
+    @Nullable
+    public Location getLocation() {
+        return location;
+    }
+
+    @Nullable
+    public Contact getPrimaryContact() {
+        return primaryContact;
+    }
+
+    public List<Contact> getPriorityContacts() {
+        return priorityContacts;
+    }
+
+    @Nullable
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return A copy of this alert with a newer location, used for follow-up messages.
+     */
+    public EmergencyAlert withLocation(@Nullable Location newLocation) {
+        return new EmergencyAlert(callerUid, callerName, newLocation, primaryContact, priorityContacts, sessionId);
+    }
+
+    /**
+     * @return The primary contact followed by every priority contact that is not the primary.
+     */
+    public List<Contact> getAllContacts() {
+        List<Contact> all = new ArrayList<>();
+        if (primaryContact != null) {
+            all.add(primaryContact);
+        }
+        for (Contact contact : priorityContacts) {
+            // This check prevents alerting the primary contact twice if it is also a priority contact
+            if (primaryContact == null || !contact.equals(primaryContact)) {
+                all.add(contact);
+            }
+        }
+        return all;
+    }
+}
@@ -0,0 +1,117 @@
+package com.safevoice.app.alerts;
+
+import android.location.Location;
+import android.util.Log;
+
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.RemoteMessage;
+import com.safevoice.app.models.Contact;
+import com.safevoice.app.utils.RecipientDirectory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Sends the in-app FCM emergency alert to every priority contact that has a Safe Voice account.
+ * In follow-up mode it sends a "location_update" message instead of a new alert.
+ * Requires a signed-in caller and a network connection.
+ *
+ * Tokens come from the RecipientDirectory cache, so sending normally makes no Firestore reads.
+ * A contact whose token is not cached yet costs one direct read. If that read fails the
+ * attempt fails once every other contact has been tried, and the retry only goes to the
+ * contacts that have not been reached.
+ */
+public class FcmAlertChannel implements AlertChannel {
+
+    private static final String TAG = "FcmAlertChannel";
+    private static final ChannelPolicy POLICY = new ChannelPolicy(10000, 2, 1000);
+    private static final long TOKEN_FETCH_TIMEOUT_MS = 3000;
+
+    public static final String TYPE_EMERGENCY = "emergency";
+    public static final String TYPE_LOCATION_UPDATE = "location_update";
+
+    private final Set<String> sentUids = new HashSet<>();
+    private final RecipientDirectory directory;
+    private final boolean followUp;
+
+    public FcmAlertChannel(RecipientDirectory directory) {
+        this(directory, false);
+    }
+
+    /**
+     * @param directory The cache of recipient tokens.
+     * @param followUp  true to send a location update for an alert that was already sent.
+     */
+    public FcmAlertChannel(RecipientDirectory directory, boolean followUp) {
+        this.directory = directory;
+        this.followUp = followUp;
+    }
+
+    @Override
+    public String getName() {
+        return followUp ? "fcm_update" : "fcm";
+    }
+
+    @Override
+    public ChannelPolicy getPolicy() {
+        return POLICY;
+    }
+
+    @Override
+    public void send(EmergencyAlert alert, DeliveryListener deliveries) throws Exception {
+        String callerUid = alert.getCallerUid();
+        if (callerUid == null) {
+            throw new IllegalStateException("No signed-in user. Cannot send FCM alerts.");
+        }
+
+        int lookupFailures = 0;
+        for (Contact contact : alert.getPriorityContacts()) {
+            String recipientUid = contact.getUid();
+            if (recipientUid == null || sentUids.contains(recipientUid)) {
+                continue;
+            }
+            String fcmToken = directory.getToken(recipientUid);
+            if (fcmToken == null) {
+                try {
+                    fcmToken = directory.fetchToken(recipientUid, TOKEN_FETCH_TIMEOUT_MS);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    Log.w(TAG, "Could not look up the FCM token of " + recipientUid, e);
+                    lookupFailures++;
+                    continue;
+                }
+                if (fcmToken == null) {
+                    // The contact has never signed in on a device; a retry would read the same.
+                    Log.w(TAG, "No FCM token on the profile of " + recipientUid + ". Skipping.");
+                    continue;
+                }
+            }
+            FirebaseMessaging.getInstance().send(buildMessage(followUp ? TYPE_LOCATION_UPDATE : TYPE_EMERGENCY,
+                    fcmToken, alert.getCallerName(), callerUid, alert.getLocation(), alert.getSessionId()));
+            sentUids.add(recipientUid);
+            deliveries.onDelivered(recipientUid);
+            Log.d(TAG, "Sent FCM alert to " + recipientUid);
+        }
+        if (lookupFailures > 0) {
+            throw new Exception("Could not look up the FCM token of " + lookupFailures + " recipient(s).");
+        }
+    }
+
+    static RemoteMessage buildMessage(String type, String fcmToken, String callerName, String callerUid, Location location, String sessionId) {
+        RemoteMessage.Builder messageBuilder = new RemoteMessage.Builder(fcmToken)
+                .setMessageId(Integer.toString(UUID.randomUUID().hashCode()))
+                .addData("type", type)
+                .addData("callerName", callerName)
+                .addData("callerUid", callerUid);
+
+        if (location != null) {
+            messageBuilder.addData("location", location.getLatitude() + "," + location.getLongitude());
+        }
+        if (sessionId != null) {
+            messageBuilder.addData("sessionId", sessionId);
+        }
+        return messageBuilder.build();
+    }
+}
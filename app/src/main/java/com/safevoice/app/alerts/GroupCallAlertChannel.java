@@ -0,0 +1,42 @@
+package com.safevoice.app.alerts;
+
+import com.safevoice.app.webrtc.GroupCallManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts a WebRTC group call to every contact with a Safe Voice account. The channel succeeds
+ * once the offers have been started; call establishment is reported separately through
+ * WebRTCManager.WebRTCListener.
+ */
+public class GroupCallAlertChannel implements AlertChannel {
+
+    private static final ChannelPolicy POLICY = new ChannelPolicy(5000, 1, 0);
+
+    private final GroupCallManager groupCallManager;
+    private final List<String> targetUids;
+
+    public GroupCallAlertChannel(GroupCallManager groupCallManager, List<String> targetUids) {
+        this.groupCallManager = groupCallManager;
+        this.targetUids = new ArrayList<>(targetUids);
+    }
+
+    @Override
+    public String getName() {
+        return WebRtcAlertChannel.NAME;
+    }
+
+    @Override
+    public ChannelPolicy getPolicy() {
+        return POLICY;
+    }
+
+    @Override
+    public void send(EmergencyAlert alert, DeliveryListener deliveries) throws Exception {
+        groupCallManager.startCall(targetUids);
+        for (String targetUid : targetUids) {
+            deliveries.onDelivered(targetUid);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.safevoice.app.alerts;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.util.Log;
+
+import com.safevoice.app.models.Contact;
+
+/**
+ * Places a standard phone call to the primary contact.
+ */
+public class PhoneCallAlertChannel implements AlertChannel {
+
+    private static final String TAG = "PhoneCallAlertChannel";
+    private static final ChannelPolicy POLICY = new ChannelPolicy(3000, 1, 0);
+
+    private final Context context;
+
+    public PhoneCallAlertChannel(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public String getName() {
+        return "phone_call";
+    }
+
+    @Override
+    public ChannelPolicy getPolicy() {
+        return POLICY;
+    }
+
+    @Override
+    public void send(EmergencyAlert alert, DeliveryListener deliveries) throws Exception {
+        Contact primaryContact = alert.getPrimaryContact();
+        if (primaryContact == null) {
+            throw new IllegalStateException("No primary contact set. Cannot make emergency call.");
+        }
+        String phoneNumber = primaryContact.getPhoneNumber();
+        if (phoneNumber == null || phoneNumber.isEmpty()) {
+            throw new IllegalStateException("Phone number is invalid. Cannot make call.");
+        }
+        Intent callIntent = new Intent(Intent.ACTION_CALL);
+        callIntent.setData(Uri.parse("tel:" + phoneNumber));
+        callIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        try {
+            context.startActivity(callIntent);
+            deliveries.onDelivered(phoneNumber);
+            Log.i(TAG, "Emergency call placed to " + phoneNumber);
+        } catch (SecurityException e) {
+            Log.e(TAG, "CALL_PHONE permission missing or denied.", e);
+            throw e;
+        }
+    }
+}
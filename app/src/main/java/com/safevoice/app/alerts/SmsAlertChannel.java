@@ -0,0 +1,104 @@
+package com.safevoice.app.alerts;
+
+import android.location.Location;
+import android.telephony.SmsManager;
+import android.util.Log;
+
+import com.safevoice.app.models.Contact;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Sends the emergency SMS to the primary contact and every priority contact with a phone number.
+ * In follow-up mode it sends a short location update instead of the full alert. Works offline. Numbers that were already sent to are skipped on retry, so a partial
+ * failure never produces duplicate messages.
+ */
+public class SmsAlertChannel implements AlertChannel {
+
+    private static final String TAG = "SmsAlertChannel";
+    private static final ChannelPolicy POLICY = new ChannelPolicy(5000, 2, 500);
+
+    private final Set<String> sentNumbers = new HashSet<>();
+    private final boolean followUp;
+
+    public SmsAlertChannel() {
+        this(false);
+    }
+
+    /**
+     * @param followUp true to send a location update for an alert that was already sent.
+     */
+    public SmsAlertChannel(boolean followUp) {
+        this.followUp = followUp;
+    }
+
+    @Override
+    public String getName() {
+        return followUp ? "sms_update" : "sms";
+    }
+
+    @Override
+    public ChannelPolicy getPolicy() {
+        return POLICY;
+    }
+
+    @Override
+    public void send(EmergencyAlert alert, DeliveryListener deliveries) throws Exception {
+        String message = followUp
+                ? buildFollowUpMessage(alert.getCallerName(), alert.getLocation())
+                : buildMessage(alert.getCallerName(), alert.getLocation());
+        SmsManager smsManager = SmsManager.getDefault();
+        int failures = 0;
+        int recipients = 0;
+
+        for (Contact contact : alert.getAllContacts()) {
+            String phoneNumber = contact.getPhoneNumber();
+            if (!isValidNumber(phoneNumber) || sentNumbers.contains(phoneNumber)) {
+                continue;
+            }
+            recipients++;
+            try {
+                smsManager.sendMultipartTextMessage(phoneNumber, null, smsManager.divideMessage(message), null, null);
+                sentNumbers.add(phoneNumber);
+                deliveries.onDelivered(phoneNumber);
+                Log.i(TAG, "SMS alert sent to " + phoneNumber);
+            } catch (Exception e) {
+                failures++;
+                Log.e(TAG, "Failed to send SMS to " + phoneNumber, e);
+            }
+        }
+
+        if (sentNumbers.isEmpty() && recipients == 0) {
+            // Not worth a retry: the dispatcher fails an attempt that reached no one right away.
+            Log.w(TAG, "No contact with a phone number set. Cannot send SMS.");
+            return;
+        }
+        if (failures > 0) {
+            throw new Exception(failures + " of " + recipients + " SMS alerts failed.");
+        }
+    }
+
+    /**
+     * Builds the SMS body shared by the emergency alert and its follow-ups.
+     */
+    static String buildMessage(String userName, Location location) {
+        String message = "EMERGENCY: Automated alert from Safe Voice for " + userName + ". They may be in trouble.";
+        if (location != null) {
+            message += "\n\nLast known location: https://maps.google.com/?q=" + location.getLatitude() + "," + location.getLongitude();
+        }
+        return message;
+    }
+
+    static String buildFollowUpMessage(String userName, Location location) {
+        String message = "UPDATE from Safe Voice for " + userName + ".";
+        if (location != null) {
+            message += "\n\nPrecise location: https://maps.google.com/?q=" + location.getLatitude() + "," + location.getLongitude();
+        }
+        return message;
+    }
+
+    static boolean isValidNumber(String phoneNumber) {
+        return phoneNumber != null && !phoneNumber.isEmpty() && !phoneNumber.equals("No number provided");
+    }
+}
@@ -0,0 +1,41 @@
+package com.safevoice.app.alerts;
+
+import com.safevoice.app.webrtc.WebRTCManager;
+
+/**
+ * Starts a WebRTC audio call to the primary contact. The channel succeeds once the offer
+ * has been started; call establishment is reported separately through WebRTCManager.WebRTCListener.
+ */
+public class WebRtcAlertChannel implements AlertChannel {
+
+    /**
+     * The channel name of both WebRTC calls, one-to-one and group, so reports treat them alike.
+     */
+    public static final String NAME = "webrtc";
+
+    private static final ChannelPolicy POLICY = new ChannelPolicy(5000, 1, 0);
+
+    private final WebRTCManager webRTCManager;
+    private final String targetUid;
+
+    public WebRtcAlertChannel(WebRTCManager webRTCManager, String targetUid) {
+        this.webRTCManager = webRTCManager;
+        this.targetUid = targetUid;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ChannelPolicy getPolicy() {
+        return POLICY;
+    }
+
+    @Override
+    public void send(EmergencyAlert alert, DeliveryListener deliveries) throws Exception {
+        webRTCManager.startCall(targetUid);
+        deliveries.onDelivered(targetUid);
+    }
+}
@@ -1,6 +1,10 @@
 package com.safevoice.app.services;
 
 import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
@@ -9,51 +13,133 @@ import android.content.pm.PackageManager;
 import android.location.Location;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
-import android.telephony.SmsManager;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
-import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
 
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.messaging.FirebaseMessaging;
-import com.google.firebase.messaging.RemoteMessage;
+import com.safevoice.app.MainActivity;
+import com.safevoice.app.R;
+import com.safevoice.app.alerts.AlertChannel;
+import com.safevoice.app.alerts.AlertDispatcher;
+import com.safevoice.app.alerts.DispatchReport;
+import com.safevoice.app.alerts.EmergencyAlert;
+import com.safevoice.app.alerts.FcmAlertChannel;
+import com.safevoice.app.alerts.GroupCallAlertChannel;
+import com.safevoice.app.alerts.PhoneCallAlertChannel;
+import com.safevoice.app.alerts.SmsAlertChannel;
+import com.safevoice.app.alerts.WebRtcAlertChannel;
 import com.safevoice.app.models.Contact;
 import com.safevoice.app.utils.ContactsManager;
+import com.safevoice.app.utils.ContactsSnapshot;
 import com.safevoice.app.utils.LocationHelper;
+import com.safevoice.app.utils.LocationSource;
+import com.safevoice.app.utils.LocationStream;
+import com.safevoice.app.utils.RecipientDirectory;
+import com.safevoice.app.webrtc.CallSetupLatencyRecorder;
+import com.safevoice.app.webrtc.GroupCallManager;
 import com.safevoice.app.webrtc.WebRTCManager;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class EmergencyHandlerService extends Service implements WebRTCManager.WebRTCListener {
 
+    /**
+     * SystemClock.elapsedRealtime() when the trigger fired, used to measure call setup latency.
+     */
+    public static final String EXTRA_TRIGGER_ELAPSED_MS = "trigger_elapsed_ms";
+
+    /**
+     * Sent by the notification's stop button to end the live location stream early.
+     */
+    public static final String ACTION_STOP_LOCATION_STREAM = "com.safevoice.app.action.STOP_LOCATION_STREAM";
+
     private static final String TAG = "EmergencyHandlerService";
+    private static final String CHANNEL_ID = "EmergencyHandlerChannel";
+    private static final int NOTIFICATION_ID = 2;
     private static final String SETTINGS_PREFS_NAME = "SafeVoiceSettingsPrefs";
     private static final String KEY_CALL_PREFERENCE = "call_preference";
     private static final String CALL_PREF_WEBRTC = "webrtc";
-
-    private LocationHelper locationHelper;
+    private static final String KEY_GROUP_CALL = "webrtc_group_call";
+    private static final String KEY_GROUP_CALL_UPLINK_CAP_BPS = "group_call_uplink_cap_bps";
+    private static final String KEY_PRECISE_FIX_BUDGET_MS = "precise_fix_budget_ms";
+    private static final long DEFAULT_PRECISE_FIX_BUDGET_MS = 30000;
+    // A precise fix is only worth a follow-up message if it moves the pin or sharpens it noticeably.
+    private static final float MIN_FOLLOW_UP_DISTANCE_METERS = 25f;
+    private static final String KEY_LOCATION_STREAM_DURATION_MS = "location_stream_duration_ms";
+    private static final long DEFAULT_LOCATION_STREAM_DURATION_MS = 30 * 60 * 1000;
+
+    // Lets tests replace the location source, e.g. to simulate a slow GPS.
+    @VisibleForTesting
+    static LocationSource locationSourceOverride;
+
+    private LocationSource locationSource;
     private WebRTCManager webRTCManager;
+    private GroupCallManager groupCallManager;
+    private AlertDispatcher alertDispatcher;
+    private LocationStream locationStream;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean awaitingWebRtcCall = false;
+    private long triggerElapsedMs = -1;
+    private boolean callLatencyRecorded = false;
+
+    // Two-phase location state. Only touched on the main thread.
+    private boolean emergencyInProgress = false;
+    private EmergencyAlert initialAlert;
+    private boolean preciseFixFinished = false;
+    private int pendingWork = 0;
+
+    private final Runnable preciseFixTimeout = new Runnable() {
+        @Override
+        public void run() {
+            if (!preciseFixFinished) {
+                Log.w(TAG, "No precise location fix within budget. Keeping the initial location.");
+                preciseFixFinished = true;
+                finishWork();
+            }
+        }
+    };
+
+    private final Runnable locationStreamTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.i(TAG, "Live location stream reached its maximum duration.");
+            stopLocationStream();
+        }
+    };
 
     @Override
     public void onCreate() {
         super.onCreate();
-        locationHelper = new LocationHelper(this);
-        webRTCManager = new WebRTCManager(getApplicationContext(), this);
+        locationSource = (locationSourceOverride != null) ? locationSourceOverride : new LocationHelper(this);
+        alertDispatcher = new AlertDispatcher();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP_LOCATION_STREAM.equals(intent.getAction())) {
+            Log.i(TAG, "Live location stream stopped by the user.");
+            stopLocationStream();
+            if (!emergencyInProgress) {
+                // A stale notification started a fresh instance with nothing to stop.
+                stopSelf();
+            }
+            return START_NOT_STICKY;
+        }
+
         Log.i(TAG, "Emergency sequence initiated.");
         Toast.makeText(this, "Emergency Triggered! Sending alerts...", Toast.LENGTH_LONG).show();
 
@@ -63,168 +149,290 @@ public class EmergencyHandlerService extends Service implements WebRTCManager.We
             return START_NOT_STICKY;
         }
 
-        locationHelper.getCurrentLocation(new LocationHelper.LocationResultCallback() {
+        if (emergencyInProgress) {
+            Log.w(TAG, "Emergency already in progress. Ignoring repeated trigger.");
+            return START_NOT_STICKY;
+        }
+        emergencyInProgress = true;
+        triggerElapsedMs = (intent != null) ? intent.getLongExtra(EXTRA_TRIGGER_ELAPSED_MS, -1) : -1;
+
+        // Phase one: alert immediately with whatever location is already known.
+        beginWork();
+        locationSource.getLastKnownLocation(new LocationHelper.LocationResultCallback() {
             @Override
             public void onLocationResult(Location location) {
-                executeEmergencyActions(location);
-                // The service will stop itself after actions are complete
+                sendInitialAlerts(location);
+                finishWork();
+            }
+        });
+
+        // Phase two: in parallel, wait a bounded time for a precise fix and send it as an update.
+        beginWork();
+        SharedPreferences settingsPrefs = getSharedPreferences(SETTINGS_PREFS_NAME, Context.MODE_PRIVATE);
+        long budgetMs = settingsPrefs.getLong(KEY_PRECISE_FIX_BUDGET_MS, DEFAULT_PRECISE_FIX_BUDGET_MS);
+        mainHandler.postDelayed(preciseFixTimeout, budgetMs);
+        locationSource.getCurrentLocation(new LocationHelper.LocationResultCallback() {
+            @Override
+            public void onLocationResult(Location location) {
+                onPreciseFix(location);
             }
         });
 
         return START_NOT_STICKY;
     }
 
-    // --- THIS IS THE CORRECTED METHOD ---
-    private void executeEmergencyActions(Location location) {
-        ContactsManager contactsManager = ContactsManager.getInstance(this);
-        Contact primaryContact = contactsManager.getPrimaryContact();
-        List<Contact> priorityContacts = contactsManager.getPriorityContacts();
-
-        // --- FIX 1: SEND SMS TO THE PRIMARY CONTACT ---
-        // This ensures the primary contact ALWAYS gets an SMS.
-        if (primaryContact != null && primaryContact.getPhoneNumber() != null && !primaryContact.getPhoneNumber().isEmpty()) {
-            sendSmsAlert(primaryContact.getPhoneNumber(), location);
-        } else {
-            Log.w(TAG, "No primary contact with a phone number set. Cannot send primary SMS.");
+    private void sendInitialAlerts(Location location) {
+        if (initialAlert != null) {
+            return;
         }
+        Log.d(TAG, "Sending initial alerts with " + (location != null ? location.getProvider() : "no") + " location.");
+        executeEmergencyActions(location);
 
-        // --- FIX 2: ALSO SEND SMS TO ALL OTHER PRIORITY CONTACTS ---
-        if (priorityContacts != null && !priorityContacts.isEmpty()) {
-            for (Contact contact : priorityContacts) {
-                if (contact.getPhoneNumber() != null && !contact.getPhoneNumber().isEmpty()) {
-                    // This check prevents sending a duplicate SMS if the primary contact is also a priority contact
-                    if (primaryContact == null || !contact.equals(primaryContact)) {
-                        sendSmsAlert(contact.getPhoneNumber(), location);
-                    }
-                }
+        if (initialAlert.getCallerUid() != null && isOnline()) {
+            startLocationStream(initialAlert.getCallerUid(), location);
+        }
+    }
+
+    /**
+     * Keeps contacts updated as the user moves. The stream holds the service open until it
+     * reaches its maximum duration or the user stops it from the notification.
+     *
+     * Only called after the first alerts have been dispatched, so a failure to enter the
+     * foreground costs the live stream and nothing else.
+     */
+    private void startLocationStream(String userUid, Location initialLocation) {
+        SharedPreferences settingsPrefs = getSharedPreferences(SETTINGS_PREFS_NAME, Context.MODE_PRIVATE);
+        long durationMs = settingsPrefs.getLong(KEY_LOCATION_STREAM_DURATION_MS, DEFAULT_LOCATION_STREAM_DURATION_MS);
+        if (durationMs <= 0) {
+            Log.d(TAG, "Live location stream disabled in settings.");
+            return;
+        }
+        // Run in the foreground so the live location stream survives after the app is closed.
+        try {
+            startForeground(NOTIFICATION_ID, createNotification(true));
+        } catch (RuntimeException e) {
+            // E.g. a background start restriction or a missing foreground service permission.
+            Log.e(TAG, "Could not enter the foreground. Skipping the live location stream.", e);
+            return;
+        }
+        beginWork();
+        locationStream = new LocationStream(this);
+        locationStream.start(userUid, initialLocation);
+        mainHandler.postDelayed(locationStreamTimeout, durationMs);
+    }
+
+    private void stopLocationStream() {
+        if (locationStream == null) {
+            return;
+        }
+        mainHandler.removeCallbacks(locationStreamTimeout);
+        locationStream.stop();
+        locationStream = null;
+        if (awaitingWebRtcCall) {
+            // The call still holds the service, and a background service may be stopped by the
+            // system, so stay in the foreground without the "Stop sharing" action.
+            NotificationManager manager = getSystemService(NotificationManager.class);
+            if (manager != null) {
+                manager.notify(NOTIFICATION_ID, createNotification(false));
             }
         } else {
-            Log.w(TAG, "No additional priority contacts to send SMS to.");
+            stopForeground(true);
+        }
+        finishWork();
+    }
+
+    private void onPreciseFix(Location location) {
+        if (preciseFixFinished) {
+            // Arrived after the budget expired.
+            return;
+        }
+        preciseFixFinished = true;
+        mainHandler.removeCallbacks(preciseFixTimeout);
+
+        if (initialAlert == null) {
+            // The precise fix beat the cached one, so phase one simply uses it.
+            sendInitialAlerts(location);
+        } else if (location != null && isWorthFollowUp(initialAlert.getLocation(), location)) {
+            Log.i(TAG, "Precise location fix arrived. Sending location update.");
+            List<AlertChannel> channels = new ArrayList<>();
+            channels.add(new SmsAlertChannel(true));
+            if (isOnline() && initialAlert.getCallerUid() != null) {
+                channels.add(new FcmAlertChannel(RecipientDirectory.getInstance(this), true));
+            }
+            beginWork();
+            alertDispatcher.dispatch(initialAlert.withLocation(location), channels, new CompletionListener());
+        }
+        finishWork();
+    }
+
+    private boolean isWorthFollowUp(Location initial, Location precise) {
+        if (initial == null) {
+            return true;
+        }
+        if (precise.distanceTo(initial) > MIN_FOLLOW_UP_DISTANCE_METERS) {
+            return true;
+        }
+        return precise.hasAccuracy() && (!initial.hasAccuracy() || precise.getAccuracy() < initial.getAccuracy() / 2);
+    }
+
+    /**
+     * Builds the alert and fans it out to every channel at once. SMS is always sent; FCM and
+     * the preferred call type are added when the device is online.
+     */
+    private void executeEmergencyActions(Location location) {
+        ContactsSnapshot contacts = ContactsManager.getInstance(this).getSnapshot();
+        Contact primaryContact = contacts.getPrimaryContact();
+        List<Contact> priorityContacts = contacts.getPriorityContacts();
+
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        RecipientDirectory directory = RecipientDirectory.getInstance(this);
+        // Prefer the cached verified name; no network read on the emergency path.
+        String userName = (currentUser != null) ? directory.getDisplayName(currentUser.getUid()) : null;
+        if (userName == null) {
+            userName = (currentUser != null && currentUser.getDisplayName() != null) ? currentUser.getDisplayName() : "a Safe Voice user";
         }
+        String sessionId = null;
+
+        List<AlertChannel> channels = new ArrayList<>();
+        channels.add(new SmsAlertChannel());
 
         if (isOnline()) {
             Log.d(TAG, "Device is ONLINE. Executing advanced plan.");
-
-            // The SMS alerts are already sent. Now, send the in-app FCM alerts.
-            sendFcmAlertsToAll(priorityContacts, location);
+            if (currentUser != null) {
+                channels.add(new FcmAlertChannel(directory));
+            }
 
             // Smart Calling
             SharedPreferences settingsPrefs = getSharedPreferences(SETTINGS_PREFS_NAME, Context.MODE_PRIVATE);
             String callPreference = settingsPrefs.getString(KEY_CALL_PREFERENCE, "standard");
 
-            if (CALL_PREF_WEBRTC.equals(callPreference) && primaryContact != null && primaryContact.getUid() != null) {
+            List<String> callableUids = getCallableUids(primaryContact, priorityContacts);
+
+            if (CALL_PREF_WEBRTC.equals(callPreference) && callableUids.size() > 1
+                    && settingsPrefs.getBoolean(KEY_GROUP_CALL, true)) {
+                Log.d(TAG, "Starting WebRTC group call to " + callableUids.size() + " contacts.");
+                int uplinkCapBps = settingsPrefs.getInt(KEY_GROUP_CALL_UPLINK_CAP_BPS, GroupCallManager.DEFAULT_UPLINK_CAP_BPS);
+                groupCallManager = new GroupCallManager(getApplicationContext(), this, uplinkCapBps);
+                sessionId = groupCallManager.prepareCall();
+                channels.add(new GroupCallAlertChannel(groupCallManager, callableUids));
+                awaitingWebRtcCall = true;
+            } else if (CALL_PREF_WEBRTC.equals(callPreference) && !callableUids.isEmpty()) {
+                String targetUid = callableUids.get(0);
                 Log.d(TAG, "Starting WebRTC call.");
-                startWebRtcCall(primaryContact.getUid());
+                webRTCManager = new WebRTCManager(getApplicationContext(), this);
+                // Create the session up front so the FCM alerts can carry its ID.
+                sessionId = webRTCManager.prepareCall(targetUid);
+                channels.add(new WebRtcAlertChannel(webRTCManager, targetUid));
+                awaitingWebRtcCall = true;
             } else {
                 Log.d(TAG, "Making standard phone call as per preference or fallback.");
-                makeStandardPhoneCall(primaryContact);
-                stopSelf();
+                channels.add(new PhoneCallAlertChannel(this));
             }
         } else {
             Log.d(TAG, "Device is OFFLINE. Executing fallback plan.");
-            // The SMS alerts are already sent. Now just make the standard call.
-            makeStandardPhoneCall(primaryContact);
-            stopSelf();
+            channels.add(new PhoneCallAlertChannel(this));
         }
-    }
 
-    private void makeStandardPhoneCall(Contact primaryContact) {
-        if (primaryContact != null) {
-            makePhoneCall(primaryContact.getPhoneNumber());
-        } else {
-            Log.w(TAG, "No primary contact set. Cannot make emergency call.");
-        }
+        initialAlert = new EmergencyAlert(currentUser != null ? currentUser.getUid() : null, userName,
+                location, primaryContact, priorityContacts, sessionId);
+
+        beginWork();
+        alertDispatcher.dispatch(initialAlert, channels, new CompletionListener());
     }
 
-    private void startWebRtcCall(String targetUid) {
-        webRTCManager.startCall(targetUid);
+    /**
+     * @return The uids of every contact with a Safe Voice account, primary contact first.
+     */
+    private static List<String> getCallableUids(Contact primaryContact, List<Contact> priorityContacts) {
+        Set<String> uids = new LinkedHashSet<>();
+        if (primaryContact != null && primaryContact.getUid() != null) {
+            uids.add(primaryContact.getUid());
+        }
+        for (Contact contact : priorityContacts) {
+            if (contact.getUid() != null) {
+                uids.add(contact.getUid());
+            }
+        }
+        return new ArrayList<>(uids);
     }
 
-    private void sendFcmAlertsToAll(List<Contact> contacts, Location location) {
-        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
-        if (currentUser == null) return;
+    /**
+     * Logs dispatch timings and releases the service once the dispatch is done.
+     */
+    private class CompletionListener implements AlertDispatcher.DispatchListener {
+        @Override
+        public void onFirstAlertSent(String channelName, long elapsedMs) {
+            Log.i(TAG, "Time to first alert: " + elapsedMs + " ms via " + channelName);
+        }
 
-        FirebaseFirestore.getInstance().collection("users").document(currentUser.getUid()).get()
-            .addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
+        @Override
+        public void onDispatchComplete(final DispatchReport report) {
+            mainHandler.post(new Runnable() {
                 @Override
-                public void onComplete(@NonNull Task<DocumentSnapshot> task) {
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        String callerName = task.getResult().getString("verifiedName");
-                        if (callerName == null) callerName = currentUser.getDisplayName();
-
-                        for (Contact contact : contacts) {
-                            if (contact.getUid() != null) {
-                                sendFcmMessage(contact.getUid(), callerName, currentUser.getUid(), location);
-                            }
+                public void run() {
+                    for (DispatchReport.ChannelResult result : report.getResults()) {
+                        if (WebRtcAlertChannel.NAME.equals(result.getChannelName()) && result.getStatus() != DispatchReport.Status.SUCCEEDED) {
+                            awaitingWebRtcCall = false;
                         }
                     }
+                    finishWork();
                 }
             });
+        }
     }
 
-    private void sendFcmMessage(String recipientUid, String callerName, String callerUid, Location location) {
-        FirebaseFirestore.getInstance().collection("users").document(recipientUid).get()
-            .addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
-                @Override
-                public void onComplete(@NonNull Task<DocumentSnapshot> task) {
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        String fcmToken = task.getResult().getString("fcmToken");
-                        if (fcmToken != null) {
-                            RemoteMessage.Builder messageBuilder = new RemoteMessage.Builder(fcmToken)
-                                    .setMessageId(Integer.toString(java.util.UUID.randomUUID().hashCode()))
-                                    .addData("type", "emergency")
-                                    .addData("callerName", callerName)
-                                    .addData("callerUid", callerUid);
-
-                            if (location != null) {
-                                messageBuilder.addData("location", location.getLatitude() + "," + location.getLongitude());
-                            }
-
-                            if (webRTCManager != null && webRTCManager.getSignalingClient().getSessionId() != null) {
-                                messageBuilder.addData("sessionId", webRTCManager.getSignalingClient().getSessionId());
-                            }
-
-                            FirebaseMessaging.getInstance().send(messageBuilder.build());
-                            Log.d(TAG, "Sent FCM alert to " + recipientUid);
-                        }
-                    }
-                }
-            });
+    private void beginWork() {
+        pendingWork++;
     }
 
-    private void makePhoneCall(String phoneNumber) {
-        if (phoneNumber == null || phoneNumber.isEmpty()) {
-            Log.e(TAG, "Phone number is invalid. Cannot make call.");
-            return;
-        }
-        Intent callIntent = new Intent(Intent.ACTION_CALL);
-        callIntent.setData(Uri.parse("tel:" + phoneNumber));
-        callIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-        try {
-            startActivity(callIntent);
-        } catch (SecurityException e) {
-            Log.e(TAG, "CALL_PHONE permission missing or denied.", e);
+    /**
+     * Stops the service once both location phases and every dispatch are done.
+     * A WebRTC call keeps the service alive until it ends, since stopping the service hangs up.
+     */
+    private void finishWork() {
+        pendingWork--;
+        if (pendingWork == 0 && !awaitingWebRtcCall) {
+            stopSelf();
         }
     }
 
-    private void sendSmsAlert(String phoneNumber, Location location) {
-        if (phoneNumber == null || phoneNumber.isEmpty() || phoneNumber.equals("No number provided")) {
-            Log.e(TAG, "Phone number is invalid for SMS.");
-            return;
-        }
-        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
-        String userName = (currentUser != null && currentUser.getDisplayName() != null) ? currentUser.getDisplayName() : "a Safe Voice user";
-        String message = "EMERGENCY: Automated alert from Safe Voice for " + userName + ". They may be in trouble.";
-        if (location != null) {
-            message += "\n\nLast known location: https://maps.google.com/?q=" + location.getLatitude() + "," + location.getLongitude();
+    /**
+     * Creates the notification required while the service runs in the foreground.
+     *
+     * @param sharingLocation true while the live location stream runs, which adds a "Stop sharing"
+     *                        action; false while only a WebRTC call keeps the service open.
+     */
+    private Notification createNotification(boolean sharingLocation) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel serviceChannel = new NotificationChannel(
+                    CHANNEL_ID,
+                    "Safe Voice Emergency",
+                    NotificationManager.IMPORTANCE_HIGH
+            );
+            NotificationManager manager = getSystemService(NotificationManager.class);
+            if (manager != null) {
+                manager.createNotificationChannel(serviceChannel);
+            }
         }
-        try {
-            SmsManager smsManager = SmsManager.getDefault();
-            smsManager.sendMultipartTextMessage(phoneNumber, null, smsManager.divideMessage(message), null, null);
-            Log.i(TAG, "SMS alert sent to " + phoneNumber);
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to send SMS to " + phoneNumber, e);
+
+        Intent notificationIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+
+        Intent stopIntent = new Intent(this, EmergencyHandlerService.class).setAction(ACTION_STOP_LOCATION_STREAM);
+        PendingIntent stopPendingIntent = PendingIntent.getService(this, 0, stopIntent, PendingIntent.FLAG_IMMUTABLE);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("Emergency alert active")
+                .setSmallIcon(R.drawable.ic_launcher_foreground)
+                .setContentIntent(pendingIntent)
+                .setOngoing(true);
+        if (sharingLocation) {
+            builder.setContentText("Sharing your location with your contacts...")
+                    .addAction(0, "Stop sharing", stopPendingIntent);
+        } else {
+            builder.setContentText("Emergency call in progress.");
         }
+        return builder.build();
     }
 
     private boolean isOnline() {
@@ -248,22 +456,77 @@ public class EmergencyHandlerService extends Service implements WebRTCManager.We
     @Override
     public void onDestroy() {
         super.onDestroy();
+        mainHandler.removeCallbacks(preciseFixTimeout);
+        mainHandler.removeCallbacks(locationStreamTimeout);
+        if (locationStream != null) {
+            locationStream.stop();
+            locationStream = null;
+        }
+        if (alertDispatcher != null) {
+            alertDispatcher.shutdown();
+        }
         if (webRTCManager != null) {
             webRTCManager.cleanup();
         }
+        if (groupCallManager != null) {
+            groupCallManager.cleanup();
+        }
         Log.d(TAG, "EmergencyHandlerService destroyed.");
     }
 
     // WebRTCManager.WebRTCListener callbacks
     @Override
     public void onWebRTCCallEstablished() {
-        Log.i(TAG, "WebRTC call established. Stopping service.");
-        stopSelf();
+        // The service stays up for the whole call: stopping it would hang up every peer.
+        Log.i(TAG, "WebRTC call established.");
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                recordCallSetupLatency();
+            }
+        });
     }
 
     @Override
     public void onWebRTCCallEnded() {
-        Log.i(TAG, "WebRTC call ended or failed. Stopping service.");
-        stopSelf();
+        Log.i(TAG, "WebRTC call ended or failed.");
+        releaseWebRtcHold();
+    }
+
+    private void recordCallSetupLatency() {
+        String setupMode = null;
+        if (webRTCManager != null) {
+            setupMode = webRTCManager.getSetupMode();
+        } else if (groupCallManager != null) {
+            // Read when the call connects: adopting a speculative call changes the mode.
+            setupMode = groupCallManager.getSetupMode();
+        }
+        if (callLatencyRecorded || triggerElapsedMs < 0 || setupMode == null) {
+            return;
+        }
+        callLatencyRecorded = true;
+        new CallSetupLatencyRecorder(this).record(setupMode,
+                SystemClock.elapsedRealtime() - triggerElapsedMs);
+    }
+
+    /**
+     * Called once the call has ended. WebRTC callbacks arrive on the WebRTC signaling thread;
+     * the service only stops once the location stream and any pending follow-up have also
+     * finished.
+     */
+    private void releaseWebRtcHold() {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                awaitingWebRtcCall = false;
+                if (locationStream == null) {
+                    // The foreground notification was only kept for the call.
+                    stopForeground(true);
+                }
+                if (pendingWork == 0) {
+                    stopSelf();
+                }
+            }
+        });
     }
 }
\ No newline at end of file
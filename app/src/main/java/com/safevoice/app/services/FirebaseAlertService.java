@@ -20,6 +20,7 @@ import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
 import com.safevoice.app.EmergencyPopupActivity;
 import com.safevoice.app.R;
+import com.safevoice.app.utils.RecipientDirectory;
 
 import java.util.Map;
 
@@ -42,6 +43,8 @@ public class FirebaseAlertService extends FirebaseMessagingService {
 
             if ("emergency".equals(alertType)) {
                 handleEmergencyAlert(data);
+            } else if ("location_update".equals(alertType)) {
+                handleLocationUpdate(data);
             }
         }
     }
@@ -50,7 +53,8 @@ public class FirebaseAlertService extends FirebaseMessagingService {
     public void onNewToken(@NonNull String token) {
         super.onNewToken(token);
         Log.d(TAG, "Refreshed FCM token: " + token);
-        // Here you would send the token to your server to associate it with the user
+        // Store the token on our profile so contacts' recipient caches pick it up
+        RecipientDirectory.getInstance(this).publishOwnToken(token);
     }
 
     private void handleEmergencyAlert(Map<String, String> data) {
@@ -89,6 +93,20 @@ public class FirebaseAlertService extends FirebaseMessagingService {
         showEmergencyNotification(callerName);
     }
 
+    /**
+     * A follow-up to an emergency alert carrying a more precise location.
+     * The pop-up is singleTop, so this refreshes the one already on screen.
+     */
+    private void handleLocationUpdate(Map<String, String> data) {
+        Intent popupIntent = new Intent(this, EmergencyPopupActivity.class);
+        popupIntent.putExtra(EmergencyPopupActivity.EXTRA_CALLER_NAME, data.get("callerName"));
+        popupIntent.putExtra(EmergencyPopupActivity.EXTRA_CALLER_UID, data.get("callerUid"));
+        popupIntent.putExtra(EmergencyPopupActivity.EXTRA_SESSION_ID, data.get("sessionId"));
+        popupIntent.putExtra(EmergencyPopupActivity.EXTRA_LOCATION, data.get("location"));
+        popupIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        startActivity(popupIntent);
+    }
+
     private void showEmergencyNotification(String callerName) {
         Intent intent = new Intent(this, EmergencyPopupActivity.class);
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
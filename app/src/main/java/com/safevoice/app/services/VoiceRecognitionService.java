@@ -7,12 +7,10 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Build;
-import android.os.Bundle;
 import android.os.IBinder;
-import android.speech.RecognitionListener;
-import android.speech.RecognizerIntent;
-import android.speech.SpeechRecognizer;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -20,23 +18,40 @@ import androidx.core.app.NotificationCompat;
 
 import com.safevoice.app.MainActivity;
 import com.safevoice.app.R;
+import com.safevoice.app.models.Contact;
+import com.safevoice.app.utils.ContactsManager;
+import com.safevoice.app.voice.SpeechRecognizerTriggerDetector;
+import com.safevoice.app.voice.StreamingTriggerDetector;
+import com.safevoice.app.voice.TfliteKeywordSpotter;
+import com.safevoice.app.voice.TriggerDetector;
+import com.safevoice.app.voice.TriggerPhraseMatcher;
+import com.safevoice.app.webrtc.PeerConnectionWarmer;
 
-import java.util.ArrayList;
-import java.util.Locale;
+import java.io.IOException;
 
 /**
  * A foreground service that continuously listens for the voice trigger "Help Help".
- * It uses Android's built-in SpeechRecognizer. To achieve continuous listening,
- * it restarts the recognizer every time it stops (either on a result or an error).
+ * The listening itself is delegated to a {@link TriggerDetector}. By default it uses the
+ * streaming keyword spotter, which reads the microphone continuously with no session gaps,
+ * and falls back to Android's SpeechRecognizer restart loop when no spotting model is
+ * bundled or the microphone cannot be opened.
+ *
+ * When WebRTC calls are preferred, the service also pre-warms WebRTC while it listens and
+ * prepares a speculative call to the primary contact as soon as the trigger is suspected.
  */
-public class VoiceRecognitionService extends Service {
+public class VoiceRecognitionService extends Service implements TriggerDetector.Listener {
 
     private static final String TAG = "VoiceRecognitionService";
     private static final String CHANNEL_ID = "VoiceRecognitionChannel";
     private static final int NOTIFICATION_ID = 1;
 
-    private SpeechRecognizer speechRecognizer;
-    private Intent speechRecognizerIntent;
+    private static final String SETTINGS_PREFS_NAME = "SafeVoiceSettingsPrefs";
+    private static final String KEY_TRIGGER_ENGINE = "trigger_engine";
+    private static final String ENGINE_AUTO = "auto";
+    private static final String ENGINE_STREAMING = "streaming";
+    private static final String ENGINE_SPEECH_RECOGNIZER = "speech_recognizer";
+
+    private TriggerDetector triggerDetector;
 
     // A public static flag to allow UI components (like HomeFragment) to check if the service is active.
     public static boolean isServiceRunning = false;
@@ -45,16 +60,9 @@ public class VoiceRecognitionService extends Service {
     public void onCreate() {
         super.onCreate();
         isServiceRunning = true;
-
-        // Initialize the SpeechRecognizer
-        speechRecognizer = SpeechRecognizer.createSpeechRecognizer(this);
-        speechRecognizer.setRecognitionListener(new VoiceRecognitionListener());
-
-        // Set up the intent for the speech recognizer
-        speechRecognizerIntent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
-        speechRecognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
-        speechRecognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, Locale.getDefault());
-        speechRecognizerIntent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
+        if (PeerConnectionWarmer.isEnabled(this)) {
+            PeerConnectionWarmer.getInstance(this).warmUp();
+        }
     }
 
     @Override
@@ -74,9 +82,9 @@ public class VoiceRecognitionService extends Service {
     public void onDestroy() {
         super.onDestroy();
         isServiceRunning = false;
-        if (speechRecognizer != null) {
-            speechRecognizer.stopListening();
-            speechRecognizer.destroy();
+        if (triggerDetector != null) {
+            triggerDetector.stop();
+            triggerDetector = null;
         }
         Log.d(TAG, "Service destroyed.");
     }
@@ -89,12 +97,87 @@ public class VoiceRecognitionService extends Service {
     }
 
     private void startListening() {
-        if (speechRecognizer != null) {
-            speechRecognizer.startListening(speechRecognizerIntent);
-            Log.d(TAG, "Speech recognizer started listening...");
+        if (triggerDetector != null) {
+            // Already listening; a repeated start command must not open the microphone twice.
+            return;
+        }
+        triggerDetector = createPreferredDetector();
+        triggerDetector.start();
+        Log.d(TAG, "Listening with the " + triggerDetector.getName() + " engine.");
+    }
+
+    /**
+     * Picks the trigger engine from settings. "auto" uses the streaming engine whenever its
+     * model is bundled with the app, but only if the model can hear every trigger phrase in
+     * effect, defaults included; otherwise SpeechRecognizer is used, whatever the engine
+     * setting says.
+     */
+    private TriggerDetector createPreferredDetector() {
+        SharedPreferences settingsPrefs = getSharedPreferences(SETTINGS_PREFS_NAME, Context.MODE_PRIVATE);
+        String engine = settingsPrefs.getString(KEY_TRIGGER_ENGINE, ENGINE_AUTO);
+
+        if (!TfliteKeywordSpotter.recognizesAll(TriggerPhraseMatcher.getPhrases(this))) {
+            Log.i(TAG, "The keyword model only knows \"" + TfliteKeywordSpotter.KEYWORD
+                    + "\" and other trigger phrases are in effect. Using SpeechRecognizer.");
+            return new SpeechRecognizerTriggerDetector(this, this);
+        }
+
+        if (!ENGINE_SPEECH_RECOGNIZER.equals(engine) && TfliteKeywordSpotter.isModelAvailable(this)) {
+            try {
+                return new StreamingTriggerDetector(this, new TfliteKeywordSpotter(this), this);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to load keyword spotting model. Falling back to SpeechRecognizer.", e);
+            }
+        } else if (ENGINE_STREAMING.equals(engine)) {
+            Log.w(TAG, "Streaming engine requested but no model is bundled. Falling back to SpeechRecognizer.");
+        }
+        return new SpeechRecognizerTriggerDetector(this, this);
+    }
+
+    // TriggerDetector.Listener callbacks
+    @Override
+    public void onTriggerDetected() {
+        Log.i(TAG, "TRIGGER PHRASE DETECTED!");
+
+        // Launch the EmergencyHandlerService to handle the alert
+        Intent emergencyIntent = new Intent(VoiceRecognitionService.this, EmergencyHandlerService.class);
+        emergencyIntent.putExtra(EmergencyHandlerService.EXTRA_TRIGGER_ELAPSED_MS, SystemClock.elapsedRealtime());
+        startService(emergencyIntent);
+
+        // Stop listening after a successful trigger to prevent multiple alerts
+        // The service will need to be manually restarted by the user.
+        // For now, we stop the service to be safe.
+        stopSelf();
+    }
+
+    @Override
+    public void onTriggerSuspected() {
+        if (!PeerConnectionWarmer.isEnabled(this)) {
+            return;
+        }
+        Contact primaryContact = ContactsManager.getInstance(this).getSnapshot().getPrimaryContact();
+        if (primaryContact != null && primaryContact.getUid() != null) {
+            PeerConnectionWarmer.getInstance(this).speculate(primaryContact.getUid());
         }
     }
 
+    @Override
+    public void onDetectorFailed(String reason) {
+        if (triggerDetector == null) {
+            // The service was destroyed before the failure was delivered.
+            return;
+        }
+        Log.w(TAG, "The " + triggerDetector.getName() + " engine failed: " + reason);
+        if (triggerDetector instanceof SpeechRecognizerTriggerDetector) {
+            // Nothing left to fall back to.
+            stopSelf();
+            return;
+        }
+        triggerDetector.stop();
+        triggerDetector = new SpeechRecognizerTriggerDetector(this, this);
+        triggerDetector.start();
+    }
+
     /**
      * Creates the persistent notification required for a foreground service.
      *
@@ -126,61 +209,4 @@ public class VoiceRecognitionService extends Service {
                 .setContentIntent(pendingIntent)
                 .build();
     }
-
-    /**
-     * The core RecognitionListener that handles speech-to-text results and errors.
-     */
-    private class VoiceRecognitionListener implements RecognitionListener {
-
-        @Override
-        public void onResults(Bundle results) {
-            ArrayList<String> matches = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
-            if (matches != null) {
-                for (String result : matches) {
-                    Log.d(TAG, "Heard: " + result);
-                    // Check if the recognized text contains the trigger phrase (case-insensitive)
-                    if (result.toLowerCase().contains("help help")) {
-                        Log.i(TAG, "TRIGGER PHRASE DETECTED!");
-
-                        // Launch the EmergencyHandlerService to handle the alert
-                        Intent emergencyIntent = new Intent(VoiceRecognitionService.this, EmergencyHandlerService.class);
-                        startService(emergencyIntent);
-
-                        // Stop listening after a successful trigger to prevent multiple alerts
-                        // The service will need to be manually restarted by the user.
-                        // You could also choose to automatically restart after a delay.
-                        // For now, we stop the service to be safe.
-                        stopSelf();
-                        return; // Exit the loop and method
-                    }
-                }
-            }
-            // If the trigger phrase was not detected, restart listening for the next utterance.
-            startListening();
-        }
-
-        @Override
-        public void onError(int error) {
-            // Most errors are normal (e.g., no speech detected). We just restart the listener.
-            Log.d(TAG, "Speech recognizer error: " + error);
-            // Restart listening after any error to ensure continuity.
-            startListening();
-        }
-
-        // --- Other listener methods (can be left empty for this implementation) ---
-        @Override
-        public void onReadyForSpeech(Bundle params) { Log.d(TAG, "Ready for speech..."); }
-        @Override
-        public void onBeginningOfSpeech() { Log.d(TAG, "Beginning of speech..."); }
-        @Override
-        public void onRmsChanged(float rmsdB) { /* Do nothing */ }
-        @Override
-        public void onBufferReceived(byte[] buffer) { /* Do nothing */ }
-        @Override
-        public void onEndOfSpeech() { Log.d(TAG, "End of speech."); }
-        @Override
-        public void onPartialResults(Bundle partialResults) { /* Do nothing */ }
-        @Override
-        public void onEvent(int eventType, Bundle params) { /* Do nothing */ }
-    }
 }
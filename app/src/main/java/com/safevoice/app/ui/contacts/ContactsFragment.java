@@ -39,6 +39,7 @@ import com.safevoice.app.R;
 import com.safevoice.app.databinding.FragmentContactsBinding;
 import com.safevoice.app.models.Contact;
 import com.safevoice.app.utils.ContactsManager;
+import com.safevoice.app.utils.ContactsSnapshot;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -47,7 +48,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
-public class ContactsFragment extends Fragment implements ContactsAdapter.OnContactOptionsClickListener, ConnectionRequestAdapter.OnRequestInteractionListener {
+public class ContactsFragment extends Fragment implements ContactsAdapter.OnContactOptionsClickListener, ConnectionRequestAdapter.OnRequestInteractionListener,
+        ContactsManager.ContactsObserver {
 
     private static final String TAG = "ContactsFragment";
 
@@ -58,6 +60,8 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
     private ConnectionRequestAdapter requestAdapter;
 
     private List<Contact> priorityContactList;
+    // Version of the contacts snapshot currently on screen, or -1 if none.
+    private long shownContactsVersion = -1;
     private List<DocumentSnapshot> incomingRequestList;
 
     private FirebaseFirestore db;
@@ -91,11 +95,26 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
         FirebaseUser currentUser = mAuth.getCurrentUser();
         if (currentUser != null) {
             cleanupExpiredRequests();
-            loadContacts();
             listenForConnectionRequests();
         } else {
             // Handle case where user is not logged in
         }
+        contactsManager.addObserver(this);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        contactsManager.removeObserver(this);
+    }
+
+    @Override
+    public void onContactsChanged(ContactsSnapshot snapshot) {
+        if (binding == null || snapshot.getVersion() == shownContactsVersion) {
+            return;
+        }
+        shownContactsVersion = snapshot.getVersion();
+        showContacts(snapshot);
     }
 
     private void setupRecyclerViews() {
@@ -124,9 +143,9 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
         });
     }
 
-    private void loadContacts() {
-        // Load and display the primary contact from SharedPreferences
-        Contact primaryContact = contactsManager.getPrimaryContact();
+    private void showContacts(ContactsSnapshot snapshot) {
+        // Display the primary contact
+        Contact primaryContact = snapshot.getPrimaryContact();
         if (primaryContact != null) {
             binding.textPrimaryContactName.setText(primaryContact.getName());
             binding.textPrimaryContactPhone.setText(primaryContact.getPhoneNumber());
@@ -139,8 +158,8 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
             binding.textPrimaryContactPhone.setVisibility(View.GONE);
         }
 
-        // Load priority contacts from SharedPreferences
-        priorityContactList = contactsManager.getPriorityContacts();
+        // Display the priority contacts. The snapshot's list is shared and unmodifiable.
+        priorityContactList = snapshot.getPriorityContacts();
         contactsAdapter.updateContacts(priorityContactList);
     }
 
@@ -354,7 +373,6 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
 
                             Contact newContact = new Contact(senderName, senderPhone, senderUid);
                             contactsManager.addPriorityContact(newContact);
-                            loadContacts();
 
                             request.getReference().delete();
                         } else {
@@ -389,7 +407,6 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
                     return true;
                 } else if (itemId == R.id.action_delete_contact) {
                     contactsManager.deletePriorityContact(contact);
-                    loadContacts();
                     Toast.makeText(getContext(), "Contact deleted.", Toast.LENGTH_SHORT).show();
                     return true;
                 }
@@ -437,7 +454,6 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
                     }
                     contactsManager.addPriorityContact(newContact);
                 }
-                loadContacts();
             }
         });
 
@@ -454,6 +470,7 @@ public class ContactsFragment extends Fragment implements ContactsAdapter.OnCont
     public void onDestroyView() {
         super.onDestroyView();
         binding = null;
+        shownContactsVersion = -1;
     }
 }
 
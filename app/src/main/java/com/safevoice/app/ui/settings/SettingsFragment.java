@@ -30,6 +30,8 @@ import androidx.security.crypto.MasterKeys;
 import com.safevoice.app.R;
 import com.safevoice.app.databinding.FragmentSettingsBinding;
 import com.safevoice.app.firebase.FirebaseManager;
+import com.safevoice.app.voice.TfliteKeywordSpotter;
+import com.safevoice.app.voice.TriggerPhraseMatcher;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -140,6 +142,13 @@ public class SettingsFragment extends Fragment {
             binding.radioStandardCall.setChecked(true);
         }
 
+        // The offline keyword engine only hears "help help"; say which engine is in use.
+        if (TfliteKeywordSpotter.recognizesAll(TriggerPhraseMatcher.getPhrases(requireContext()))) {
+            binding.textTriggerEngineNote.setText(R.string.settings_trigger_engine_keyword);
+        } else {
+            binding.textTriggerEngineNote.setText(R.string.settings_trigger_engine_speech);
+        }
+
         // Load Twilio credentials from EncryptedSharedPreferences
         try {
             String masterKeyAlias = MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC);
@@ -0,0 +1,54 @@
+package com.safevoice.app.utils;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A small pool of byte arrays keyed by exact size, so per-frame image buffers can be reused
+ * instead of allocated at camera frame rate. Camera frames come in very few sizes, so each
+ * size keeps only a couple of spare arrays.
+ */
+public final class ByteArrayPool {
+
+    private static final int MAX_PER_SIZE = 2;
+    private static final ByteArrayPool SHARED = new ByteArrayPool();
+
+    private final Map<Integer, ArrayDeque<byte[]>> free = new HashMap<>();
+
+    /**
+     * @return The pool shared by the image utilities.
+     */
+    public static ByteArrayPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return A pooled array of exactly the given length, or a new one if none is free.
+     * Its contents are undefined.
+     */
+    public synchronized byte[] acquire(int length) {
+        ArrayDeque<byte[]> arrays = free.get(length);
+        if (arrays != null && !arrays.isEmpty()) {
+            return arrays.pop();
+        }
+        return new byte[length];
+    }
+
+    /**
+     * Returns an array to the pool. The caller must not use it afterwards.
+     */
+    public synchronized void release(byte[] array) {
+        if (array == null) {
+            return;
+        }
+        ArrayDeque<byte[]> arrays = free.get(array.length);
+        if (arrays == null) {
+            arrays = new ArrayDeque<>(MAX_PER_SIZE);
+            free.put(array.length, arrays);
+        }
+        if (arrays.size() < MAX_PER_SIZE) {
+            arrays.push(array);
+        }
+    }
+}
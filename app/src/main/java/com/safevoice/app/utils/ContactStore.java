@@ -0,0 +1,370 @@
+package com.safevoice.app.utils;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.safevoice.app.models.Contact;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * An indexed, incrementally persisted store for the primary and priority contacts.
+ *
+ * Contacts are loaded once, lazily, into memory. Every change publishes a new immutable
+ * ContactsSnapshot, indexed by uid and by normalized phone number, so reads never parse JSON
+ * and never take a lock once the store is loaded. Every change is appended to a journal file as a single
+ * JSON line instead of rewriting the whole list; the journal is compacted once it holds
+ * mostly stale entries.
+ *
+ * Changes are written on a background thread, in the order they were made, so callers on the
+ * UI thread never wait for the disk. A change only reaches memory once its journal line is
+ * safely on disk; if the write fails the change is dropped and the contacts stay as they
+ * were. The Listener hears about every change that was applied.
+ */
+public class ContactStore {
+
+    private static final String TAG = "ContactStore";
+
+    private static final String OP = "op";
+    private static final String OP_PUT_PRIMARY = "put_primary";
+    private static final String OP_CLEAR_PRIMARY = "clear_primary";
+    private static final String OP_PUT = "put";
+    private static final String OP_REMOVE = "remove";
+    private static final String FIELD_KEY = "key";
+    private static final String FIELD_CONTACT = "contact";
+
+    // Compaction kicks in once stale lines outnumber live contacts by this much.
+    private static final int COMPACTION_SLACK = 32;
+
+    /**
+     * Notified on the write thread after a change has been persisted and applied.
+     */
+    public interface Listener {
+        void onContactsChanged(ContactsSnapshot snapshot);
+    }
+
+    private final File journalFile;
+    private final Executor writeExecutor;
+    @Nullable
+    private final Listener listener;
+    private boolean loaded = false;
+    private int journalLines = 0;
+
+    private Contact primaryContact;
+    // Priority contacts in insertion order, keyed by keyOf().
+    private final LinkedHashMap<String, Contact> priorityContacts = new LinkedHashMap<>();
+    private long version = 0;
+    // Null until loaded. Written under the lock, read without it.
+    private volatile ContactsSnapshot snapshot;
+
+    /**
+     * @param journalFile The file the journal is kept in. It is created on the first write.
+     * @param listener    Told about every change once it is on disk, or null.
+     */
+    public ContactStore(File journalFile, @Nullable Listener listener) {
+        this(journalFile, Executors.newSingleThreadExecutor(), listener);
+    }
+
+    /**
+     * @param writeExecutor Runs the writes. It must run them one at a time, in order.
+     */
+    ContactStore(File journalFile, Executor writeExecutor, @Nullable Listener listener) {
+        this.journalFile = journalFile;
+        this.writeExecutor = writeExecutor;
+        this.listener = listener;
+    }
+
+    /**
+     * @return true if the journal file exists, i.e. the store has been written before.
+     */
+    public boolean exists() {
+        return journalFile.exists();
+    }
+
+    /**
+     * @return The current contacts. Only the first call, which loads the journal, locks.
+     */
+    public ContactsSnapshot getSnapshot() {
+        ContactsSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                ensureLoaded();
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    public void setPrimaryContact(@Nullable Contact contact) {
+        try {
+            JSONObject entry = new JSONObject();
+            if (contact != null) {
+                entry.put(OP, OP_PUT_PRIMARY);
+                entry.put(FIELD_CONTACT, contact.toJSONObject());
+            } else {
+                entry.put(OP, OP_CLEAR_PRIMARY);
+            }
+            commit(entry, null);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error encoding primary contact", e);
+        }
+    }
+
+    /**
+     * Adds a priority contact, replacing any existing contact with the same key.
+     */
+    public void addPriorityContact(Contact contact) {
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put(OP, OP_PUT);
+            entry.put(FIELD_CONTACT, contact.toJSONObject());
+            commit(entry, null);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error encoding priority contact", e);
+        }
+    }
+
+    /**
+     * Removes a priority contact. Matching follows Contact.equals(), against the contacts as
+     * they are once every earlier change has been written. Nothing happens if none matches.
+     */
+    public void removePriorityContact(Contact contact) {
+        commit(null, copyOf(contact));
+    }
+
+    /**
+     * Replaces the whole store in one compacted write. Used to migrate existing data, on the
+     * caller's thread, so the contacts are there before anyone reads them. They stay in
+     * memory even if the write fails.
+     *
+     * @return true if the store was written.
+     */
+    public synchronized boolean importAll(@Nullable Contact primary, List<Contact> priority) {
+        loaded = true;
+        primaryContact = primary != null ? copyOf(primary) : null;
+        priorityContacts.clear();
+        for (Contact contact : priority) {
+            priorityContacts.put(keyOf(contact), copyOf(contact));
+        }
+        publishSnapshot();
+        return compact();
+    }
+
+    /**
+     * Queues one change for the write thread, which appends it to the journal and then
+     * applies it. A removal is given as the contact to remove, because its key can only be
+     * resolved once the changes queued before it have been applied.
+     */
+    private void commit(@Nullable final JSONObject change, @Nullable final Contact toRemove) {
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ContactsSnapshot applied;
+                synchronized (ContactStore.this) {
+                    ensureLoaded();
+                    JSONObject entry = change;
+                    try {
+                        if (entry == null) {
+                            String key = findKey(toRemove);
+                            if (key == null) {
+                                return;
+                            }
+                            entry = new JSONObject().put(OP, OP_REMOVE).put(FIELD_KEY, key);
+                        }
+                        if (!append(entry)) {
+                            return;
+                        }
+                        apply(entry);
+                    } catch (JSONException e) {
+                        Log.e(TAG, "Error applying contact change", e);
+                        return;
+                    }
+                    maybeCompact();
+                    applied = snapshot;
+                }
+                if (listener != null) {
+                    listener.onContactsChanged(applied);
+                }
+            }
+        });
+    }
+
+    /**
+     * Strips formatting so "+1 (555) 010-0000" and "+15550100000" index the same contact.
+     *
+     * @return The digits with an optional leading '+', or null if the number has no digits.
+     */
+    @Nullable
+    static String normalizePhone(@Nullable String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sb.append(c);
+            } else if (c == '+' && sb.length() == 0) {
+                sb.append(c);
+            }
+        }
+        int digits = (sb.length() > 0 && sb.charAt(0) == '+') ? sb.length() - 1 : sb.length();
+        return digits > 0 ? sb.toString() : null;
+    }
+
+    private static String keyOf(Contact contact) {
+        if (contact.getUid() != null) {
+            return "uid:" + contact.getUid();
+        }
+        return "local:" + contact.getName() + "|" + contact.getPhoneNumber();
+    }
+
+    @Nullable
+    private String findKey(Contact contact) {
+        String key = keyOf(contact);
+        if (priorityContacts.containsKey(key)) {
+            return key;
+        }
+        // Contact.equals() falls back to name and phone when either side has no uid.
+        for (Map.Entry<String, Contact> entry : priorityContacts.entrySet()) {
+            if (entry.getValue().equals(contact)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private static Contact copyOf(Contact contact) {
+        return new Contact(contact.getName(), contact.getPhoneNumber(), contact.getUid());
+    }
+
+    private void apply(JSONObject entry) throws JSONException {
+        String op = entry.getString(OP);
+        if (OP_PUT_PRIMARY.equals(op)) {
+            primaryContact = Contact.fromJSONObject(entry.getJSONObject(FIELD_CONTACT));
+        } else if (OP_CLEAR_PRIMARY.equals(op)) {
+            primaryContact = null;
+        } else if (OP_PUT.equals(op)) {
+            Contact contact = Contact.fromJSONObject(entry.getJSONObject(FIELD_CONTACT));
+            if (contact != null) {
+                priorityContacts.put(keyOf(contact), contact);
+            }
+        } else if (OP_REMOVE.equals(op)) {
+            priorityContacts.remove(entry.getString(FIELD_KEY));
+        } else {
+            Log.w(TAG, "Unknown journal operation: " + op);
+        }
+        if (loaded) {
+            publishSnapshot();
+        }
+    }
+
+    private void publishSnapshot() {
+        version++;
+        snapshot = new ContactsSnapshot(version, primaryContact, new ArrayList<>(priorityContacts.values()));
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        if (journalFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    journalLines++;
+                    try {
+                        apply(new JSONObject(line));
+                    } catch (JSONException e) {
+                        // A torn final line from an interrupted write; everything before it is intact.
+                        Log.w(TAG, "Skipping corrupt journal line " + journalLines, e);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading contact journal", e);
+            }
+        }
+        loaded = true;
+        publishSnapshot();
+    }
+
+    /**
+     * @return true if the line is on disk.
+     */
+    private boolean append(JSONObject entry) {
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write((entry.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+            journalLines++;
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error appending to contact journal. Dropping the change.", e);
+            return false;
+        }
+    }
+
+    private void maybeCompact() {
+        int live = priorityContacts.size() + (primaryContact != null ? 1 : 0);
+        if (journalLines > 2 * live + COMPACTION_SLACK) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the journal with one line per live contact, atomically via a temp file.
+     *
+     * @return true if the journal was replaced.
+     */
+    private boolean compact() {
+        File tmp = new File(journalFile.getPath() + ".tmp");
+        int lines = 0;
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            if (primaryContact != null) {
+                writer.write(new JSONObject().put(OP, OP_PUT_PRIMARY).put(FIELD_CONTACT, primaryContact.toJSONObject()).toString());
+                writer.write('\n');
+                lines++;
+            }
+            for (Contact contact : priorityContacts.values()) {
+                writer.write(new JSONObject().put(OP, OP_PUT).put(FIELD_CONTACT, contact.toJSONObject()).toString());
+                writer.write('\n');
+                lines++;
+            }
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error compacting contact journal", e);
+            tmp.delete();
+            return false;
+        }
+        if (tmp.renameTo(journalFile)) {
+            journalLines = lines;
+            Log.d(TAG, "Compacted contact journal to " + lines + " line(s).");
+            return true;
+        }
+        Log.e(TAG, "Could not replace contact journal with compacted copy.");
+        tmp.delete();
+        return false;
+    }
+}
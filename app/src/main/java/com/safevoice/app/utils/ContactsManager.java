@@ -2,21 +2,32 @@ package com.safevoice.app.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import com.safevoice.app.models.Contact;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A Singleton class to manage CRUD (Create, Read, Update, Delete) operations
- * for emergency contacts. It persists the contacts using SharedPreferences by
- * converting Contact objects to and from JSON strings.
+ * for emergency contacts. Contacts are kept in an indexed, journal-backed ContactStore.
+ * Contacts saved by older versions as JSON strings in SharedPreferences are migrated
+ * into the store the first time it is opened.
+ *
+ * Readers should prefer getSnapshot(), which returns one shared, immutable copy of the
+ * contacts, and register a ContactsObserver to hear about changes. Changes are saved in the
+ * background and show up in the snapshot once they are on disk.
  */
 public class ContactsManager {
 
@@ -24,19 +35,38 @@ public class ContactsManager {
     private static final String PREFS_NAME = "SafeVoiceContactsPrefs";
     private static final String KEY_PRIMARY_CONTACT = "primary_contact";
     private static final String KEY_PRIORITY_CONTACTS = "priority_contacts";
+    private static final String JOURNAL_FILENAME = "contacts.journal";
+
+    /**
+     * Notified on the main thread whenever the saved contacts change.
+     */
+    public interface ContactsObserver {
+        void onContactsChanged(ContactsSnapshot snapshot);
+    }
 
     private static ContactsManager instance;
-    private final SharedPreferences sharedPreferences;
+    private final ContactStore store;
+    private final List<ContactsObserver> observers = new CopyOnWriteArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     // Private constructor to enforce the Singleton pattern.
     private ContactsManager(Context context) {
-        sharedPreferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Context appContext = context.getApplicationContext();
+        store = new ContactStore(new File(appContext.getFilesDir(), JOURNAL_FILENAME), new ContactStore.Listener() {
+            @Override
+            public void onContactsChanged(ContactsSnapshot snapshot) {
+                notifyObservers();
+            }
+        });
+        if (!store.exists()) {
+            migrateFromSharedPreferences(appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+        }
     }
 
     /**
      * Gets the single instance of the ContactsManager.
      *
-     * @param context The application context, needed to initialize SharedPreferences.
+     * @param context The application context, needed to locate the contact store.
      * @return The singleton instance of ContactsManager.
      */
     public static synchronized ContactsManager getInstance(Context context) {
@@ -46,22 +76,35 @@ public class ContactsManager {
         return instance;
     }
 
+    /**
+     * Returns the current contacts. Safe to call from any thread without locking.
+     *
+     * @return The latest immutable snapshot.
+     */
+    public ContactsSnapshot getSnapshot() {
+        return store.getSnapshot();
+    }
+
+    /**
+     * Registers an observer and immediately delivers the current snapshot to it.
+     * Must be called on the main thread.
+     */
+    public void addObserver(ContactsObserver observer) {
+        observers.add(observer);
+        observer.onContactsChanged(store.getSnapshot());
+    }
+
+    public void removeObserver(ContactsObserver observer) {
+        observers.remove(observer);
+    }
+
     /**
      * Saves the primary contact. Overwrites any existing primary contact.
      *
      * @param contact The Contact object to be saved as the primary contact.
      */
     public void savePrimaryContact(Contact contact) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        if (contact != null) {
-            JSONObject contactJson = contact.toJSONObject();
-            if (contactJson != null) {
-                editor.putString(KEY_PRIMARY_CONTACT, contactJson.toString());
-            }
-        } else {
-            editor.remove(KEY_PRIMARY_CONTACT);
-        }
-        editor.apply();
+        store.setPrimaryContact(contact);
     }
 
     /**
@@ -70,42 +113,36 @@ public class ContactsManager {
      * @return The saved primary Contact object, or null if none is set.
      */
     public Contact getPrimaryContact() {
-        String contactJsonString = sharedPreferences.getString(KEY_PRIMARY_CONTACT, null);
-        if (contactJsonString != null) {
-            try {
-                JSONObject contactJson = new JSONObject(contactJsonString);
-                return Contact.fromJSONObject(contactJson);
-            } catch (JSONException e) {
-                Log.e(TAG, "Error parsing primary contact JSON", e);
-                return null;
-            }
-        }
-        return null;
+        return store.getSnapshot().getPrimaryContact();
     }
 
     /**
      * Retrieves the list of all priority contacts.
      *
-     * @return An ArrayList of Contact objects. Returns an empty list if none are saved.
+     * @return A new ArrayList of Contact objects. Returns an empty list if none are saved.
      */
     public List<Contact> getPriorityContacts() {
-        List<Contact> contacts = new ArrayList<>();
-        String contactsJsonString = sharedPreferences.getString(KEY_PRIORITY_CONTACTS, null);
-        if (contactsJsonString != null) {
-            try {
-                JSONArray contactsJsonArray = new JSONArray(contactsJsonString);
-                for (int i = 0; i < contactsJsonArray.length(); i++) {
-                    JSONObject contactJson = contactsJsonArray.getJSONObject(i);
-                    Contact contact = Contact.fromJSONObject(contactJson);
-                    if (contact != null) {
-                        contacts.add(contact);
-                    }
-                }
-            } catch (JSONException e) {
-                Log.e(TAG, "Error parsing priority contacts JSON array", e);
-            }
-        }
-        return contacts;
+        return new ArrayList<>(store.getSnapshot().getPriorityContacts());
+    }
+
+    /**
+     * Looks up a saved contact by Firebase uid without scanning the list.
+     *
+     * @return The matching Contact, or null if there is none.
+     */
+    @Nullable
+    public Contact findContactByUid(String uid) {
+        return store.getSnapshot().findByUid(uid);
+    }
+
+    /**
+     * Looks up a saved contact by phone number, ignoring formatting.
+     *
+     * @return The matching Contact, or null if there is none.
+     */
+    @Nullable
+    public Contact findContactByPhone(String phoneNumber) {
+        return store.getSnapshot().findByPhone(phoneNumber);
     }
 
     /**
@@ -114,40 +151,93 @@ public class ContactsManager {
      * @param newContact The new Contact to add.
      */
     public void addPriorityContact(Contact newContact) {
-        List<Contact> currentContacts = getPriorityContacts();
-        currentContacts.add(newContact);
-        savePriorityContactsList(currentContacts);
+        store.addPriorityContact(newContact);
     }
 
-
-
     /**
      * Deletes a specific priority contact from the list.
      *
      * @param contactToDelete The Contact object to be removed.
      */
     public void deletePriorityContact(Contact contactToDelete) {
-        List<Contact> currentContacts = getPriorityContacts();
-        // The .equals() method in the Contact class is crucial for this to work correctly.
-        currentContacts.remove(contactToDelete);
-        savePriorityContactsList(currentContacts);
+        // The .equals() method in the Contact class decides which contact matches.
+        store.removePriorityContact(contactToDelete);
     }
-    
+
     /**
-     * Private helper method to save the entire list of priority contacts.
-     *
-     * @param contacts The list of Contact objects to save.
+     * Posts the latest snapshot to every observer on the main thread. Several quick changes
+     * may deliver the same snapshot more than once; observers can compare versions.
      */
-    private void savePriorityContactsList(List<Contact> contacts) {
-        JSONArray contactsJsonArray = new JSONArray();
-        for (Contact contact : contacts) {
-            JSONObject contactJson = contact.toJSONObject();
-            if (contactJson != null) {
-                contactsJsonArray.put(contactJson);
+    private void notifyObservers() {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ContactsSnapshot snapshot = store.getSnapshot();
+                for (ContactsObserver observer : observers) {
+                    observer.onContactsChanged(snapshot);
+                }
+            }
+        });
+    }
+
+    /**
+     * One-time import of the contacts older versions stored as JSON in SharedPreferences.
+     * Each key is parsed on its own, and a key is only removed once it was read in full and
+     * the store has been written. A key that fails to parse is left in place, so nothing is
+     * lost; the contacts that could be read are imported either way.
+     */
+    private void migrateFromSharedPreferences(SharedPreferences sharedPreferences) {
+        String primaryJsonString = sharedPreferences.getString(KEY_PRIMARY_CONTACT, null);
+        String contactsJsonString = sharedPreferences.getString(KEY_PRIORITY_CONTACTS, null);
+        if (primaryJsonString == null && contactsJsonString == null) {
+            return;
+        }
+
+        Contact primaryContact = null;
+        boolean primaryImported = false;
+        if (primaryJsonString != null) {
+            try {
+                primaryContact = Contact.fromJSONObject(new JSONObject(primaryJsonString));
+                primaryImported = true;
+            } catch (JSONException e) {
+                Log.e(TAG, "Error parsing the primary contact during migration", e);
             }
         }
+
+        List<Contact> priorityContacts = new ArrayList<>();
+        boolean priorityImported = false;
+        if (contactsJsonString != null) {
+            try {
+                JSONArray contactsJsonArray = new JSONArray(contactsJsonString);
+                priorityImported = true;
+                for (int i = 0; i < contactsJsonArray.length(); i++) {
+                    try {
+                        Contact contact = Contact.fromJSONObject(contactsJsonArray.getJSONObject(i));
+                        if (contact != null) {
+                            priorityContacts.add(contact);
+                        }
+                    } catch (JSONException e) {
+                        Log.e(TAG, "Error parsing priority contact " + i + " during migration", e);
+                        priorityImported = false;
+                    }
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "Error parsing the priority contacts during migration", e);
+            }
+        }
+
+        if (!store.importAll(primaryContact, priorityContacts)) {
+            // Leave everything in place; the migration runs again on the next start.
+            return;
+        }
         SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(KEY_PRIORITY_CONTACTS, contactsJsonArray.toString());
+        if (primaryImported) {
+            editor.remove(KEY_PRIMARY_CONTACT);
+        }
+        if (priorityImported) {
+            editor.remove(KEY_PRIORITY_CONTACTS);
+        }
         editor.apply();
+        Log.i(TAG, "Migrated " + priorityContacts.size() + " priority contact(s) to the contact store.");
     }
-          }
+}
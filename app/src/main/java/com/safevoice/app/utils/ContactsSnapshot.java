@@ -0,0 +1,94 @@
+package com.safevoice.app.utils;
+
+import androidx.annotation.Nullable;
+
+import com.safevoice.app.models.Contact;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, versioned view of the saved contacts.
+ *
+ * A new snapshot is published every time the contacts change, and every reader shares it.
+ * Since nothing in a snapshot ever changes after construction, it can be read from any
+ * thread without locking. The contacts it holds are private copies and must not be mutated.
+ */
+public final class ContactsSnapshot {
+
+    private final long version;
+    private final Contact primaryContact;
+    private final List<Contact> priorityContacts;
+    private final Map<String, Contact> byUid;
+    private final Map<String, Contact> byPhone;
+
+    ContactsSnapshot(long version, @Nullable Contact primaryContact, List<Contact> priorityContacts) {
+        this.version = version;
+        this.primaryContact = primaryContact != null ? copyOf(primaryContact) : null;
+
+        List<Contact> priority = new ArrayList<>(priorityContacts.size());
+        Map<String, Contact> uidIndex = new HashMap<>();
+        Map<String, Contact> phoneIndex = new HashMap<>();
+        if (this.primaryContact != null) {
+            index(this.primaryContact, uidIndex, phoneIndex);
+        }
+        for (Contact contact : priorityContacts) {
+            Contact copy = copyOf(contact);
+            priority.add(copy);
+            index(copy, uidIndex, phoneIndex);
+        }
+        this.priorityContacts = Collections.unmodifiableList(priority);
+        this.byUid = uidIndex;
+        this.byPhone = phoneIndex;
+    }
+
+    /**
+     * @return A number that increases with every change, so observers can skip stale updates.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Nullable
+    public Contact getPrimaryContact() {
+        return primaryContact;
+    }
+
+    /**
+     * @return The priority contacts in the order they were added. Unmodifiable.
+     */
+    public List<Contact> getPriorityContacts() {
+        return priorityContacts;
+    }
+
+    @Nullable
+    public Contact findByUid(@Nullable String uid) {
+        return uid != null ? byUid.get(uid) : null;
+    }
+
+    /**
+     * Finds a primary or priority contact by phone number, ignoring formatting.
+     */
+    @Nullable
+    public Contact findByPhone(@Nullable String phoneNumber) {
+        String normalized = ContactStore.normalizePhone(phoneNumber);
+        return normalized != null ? byPhone.get(normalized) : null;
+    }
+
+    private static void index(Contact contact, Map<String, Contact> uidIndex, Map<String, Contact> phoneIndex) {
+        if (contact.getUid() != null) {
+            uidIndex.put(contact.getUid(), contact);
+        }
+        String phone = ContactStore.normalizePhone(contact.getPhoneNumber());
+        if (phone != null) {
+            phoneIndex.put(phone, contact);
+        }
+    }
+
+    private static Contact copyOf(Contact contact) {
+        return new Contact(contact.getName(), contact.getPhoneNumber(), contact.getUid());
+    }
+}
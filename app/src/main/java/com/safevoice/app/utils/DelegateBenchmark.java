@@ -0,0 +1,154 @@
+package com.safevoice.app.utils;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times a TFLite model under several InterpreterConfigs and picks the fastest.
+ *
+ * Each candidate gets a fresh interpreter, a few warm-up runs (the first run of a delegate
+ * includes compilation), and then the median of the timed runs is used. A candidate whose
+ * interpreter cannot be created or run, e.g. NNAPI on a device without a driver for the
+ * model's ops, is skipped. Only the TFLite Java API is used; the unit tests cover the
+ * selection logic, where the native library is missing and every candidate fails.
+ */
+public class DelegateBenchmark {
+
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 5;
+
+    /**
+     * One candidate's outcome.
+     */
+    public static class Result {
+        private final InterpreterConfig config;
+        private final long medianNanos;
+        private final Throwable error;
+
+        Result(InterpreterConfig config, long medianNanos, Throwable error) {
+            this.config = config;
+            this.medianNanos = medianNanos;
+            this.error = error;
+        }
+
+        public InterpreterConfig getConfig() {
+            return config;
+        }
+
+        /**
+         * @return The median inference time, or -1 if the candidate failed.
+         */
+        public long getMedianNanos() {
+            return medianNanos;
+        }
+
+        /**
+         * @return Why the candidate failed, or null if it ran.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+    /**
+     * @return The candidates worth trying: the plain CPU kernels and XNNPACK with 1, 2, 4 and
+     * 8 threads, and NNAPI.
+     */
+    public static List<InterpreterConfig> defaultCandidates() {
+        List<InterpreterConfig> candidates = new ArrayList<>();
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            candidates.add(new InterpreterConfig(InterpreterConfig.Backend.XNNPACK, threads));
+            candidates.add(new InterpreterConfig(InterpreterConfig.Backend.CPU, threads));
+        }
+        candidates.add(new InterpreterConfig(InterpreterConfig.Backend.NNAPI, 1));
+        return candidates;
+    }
+
+    /**
+     * Benchmarks every candidate in turn. Blocks for as long as that takes, so call it off
+     * the main thread.
+     *
+     * @param model      The model, e.g. memory-mapped from assets. Shared by every candidate.
+     * @param candidates The configurations to try.
+     * @return One result per candidate, in the same order.
+     */
+    public List<Result> run(ByteBuffer model, List<InterpreterConfig> candidates) {
+        List<Result> results = new ArrayList<>(candidates.size());
+        for (InterpreterConfig config : candidates) {
+            results.add(measure(model, config));
+        }
+        return results;
+    }
+
+    /**
+     * @return The fastest successful configuration, or null if every candidate failed.
+     */
+    public static InterpreterConfig fastest(List<Result> results) {
+        Result best = null;
+        for (Result result : results) {
+            if (result.isSuccessful() && (best == null || result.getMedianNanos() < best.getMedianNanos())) {
+                best = result;
+            }
+        }
+        return best != null ? best.getConfig() : null;
+    }
+
+    private Result measure(ByteBuffer model, InterpreterConfig config) {
+        Interpreter interpreter = null;
+        try {
+            interpreter = new Interpreter(model, config.toOptions());
+            Object[] inputs = new Object[interpreter.getInputTensorCount()];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = allocate(interpreter.getInputTensor(i));
+            }
+            Map<Integer, Object> outputs = new HashMap<>();
+            for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+                outputs.put(i, allocate(interpreter.getOutputTensor(i)));
+            }
+
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                runOnce(interpreter, inputs, outputs);
+            }
+            long[] timings = new long[TIMED_RUNS];
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                long start = System.nanoTime();
+                runOnce(interpreter, inputs, outputs);
+                timings[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(timings);
+            return new Result(config, timings[TIMED_RUNS / 2], null);
+        } catch (Exception | LinkageError e) {
+            return new Result(config, -1, e);
+        } finally {
+            if (interpreter != null) {
+                interpreter.close();
+            }
+        }
+    }
+
+    private static void runOnce(Interpreter interpreter, Object[] inputs, Map<Integer, Object> outputs) {
+        for (Object input : inputs) {
+            ((ByteBuffer) input).rewind();
+        }
+        for (Object output : outputs.values()) {
+            ((ByteBuffer) output).rewind();
+        }
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+    }
+
+    private static ByteBuffer allocate(Tensor tensor) {
+        return ByteBuffer.allocateDirect(tensor.numBytes()).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,205 @@
+package com.safevoice.app.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores face embeddings for similarity search, e.g. several ID card frames and live frames
+ * enrolled for one user.
+ *
+ * Embeddings are L2-normalized once when added and kept back to back in one float[], so
+ * cosine similarity against every stored embedding is a single pass of plain dot products
+ * over contiguous memory, with no per-query norm computation. Not thread-safe.
+ */
+public class EmbeddingGallery {
+
+    /**
+     * One search result.
+     */
+    public static class Match {
+        private final int index;
+        private final String label;
+        private final float score;
+
+        Match(int index, String label, float score) {
+            this.index = index;
+            this.label = label;
+            this.score = score;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return The cosine similarity, from -1 (completely different) to 1 (identical).
+         */
+        public float getScore() {
+            return score;
+        }
+    }
+
+    private final int dimension;
+    private float[] data;
+    private String[] labels;
+    private int count = 0;
+    private final float[] normalizedQuery;
+
+    /**
+     * @param dimension       The length of each embedding, e.g. FaceVerifier.EMBEDDING_SIZE.
+     * @param initialCapacity How many embeddings to reserve room for.
+     */
+    public EmbeddingGallery(int dimension, int initialCapacity) {
+        this.dimension = dimension;
+        int capacity = Math.max(1, initialCapacity);
+        this.data = new float[capacity * dimension];
+        this.labels = new String[capacity];
+        this.normalizedQuery = new float[dimension];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Normalizes and stores an embedding.
+     *
+     * @param label    A tag returned with matches, e.g. "id_card" or "live".
+     * @param embedding The raw embedding. Not modified.
+     * @return The index of the stored embedding, or -1 if it was all zeros.
+     * @throws IllegalArgumentException If the embedding's length is not the gallery's dimension.
+     */
+    public int add(String label, float[] embedding) {
+        checkLength(embedding);
+        if (count == labels.length) {
+            int capacity = labels.length * 2;
+            data = Arrays.copyOf(data, capacity * dimension);
+            labels = Arrays.copyOf(labels, capacity);
+        }
+        if (!normalize(embedding, data, count * dimension, dimension)) {
+            return -1;
+        }
+        labels[count] = label;
+        return count++;
+    }
+
+    public void clear() {
+        Arrays.fill(labels, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * @return The stored embedding most similar to the query, or null if the gallery is empty
+     * or the query is all zeros.
+     * @throws IllegalArgumentException If the query's length is not the gallery's dimension.
+     */
+    public Match bestMatch(float[] query) {
+        checkLength(query);
+        if (count == 0 || !normalize(query, normalizedQuery, 0, dimension)) {
+            return null;
+        }
+        int bestIndex = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            float score = dot(normalizedQuery, data, i * dimension, dimension);
+            if (score > bestScore) {
+                bestScore = score;
+                bestIndex = i;
+            }
+        }
+        return new Match(bestIndex, labels[bestIndex], bestScore);
+    }
+
+    /**
+     * @return Up to k matches, most similar first. Empty if the query is all zeros.
+     * @throws IllegalArgumentException If the query's length is not the gallery's dimension.
+     */
+    public List<Match> topK(float[] query, int k) {
+        checkLength(query);
+        List<Match> results = new ArrayList<>();
+        if (count == 0 || k <= 0 || !normalize(query, normalizedQuery, 0, dimension)) {
+            return results;
+        }
+        int limit = Math.min(k, count);
+        int[] topIndex = new int[limit];
+        float[] topScore = new float[limit];
+        int filled = 0;
+        for (int i = 0; i < count; i++) {
+            float score = dot(normalizedQuery, data, i * dimension, dimension);
+            if (filled < limit) {
+                filled++;
+            } else if (score <= topScore[limit - 1]) {
+                continue;
+            }
+            // Insertion into the small sorted arrays; k is expected to be tiny.
+            int pos = filled - 1;
+            while (pos > 0 && topScore[pos - 1] < score) {
+                topScore[pos] = topScore[pos - 1];
+                topIndex[pos] = topIndex[pos - 1];
+                pos--;
+            }
+            topScore[pos] = score;
+            topIndex[pos] = i;
+        }
+        for (int i = 0; i < filled; i++) {
+            results.add(new Match(topIndex[i], labels[topIndex[i]], topScore[i]));
+        }
+        return results;
+    }
+
+    /**
+     * An embedding from a different model would be silently truncated or read out of bounds,
+     * so a length mismatch is an error rather than a poor score.
+     */
+    private void checkLength(float[] embedding) {
+        if (embedding == null || embedding.length != dimension) {
+            throw new IllegalArgumentException("Expected an embedding of length " + dimension + ", got "
+                    + (embedding == null ? "null" : String.valueOf(embedding.length)) + ".");
+        }
+    }
+
+    /**
+     * Dot product of a with data[offset, offset + length). Four independent accumulators let
+     * the JIT keep the loop pipelined instead of waiting on one running sum.
+     */
+    private static float dot(float[] a, float[] data, int offset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int unrolled = length & ~3;
+        for (; i < unrolled; i += 4) {
+            s0 += a[i] * data[offset + i];
+            s1 += a[i + 1] * data[offset + i + 1];
+            s2 += a[i + 2] * data[offset + i + 2];
+            s3 += a[i + 3] * data[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[i] * data[offset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Writes src scaled to unit length into dst at the given offset.
+     *
+     * @return false if src is all zeros.
+     */
+    private static boolean normalize(float[] src, float[] dst, int offset, int length) {
+        double sumSquares = 0.0;
+        for (int i = 0; i < length; i++) {
+            sumSquares += src[i] * src[i];
+        }
+        if (sumSquares == 0.0) {
+            return false;
+        }
+        float inverseNorm = (float) (1.0 / Math.sqrt(sumSquares));
+        for (int i = 0; i < length; i++) {
+            dst[offset + i] = src[i] * inverseNorm;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,187 @@
+package com.safevoice.app.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A Singleton that shares one FaceVerifier across the process.
+ *
+ * The model is memory-mapped, its interpreter built and a warm-up inference run on a
+ * background thread the first time a screen acquires it, so opening the screen never waits
+ * on model loading. The verifier is reference counted: when the last user releases it, it
+ * stays loaded for IDLE_TIMEOUT_MS in case the screen is reopened, and is then closed.
+ *
+ * If no interpreter configuration has been measured on this device yet, the benchmark runs
+ * on the loader thread just before the idle verifier is closed, so it never competes with
+ * live inference. A screen reopened during the benchmark waits for it before loading.
+ *
+ * acquire() and release() must be called on the main thread; callbacks run there too.
+ */
+public class FaceModelHolder {
+
+    private static final String TAG = "FaceModelHolder";
+    private static final long IDLE_TIMEOUT_MS = 60 * 1000;
+
+    /**
+     * Receives the shared verifier once it is loaded.
+     */
+    public interface Callback {
+        void onModelReady(FaceVerifier verifier);
+
+        void onModelFailed(IOException error);
+    }
+
+    private static FaceModelHolder instance;
+
+    private final Context appContext;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Loads and closes the model, one job at a time.
+    private final ExecutorService loaderExecutor = Executors.newSingleThreadExecutor();
+    private final List<Callback> pendingCallbacks = new ArrayList<>();
+    private FaceVerifier verifier;
+    private boolean loading = false;
+    private int refCount = 0;
+
+    private final Runnable idleRelease = new Runnable() {
+        @Override
+        public void run() {
+            if (refCount > 0 || verifier == null) {
+                return;
+            }
+            final FaceVerifier idleVerifier = verifier;
+            verifier = null;
+            Log.d(TAG, "Releasing idle face model.");
+            loaderExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (idleVerifier.needsConfigBenchmark()) {
+                            idleVerifier.benchmarkConfigurations();
+                        }
+                    } finally {
+                        idleVerifier.close();
+                    }
+                }
+            });
+        }
+    };
+
+    private FaceModelHolder(Context context) {
+        this.appContext = context.getApplicationContext();
+    }
+
+    public static synchronized FaceModelHolder getInstance(Context context) {
+        if (instance == null) {
+            instance = new FaceModelHolder(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Takes a reference to the shared verifier, loading it if needed. The callback runs on
+     * the main thread, immediately if the verifier is already loaded. Every acquire() must be
+     * paired with a release() with the same callback.
+     */
+    public void acquire(Callback callback) {
+        refCount++;
+        mainHandler.removeCallbacks(idleRelease);
+        if (verifier != null) {
+            callback.onModelReady(verifier);
+            return;
+        }
+        pendingCallbacks.add(callback);
+        if (!loading) {
+            loading = true;
+            loaderExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    load();
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops a reference taken with acquire(). If the load has not finished yet, the callback
+     * will not be called.
+     */
+    public void release(Callback callback) {
+        pendingCallbacks.remove(callback);
+        if (refCount == 0) {
+            return;
+        }
+        refCount--;
+        if (refCount == 0) {
+            mainHandler.postDelayed(idleRelease, IDLE_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * Runs on the loader thread.
+     */
+    private void load() {
+        long start = System.nanoTime();
+        Trace.beginSection("FaceModelHolder.load");
+        FaceVerifier loaded = null;
+        IOException error = null;
+        try {
+            loaded = new FaceVerifier(appContext);
+            loaded.warmUp();
+            Log.i(TAG, "Face model ready in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load face model.", e);
+            error = e;
+        } catch (RuntimeException | LinkageError e) {
+            // A bad model or a missing native library surfaces as an unchecked error from the
+            // interpreter. Report it like any other load failure, so callers are told and the
+            // next acquire() retries instead of waiting on a load that will never finish.
+            Log.e(TAG, "Failed to create face model interpreter.", e);
+            if (loaded != null) {
+                loaded.close();
+                loaded = null;
+            }
+            error = new IOException("Failed to create face model interpreter.", e);
+        } finally {
+            Trace.endSection();
+        }
+
+        final FaceVerifier result = loaded;
+        final IOException failure = error;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onLoadFinished(result, failure);
+            }
+        });
+    }
+
+    private void onLoadFinished(FaceVerifier loaded, IOException error) {
+        loading = false;
+        List<Callback> callbacks = new ArrayList<>(pendingCallbacks);
+        pendingCallbacks.clear();
+        if (loaded == null) {
+            for (Callback callback : callbacks) {
+                callback.onModelFailed(error);
+            }
+            return;
+        }
+
+        verifier = loaded;
+        if (refCount == 0) {
+            // Everyone left while the model was loading.
+            mainHandler.postDelayed(idleRelease, IDLE_TIMEOUT_MS);
+        }
+        for (Callback callback : callbacks) {
+            callback.onModelReady(loaded);
+        }
+    }
+}
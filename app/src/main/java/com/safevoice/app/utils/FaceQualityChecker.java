@@ -0,0 +1,123 @@
+package com.safevoice.app.utils;
+
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.face.Face;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides cheaply whether a detected face is worth running the embedding model on.
+ *
+ * A face is rejected if it is too small, turned too far away from the camera, or blurred.
+ * Blur is measured as the variance of the Laplacian over the face's luma, sampled on a
+ * coarse grid so the check costs a small, fixed amount per frame.
+ */
+public class FaceQualityChecker {
+
+    public enum Result {
+        OK,
+        TOO_SMALL,
+        OFF_ANGLE,
+        BLURRED
+    }
+
+    private static final int MIN_FACE_SIZE_PX = 80;
+    private static final float MAX_YAW_DEGREES = 20f;
+    private static final float MAX_ROLL_DEGREES = 15f;
+    private static final double MIN_LAPLACIAN_VARIANCE = 60.0;
+    // The blur check samples at most this many points along each axis.
+    private static final int BLUR_SAMPLES_PER_AXIS = 48;
+
+    private final Rect sensorBox = new Rect();
+
+    public Result check(Face face, Nv21Frame frame) {
+        return check(face, frame.getYPlane(), frame.getWidth(), 1,
+                frame.getWidth(), frame.getHeight(), frame.getRotationDegrees());
+    }
+
+    /**
+     * @param yPlane          The luma plane; index 0 must be its first sample.
+     * @param width           Sensor width of the frame.
+     * @param height          Sensor height of the frame.
+     * @param rotationDegrees Clockwise rotation that makes the frame upright.
+     */
+    public Result check(Face face, ByteBuffer yPlane, int rowStride, int pixelStride, int width, int height, int rotationDegrees) {
+        Result geometry = checkGeometry(face);
+        if (geometry != Result.OK) {
+            return geometry;
+        }
+        if (laplacianVariance(yPlane, rowStride, pixelStride, width, height, rotationDegrees, face.getBoundingBox())
+                < MIN_LAPLACIAN_VARIANCE) {
+            return Result.BLURRED;
+        }
+        return Result.OK;
+    }
+
+    private Result checkGeometry(Face face) {
+        Rect box = face.getBoundingBox();
+        if (box.width() < MIN_FACE_SIZE_PX || box.height() < MIN_FACE_SIZE_PX) {
+            return Result.TOO_SMALL;
+        }
+        if (Math.abs(face.getHeadEulerAngleY()) > MAX_YAW_DEGREES || Math.abs(face.getHeadEulerAngleZ()) > MAX_ROLL_DEGREES) {
+            return Result.OFF_ANGLE;
+        }
+        return Result.OK;
+    }
+
+    /**
+     * Variance of the 4-neighbour Laplacian over the face's luma. Sharp images have strong
+     * edges and so a high variance; blur flattens it. The measure does not depend on
+     * rotation, so the box only needs mapping back to sensor coordinates.
+     */
+    private double laplacianVariance(ByteBuffer buffer, int rowStride, int pixelStride, int width, int height,
+                                     int rotationDegrees, Rect uprightBox) {
+        toSensorBox(uprightBox, rotationDegrees, width, height);
+        if (!sensorBox.intersect(1, 1, width - 1, height - 1)) {
+            return 0.0;
+        }
+
+        int stepX = Math.max(1, sensorBox.width() / BLUR_SAMPLES_PER_AXIS);
+        int stepY = Math.max(1, sensorBox.height() / BLUR_SAMPLES_PER_AXIS);
+
+        double sum = 0.0;
+        double sumSquares = 0.0;
+        int n = 0;
+        for (int y = sensorBox.top; y < sensorBox.bottom; y += stepY) {
+            int row = y * rowStride;
+            for (int x = sensorBox.left; x < sensorBox.right; x += stepX) {
+                int center = row + x * pixelStride;
+                int laplacian = (buffer.get(center - pixelStride) & 0xFF)
+                        + (buffer.get(center + pixelStride) & 0xFF)
+                        + (buffer.get(center - rowStride) & 0xFF)
+                        + (buffer.get(center + rowStride) & 0xFF)
+                        - 4 * (buffer.get(center) & 0xFF);
+                sum += laplacian;
+                sumSquares += (double) laplacian * laplacian;
+                n++;
+            }
+        }
+        if (n == 0) {
+            return 0.0;
+        }
+        double mean = sum / n;
+        return sumSquares / n - mean * mean;
+    }
+
+    private void toSensorBox(Rect box, int rotationDegrees, int width, int height) {
+        switch (rotationDegrees) {
+            case 90:
+                sensorBox.set(box.top, height - box.right, box.bottom, height - box.left);
+                break;
+            case 180:
+                sensorBox.set(width - box.right, height - box.bottom, width - box.left, height - box.top);
+                break;
+            case 270:
+                sensorBox.set(width - box.bottom, box.left, width - box.top, box.right);
+                break;
+            default:
+                sensorBox.set(box);
+                break;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.safevoice.app.utils;
+
+import java.util.Arrays;
+
+/**
+ * Fuses face match scores from several camera frames into one verification decision.
+ *
+ * Scores are collected over a bounded window and combined with a trimmed mean, so a single
+ * bad frame (motion, a blink, a reflection) can neither pass nor fail verification on its
+ * own. The session decides early once the aggregate is clearly above or below the
+ * threshold, and gives up if too many frames pass without enough usable ones.
+ */
+public class FaceVerificationSession {
+
+    public enum Decision {
+        PENDING,
+        ACCEPT,
+        REJECT,
+        // Too many frames were skipped for quality to reach a decision.
+        INCONCLUSIVE
+    }
+
+    // Fraction of scores dropped from each end before averaging.
+    private static final float TRIM_FRACTION = 0.2f;
+
+    private final double threshold;
+    private final double earlyMargin;
+    private final int minScores;
+    private final int maxScores;
+    private final int maxFrames;
+
+    private final float[] scores;
+    private final float[] sorted;
+    private int scoreCount = 0;
+    private int frameCount = 0;
+    private double lastAggregate = Double.NaN;
+
+    /**
+     * @param threshold   The aggregate score above which the face matches.
+     * @param earlyMargin How far past the threshold the aggregate must be to decide early.
+     * @param minScores   The fewest scored frames to decide on.
+     * @param maxScores   The scored frames after which a decision is forced.
+     * @param maxFrames   The frames, scored or skipped, after which the session gives up.
+     */
+    public FaceVerificationSession(double threshold, double earlyMargin, int minScores, int maxScores, int maxFrames) {
+        this.threshold = threshold;
+        this.earlyMargin = earlyMargin;
+        this.minScores = minScores;
+        this.maxScores = maxScores;
+        this.maxFrames = maxFrames;
+        this.scores = new float[maxScores];
+        this.sorted = new float[maxScores];
+    }
+
+    /**
+     * Records a frame that was skipped before inference, e.g. because it was blurred.
+     */
+    public Decision onFrameSkipped() {
+        frameCount++;
+        return frameCount >= maxFrames ? Decision.INCONCLUSIVE : Decision.PENDING;
+    }
+
+    /**
+     * Records the match score of one frame.
+     */
+    public Decision onFrameScored(float score) {
+        frameCount++;
+        if (scoreCount < maxScores) {
+            scores[scoreCount++] = score;
+        }
+        if (scoreCount < minScores) {
+            return frameCount >= maxFrames ? Decision.INCONCLUSIVE : Decision.PENDING;
+        }
+
+        lastAggregate = trimmedMean();
+        if (scoreCount >= maxScores || frameCount >= maxFrames) {
+            return lastAggregate > threshold ? Decision.ACCEPT : Decision.REJECT;
+        }
+        if (lastAggregate > threshold + earlyMargin) {
+            return Decision.ACCEPT;
+        }
+        if (lastAggregate < threshold - earlyMargin) {
+            return Decision.REJECT;
+        }
+        return Decision.PENDING;
+    }
+
+    /**
+     * @return The latest aggregate score, or NaN before the first decision point.
+     */
+    public double getAggregateScore() {
+        return lastAggregate;
+    }
+
+    public int getScoreCount() {
+        return scoreCount;
+    }
+
+    private double trimmedMean() {
+        System.arraycopy(scores, 0, sorted, 0, scoreCount);
+        Arrays.sort(sorted, 0, scoreCount);
+        int trim = (int) (scoreCount * TRIM_FRACTION);
+        double sum = 0.0;
+        for (int i = trim; i < scoreCount - trim; i++) {
+            sum += sorted[i];
+        }
+        return sum / (scoreCount - 2 * trim);
+    }
+}
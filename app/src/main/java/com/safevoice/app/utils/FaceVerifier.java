@@ -1,50 +1,206 @@
 package com.safevoice.app.utils;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Trace;
 import android.util.Log;
 
+import androidx.camera.core.ImageProxy;
+
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A helper class for interacting with the mobilefacenet.tflite model.
  * It handles loading the model, pre-processing input images, running inference,
  * and calculating the similarity between two faces.
+ *
+ * All input and output buffers are allocated once and reused, so an embedding computed with
+ * getFaceEmbedding(Bitmap, float[]) allocates nothing. Because the buffers are shared,
+ * inference calls are serialized.
+ *
+ * The interpreter runs with the fastest InterpreterConfig measured on this device. Until one
+ * has been measured (first use on a device, or after a system update) the default
+ * configuration is used. benchmarkConfigurations() times the alternatives with
+ * DelegateBenchmark and saves the winner for the next load; it competes with inference for
+ * the CPU, so it is left to the owner to run it while the verifier is idle.
+ *
+ * Two model variants are supported. The float32 model takes normalized floats; a quantized
+ * model (uint8 or int8 input) takes one byte per channel, a quarter of the input memory,
+ * and runs integer kernels. Input quantization and output dequantization use the scale and
+ * zero point stored in the model, so the variant only changes which asset is loaded. The
+ * float32 model is the default: KycActivity's match threshold was calibrated against it, so
+ * the quantized model is only used when the "face_model_variant" setting asks for it.
  */
 public class FaceVerifier {
 
     private static final String TAG = "FaceVerifier";
-    private static final String MODEL_FILE = "mobilefacenet.tflite";
+    private static final String PREFS_NAME = "SafeVoiceModelPrefs";
+    private static final String KEY_CONFIG = "face_interpreter_config";
+    private static final String KEY_CONFIG_DEVICE = "face_interpreter_device";
+    private static final String SETTINGS_PREFS_NAME = "SafeVoiceSettingsPrefs";
+    private static final String KEY_MODEL_VARIANT = "face_model_variant";
+
+    public static final String VARIANT_FLOAT32 = "float32";
+    public static final String VARIANT_INT8 = "int8";
+
+    // Benchmark each model at most once per process, however many verifiers are created.
+    private static final Set<ModelVariant> BENCHMARK_STARTED = Collections.synchronizedSet(EnumSet.noneOf(ModelVariant.class));
+
+    public enum ModelVariant {
+        FLOAT32("mobilefacenet.tflite", ""),
+        QUANTIZED("mobilefacenet_int8.tflite", "_int8");
+
+        private final String assetName;
+        private final String prefsSuffix;
+
+        ModelVariant(String assetName, String prefsSuffix) {
+            this.assetName = assetName;
+            this.prefsSuffix = prefsSuffix;
+        }
+
+        public String getAssetName() {
+            return assetName;
+        }
+    }
 
     // Model-specific configuration
     private static final int INPUT_IMAGE_WIDTH = 112;
     private static final int INPUT_IMAGE_HEIGHT = 224;
     
-    private static final int EMBEDDING_SIZE = 192;   // The size of the output vector.
-    private static final int BYTES_PER_CHANNEL = 4;  // Float size
+    public static final int EMBEDDING_SIZE = 192;   // The size of the output vector; the model outputs [2, 192].
+    private static final int INPUT_PIXELS = INPUT_IMAGE_WIDTH * INPUT_IMAGE_HEIGHT;
+
+    // Maps a [0, 255] channel value to [-1, 1] as required by many face models.
+    private static final float[] NORMALIZED = new float[256];
+    static {
+        for (int i = 0; i < NORMALIZED.length; i++) {
+            NORMALIZED[i] = (i - 127.5f) / 128.0f;
+        }
+    }
 
     private final Interpreter tflite;
+    private final ModelVariant variant;
+    private final MappedByteBuffer model;
+    private final SharedPreferences modelPrefs;
+    private final boolean configMeasured;
+    private final DataType outputType;
+    private final float outputScale;
+    private final int outputZeroPoint;
+    // For quantized inputs, maps a [0, 255] channel value to the model's input byte.
+    private final byte[] quantizedLookup;
+
+    // Reused for every inference.
+    private final Bitmap scaledBitmap = Bitmap.createBitmap(INPUT_IMAGE_WIDTH, INPUT_IMAGE_HEIGHT, Bitmap.Config.ARGB_8888);
+    private final Canvas scaleCanvas = new Canvas(scaledBitmap);
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect srcRect = new Rect();
+    private final Rect dstRect = new Rect(0, 0, INPUT_IMAGE_WIDTH, INPUT_IMAGE_HEIGHT);
+    private final int[] pixels = new int[INPUT_PIXELS];
+    private final float[] normalizedPixels;
+    private final byte[] quantizedPixels;
+    private final YuvFaceCropper yuvCropper = new YuvFaceCropper(INPUT_IMAGE_WIDTH, INPUT_IMAGE_HEIGHT);
+    private final ByteBuffer inputBuffer;
+    private final FloatBuffer inputFloats;
+    private final ByteBuffer outputBuffer;
+    private final FloatBuffer outputFloats;
+    private final byte[] outputBytes;
+    private final Object[] inputs;
+    private final Map<Integer, Object> outputs = new HashMap<>();
 
     /**
-     * Loads the TFLite model from the assets folder.
+     * Loads the model chosen by the "face_model_variant" setting: the float32 model unless
+     * the setting is "int8" and the app bundles the quantized model.
      * Throws an IOException if the model file cannot be loaded.
      *
      * @param context The application context.
      * @throws IOException If the model file is not found or cannot be loaded.
      */
     public FaceVerifier(Context context) throws IOException {
-        Interpreter.Options options = new Interpreter.Options();
-        options.setNumThreads(4); // Improve performance with multiple threads
-        this.tflite = new Interpreter(loadModelFile(context.getAssets()), options);
+        this(context, configuredVariant(context));
+    }
+
+    /**
+     * Loads the given TFLite model variant from the assets folder.
+     *
+     * @param context The application context.
+     * @param variant Which model to load.
+     * @throws IOException If the model file is not found or cannot be loaded.
+     */
+    public FaceVerifier(Context context, ModelVariant variant) throws IOException {
+        this.variant = variant;
+        this.model = loadModelFile(context.getAssets(), variant.getAssetName());
+        this.modelPrefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        InterpreterConfig config = null;
+        if (Build.FINGERPRINT.equals(modelPrefs.getString(KEY_CONFIG_DEVICE + variant.prefsSuffix, null))) {
+            config = InterpreterConfig.decode(modelPrefs.getString(KEY_CONFIG + variant.prefsSuffix, null));
+        }
+        this.configMeasured = (config != null);
+        this.tflite = createInterpreter(model, config, modelPrefs, variant);
+
+        // Size the buffers from the model, so either variant fits.
+        Tensor inputTensor = tflite.getInputTensor(0);
+        Tensor outputTensor = tflite.getOutputTensor(0);
+        DataType inputType = inputTensor.dataType();
+        outputType = outputTensor.dataType();
+        Log.i(TAG, "Loaded " + variant.getAssetName() + " (input " + inputType + ", output " + outputType + ")");
+
+        inputBuffer = ByteBuffer.allocateDirect(inputTensor.numBytes());
+        inputBuffer.order(ByteOrder.nativeOrder());
+        if (inputType == DataType.FLOAT32) {
+            inputFloats = inputBuffer.asFloatBuffer();
+            normalizedPixels = new float[INPUT_PIXELS * 3];
+            quantizedPixels = null;
+            quantizedLookup = null;
+        } else {
+            inputFloats = null;
+            normalizedPixels = null;
+            quantizedPixels = new byte[INPUT_PIXELS * 3];
+            quantizedLookup = buildInputLookup(inputType, inputTensor.quantizationParams());
+        }
+
+        outputBuffer = ByteBuffer.allocateDirect(outputTensor.numBytes());
+        outputBuffer.order(ByteOrder.nativeOrder());
+        if (outputType == DataType.FLOAT32) {
+            outputFloats = outputBuffer.asFloatBuffer();
+            outputBytes = null;
+            outputScale = 1f;
+            outputZeroPoint = 0;
+        } else {
+            outputFloats = null;
+            outputBytes = new byte[EMBEDDING_SIZE];
+            Tensor.QuantizationParams params = outputTensor.quantizationParams();
+            outputScale = params.getScale() != 0f ? params.getScale() : 1f;
+            outputZeroPoint = params.getZeroPoint();
+        }
+        inputs = new Object[]{inputBuffer};
+        // Overwrite the previous frame instead of blending over it.
+        scalePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        outputs.put(0, outputBuffer);
     }
 
     /**
@@ -54,20 +210,218 @@ public class FaceVerifier {
      * @return A float array of size 192 representing the facial embedding.
      */
     public float[] getFaceEmbedding(Bitmap bitmap) {
-        // 1. Pre-process the image: resize and convert to ByteBuffer
-        ByteBuffer inputBuffer = preprocessImage(bitmap);
+        float[] embedding = new float[EMBEDDING_SIZE];
+        getFaceEmbedding(bitmap, embedding);
+        return embedding;
+    }
+
+    /**
+     * Generates a facial embedding into a caller-owned array, without allocating.
+     *
+     * @param bitmap The input image, which should contain a cropped face.
+     * @param out    Receives the embedding. Must hold at least 192 floats.
+     */
+    public synchronized void getFaceEmbedding(Bitmap bitmap, float[] out) {
+        // 1. Pre-process the image into the reused input buffer
+        preprocessImage(bitmap);
 
-        // --- FIX START: Correct the output buffer shape ---
-        // The crash log shows the model outputs a shape of [2, 192].
-        // We must prepare a Java object with the exact same shape to receive the data.
-        float[][] outputEmbedding = new float[2][EMBEDDING_SIZE];
-        // --- FIX END ---
+        // 2. Run inference and copy out the result
+        runInference(out);
+    }
+
+    /**
+     * Generates a facial embedding straight from a camera frame, without JPEG or Bitmap
+     * conversion and without allocating.
+     *
+     * @param imageProxy A YUV_420_888 frame.
+     * @param faceBox    The face bounding box in upright coordinates, as ML Kit reports it.
+     * @param out        Receives the embedding. Must hold at least 192 floats.
+     * @return false if the frame is not YUV_420_888 or the face is outside it.
+     */
+    public synchronized boolean getFaceEmbedding(ImageProxy imageProxy, Rect faceBox, float[] out) {
+        boolean cropped = (quantizedLookup != null)
+                ? yuvCropper.crop(imageProxy, faceBox, quantizedLookup, quantizedPixels)
+                : yuvCropper.crop(imageProxy, faceBox, normalizedPixels);
+        if (!cropped) {
+            return false;
+        }
+        runCroppedInference(out);
+        return true;
+    }
 
-        // 3. Run inference with the TFLite model
-        tflite.run(inputBuffer, outputEmbedding);
+    /**
+     * Generates a facial embedding from a frame copied out of the camera, so it can run
+     * after the camera's ImageProxy has been closed.
+     *
+     * @param frame   The copied frame.
+     * @param faceBox The face bounding box in upright coordinates, as ML Kit reports it.
+     * @param out     Receives the embedding. Must hold at least 192 floats.
+     * @return false if the face is outside the frame.
+     */
+    public synchronized boolean getFaceEmbedding(Nv21Frame frame, Rect faceBox, float[] out) {
+        boolean cropped = (quantizedLookup != null)
+                ? yuvCropper.crop(frame, faceBox, quantizedLookup, quantizedPixels)
+                : yuvCropper.crop(frame, faceBox, normalizedPixels);
+        if (!cropped) {
+            return false;
+        }
+        runCroppedInference(out);
+        return true;
+    }
 
-        // 4. Return the first embedding vector. The second is for a flipped image and can be ignored.
-        return outputEmbedding[0];
+    /**
+     * Runs one inference on a blank input, so the first real frame does not pay for kernel
+     * initialization and delegate setup.
+     */
+    public synchronized void warmUp() {
+        Trace.beginSection("FaceVerifier.warmUp");
+        try {
+            inputBuffer.rewind();
+            while (inputBuffer.hasRemaining()) {
+                inputBuffer.put((byte) 0);
+            }
+            inputBuffer.rewind();
+            runInference(new float[EMBEDDING_SIZE]);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Releases the interpreter. The verifier must not be used afterwards.
+     */
+    public synchronized void close() {
+        tflite.close();
+    }
+
+    /**
+     * @return Which model variant is loaded.
+     */
+    public ModelVariant getModelVariant() {
+        return variant;
+    }
+
+    private void runCroppedInference(float[] out) {
+        fillInputBuffer();
+        runInference(out);
+    }
+
+    private void fillInputBuffer() {
+        if (inputFloats != null) {
+            inputFloats.rewind();
+            inputFloats.put(normalizedPixels);
+        } else {
+            inputBuffer.rewind();
+            inputBuffer.put(quantizedPixels);
+        }
+        inputBuffer.rewind();
+    }
+
+    /**
+     * Builds the table that quantizes a normalized channel value for the model's input,
+     * using the input tensor's scale and zero point.
+     */
+    private static byte[] buildInputLookup(DataType type, Tensor.QuantizationParams params) {
+        int min = (type == DataType.INT8) ? -128 : 0;
+        int max = (type == DataType.INT8) ? 127 : 255;
+        byte[] lookup = new byte[256];
+        for (int i = 0; i < lookup.length; i++) {
+            int q;
+            if (params.getScale() == 0f) {
+                // No quantization parameters: the model takes raw channel values.
+                q = i + min;
+            } else {
+                q = Math.round(NORMALIZED[i] / params.getScale()) + params.getZeroPoint();
+            }
+            lookup[i] = (byte) Math.max(min, Math.min(max, q));
+        }
+        return lookup;
+    }
+
+    /**
+     * Creates the interpreter with the saved configuration, falling back to the default and
+     * then to the plain CPU kernels if a delegate fails to initialize. A saved configuration
+     * that fails is forgotten, so the next launch benchmarks again.
+     */
+    private static Interpreter createInterpreter(MappedByteBuffer model, InterpreterConfig saved, SharedPreferences modelPrefs, ModelVariant variant) {
+        if (saved != null) {
+            try {
+                Log.i(TAG, "Using interpreter config " + saved);
+                return new Interpreter(model, saved.toOptions());
+            } catch (Exception | LinkageError e) {
+                Log.w(TAG, "Saved interpreter config " + saved + " failed, falling back.", e);
+                modelPrefs.edit()
+                        .remove(KEY_CONFIG + variant.prefsSuffix)
+                        .remove(KEY_CONFIG_DEVICE + variant.prefsSuffix)
+                        .apply();
+            }
+        }
+        try {
+            return new Interpreter(model, InterpreterConfig.DEFAULT.toOptions());
+        } catch (Exception | LinkageError e) {
+            Log.w(TAG, "Default interpreter config failed, using plain CPU kernels.", e);
+            return new Interpreter(model, new InterpreterConfig(InterpreterConfig.Backend.CPU, 1).toOptions());
+        }
+    }
+
+    /**
+     * @return true if no interpreter configuration has been measured for this model on this
+     * device yet, and this process has not measured one either.
+     */
+    public boolean needsConfigBenchmark() {
+        return !configMeasured && !BENCHMARK_STARTED.contains(variant);
+    }
+
+    /**
+     * Times every candidate configuration and saves the fastest for this device, to be used
+     * from the next load on. Blocks for several seconds and loads every CPU core, so run it
+     * off the main thread while nothing else is using the verifier. Runs at most once per
+     * model per process.
+     */
+    public void benchmarkConfigurations() {
+        if (!BENCHMARK_STARTED.add(variant)) {
+            return;
+        }
+        Trace.beginSection("FaceVerifier.benchmarkConfigurations");
+        try {
+            List<DelegateBenchmark.Result> results = new DelegateBenchmark().run(model, DelegateBenchmark.defaultCandidates());
+            for (DelegateBenchmark.Result result : results) {
+                if (result.isSuccessful()) {
+                    Log.d(TAG, result.getConfig() + ": " + result.getMedianNanos() / 1000 + " us");
+                } else {
+                    Log.d(TAG, result.getConfig() + ": failed (" + result.getError() + ")");
+                }
+            }
+            InterpreterConfig fastest = DelegateBenchmark.fastest(results);
+            if (fastest != null) {
+                Log.i(TAG, "Fastest interpreter config for " + variant.getAssetName() + " on this device: " + fastest);
+                modelPrefs.edit()
+                        .putString(KEY_CONFIG + variant.prefsSuffix, fastest.encode())
+                        .putString(KEY_CONFIG_DEVICE + variant.prefsSuffix, Build.FINGERPRINT)
+                        .apply();
+            }
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private void runInference(float[] out) {
+        outputBuffer.rewind();
+        tflite.runForMultipleInputsOutputs(inputs, outputs);
+
+        // Copy out the first embedding vector. The second is for a flipped image and can be ignored.
+        if (outputFloats != null) {
+            outputFloats.rewind();
+            outputFloats.get(out, 0, EMBEDDING_SIZE);
+        } else {
+            outputBuffer.rewind();
+            outputBuffer.get(outputBytes, 0, EMBEDDING_SIZE);
+            boolean unsigned = (outputType == DataType.UINT8);
+            for (int i = 0; i < EMBEDDING_SIZE; i++) {
+                int q = unsigned ? (outputBytes[i] & 0xFF) : outputBytes[i];
+                out[i] = (q - outputZeroPoint) * outputScale;
+            }
+        }
     }
 
     /**
@@ -105,8 +459,8 @@ public class FaceVerifier {
     /**
      * Memory-maps the TFLite model file from the assets folder.
      */
-    private MappedByteBuffer loadModelFile(AssetManager assetManager) throws IOException {
-        AssetFileDescriptor fileDescriptor = assetManager.openFd(MODEL_FILE);
+    private static MappedByteBuffer loadModelFile(AssetManager assetManager, String modelFile) throws IOException {
+        AssetFileDescriptor fileDescriptor = assetManager.openFd(modelFile);
         FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
         FileChannel fileChannel = inputStream.getChannel();
         long startOffset = fileDescriptor.getStartOffset();
@@ -114,32 +468,55 @@ public class FaceVerifier {
         return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
     }
 
+    private static ModelVariant configuredVariant(Context context) {
+        SharedPreferences settingsPrefs = context.getApplicationContext().getSharedPreferences(SETTINGS_PREFS_NAME, Context.MODE_PRIVATE);
+        if (!VARIANT_INT8.equals(settingsPrefs.getString(KEY_MODEL_VARIANT, VARIANT_FLOAT32))) {
+            return ModelVariant.FLOAT32;
+        }
+        if (!hasAsset(context.getAssets(), ModelVariant.QUANTIZED.getAssetName())) {
+            Log.w(TAG, "The int8 face model was requested but is not bundled; using float32.");
+            return ModelVariant.FLOAT32;
+        }
+        return ModelVariant.QUANTIZED;
+    }
+
+    private static boolean hasAsset(AssetManager assetManager, String name) {
+        try {
+            assetManager.openFd(name).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     /**
      * Pre-processes the input bitmap to match the model's requirements.
-     * - Resizes the image to 112x224.
-     * - Normalizes pixel values to be between -1 and 1.
-     * - Converts the image data into a ByteBuffer.
-     */
-    private ByteBuffer preprocessImage(Bitmap bitmap) {
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, INPUT_IMAGE_WIDTH, INPUT_IMAGE_HEIGHT, true);
-        
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(INPUT_IMAGE_WIDTH * INPUT_IMAGE_HEIGHT * 3 * BYTES_PER_CHANNEL);
-        byteBuffer.order(ByteOrder.nativeOrder());
-
-        int[] intValues = new int[INPUT_IMAGE_WIDTH * INPUT_IMAGE_HEIGHT];
-        
-        resizedBitmap.getPixels(intValues, 0, resizedBitmap.getWidth(), 0, 0, resizedBitmap.getWidth(), resizedBitmap.getHeight());
-
-        int pixel = 0;
-        for (int i = 0; i < INPUT_IMAGE_HEIGHT; ++i) {
-            for (int j = 0; j < INPUT_IMAGE_WIDTH; ++j) {
-                final int val = intValues[pixel++];
-                // Normalize the pixel values from [0, 255] to [-1, 1] as required by many face models.
-                byteBuffer.putFloat((((val >> 16) & 0xFF) - 127.5f) / 128.0f);
-                byteBuffer.putFloat((((val >> 8) & 0xFF) - 127.5f) / 128.0f);
-                byteBuffer.putFloat(((val & 0xFF) - 127.5f) / 128.0f);
+     * - Resizes the image to 112x224 into the reused scaled bitmap.
+     * - Normalizes pixel values to be between -1 and 1 (or quantizes them) through a lookup table.
+     * - Writes the result into the input buffer in one bulk put.
+     */
+    private void preprocessImage(Bitmap bitmap) {
+        srcRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        scaleCanvas.drawBitmap(bitmap, srcRect, dstRect, scalePaint);
+        scaledBitmap.getPixels(pixels, 0, INPUT_IMAGE_WIDTH, 0, 0, INPUT_IMAGE_WIDTH, INPUT_IMAGE_HEIGHT);
+
+        int out = 0;
+        if (quantizedLookup != null) {
+            for (int i = 0; i < INPUT_PIXELS; i++) {
+                final int val = pixels[i];
+                quantizedPixels[out++] = quantizedLookup[(val >> 16) & 0xFF];
+                quantizedPixels[out++] = quantizedLookup[(val >> 8) & 0xFF];
+                quantizedPixels[out++] = quantizedLookup[val & 0xFF];
+            }
+        } else {
+            for (int i = 0; i < INPUT_PIXELS; i++) {
+                final int val = pixels[i];
+                normalizedPixels[out++] = NORMALIZED[(val >> 16) & 0xFF];
+                normalizedPixels[out++] = NORMALIZED[(val >> 8) & 0xFF];
+                normalizedPixels[out++] = NORMALIZED[val & 0xFF];
             }
         }
-        return byteBuffer;
+
+        fillInputBuffer();
     }
-}
\ No newline at end of file
+}
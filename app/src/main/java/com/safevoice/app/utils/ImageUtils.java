@@ -10,6 +10,7 @@ import androidx.camera.core.ImageProxy;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 /**
  * A utility class with static methods for image processing,
@@ -42,17 +43,8 @@ public class ImageUtils {
             return null;
         }
 
-        // Conversion from YUV to NV21 byte array (standard process)
-        ByteBuffer yBuffer = image.getPlanes()[0].getBuffer();
-        ByteBuffer uBuffer = image.getPlanes()[1].getBuffer();
-        ByteBuffer vBuffer = image.getPlanes()[2].getBuffer();
-        int ySize = yBuffer.remaining();
-        int uSize = uBuffer.remaining();
-        int vSize = vBuffer.remaining();
-        byte[] nv21 = new byte[ySize + uSize + vSize];
-        yBuffer.get(nv21, 0, ySize);
-        vBuffer.get(nv21, ySize, vSize);
-        uBuffer.get(nv21, ySize + vSize, uSize);
+        // Conversion from YUV to NV21 byte array, honoring the plane strides
+        byte[] nv21 = toNv21(image);
 
         // Create a YuvImage
         YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
@@ -60,6 +52,7 @@ public class ImageUtils {
         // THE CRITICAL FIX: Compress only the 'cropRect' to a JPEG stream, not the whole image.
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         yuvImage.compressToJpeg(validCropRect, 100, out);
+        ByteArrayPool.shared().release(nv21);
 
         // Decode the small JPEG stream into a small Bitmap
         byte[] imageBytes = out.toByteArray();
@@ -88,30 +81,116 @@ public class ImageUtils {
              return getBitmapFromPlanes(imageProxy);
         }
 
-        // Conversion from YUV to JPEG bytes
-        ByteBuffer yBuffer = image.getPlanes()[0].getBuffer();
-        ByteBuffer uBuffer = image.getPlanes()[1].getBuffer();
-        ByteBuffer vBuffer = image.getPlanes()[2].getBuffer();
-
-        int ySize = yBuffer.remaining();
-        int uSize = uBuffer.remaining();
-        int vSize = vBuffer.remaining();
-
-        byte[] nv21 = new byte[ySize + uSize + vSize];
-
-        yBuffer.get(nv21, 0, ySize);
-        vBuffer.get(nv21, ySize, vSize);
-        uBuffer.get(nv21, ySize + vSize, uSize);
+        // Conversion from YUV to NV21 bytes, honoring the plane strides
+        byte[] nv21 = toNv21(image);
 
         // Convert the YUV byte array to a Bitmap
         YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         yuvImage.compressToJpeg(new Rect(0, 0, yuvImage.getWidth(), yuvImage.getHeight()), 100, out);
+        ByteArrayPool.shared().release(nv21);
         byte[] imageBytes = out.toByteArray();
 
         return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
     }
 
+    /**
+     * Assembles an NV21 frame (full Y plane, then interleaved V and U) from YUV_420_888 planes.
+     * Row and pixel strides are honored, so padded rows and planar chroma convert correctly.
+     * When the device already delivers interleaved VU chroma, the chroma is bulk-copied.
+     *
+     * @return An array from ByteArrayPool.shared(). Release it once it is no longer used.
+     */
+    static byte[] toNv21(Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int ySize = width * height;
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        byte[] nv21 = ByteArrayPool.shared().acquire(ySize + 2 * chromaWidth * chromaHeight);
+
+        Image.Plane[] planes = image.getPlanes();
+        copyPlane(planes[0], width, height, nv21, 0, 1);
+        if (!copyInterleavedVu(planes[1], planes[2], width, height, nv21, ySize)) {
+            copyPlane(planes[2], chromaWidth, chromaHeight, nv21, ySize, 2);
+            copyPlane(planes[1], chromaWidth, chromaHeight, nv21, ySize + 1, 2);
+        }
+        return nv21;
+    }
+
+    /**
+     * Copies one plane into the output, writing every outPixelStride-th byte.
+     * The buffer's position is left unchanged.
+     */
+    private static void copyPlane(Image.Plane plane, int width, int height, byte[] out, int offset, int outPixelStride) {
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        int pixelStride = plane.getPixelStride();
+        int start = buffer.position();
+
+        if (pixelStride == 1 && outPixelStride == 1) {
+            if (rowStride == width) {
+                buffer.get(out, offset, width * height);
+            } else {
+                for (int row = 0; row < height; row++) {
+                    buffer.position(start + row * rowStride);
+                    buffer.get(out, offset + row * width, width);
+                }
+            }
+        } else {
+            int o = offset;
+            for (int row = 0; row < height; row++) {
+                int rowStart = start + row * rowStride;
+                for (int col = 0; col < width; col++) {
+                    out[o] = buffer.get(rowStart + col * pixelStride);
+                    o += outPixelStride;
+                }
+            }
+        }
+        buffer.position(start);
+    }
+
+    /**
+     * Bulk-copies the chroma when the U and V planes are views of one interleaved VU buffer,
+     * which is already NV21's layout. The aliasing is detected by flipping one V byte and
+     * checking whether the first U byte changes with it.
+     *
+     * @return false if the chroma is not interleaved VU and must be copied sample by sample.
+     */
+    private static boolean copyInterleavedVu(Image.Plane uPlane, Image.Plane vPlane, int width, int height, byte[] out, int offset) {
+        if (uPlane.getPixelStride() != 2 || vPlane.getPixelStride() != 2
+                || uPlane.getRowStride() != width || vPlane.getRowStride() != width) {
+            return false;
+        }
+        ByteBuffer uBuffer = uPlane.getBuffer();
+        ByteBuffer vBuffer = vPlane.getBuffer();
+        int chromaBytes = width * height / 2;
+        if (vBuffer.remaining() != chromaBytes - 1 || uBuffer.remaining() != chromaBytes - 1) {
+            return false;
+        }
+
+        int uStart = uBuffer.position();
+        int vStart = vBuffer.position();
+        byte saved = vBuffer.get(vStart + 1);
+        byte flipped = (byte) ~saved;
+        boolean aliased;
+        try {
+            vBuffer.put(vStart + 1, flipped);
+            aliased = uBuffer.get(uStart) == flipped;
+            vBuffer.put(vStart + 1, saved);
+        } catch (ReadOnlyBufferException e) {
+            return false;
+        }
+        if (!aliased) {
+            return false;
+        }
+
+        out[offset] = vBuffer.get(vStart);
+        uBuffer.get(out, offset + 1, chromaBytes - 1);
+        uBuffer.position(uStart);
+        return true;
+    }
+
     /**
      * A fallback method that attempts to create a bitmap from the first plane of an ImageProxy.
      * This works for formats like JPEG.
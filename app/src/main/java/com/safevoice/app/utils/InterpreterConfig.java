@@ -0,0 +1,95 @@
+package com.safevoice.app.utils;
+
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * One way of running a TFLite model: which kernels or delegate to use and how many CPU
+ * threads. Configurations are compared by DelegateBenchmark and persisted as short strings
+ * such as "XNNPACK:4".
+ */
+public final class InterpreterConfig {
+
+    public enum Backend {
+        // TFLite's reference CPU kernels, with XNNPACK turned off.
+        CPU,
+        // The XNNPACK CPU delegate.
+        XNNPACK,
+        // Android's Neural Networks API, which may run on a GPU, DSP or NPU.
+        NNAPI
+    }
+
+    // What FaceVerifier used before delegate selection existed.
+    public static final InterpreterConfig DEFAULT = new InterpreterConfig(Backend.XNNPACK, 4);
+
+    private final Backend backend;
+    private final int numThreads;
+
+    public InterpreterConfig(Backend backend, int numThreads) {
+        this.backend = backend;
+        this.numThreads = numThreads;
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @return New interpreter options for this configuration.
+     */
+    @SuppressWarnings("deprecation")
+    public Interpreter.Options toOptions() {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(numThreads);
+        options.setUseXNNPACK(backend == Backend.XNNPACK);
+        if (backend == Backend.NNAPI) {
+            options.setUseNNAPI(true);
+        }
+        return options;
+    }
+
+    public String encode() {
+        return backend.name() + ":" + numThreads;
+    }
+
+    /**
+     * @return The decoded configuration, or null if the string is not a valid encoding.
+     */
+    public static InterpreterConfig decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        int separator = encoded.indexOf(':');
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            Backend backend = Backend.valueOf(encoded.substring(0, separator));
+            int numThreads = Integer.parseInt(encoded.substring(separator + 1));
+            return numThreads > 0 ? new InterpreterConfig(backend, numThreads) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InterpreterConfig)) return false;
+        InterpreterConfig other = (InterpreterConfig) o;
+        return backend == other.backend && numThreads == other.numThreads;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * backend.hashCode() + numThreads;
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
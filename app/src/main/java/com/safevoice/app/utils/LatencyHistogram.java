@@ -0,0 +1,87 @@
+package com.safevoice.app.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A thread-safe latency histogram with fixed, power-of-two millisecond buckets. Recording
+ * never allocates, so it can sit on every stage of the camera pipeline.
+ */
+public class LatencyHistogram {
+
+    // Bucket i holds latencies below 2^i ms; the last bucket takes everything above.
+    private static final int BUCKETS = 13;
+
+    private final String name;
+    private final long[] counts = new long[BUCKETS];
+    private long total = 0;
+    private long sumNanos = 0;
+    private long maxNanos = 0;
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records the time elapsed since startNanos, a System.nanoTime() value.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public synchronized void record(long nanos) {
+        long millis = nanos / 1_000_000L;
+        int bucket = millis <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis);
+        counts[Math.min(bucket, BUCKETS - 1)]++;
+        total++;
+        sumNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    public synchronized long getCount() {
+        return total;
+    }
+
+    /**
+     * @param percentile Between 0 and 100.
+     * @return The upper bound, in ms, of the bucket holding the given percentile, or 0 if
+     * nothing was recorded.
+     */
+    public synchronized long getPercentileMillis(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return maxNanos / 1_000_000L;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        sumNanos = 0;
+        maxNanos = 0;
+    }
+
+    /**
+     * @return A one-line summary, e.g. "detect n=120 avg=18.2 p50<=32 p90<=64 max=71 ms".
+     */
+    @Override
+    public synchronized String toString() {
+        double avg = total == 0 ? 0.0 : sumNanos / (double) total / 1_000_000.0;
+        return String.format(Locale.US, "%-7s n=%d avg=%.1f p50<=%d p90<=%d max=%d ms",
+                name, total, avg, getPercentileMillis(50), getPercentileMillis(90), maxNanos / 1_000_000L);
+    }
+}
@@ -2,6 +2,7 @@ package com.safevoice.app.utils;
 
 import android.Manifest;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.Looper;
@@ -22,12 +23,22 @@ import com.google.android.gms.tasks.OnSuccessListener;
 /**
  * A helper class to simplify the process of getting the device's current location.
  * It uses the FusedLocationProviderClient for efficient location fetching.
+ * Every fix it obtains is persisted, so a last known location is available instantly
+ * even when the fused provider has no cached location.
  */
-public class LocationHelper {
+public class LocationHelper implements LocationSource {
 
     private static final String TAG = "LocationHelper";
+    private static final String PREFS_NAME = "SafeVoiceLocationPrefs";
+    private static final String KEY_LATITUDE = "last_latitude";
+    private static final String KEY_LONGITUDE = "last_longitude";
+    private static final String KEY_ACCURACY = "last_accuracy";
+    private static final String KEY_TIME = "last_time";
+    private static final String PERSISTED_PROVIDER = "persisted";
+
     private final FusedLocationProviderClient fusedLocationClient;
     private final Context context;
+    private final SharedPreferences locationPrefs;
 
     /**
      * Interface to provide the location result asynchronously.
@@ -39,6 +50,44 @@ public class LocationHelper {
     public LocationHelper(Context context) {
         this.context = context;
         this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        this.locationPrefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the fused provider's cached location immediately, falling back to the last fix
+     * this app persisted. Never waits for GPS.
+     *
+     * @param callback The callback to be invoked with the location, or null if none is known.
+     */
+    @Override
+    public void getLastKnownLocation(final LocationResultCallback callback) {
+        if (!hasLocationPermission()) {
+            Log.e(TAG, "Location permission not granted. Using persisted location only.");
+            callback.onLocationResult(loadPersistedLocation());
+            return;
+        }
+
+        fusedLocationClient.getLastLocation()
+            .addOnSuccessListener(new OnSuccessListener<Location>() {
+                @Override
+                public void onSuccess(Location location) {
+                    if (location != null) {
+                        Log.d(TAG, "Using cached location from the fused provider.");
+                        persistLocation(location);
+                        callback.onLocationResult(location);
+                    } else {
+                        Log.d(TAG, "No cached location from the fused provider. Using persisted location.");
+                        callback.onLocationResult(loadPersistedLocation());
+                    }
+                }
+            })
+            .addOnFailureListener(new OnFailureListener() {
+                @Override
+                public void onFailure(@NonNull Exception e) {
+                    Log.e(TAG, "getLastLocation failed. Using persisted location.", e);
+                    callback.onLocationResult(loadPersistedLocation());
+                }
+            });
     }
 
     /**
@@ -47,11 +96,10 @@ public class LocationHelper {
      *
      * @param callback The callback to be invoked with the location result.
      */
+    @Override
     public void getCurrentLocation(final LocationResultCallback callback) {
         // First, check if location permissions have been granted.
-        if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED &&
-            ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
-            
+        if (!hasLocationPermission()) {
             Log.e(TAG, "Location permission not granted. Cannot fetch location.");
             // Immediately call the callback with a null location.
             callback.onLocationResult(null);
@@ -67,6 +115,7 @@ public class LocationHelper {
                     // This is the success case. The location object can be null if a location is not available.
                     if (location != null) {
                         Log.d(TAG, "Successfully retrieved location using getCurrentLocation.");
+                        persistLocation(location);
                         callback.onLocationResult(location);
                     } else {
                         Log.w(TAG, "getCurrentLocation returned a null location. This can happen if location is turned off.");
@@ -105,6 +154,7 @@ public class LocationHelper {
                 
                 if (locationResult.getLastLocation() != null) {
                     Log.d(TAG, "Successfully retrieved location using requestLocationUpdates.");
+                    persistLocation(locationResult.getLastLocation());
                     callback.onLocationResult(locationResult.getLastLocation());
                 } else {
                     Log.e(TAG, "LocationResult was null after fallback request.");
@@ -121,4 +171,36 @@ public class LocationHelper {
              callback.onLocationResult(null);
         }
     }
-               }
+
+    private boolean hasLocationPermission() {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED ||
+               ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Saves a fix so it can be used as the last known location after a restart.
+     */
+    private void persistLocation(Location location) {
+        locationPrefs.edit()
+                .putLong(KEY_LATITUDE, Double.doubleToRawLongBits(location.getLatitude()))
+                .putLong(KEY_LONGITUDE, Double.doubleToRawLongBits(location.getLongitude()))
+                .putFloat(KEY_ACCURACY, location.getAccuracy())
+                .putLong(KEY_TIME, location.getTime())
+                .apply();
+    }
+
+    /**
+     * @return The last persisted fix, or null if none was ever saved.
+     */
+    private Location loadPersistedLocation() {
+        if (!locationPrefs.contains(KEY_LATITUDE)) {
+            return null;
+        }
+        Location location = new Location(PERSISTED_PROVIDER);
+        location.setLatitude(Double.longBitsToDouble(locationPrefs.getLong(KEY_LATITUDE, 0)));
+        location.setLongitude(Double.longBitsToDouble(locationPrefs.getLong(KEY_LONGITUDE, 0)));
+        location.setAccuracy(locationPrefs.getFloat(KEY_ACCURACY, 0f));
+        location.setTime(locationPrefs.getLong(KEY_TIME, 0));
+        return location;
+    }
+}
@@ -0,0 +1,20 @@
+package com.safevoice.app.utils;
+
+/**
+ * Where the emergency flow gets its location from. LocationHelper is the production
+ * implementation; tests can inject their own, e.g. to simulate a slow GPS.
+ */
+public interface LocationSource {
+
+    /**
+     * Returns a cached location as fast as possible, without waiting for a new fix.
+     * The callback receives null if no location has ever been known.
+     */
+    void getLastKnownLocation(LocationHelper.LocationResultCallback callback);
+
+    /**
+     * Requests a fresh, high-accuracy fix. This can take many seconds without a GPS lock.
+     * The callback receives null if no fix could be obtained.
+     */
+    void getCurrentLocation(LocationHelper.LocationResultCallback callback);
+}
@@ -0,0 +1,199 @@
+package com.safevoice.app.utils;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Publishes the victim's location continuously while an emergency is active, so contacts
+ * can follow them after the first alert.
+ *
+ * Points are written to live_locations/{uid}/points in the Realtime Database. To save
+ * bandwidth, only movement beyond a distance threshold is published, and most points are
+ * small integer deltas (microdegrees, seconds) from the previous point, with a full keyframe
+ * every few points. To save battery, the update interval adapts to how fast the user moves.
+ * LocationStreamSubscriber decodes the stream on the receiving side.
+ */
+public class LocationStream {
+
+    private static final String TAG = "LocationStream";
+
+    static final String LIVE_LOCATIONS_NODE = "live_locations";
+    static final String POINTS_NODE = "points";
+    static final String ACTIVE_FIELD = "active";
+    static final String FIELD_KEYFRAME = "k";
+    static final String FIELD_LATITUDE = "la";
+    static final String FIELD_LONGITUDE = "lo";
+    static final String FIELD_TIME = "t";
+    static final String FIELD_ACCURACY = "ac";
+    static final double MICRODEGREES = 1e6;
+
+    private static final float MIN_PUBLISH_DISTANCE_METERS = 15f;
+    private static final int KEYFRAME_EVERY = 10;
+
+    // Adaptive update intervals.
+    private static final long INTERVAL_FAST_MS = 5000;     // Moving quickly, e.g. in a vehicle.
+    private static final long INTERVAL_NORMAL_MS = 15000;  // Walking.
+    private static final long INTERVAL_SLOW_MS = 60000;    // Not moving.
+    private static final float FAST_SPEED_METERS_PER_SECOND = 5f;
+    private static final int STATIONARY_SAMPLES_BEFORE_SLOWDOWN = 3;
+
+    private final Context context;
+    private final FusedLocationProviderClient fusedLocationClient;
+    private DatabaseReference streamRef;
+
+    private LocationCallback locationCallback;
+    private long currentIntervalMs = 0;
+
+    private Location lastPublished;
+    private long lastLatitudeE6;
+    private long lastLongitudeE6;
+    private long lastTimeSeconds;
+    private int pointsSinceKeyframe = 0;
+    private int stationarySamples = 0;
+
+    public LocationStream(Context context) {
+        this.context = context.getApplicationContext();
+        this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+    }
+
+    /**
+     * Starts publishing. Any points from a previous emergency are cleared in the same write.
+     *
+     * @param userUid The uid of the user in danger.
+     * @param initialLocation An already known location to publish first, or null.
+     */
+    public void start(String userUid, Location initialLocation) {
+        if (streamRef != null) {
+            return;
+        }
+        streamRef = FirebaseDatabase.getInstance().getReference(LIVE_LOCATIONS_NODE).child(userUid);
+
+        Map<String, Object> reset = new HashMap<>();
+        reset.put(ACTIVE_FIELD, true);
+        reset.put(POINTS_NODE, null);
+        reset.put("startedAt", ServerValue.TIMESTAMP);
+        streamRef.updateChildren(reset);
+
+        if (initialLocation != null) {
+            publish(initialLocation);
+        }
+        requestUpdates(INTERVAL_NORMAL_MS);
+        Log.i(TAG, "Live location stream started.");
+    }
+
+    /**
+     * Stops location updates and marks the stream as ended for subscribers.
+     */
+    public void stop() {
+        if (locationCallback != null) {
+            fusedLocationClient.removeLocationUpdates(locationCallback);
+            locationCallback = null;
+        }
+        if (streamRef != null) {
+            streamRef.child(ACTIVE_FIELD).setValue(false);
+            streamRef = null;
+        }
+        Log.i(TAG, "Live location stream stopped.");
+    }
+
+    private void onLocation(Location location) {
+        if (lastPublished != null) {
+            float threshold = Math.max(MIN_PUBLISH_DISTANCE_METERS, location.getAccuracy());
+            if (location.distanceTo(lastPublished) < threshold) {
+                stationarySamples++;
+                if (stationarySamples >= STATIONARY_SAMPLES_BEFORE_SLOWDOWN) {
+                    requestUpdates(INTERVAL_SLOW_MS);
+                }
+                return;
+            }
+        }
+        stationarySamples = 0;
+        boolean fast = location.hasSpeed() && location.getSpeed() >= FAST_SPEED_METERS_PER_SECOND;
+        requestUpdates(fast ? INTERVAL_FAST_MS : INTERVAL_NORMAL_MS);
+        publish(location);
+    }
+
+    private void publish(Location location) {
+        if (streamRef == null) {
+            return;
+        }
+        long latitudeE6 = Math.round(location.getLatitude() * MICRODEGREES);
+        long longitudeE6 = Math.round(location.getLongitude() * MICRODEGREES);
+        long timeSeconds = location.getTime() / 1000;
+
+        Map<String, Object> point = new HashMap<>();
+        if (lastPublished == null || pointsSinceKeyframe >= KEYFRAME_EVERY) {
+            point.put(FIELD_KEYFRAME, true);
+            point.put(FIELD_LATITUDE, latitudeE6);
+            point.put(FIELD_LONGITUDE, longitudeE6);
+            point.put(FIELD_TIME, timeSeconds);
+            pointsSinceKeyframe = 0;
+        } else {
+            point.put(FIELD_LATITUDE, latitudeE6 - lastLatitudeE6);
+            point.put(FIELD_LONGITUDE, longitudeE6 - lastLongitudeE6);
+            point.put(FIELD_TIME, timeSeconds - lastTimeSeconds);
+            pointsSinceKeyframe++;
+        }
+        if (location.hasAccuracy()) {
+            point.put(FIELD_ACCURACY, Math.round(location.getAccuracy()));
+        }
+        streamRef.child(POINTS_NODE).push().setValue(point);
+
+        lastPublished = location;
+        lastLatitudeE6 = latitudeE6;
+        lastLongitudeE6 = longitudeE6;
+        lastTimeSeconds = timeSeconds;
+    }
+
+    /**
+     * (Re)subscribes to fused location updates at the given interval. Does nothing if the
+     * interval is unchanged.
+     */
+    private void requestUpdates(long intervalMs) {
+        if (intervalMs == currentIntervalMs || streamRef == null) {
+            return;
+        }
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "Location permission not granted. Cannot stream location.");
+            return;
+        }
+        if (locationCallback != null) {
+            fusedLocationClient.removeLocationUpdates(locationCallback);
+        }
+        locationCallback = new LocationCallback() {
+            @Override
+            public void onLocationResult(@NonNull LocationResult locationResult) {
+                Location location = locationResult.getLastLocation();
+                if (location != null) {
+                    onLocation(location);
+                }
+            }
+        };
+        LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, intervalMs)
+                .setMinUpdateIntervalMillis(intervalMs / 2)
+                .build();
+        fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
+        currentIntervalMs = intervalMs;
+        Log.d(TAG, "Location update interval set to " + intervalMs + " ms.");
+    }
+}
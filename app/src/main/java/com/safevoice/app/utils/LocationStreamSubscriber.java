@@ -0,0 +1,132 @@
+package com.safevoice.app.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+/**
+ * Follows another user's live location stream published by LocationStream.
+ * Points are delivered in order, so the delta-encoded positions are rebuilt by adding
+ * each delta to the last absolute position, starting over at every keyframe.
+ */
+public class LocationStreamSubscriber {
+
+    private static final String TAG = "LocationStreamSubscriber";
+
+    /**
+     * Callbacks delivered on the main thread.
+     */
+    public interface Listener {
+        void onLocationUpdate(double latitude, double longitude, long timeMs, int accuracyMeters);
+        void onStreamEnded();
+    }
+
+    private DatabaseReference streamRef;
+    private ChildEventListener pointsListener;
+    private ValueEventListener activeListener;
+
+    private boolean hasKeyframe = false;
+    private long latitudeE6;
+    private long longitudeE6;
+    private long timeSeconds;
+
+    /**
+     * Starts following a user's stream. Points already published are replayed first.
+     *
+     * @param userUid  The uid of the user in danger.
+     * @param listener Receives each decoded position.
+     */
+    public void subscribe(String userUid, final Listener listener) {
+        unsubscribe();
+        streamRef = FirebaseDatabase.getInstance().getReference(LocationStream.LIVE_LOCATIONS_NODE).child(userUid);
+        hasKeyframe = false;
+
+        pointsListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                Long latitude = snapshot.child(LocationStream.FIELD_LATITUDE).getValue(Long.class);
+                Long longitude = snapshot.child(LocationStream.FIELD_LONGITUDE).getValue(Long.class);
+                Long time = snapshot.child(LocationStream.FIELD_TIME).getValue(Long.class);
+                Long accuracy = snapshot.child(LocationStream.FIELD_ACCURACY).getValue(Long.class);
+                if (latitude == null || longitude == null || time == null) {
+                    return;
+                }
+                if (snapshot.hasChild(LocationStream.FIELD_KEYFRAME)) {
+                    latitudeE6 = latitude;
+                    longitudeE6 = longitude;
+                    timeSeconds = time;
+                    hasKeyframe = true;
+                } else if (hasKeyframe) {
+                    latitudeE6 += latitude;
+                    longitudeE6 += longitude;
+                    timeSeconds += time;
+                } else {
+                    // A delta without a preceding keyframe cannot be decoded.
+                    return;
+                }
+                listener.onLocationUpdate(latitudeE6 / LocationStream.MICRODEGREES, longitudeE6 / LocationStream.MICRODEGREES,
+                        timeSeconds * 1000, accuracy != null ? accuracy.intValue() : -1);
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {}
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                // The publisher cleared the stream for a new emergency; wait for its first keyframe.
+                hasKeyframe = false;
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {}
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Live location listener cancelled", error.toException());
+            }
+        };
+
+        activeListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                Boolean active = snapshot.getValue(Boolean.class);
+                if (active != null && !active) {
+                    listener.onStreamEnded();
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Live location status listener cancelled", error.toException());
+            }
+        };
+
+        streamRef.child(LocationStream.POINTS_NODE).addChildEventListener(pointsListener);
+        streamRef.child(LocationStream.ACTIVE_FIELD).addValueEventListener(activeListener);
+    }
+
+    /**
+     * Stops following the stream.
+     */
+    public void unsubscribe() {
+        if (streamRef != null) {
+            if (pointsListener != null) {
+                streamRef.child(LocationStream.POINTS_NODE).removeEventListener(pointsListener);
+            }
+            if (activeListener != null) {
+                streamRef.child(LocationStream.ACTIVE_FIELD).removeEventListener(activeListener);
+            }
+        }
+        streamRef = null;
+        pointsListener = null;
+        activeListener = null;
+    }
+}
@@ -0,0 +1,89 @@
+package com.safevoice.app.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Settles the name printed on an ID card from OCR results of successive frames.
+ *
+ * A single frame's OCR is noisy (a misread letter, a line picked up from the card's
+ * header), so each frame only casts one vote for the name-like line it contains. A name is
+ * accepted once it has enough votes and clearly leads every other candidate. Not
+ * thread-safe; feed it from one thread.
+ */
+public class NameVoter {
+
+    // Two or three capitalized words, optionally followed by a period (e.g. "John A. Smith").
+    private static final Pattern NAME_PATTERN = Pattern.compile("(?:[A-Z][a-zA-Z]*\\.? ?){2,3}");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int MAX_NAME_LENGTH = 30;
+
+    private final int votesToSettle;
+    private final int leadToSettle;
+    private final Map<String, Integer> votes = new HashMap<>();
+    private String settledName = null;
+
+    /**
+     * @param votesToSettle The votes a name needs before it is accepted.
+     * @param leadToSettle  How many votes it must be ahead of the runner-up.
+     */
+    public NameVoter(int votesToSettle, int leadToSettle) {
+        this.votesToSettle = votesToSettle;
+        this.leadToSettle = leadToSettle;
+    }
+
+    /**
+     * @return Whether the line looks like a person's name.
+     */
+    public static boolean isNameLike(String line) {
+        return line.length() < MAX_NAME_LENGTH && NAME_PATTERN.matcher(line).matches();
+    }
+
+    /**
+     * Votes for the first name-like line of one frame.
+     *
+     * @param lines The frame's OCR lines in reading order.
+     * @return The settled name, or null while the vote is still open.
+     */
+    public String offerFrame(Iterable<String> lines) {
+        if (settledName != null) {
+            return settledName;
+        }
+        for (String line : lines) {
+            // Normalize first, so a line OCR spaced oddly still counts as the same name.
+            String normalized = WHITESPACE.matcher(line.trim()).replaceAll(" ");
+            if (isNameLike(normalized)) {
+                vote(normalized);
+                break;
+            }
+        }
+        return settledName;
+    }
+
+    /**
+     * @return The settled name, or null while the vote is still open.
+     */
+    public String getSettledName() {
+        return settledName;
+    }
+
+    private void vote(String candidate) {
+        Integer previous = votes.get(candidate);
+        int count = previous == null ? 1 : previous + 1;
+        votes.put(candidate, count);
+        if (count < votesToSettle) {
+            return;
+        }
+
+        int runnerUp = 0;
+        for (Map.Entry<String, Integer> entry : votes.entrySet()) {
+            if (!entry.getKey().equals(candidate) && entry.getValue() > runnerUp) {
+                runnerUp = entry.getValue();
+            }
+        }
+        if (count - runnerUp >= leadToSettle) {
+            settledName = candidate;
+        }
+    }
+}
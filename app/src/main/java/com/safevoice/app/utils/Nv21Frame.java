@@ -0,0 +1,92 @@
+package com.safevoice.app.utils;
+
+import android.media.Image;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A camera frame copied into a pooled NV21 array, so the camera's ImageProxy can be closed
+ * as soon as the copy is made while detection and inference continue on other threads.
+ *
+ * Call release() exactly once when every stage is done with the frame; the array goes back
+ * to ByteArrayPool.shared() for the next frame.
+ */
+public final class Nv21Frame {
+
+    private final byte[] data;
+    private final int width;
+    private final int height;
+    private final int rotationDegrees;
+    private final long timestampNanos;
+
+    private Nv21Frame(byte[] data, int width, int height, int rotationDegrees, long timestampNanos) {
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = rotationDegrees;
+        this.timestampNanos = timestampNanos;
+    }
+
+    /**
+     * Copies a YUV_420_888 image.
+     *
+     * @param rotationDegrees Clockwise rotation that makes the frame upright.
+     */
+    public static Nv21Frame copyOf(Image image, int rotationDegrees) {
+        return new Nv21Frame(ImageUtils.toNv21(image), image.getWidth(), image.getHeight(),
+                rotationDegrees, System.nanoTime());
+    }
+
+    /**
+     * @return An ML Kit image backed by this frame's array, without copying it.
+     */
+    public InputImage toInputImage() {
+        return InputImage.fromByteArray(data, width, height, rotationDegrees, InputImage.IMAGE_FORMAT_NV21);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    /**
+     * @return When the frame was copied, in System.nanoTime() units.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * @return The luma plane: row stride getWidth(), pixel stride 1.
+     */
+    public ByteBuffer getYPlane() {
+        return ByteBuffer.wrap(data, 0, width * height).slice();
+    }
+
+    /**
+     * @return The U samples of the interleaved chroma: row stride getWidth(), pixel stride 2.
+     */
+    public ByteBuffer getUPlane() {
+        return ByteBuffer.wrap(data, width * height + 1, data.length - width * height - 1).slice();
+    }
+
+    /**
+     * @return The V samples of the interleaved chroma: row stride getWidth(), pixel stride 2.
+     */
+    public ByteBuffer getVPlane() {
+        return ByteBuffer.wrap(data, width * height, data.length - width * height).slice();
+    }
+
+    public void release() {
+        ByteArrayPool.shared().release(data);
+    }
+}
@@ -0,0 +1,293 @@
+package com.safevoice.app.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.safevoice.app.models.Contact;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Singleton on-device cache of the FCM token and display name of the signed-in user and
+ * every in-app contact, so the emergency path can send FCM alerts without any Firestore reads.
+ *
+ * The cache is persisted in SharedPreferences so it survives process death, and is kept
+ * fresh in the background by one Firestore snapshot listener per users/{uid} document.
+ * Call sync() after sign-in; after that the directory follows contact changes on its own.
+ *
+ * The cache belongs to the user who filled it. It is wiped on sign-out and whenever a
+ * different user is found signed in, including across process restarts.
+ */
+public class RecipientDirectory implements ContactsManager.ContactsObserver {
+
+    private static final String TAG = "RecipientDirectory";
+    private static final String PREFS_NAME = "SafeVoiceRecipientPrefs";
+    private static final String KEY_TOKEN_PREFIX = "token_";
+    private static final String KEY_NAME_PREFIX = "name_";
+    private static final String KEY_OWNER_UID = "owner_uid";
+
+    private static RecipientDirectory instance;
+
+    private final Context context;
+    private final SharedPreferences sharedPreferences;
+    // Read concurrently by the alert dispatcher's workers.
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    // Snapshot listeners by uid. Only touched on the main thread.
+    private final Map<String, ListenerRegistration> listeners = new HashMap<>();
+    private boolean observingContacts = false;
+
+    private final FirebaseAuth.AuthStateListener authStateListener = new FirebaseAuth.AuthStateListener() {
+        @Override
+        public void onAuthStateChanged(@NonNull FirebaseAuth auth) {
+            FirebaseUser user = auth.getCurrentUser();
+            if (!checkOwner(user)) {
+                return;
+            }
+            clearListeners();
+            if (user != null) {
+                onContactsChanged(ContactsManager.getInstance(context).getSnapshot());
+            }
+        }
+    };
+
+    private RecipientDirectory(Context context) {
+        this.context = context.getApplicationContext();
+        sharedPreferences = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (Map.Entry<String, ?> entry : sharedPreferences.getAll().entrySet()) {
+            if (!(entry.getValue() instanceof String)) {
+                continue;
+            }
+            String key = entry.getKey();
+            if (key.startsWith(KEY_TOKEN_PREFIX)) {
+                tokens.put(key.substring(KEY_TOKEN_PREFIX.length()), (String) entry.getValue());
+            } else if (key.startsWith(KEY_NAME_PREFIX)) {
+                names.put(key.substring(KEY_NAME_PREFIX.length()), (String) entry.getValue());
+            }
+        }
+        checkOwner(FirebaseAuth.getInstance().getCurrentUser());
+    }
+
+    /**
+     * Gets the single instance of the RecipientDirectory.
+     *
+     * @param context Any context; the application context is kept.
+     * @return The singleton instance of RecipientDirectory.
+     */
+    public static synchronized RecipientDirectory getInstance(Context context) {
+        if (instance == null) {
+            instance = new RecipientDirectory(context);
+        }
+        return instance;
+    }
+
+    /**
+     * @return The cached FCM token for a user, or null if it is not known yet.
+     */
+    @Nullable
+    public String getToken(String uid) {
+        return uid != null ? tokens.get(uid) : null;
+    }
+
+    /**
+     * @return The cached verified name for a user, or null if it is not known yet.
+     */
+    @Nullable
+    public String getDisplayName(String uid) {
+        return uid != null ? names.get(uid) : null;
+    }
+
+    /**
+     * Reads a user's token straight from Firestore, for a contact whose token is not cached
+     * yet, and caches what it finds. Blocks, so it must not be called on the main thread.
+     *
+     * @return The token, or null if the user's profile has none.
+     * @throws Exception If the read fails or does not finish within timeoutMs.
+     */
+    @Nullable
+    public String fetchToken(@NonNull String uid, long timeoutMs) throws Exception {
+        DocumentSnapshot snapshot = Tasks.await(FirebaseFirestore.getInstance().collection("users").document(uid).get(),
+                timeoutMs, TimeUnit.MILLISECONDS);
+        if (snapshot == null || !snapshot.exists()) {
+            return null;
+        }
+        String token = snapshot.getString("fcmToken");
+        store(uid, token, snapshot.getString("verifiedName"));
+        return token;
+    }
+
+    /**
+     * Attaches a snapshot listener for the signed-in user and every in-app contact, and
+     * detaches the ones that are no longer needed. Cached entries of removed contacts are
+     * dropped. Must be called on the main thread.
+     */
+    public void sync() {
+        if (!observingContacts) {
+            // Delivers the current snapshot right away, which runs the sync below.
+            observingContacts = true;
+            FirebaseAuth.getInstance().addAuthStateListener(authStateListener);
+            ContactsManager.getInstance(context).addObserver(this);
+        } else {
+            onContactsChanged(ContactsManager.getInstance(context).getSnapshot());
+        }
+    }
+
+    @Override
+    public void onContactsChanged(ContactsSnapshot snapshot) {
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser == null) {
+            clearListeners();
+            return;
+        }
+
+        Set<String> wanted = new HashSet<>();
+        wanted.add(currentUser.getUid());
+        Contact primaryContact = snapshot.getPrimaryContact();
+        if (primaryContact != null && primaryContact.getUid() != null) {
+            wanted.add(primaryContact.getUid());
+        }
+        for (Contact contact : snapshot.getPriorityContacts()) {
+            if (contact.getUid() != null) {
+                wanted.add(contact.getUid());
+            }
+        }
+
+        Iterator<Map.Entry<String, ListenerRegistration>> it = listeners.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ListenerRegistration> entry = it.next();
+            if (!wanted.contains(entry.getKey())) {
+                entry.getValue().remove();
+                forget(entry.getKey());
+                it.remove();
+            }
+        }
+        for (String uid : wanted) {
+            if (!listeners.containsKey(uid)) {
+                listeners.put(uid, listenTo(uid));
+            }
+        }
+
+        // Make sure contacts can reach this device even if onNewToken fired before sign-in.
+        FirebaseMessaging.getInstance().getToken().addOnSuccessListener(new OnSuccessListener<String>() {
+            @Override
+            public void onSuccess(String token) {
+                publishOwnToken(token);
+            }
+        });
+        Log.d(TAG, "Syncing " + listeners.size() + " recipient(s).");
+    }
+
+    /**
+     * Stores this device's FCM token on the signed-in user's profile, so contacts' caches
+     * pick it up through their snapshot listeners. Called from FirebaseAlertService.onNewToken.
+     */
+    public void publishOwnToken(String token) {
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser == null || token == null) {
+            return;
+        }
+        if (token.equals(tokens.get(currentUser.getUid()))) {
+            return;
+        }
+        Map<String, Object> update = new HashMap<>();
+        update.put("fcmToken", token);
+        FirebaseFirestore.getInstance().collection("users").document(currentUser.getUid())
+                .set(update, SetOptions.merge());
+        store(currentUser.getUid(), token, names.get(currentUser.getUid()));
+    }
+
+    private ListenerRegistration listenTo(final String uid) {
+        return FirebaseFirestore.getInstance().collection("users").document(uid)
+                .addSnapshotListener(new EventListener<DocumentSnapshot>() {
+                    @Override
+                    public void onEvent(@Nullable DocumentSnapshot snapshot, @Nullable FirebaseFirestoreException e) {
+                        if (e != null) {
+                            Log.w(TAG, "Recipient listener failed for " + uid, e);
+                            return;
+                        }
+                        if (snapshot != null && snapshot.exists()) {
+                            store(uid, snapshot.getString("fcmToken"), snapshot.getString("verifiedName"));
+                        }
+                    }
+                });
+    }
+
+    private void store(@NonNull String uid, @Nullable String token, @Nullable String name) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        if (token != null) {
+            tokens.put(uid, token);
+            editor.putString(KEY_TOKEN_PREFIX + uid, token);
+        } else {
+            tokens.remove(uid);
+            editor.remove(KEY_TOKEN_PREFIX + uid);
+        }
+        if (name != null) {
+            names.put(uid, name);
+            editor.putString(KEY_NAME_PREFIX + uid, name);
+        } else {
+            names.remove(uid);
+            editor.remove(KEY_NAME_PREFIX + uid);
+        }
+        editor.apply();
+    }
+
+    private void forget(String uid) {
+        tokens.remove(uid);
+        names.remove(uid);
+        sharedPreferences.edit()
+                .remove(KEY_TOKEN_PREFIX + uid)
+                .remove(KEY_NAME_PREFIX + uid)
+                .apply();
+    }
+
+    /**
+     * Wipes the cache if it was filled for a different user than the one signed in now.
+     *
+     * @return true if the cache was wiped.
+     */
+    private synchronized boolean checkOwner(@Nullable FirebaseUser user) {
+        String uid = (user != null) ? user.getUid() : null;
+        String owner = sharedPreferences.getString(KEY_OWNER_UID, null);
+        if (uid != null ? uid.equals(owner) : owner == null && tokens.isEmpty() && names.isEmpty()) {
+            return false;
+        }
+        Log.i(TAG, (uid == null ? "Signed out" : "Signed-in user changed") + ". Clearing cached recipients.");
+        tokens.clear();
+        names.clear();
+        SharedPreferences.Editor editor = sharedPreferences.edit().clear();
+        if (uid != null) {
+            editor.putString(KEY_OWNER_UID, uid);
+        }
+        editor.apply();
+        return true;
+    }
+
+    private void clearListeners() {
+        for (ListenerRegistration registration : listeners.values()) {
+            registration.remove();
+        }
+        listeners.clear();
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.safevoice.app.utils;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Crops, rotates, resizes and normalizes a face straight from YUV_420_888 planes into a
+ * model's float input, with no intermediate JPEG or Bitmap.
+ *
+ * The face box is given in upright image coordinates, as ML Kit reports it when the
+ * InputImage carries the frame's rotation. Each output pixel is mapped back to sensor
+ * coordinates, Y and chroma are sampled bilinearly honoring row and pixel strides, and the
+ * result is converted with full-range BT.601 (the same matrix YuvImage uses for JPEG).
+ * Output is interleaved RGB, row by row, either normalized from [0, 255] to [-1, 1] for float
+ * models or mapped through a caller's lookup table for quantized ones.
+ *
+ * An instance keeps no per-frame state, but is meant to be owned by a single analyzer.
+ */
+public class YuvFaceCropper {
+
+    // Maps a [0, 255] channel value to [-1, 1] as required by many face models.
+    private static final float[] NORMALIZED = new float[256];
+    static {
+        for (int i = 0; i < NORMALIZED.length; i++) {
+            NORMALIZED[i] = (i - 127.5f) / 128.0f;
+        }
+    }
+
+    private final int outWidth;
+    private final int outHeight;
+    private final Rect box = new Rect();
+
+    /**
+     * @param outWidth  Width of the model input in pixels.
+     * @param outHeight Height of the model input in pixels.
+     */
+    public YuvFaceCropper(int outWidth, int outHeight) {
+        this.outWidth = outWidth;
+        this.outHeight = outHeight;
+    }
+
+    /**
+     * @return The number of floats crop() writes.
+     */
+    public int getOutputLength() {
+        return outWidth * outHeight * 3;
+    }
+
+    /**
+     * Crops a face from a CameraX frame.
+     *
+     * @param imageProxy A YUV_420_888 frame.
+     * @param faceBox    The face in upright coordinates.
+     * @param out        Receives getOutputLength() floats.
+     * @return false if the frame is not YUV_420_888 or the box lies outside it.
+     */
+    public boolean crop(ImageProxy imageProxy, Rect faceBox, float[] out) {
+        if (imageProxy.getFormat() != ImageFormat.YUV_420_888) {
+            return false;
+        }
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        ImageProxy.PlaneProxy y = planes[0];
+        ImageProxy.PlaneProxy u = planes[1];
+        ImageProxy.PlaneProxy v = planes[2];
+        return crop(y.getBuffer(), y.getRowStride(), y.getPixelStride(),
+                u.getBuffer(), v.getBuffer(), u.getRowStride(), u.getPixelStride(),
+                imageProxy.getWidth(), imageProxy.getHeight(),
+                imageProxy.getImageInfo().getRotationDegrees(), faceBox, out);
+    }
+
+    /**
+     * Crops a face from a CameraX frame into a quantized model input.
+     *
+     * @param lookup Maps each [0, 255] channel value to the model's quantized input byte.
+     * @param out    Receives getOutputLength() bytes.
+     * @return false if the frame is not YUV_420_888 or the box lies outside it.
+     */
+    public boolean crop(ImageProxy imageProxy, Rect faceBox, byte[] lookup, byte[] out) {
+        if (imageProxy.getFormat() != ImageFormat.YUV_420_888) {
+            return false;
+        }
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        ImageProxy.PlaneProxy y = planes[0];
+        ImageProxy.PlaneProxy u = planes[1];
+        ImageProxy.PlaneProxy v = planes[2];
+        return crop(y.getBuffer(), y.getRowStride(), y.getPixelStride(),
+                u.getBuffer(), v.getBuffer(), u.getRowStride(), u.getPixelStride(),
+                imageProxy.getWidth(), imageProxy.getHeight(),
+                imageProxy.getImageInfo().getRotationDegrees(), faceBox, null, lookup, out);
+    }
+
+    /**
+     * Crops a face from a frame already copied out of the camera.
+     *
+     * @param faceBox The face in upright coordinates.
+     * @param out     Receives getOutputLength() floats.
+     * @return false if the box lies outside the frame.
+     */
+    public boolean crop(Nv21Frame frame, Rect faceBox, float[] out) {
+        int width = frame.getWidth();
+        return crop(frame.getYPlane(), width, 1, frame.getUPlane(), frame.getVPlane(), width, 2,
+                width, frame.getHeight(), frame.getRotationDegrees(), faceBox, out);
+    }
+
+    /**
+     * Crops a face from a frame already copied out of the camera into a quantized model input.
+     *
+     * @param faceBox The face in upright coordinates.
+     * @param lookup  Maps each [0, 255] channel value to the model's quantized input byte.
+     * @param out     Receives getOutputLength() bytes.
+     * @return false if the box lies outside the frame.
+     */
+    public boolean crop(Nv21Frame frame, Rect faceBox, byte[] lookup, byte[] out) {
+        int width = frame.getWidth();
+        return crop(frame.getYPlane(), width, 1, frame.getUPlane(), frame.getVPlane(), width, 2,
+                width, frame.getHeight(), frame.getRotationDegrees(), faceBox, null, lookup, out);
+    }
+
+    /**
+     * Crops a face from raw 4:2:0 planes. Buffers are read with absolute gets, so their
+     * positions are left untouched; index 0 of each buffer must be the plane's first sample.
+     *
+     * @param width           Sensor width of the frame.
+     * @param height          Sensor height of the frame.
+     * @param rotationDegrees Clockwise rotation that makes the frame upright: 0, 90, 180 or 270.
+     * @param faceBox         The face in upright coordinates.
+     * @param out             Receives getOutputLength() floats.
+     * @return false if the box lies outside the frame.
+     */
+    public boolean crop(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                        int width, int height, int rotationDegrees, Rect faceBox, float[] out) {
+        return crop(yPlane, yRowStride, yPixelStride, uPlane, vPlane, uvRowStride, uvPixelStride,
+                width, height, rotationDegrees, faceBox, out, null, null);
+    }
+
+    /**
+     * Writes either normalized floats to floatOut, or bytes through byteLookup to byteOut.
+     */
+    private boolean crop(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                         ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                         int width, int height, int rotationDegrees, Rect faceBox,
+                         float[] floatOut, byte[] byteLookup, byte[] byteOut) {
+        boolean sideways = rotationDegrees == 90 || rotationDegrees == 270;
+        int uprightWidth = sideways ? height : width;
+        int uprightHeight = sideways ? width : height;
+        box.set(faceBox);
+        if (!box.intersect(0, 0, uprightWidth, uprightHeight) || box.isEmpty()) {
+            return false;
+        }
+
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        float scaleX = box.width() / (float) outWidth;
+        float scaleY = box.height() / (float) outHeight;
+
+        int o = 0;
+        for (int oy = 0; oy < outHeight; oy++) {
+            // Sample at pixel centres, like a filtered bitmap scale.
+            float uy = box.top + (oy + 0.5f) * scaleY - 0.5f;
+            for (int ox = 0; ox < outWidth; ox++) {
+                float ux = box.left + (ox + 0.5f) * scaleX - 0.5f;
+
+                float sx;
+                float sy;
+                switch (rotationDegrees) {
+                    case 90:
+                        sx = uy;
+                        sy = height - 1 - ux;
+                        break;
+                    case 180:
+                        sx = width - 1 - ux;
+                        sy = height - 1 - uy;
+                        break;
+                    case 270:
+                        sx = width - 1 - uy;
+                        sy = ux;
+                        break;
+                    default:
+                        sx = ux;
+                        sy = uy;
+                        break;
+                }
+
+                float yValue = sample(yPlane, yRowStride, yPixelStride, sx, sy, width, height);
+                float cx = (sx + 0.5f) / 2f - 0.5f;
+                float cy = (sy + 0.5f) / 2f - 0.5f;
+                float uValue = sample(uPlane, uvRowStride, uvPixelStride, cx, cy, chromaWidth, chromaHeight) - 128f;
+                float vValue = sample(vPlane, uvRowStride, uvPixelStride, cx, cy, chromaWidth, chromaHeight) - 128f;
+
+                int r = clamp(yValue + 1.402f * vValue);
+                int g = clamp(yValue - 0.344136f * uValue - 0.714136f * vValue);
+                int b = clamp(yValue + 1.772f * uValue);
+                if (floatOut != null) {
+                    floatOut[o++] = NORMALIZED[r];
+                    floatOut[o++] = NORMALIZED[g];
+                    floatOut[o++] = NORMALIZED[b];
+                } else {
+                    byteOut[o++] = byteLookup[r];
+                    byteOut[o++] = byteLookup[g];
+                    byteOut[o++] = byteLookup[b];
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bilinearly samples one plane at a fractional position, clamped to the plane's edges.
+     */
+    private static float sample(ByteBuffer plane, int rowStride, int pixelStride, float x, float y, int planeWidth, int planeHeight) {
+        if (x < 0) x = 0;
+        if (y < 0) y = 0;
+        if (x > planeWidth - 1) x = planeWidth - 1;
+        if (y > planeHeight - 1) y = planeHeight - 1;
+
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, planeWidth - 1);
+        int y1 = Math.min(y0 + 1, planeHeight - 1);
+        float fx = x - x0;
+        float fy = y - y0;
+
+        int row0 = y0 * rowStride;
+        int row1 = y1 * rowStride;
+        float p00 = plane.get(row0 + x0 * pixelStride) & 0xFF;
+        float p10 = plane.get(row0 + x1 * pixelStride) & 0xFF;
+        float p01 = plane.get(row1 + x0 * pixelStride) & 0xFF;
+        float p11 = plane.get(row1 + x1 * pixelStride) & 0xFF;
+
+        float top = p00 + (p10 - p00) * fx;
+        float bottom = p01 + (p11 - p01) * fx;
+        return top + (bottom - top) * fy;
+    }
+
+    private static int clamp(float value) {
+        int rounded = Math.round(value);
+        return rounded < 0 ? 0 : (rounded > 255 ? 255 : rounded);
+    }
+}
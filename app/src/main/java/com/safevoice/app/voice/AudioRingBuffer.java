@@ -0,0 +1,87 @@
+package com.safevoice.app.voice;
+
+/**
+ * A fixed-size circular buffer of 16-bit PCM samples.
+ * The audio thread writes every frame it reads from AudioRecord into it, and the
+ * keyword spotter copies out the most recent window without any allocation.
+ * Only one thread writes and reads, so no synchronization is needed.
+ */
+public class AudioRingBuffer {
+
+    private final short[] samples;
+    private int writePosition = 0;
+    private long totalWritten = 0;
+
+    public AudioRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.samples = new short[capacity];
+    }
+
+    public int getCapacity() {
+        return samples.length;
+    }
+
+    /**
+     * @return The total number of samples ever written, used to time detections.
+     */
+    public long getTotalWritten() {
+        return totalWritten;
+    }
+
+    /**
+     * @return True once the buffer holds at least {@code count} samples.
+     */
+    public boolean hasAtLeast(int count) {
+        return totalWritten >= count;
+    }
+
+    /**
+     * Appends samples, overwriting the oldest ones once the buffer is full.
+     */
+    public void write(short[] source, int offset, int length) {
+        int capacity = samples.length;
+        if (length >= capacity) {
+            // Only the newest 'capacity' samples can survive.
+            offset += length - capacity;
+            totalWritten += length - capacity;
+            length = capacity;
+        }
+        int firstChunk = Math.min(length, capacity - writePosition);
+        System.arraycopy(source, offset, samples, writePosition, firstChunk);
+        int secondChunk = length - firstChunk;
+        if (secondChunk > 0) {
+            System.arraycopy(source, offset + firstChunk, samples, 0, secondChunk);
+        }
+        writePosition = (writePosition + length) % capacity;
+        totalWritten += length;
+    }
+
+    /**
+     * Copies the most recent {@code length} samples into {@code destination}, converted to
+     * floats in the range [-1, 1], oldest sample first.
+     */
+    public void readLatest(float[] destination, int length) {
+        int capacity = samples.length;
+        if (length > capacity) {
+            throw new IllegalArgumentException("Requested window is larger than the buffer.");
+        }
+        int start = writePosition - length;
+        if (start < 0) {
+            start += capacity;
+        }
+        for (int i = 0; i < length; i++) {
+            int index = start + i;
+            if (index >= capacity) {
+                index -= capacity;
+            }
+            destination[i] = samples[index] / 32768f;
+        }
+    }
+
+    public void clear() {
+        writePosition = 0;
+        totalWritten = 0;
+    }
+}
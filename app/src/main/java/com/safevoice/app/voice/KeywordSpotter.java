@@ -0,0 +1,32 @@
+package com.safevoice.app.voice;
+
+/**
+ * An on-device model that scores a window of audio for the trigger phrase.
+ * Implementations must not allocate per call; the streaming detector invokes
+ * {@link #score(float[])} several times per second for as long as the service runs.
+ */
+public interface KeywordSpotter {
+
+    /**
+     * @return The sample rate (Hz) the model was trained on.
+     */
+    int getSampleRate();
+
+    /**
+     * @return The number of samples in one scoring window.
+     */
+    int getWindowSamples();
+
+    /**
+     * Scores one window of mono audio.
+     *
+     * @param window Samples in [-1, 1], exactly {@link #getWindowSamples()} long.
+     * @return The probability (0..1) that the window contains the trigger phrase.
+     */
+    float score(float[] window);
+
+    /**
+     * Releases the model.
+     */
+    void close();
+}
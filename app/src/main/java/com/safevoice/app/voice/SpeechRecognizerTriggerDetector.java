@@ -0,0 +1,189 @@
+package com.safevoice.app.voice;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * The fallback TriggerDetector that uses Android's built-in SpeechRecognizer.
+ * To achieve continuous listening, it restarts the recognizer every time it stops
+ * (either on a result or an error). Partial hypotheses are matched as they arrive, so the
+ * trigger fires without waiting for the recognizer's end-of-speech timeout.
+ * Must be created and used on the main thread.
+ */
+public class SpeechRecognizerTriggerDetector implements TriggerDetector {
+
+    private static final String TAG = "SpeechRecognizerDetector";
+
+    private final Context context;
+    private final Listener listener;
+    private final TriggerLatencyRecorder latencyRecorder;
+    private final TriggerPhraseMatcher phraseMatcher;
+    private SpeechRecognizer speechRecognizer;
+    private Intent speechRecognizerIntent;
+    private boolean running = false;
+
+    // Per-utterance state. Reset whenever the recognizer starts a new session.
+    private boolean triggeredThisUtterance = false;
+    private boolean suspectedThisUtterance = false;
+    private long speechStartElapsedMs = -1;
+
+    public SpeechRecognizerTriggerDetector(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        this.latencyRecorder = new TriggerLatencyRecorder(context);
+        this.phraseMatcher = TriggerPhraseMatcher.fromSettings(context);
+    }
+
+    /**
+     * @return true if the device has a speech recognition service this detector can use.
+     */
+    public static boolean isAvailable(Context context) {
+        return SpeechRecognizer.isRecognitionAvailable(context);
+    }
+
+    @Override
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        // Initialize the SpeechRecognizer
+        speechRecognizer = SpeechRecognizer.createSpeechRecognizer(context);
+        speechRecognizer.setRecognitionListener(new VoiceRecognitionListener());
+
+        // Set up the intent for the speech recognizer
+        speechRecognizerIntent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+        speechRecognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
+        speechRecognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, Locale.getDefault());
+        speechRecognizerIntent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
+
+        startListening();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (speechRecognizer != null) {
+            speechRecognizer.stopListening();
+            speechRecognizer.destroy();
+            speechRecognizer = null;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "speech_recognizer";
+    }
+
+    private void startListening() {
+        if (running && speechRecognizer != null) {
+            triggeredThisUtterance = false;
+            suspectedThisUtterance = false;
+            speechStartElapsedMs = -1;
+            speechRecognizer.startListening(speechRecognizerIntent);
+            Log.d(TAG, "Speech recognizer started listening...");
+        }
+    }
+
+    /**
+     * Scans the hypotheses in a results bundle for the trigger phrase and fires the listener
+     * at most once per utterance, so a partial hit followed by the same final result
+     * cannot raise two alerts.
+     *
+     * @return true if the trigger has fired for the current utterance.
+     */
+    private boolean checkForTrigger(Bundle results, String source) {
+        if (triggeredThisUtterance) {
+            return true;
+        }
+        ArrayList<String> matches = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+        if (matches == null) {
+            return false;
+        }
+        for (String result : matches) {
+            Log.d(TAG, "Heard (" + source + "): " + result);
+            // Check if the recognized text contains any configured trigger phrase. A partial
+            // result may end mid-word, so it is matched without edits in the last word.
+            String phrase = TriggerLatencyRecorder.SOURCE_PARTIAL.equals(source)
+                    ? phraseMatcher.matchPartial(result) : phraseMatcher.match(result);
+            if (phrase != null) {
+                Log.i(TAG, "TRIGGER PHRASE '" + phrase + "' DETECTED from " + source + " results!");
+                triggeredThisUtterance = true;
+                if (speechStartElapsedMs >= 0) {
+                    latencyRecorder.record(source, SystemClock.elapsedRealtime() - speechStartElapsedMs);
+                }
+                // Stop listening after a successful trigger to prevent multiple alerts.
+                running = false;
+                listener.onTriggerDetected();
+                return true;
+            }
+        }
+        if (!suspectedThisUtterance) {
+            for (String result : matches) {
+                String phrase = phraseMatcher.matchPrefix(result);
+                if (phrase != null) {
+                    Log.d(TAG, "Trigger phrase '" + phrase + "' may be starting.");
+                    suspectedThisUtterance = true;
+                    listener.onTriggerSuspected();
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The core RecognitionListener that handles speech-to-text results and errors.
+     */
+    private class VoiceRecognitionListener implements RecognitionListener {
+
+        @Override
+        public void onResults(Bundle results) {
+            if (checkForTrigger(results, TriggerLatencyRecorder.SOURCE_FINAL)) {
+                return;
+            }
+            // If the trigger phrase was not detected, restart listening for the next utterance.
+            startListening();
+        }
+
+        @Override
+        public void onPartialResults(Bundle partialResults) {
+            checkForTrigger(partialResults, TriggerLatencyRecorder.SOURCE_PARTIAL);
+        }
+
+        @Override
+        public void onError(int error) {
+            // Most errors are normal (e.g., no speech detected). We just restart the listener.
+            Log.d(TAG, "Speech recognizer error: " + error);
+            // Restart listening after any error to ensure continuity.
+            startListening();
+        }
+
+        // --- Other listener methods (can be left empty for this implementation) ---
+        @Override
+        public void onReadyForSpeech(Bundle params) { Log.d(TAG, "Ready for speech..."); }
+        @Override
+        public void onBeginningOfSpeech() {
+            Log.d(TAG, "Beginning of speech...");
+            speechStartElapsedMs = SystemClock.elapsedRealtime();
+        }
+        @Override
+        public void onRmsChanged(float rmsdB) { /* Do nothing */ }
+        @Override
+        public void onBufferReceived(byte[] buffer) { /* Do nothing */ }
+        @Override
+        public void onEndOfSpeech() { Log.d(TAG, "End of speech."); }
+        @Override
+        public void onEvent(int eventType, Bundle params) { /* Do nothing */ }
+    }
+}
@@ -0,0 +1,161 @@
+package com.safevoice.app.voice;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * A TriggerDetector that reads PCM continuously from AudioRecord and runs an on-device
+ * KeywordSpotter over a sliding window. Unlike the SpeechRecognizer loop there are no
+ * sessions to restart, so there is no dead gap in which the trigger can be missed.
+ * A detector instance is single-use: once stopped, create a new one.
+ */
+public class StreamingTriggerDetector implements TriggerDetector {
+
+    private static final String TAG = "StreamingTriggerDetector";
+
+    private static final int FRAME_MILLIS = 20;
+
+    private final Context context;
+    private final KeywordSpotter spotter;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile boolean running = false;
+    private Thread audioThread;
+
+    public StreamingTriggerDetector(Context context, KeywordSpotter spotter, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.spotter = spotter;
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        audioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                try {
+                    runDetectionLoop();
+                } finally {
+                    // Closed here rather than in stop() so the model is never freed mid-inference.
+                    spotter.close();
+                }
+            }
+        }, TAG);
+        audioThread.start();
+        Log.d(TAG, "Streaming keyword spotting started.");
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (audioThread != null) {
+            try {
+                audioThread.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            audioThread = null;
+        }
+        Log.d(TAG, "Streaming keyword spotting stopped.");
+    }
+
+    @Override
+    public String getName() {
+        return "streaming";
+    }
+
+    private void runDetectionLoop() {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
+            reportFailure("RECORD_AUDIO permission not granted.");
+            return;
+        }
+
+        int sampleRate = spotter.getSampleRate();
+        int frameSamples = sampleRate * FRAME_MILLIS / 1000;
+        int minBufferBytes = AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        int bufferBytes = Math.max(minBufferBytes, frameSamples * 2 * TriggerScorer.FRAMES_PER_HOP * 2);
+
+        AudioRecord audioRecord;
+        try {
+            audioRecord = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, sampleRate,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferBytes);
+        } catch (IllegalArgumentException | SecurityException e) {
+            reportFailure("AudioRecord could not be created: " + e.getMessage());
+            return;
+        }
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            audioRecord.release();
+            reportFailure("AudioRecord failed to initialize.");
+            return;
+        }
+
+        // Everything the loop touches is allocated once, up front.
+        TriggerScorer scorer = new TriggerScorer(spotter);
+        short[] frame = new short[frameSamples];
+
+        try {
+            audioRecord.startRecording();
+            while (running) {
+                int read = audioRecord.read(frame, 0, frameSamples);
+                if (read < 0) {
+                    reportFailure("AudioRecord read error: " + read);
+                    return;
+                }
+                TriggerScorer.Event event = scorer.onFrame(frame, read);
+                if (event == TriggerScorer.Event.SUSPECTED) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onTriggerSuspected();
+                        }
+                    });
+                } else if (event == TriggerScorer.Event.DETECTED) {
+                    Log.i(TAG, "Keyword spotted at sample " + scorer.getSamplesSeen());
+                    running = false;
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onTriggerDetected();
+                        }
+                    });
+                }
+            }
+        } catch (IllegalStateException e) {
+            reportFailure("AudioRecord could not start: " + e.getMessage());
+        } finally {
+            try {
+                audioRecord.stop();
+            } catch (IllegalStateException ignored) {
+                // Recording never started.
+            }
+            audioRecord.release();
+        }
+    }
+
+    private void reportFailure(final String reason) {
+        Log.e(TAG, reason);
+        running = false;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onDetectorFailed(reason);
+            }
+        });
+    }
+}
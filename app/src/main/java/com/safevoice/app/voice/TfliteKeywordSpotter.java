@@ -0,0 +1,115 @@
+package com.safevoice.app.voice;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A KeywordSpotter backed by the keyword_spotter.tflite model in the assets folder.
+ * The model takes one second of raw 16 kHz mono audio as a [1, 16000] float tensor
+ * and outputs [1, 2] scores: index 0 is background, index 1 is "help help".
+ *
+ * The model knows that one phrase only. Any other trigger phrase in effect, such as the
+ * default "bachao bachao", needs the SpeechRecognizer engine; see {@link #recognizesAll(Collection)}.
+ */
+public class TfliteKeywordSpotter implements KeywordSpotter {
+
+    private static final String TAG = "TfliteKeywordSpotter";
+    static final String MODEL_FILE = "keyword_spotter.tflite";
+    // The only phrase the bundled model was trained on.
+    public static final String KEYWORD = "help help";
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int WINDOW_SAMPLES = SAMPLE_RATE; // One second of audio.
+    private static final int TRIGGER_CLASS_INDEX = 1;
+    private static final int NUM_CLASSES = 2;
+
+    private final Interpreter tflite;
+
+    // Reused on every call so scoring does not allocate.
+    private final float[][] inputHolder = new float[1][];
+    private final float[][] output = new float[1][NUM_CLASSES];
+
+    public TfliteKeywordSpotter(Context context) throws IOException {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(1); // Runs continuously in the background; keep it cheap.
+        this.tflite = new Interpreter(loadModelFile(context.getAssets()), options);
+    }
+
+    /**
+     * Checks whether the keyword spotting model is bundled with this build.
+     *
+     * @param context The application context.
+     * @return true if the model asset exists.
+     */
+    public static boolean isModelAvailable(Context context) {
+        try {
+            context.getAssets().openFd(MODEL_FILE).close();
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Keyword spotting model not found in assets.");
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the model can hear every one of the given trigger phrases, allowing for
+     * case and punctuation differences such as "Help, help!".
+     *
+     * @param phrases The trigger phrases in effect, see {@link TriggerPhraseMatcher#getPhrases(Context)}.
+     * @return true if each phrase contains the model's keyword.
+     */
+    public static boolean recognizesAll(Collection<String> phrases) {
+        TriggerPhraseMatcher keywordMatcher = new TriggerPhraseMatcher(Collections.singletonList(KEYWORD));
+        for (String phrase : phrases) {
+            if (keywordMatcher.match(phrase) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return SAMPLE_RATE;
+    }
+
+    @Override
+    public int getWindowSamples() {
+        return WINDOW_SAMPLES;
+    }
+
+    @Override
+    public float score(float[] window) {
+        inputHolder[0] = window;
+        tflite.run(inputHolder, output);
+        return output[0][TRIGGER_CLASS_INDEX];
+    }
+
+    @Override
+    public void close() {
+        tflite.close();
+    }
+
+    /**
+     * Memory-maps the TFLite model file from the assets folder.
+     */
+    private MappedByteBuffer loadModelFile(AssetManager assetManager) throws IOException {
+        AssetFileDescriptor fileDescriptor = assetManager.openFd(MODEL_FILE);
+        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+        FileChannel fileChannel = inputStream.getChannel();
+        long startOffset = fileDescriptor.getStartOffset();
+        long declaredLength = fileDescriptor.getDeclaredLength();
+        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    }
+}
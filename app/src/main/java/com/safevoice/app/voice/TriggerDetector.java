@@ -0,0 +1,48 @@
+package com.safevoice.app.voice;
+
+/**
+ * A pluggable engine that listens for the "Help Help" voice trigger.
+ * VoiceRecognitionService owns exactly one detector at a time and only cares
+ * about the callbacks below, so the underlying listening strategy
+ * (continuous keyword spotting or the SpeechRecognizer restart loop) can be swapped freely.
+ */
+public interface TriggerDetector {
+
+    /**
+     * Callbacks delivered on the main thread.
+     */
+    interface Listener {
+        /**
+         * Called once when the trigger phrase has been detected.
+         */
+        void onTriggerDetected();
+
+        /**
+         * Called when the trigger phrase looks like it is being spoken but is not confirmed
+         * yet, so expensive emergency setup can start early. May be followed by
+         * onTriggerDetected() or by nothing at all.
+         */
+        void onTriggerSuspected();
+
+        /**
+         * Called when the detector can no longer run (e.g. the microphone could not be opened).
+         * The owner is expected to switch to a fallback detector.
+         */
+        void onDetectorFailed(String reason);
+    }
+
+    /**
+     * Starts listening. Calling start on a running detector has no effect.
+     */
+    void start();
+
+    /**
+     * Stops listening and releases the microphone and any native resources.
+     */
+    void stop();
+
+    /**
+     * @return A short name used in logs to identify the engine.
+     */
+    String getName();
+}
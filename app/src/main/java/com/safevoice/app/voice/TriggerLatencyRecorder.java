@@ -0,0 +1,64 @@
+package com.safevoice.app.voice;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * Records how long it takes from the start of speech until the trigger fires.
+ * Counters are kept per trigger source (partial vs. final recognition results) in
+ * SharedPreferences so they survive service restarts and can be collected from the fleet.
+ */
+public class TriggerLatencyRecorder {
+
+    private static final String TAG = "TriggerLatencyRecorder";
+    private static final String PREFS_NAME = "SafeVoiceTriggerMetrics";
+
+    public static final String SOURCE_PARTIAL = "partial";
+    public static final String SOURCE_FINAL = "final";
+
+    private final SharedPreferences metricsPrefs;
+
+    public TriggerLatencyRecorder(Context context) {
+        this.metricsPrefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds one speech-to-trigger measurement.
+     *
+     * @param source    Which result type fired the trigger, e.g. {@link #SOURCE_PARTIAL}.
+     * @param latencyMs Milliseconds from onBeginningOfSpeech to the trigger.
+     */
+    public void record(String source, long latencyMs) {
+        long count = metricsPrefs.getLong(source + "_count", 0) + 1;
+        long total = metricsPrefs.getLong(source + "_total_ms", 0) + latencyMs;
+        long min = Math.min(metricsPrefs.getLong(source + "_min_ms", Long.MAX_VALUE), latencyMs);
+        long max = Math.max(metricsPrefs.getLong(source + "_max_ms", 0), latencyMs);
+
+        metricsPrefs.edit()
+                .putLong(source + "_count", count)
+                .putLong(source + "_total_ms", total)
+                .putLong(source + "_min_ms", min)
+                .putLong(source + "_max_ms", max)
+                .putLong(source + "_last_ms", latencyMs)
+                .apply();
+
+        Log.i(TAG, "Speech-to-trigger latency (" + source + "): " + latencyMs + " ms, mean "
+                + (total / count) + " ms over " + count + " triggers.");
+    }
+
+    /**
+     * @return The mean latency for a source in milliseconds, or -1 if nothing was recorded yet.
+     */
+    public long getMeanLatencyMs(String source) {
+        long count = metricsPrefs.getLong(source + "_count", 0);
+        return count == 0 ? -1 : metricsPrefs.getLong(source + "_total_ms", 0) / count;
+    }
+
+    /**
+     * @return The number of triggers recorded for a source.
+     */
+    public long getCount(String source) {
+        return metricsPrefs.getLong(source + "_count", 0);
+    }
+}
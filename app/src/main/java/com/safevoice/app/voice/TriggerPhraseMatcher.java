@@ -0,0 +1,338 @@
+package com.safevoice.app.voice;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A precompiled matcher for a configurable set of trigger phrases in any language,
+ * e.g. "help help", "bachao bachao" or "socorro socorro".
+ *
+ * Each phrase is compiled once into a bit-parallel automaton (Myers' algorithm) that finds
+ * the phrase anywhere in a hypothesis within a bounded edit distance, so small recognition
+ * errors such as "helphelp" or "help halp" still match. Partial results are matched more
+ * strictly, see {@link #matchPartial(CharSequence)}. Hypotheses are normalized into a
+ * reusable char buffer, so matching does not allocate.
+ *
+ * Not thread-safe: each detector should own its own instance.
+ */
+public class TriggerPhraseMatcher {
+
+    private static final String SETTINGS_PREFS_NAME = "SafeVoiceSettingsPrefs";
+    private static final String KEY_TRIGGER_PHRASES = "trigger_phrases";
+
+    public static final String[] DEFAULT_PHRASES = {"help help", "bachao bachao", "socorro socorro"};
+
+    // One edit is tolerated for every this many characters of a phrase.
+    private static final int CHARS_PER_ALLOWED_EDIT = 8;
+    private static final int MAX_PHRASE_LENGTH = 64; // One bit per phrase character in a long.
+
+    private final CompiledPhrase[] phrases;
+    // Everything before the last word of each phrase, e.g. "help " for "help help", or null
+    // for a single-word phrase; indexed like phrases.
+    private final CompiledPhrase[] heads;
+    // The last word of each phrase, which a partial result must contain exactly.
+    private final char[][] lastWords;
+    // The first word of each multi-word phrase, e.g. "help" for "help help".
+    private final CompiledPhrase[] prefixes;
+    private char[] normalized = new char[128];
+    // Where a phrase's head match ends in the normalized text, for matchPartial().
+    private boolean[] headEnds = new boolean[128];
+
+    /**
+     * Compiles the given phrases. Empty phrases are ignored.
+     *
+     * @param phraseList The trigger phrases, in any case.
+     * @throws IllegalArgumentException If a phrase is longer than 64 characters after normalization.
+     */
+    public TriggerPhraseMatcher(Collection<String> phraseList) {
+        List<CompiledPhrase> compiled = new ArrayList<>();
+        List<CompiledPhrase> compiledHeads = new ArrayList<>();
+        List<char[]> compiledLastWords = new ArrayList<>();
+        List<CompiledPhrase> compiledPrefixes = new ArrayList<>();
+        for (String phrase : phraseList) {
+            if (phrase == null) {
+                continue;
+            }
+            int length = normalize(phrase);
+            if (length == 0) {
+                continue;
+            }
+            if (length > MAX_PHRASE_LENGTH) {
+                throw new IllegalArgumentException("Trigger phrase is too long: " + phrase);
+            }
+            int maxEdits = length / CHARS_PER_ALLOWED_EDIT;
+            compiled.add(new CompiledPhrase(phrase, normalized, length, maxEdits));
+
+            int lastWordStart = length;
+            while (lastWordStart > 0 && normalized[lastWordStart - 1] != ' ') {
+                lastWordStart--;
+            }
+            // The head keeps the whole phrase's edit budget, since the last word may use none.
+            compiledHeads.add(lastWordStart > 0 ? new CompiledPhrase(phrase, normalized, lastWordStart, maxEdits) : null);
+            compiledLastWords.add(Arrays.copyOfRange(normalized, lastWordStart, length));
+
+            int firstWordLength = 0;
+            while (firstWordLength < length && normalized[firstWordLength] != ' ') {
+                firstWordLength++;
+            }
+            if (firstWordLength < length) {
+                compiledPrefixes.add(new CompiledPhrase(phrase, normalized, firstWordLength, firstWordLength / CHARS_PER_ALLOWED_EDIT));
+            }
+        }
+        this.phrases = compiled.toArray(new CompiledPhrase[0]);
+        this.heads = compiledHeads.toArray(new CompiledPhrase[0]);
+        this.lastWords = compiledLastWords.toArray(new char[0][]);
+        this.prefixes = compiledPrefixes.toArray(new CompiledPhrase[0]);
+    }
+
+    /**
+     * Builds a matcher from the phrases in {@link #getPhrases(Context)}.
+     *
+     * @param context The application context.
+     */
+    public static TriggerPhraseMatcher fromSettings(Context context) {
+        return new TriggerPhraseMatcher(getPhrases(context));
+    }
+
+    /**
+     * @param context The application context.
+     * @return The trigger phrases in effect: those saved in settings, or the defaults if none are saved.
+     */
+    public static Set<String> getPhrases(Context context) {
+        SharedPreferences settingsPrefs = context.getSharedPreferences(SETTINGS_PREFS_NAME, Context.MODE_PRIVATE);
+        Set<String> saved = settingsPrefs.getStringSet(KEY_TRIGGER_PHRASES, null);
+        if (saved == null || saved.isEmpty()) {
+            return new HashSet<>(Arrays.asList(DEFAULT_PHRASES));
+        }
+        return saved;
+    }
+
+    /**
+     * Checks one recognition hypothesis against every phrase.
+     *
+     * @param hypothesis The recognized text.
+     * @return The original phrase that matched, or null if none did.
+     */
+    public String match(CharSequence hypothesis) {
+        if (hypothesis == null) {
+            return null;
+        }
+        int length = normalize(hypothesis);
+        for (CompiledPhrase phrase : phrases) {
+            if (phrase.occursIn(normalized, length)) {
+                return phrase.original;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks a partial recognition result against every phrase. The recognizer may still be in
+     * the middle of the last word, so a hypothesis like "help hel" must not count as "help help":
+     * the phrase's last word has to appear exactly and end on a word boundary, and only the
+     * words before it may contain edits.
+     *
+     * @param hypothesis The partially recognized text.
+     * @return The original phrase that matched, or null if none did.
+     */
+    public String matchPartial(CharSequence hypothesis) {
+        if (hypothesis == null) {
+            return null;
+        }
+        int length = normalize(hypothesis);
+        if (headEnds.length < length) {
+            headEnds = new boolean[normalized.length];
+        }
+        for (int i = 0; i < phrases.length; i++) {
+            CompiledPhrase head = heads[i];
+            if (head != null) {
+                Arrays.fill(headEnds, 0, length, false);
+                if (!head.findEnds(normalized, length, headEnds)) {
+                    continue;
+                }
+            }
+            if (endsWithExactLastWord(head, lastWords[i], length)) {
+                return phrases[i].original;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the last word occurs as a whole word in the normalized text, right after
+     *         an end of the head match (or anywhere, for a single-word phrase).
+     */
+    private boolean endsWithExactLastWord(CompiledPhrase head, char[] lastWord, int length) {
+        for (int end = lastWord.length; end <= length; end++) {
+            if (end < length && normalized[end] != ' ') {
+                continue;
+            }
+            int start = end - lastWord.length;
+            if (head != null ? (start == 0 || !headEnds[start - 1]) : (start > 0 && normalized[start - 1] != ' ')) {
+                continue;
+            }
+            boolean exact = true;
+            for (int k = 0; k < lastWord.length && exact; k++) {
+                exact = normalized[start + k] == lastWord[k];
+            }
+            if (exact) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a hypothesis contains the first word of a multi-word phrase, i.e. the
+     * trigger may be in the middle of being spoken.
+     *
+     * @param hypothesis The recognized text.
+     * @return The original phrase that may be starting, or null if none is.
+     */
+    public String matchPrefix(CharSequence hypothesis) {
+        if (hypothesis == null) {
+            return null;
+        }
+        int length = normalize(hypothesis);
+        for (CompiledPhrase prefix : prefixes) {
+            if (prefix.occursIn(normalized, length)) {
+                return prefix.original;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lowercases letters and digits with locale-independent Unicode rules and collapses every
+     * run of other characters into one space, writing the result into the reusable buffer.
+     *
+     * @return The number of characters written.
+     */
+    private int normalize(CharSequence text) {
+        int textLength = text.length();
+        if (normalized.length < textLength) {
+            normalized = new char[Math.max(textLength, normalized.length * 2)];
+        }
+        int length = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < textLength; i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && length > 0) {
+                    normalized[length++] = ' ';
+                }
+                pendingSpace = false;
+                normalized[length++] = Character.toLowerCase(c);
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * One phrase compiled into the pattern bitmasks used by Myers' bit-parallel
+     * approximate string matching.
+     */
+    private static final class CompiledPhrase {
+        final String original;
+        final int length;
+        final int maxEdits;
+        final long lastBit;
+        // Sorted distinct characters of the phrase and, for each, the positions where it occurs.
+        final char[] alphabet;
+        final long[] masks;
+        // The same masks indexed directly by character, for the common ASCII case.
+        final long[] asciiMasks = new long[128];
+
+        CompiledPhrase(String original, char[] pattern, int length, int maxEdits) {
+            this.original = original;
+            this.length = length;
+            this.maxEdits = maxEdits;
+            this.lastBit = 1L << (length - 1);
+
+            char[] sorted = Arrays.copyOf(pattern, length);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            this.alphabet = Arrays.copyOf(sorted, distinct);
+            this.masks = new long[distinct];
+            for (int i = 0; i < length; i++) {
+                masks[Arrays.binarySearch(alphabet, pattern[i])] |= 1L << i;
+                if (pattern[i] < 128) {
+                    asciiMasks[pattern[i]] |= 1L << i;
+                }
+            }
+        }
+
+        /**
+         * @return true if the phrase occurs anywhere in the text with at most maxEdits edits.
+         */
+        boolean occursIn(char[] text, int textLength) {
+            return findEnds(text, textLength, null);
+        }
+
+        /**
+         * Scans the text for occurrences with at most maxEdits edits.
+         *
+         * @param ends If not null, every text position where an occurrence ends is set to true
+         *             and the whole text is scanned; if null, the scan stops at the first one.
+         * @return true if the phrase occurs anywhere in the text.
+         */
+        boolean findEnds(char[] text, int textLength, boolean[] ends) {
+            if (textLength < length - maxEdits) {
+                return false;
+            }
+            boolean found = false;
+            long positiveVertical = -1L;
+            long negativeVertical = 0L;
+            int score = length;
+            for (int j = 0; j < textLength; j++) {
+                char c = text[j];
+                long eq;
+                if (c < 128) {
+                    eq = asciiMasks[c];
+                } else {
+                    int index = Arrays.binarySearch(alphabet, c);
+                    eq = index >= 0 ? masks[index] : 0L;
+                }
+
+                long xv = eq | negativeVertical;
+                long xh = (((eq & positiveVertical) + positiveVertical) ^ positiveVertical) | eq;
+                long positiveHorizontal = negativeVertical | ~(xh | positiveVertical);
+                long negativeHorizontal = positiveVertical & xh;
+
+                if ((positiveHorizontal & lastBit) != 0) {
+                    score++;
+                } else if ((negativeHorizontal & lastBit) != 0) {
+                    score--;
+                }
+                if (score <= maxEdits) {
+                    if (ends == null) {
+                        return true;
+                    }
+                    ends[j] = true;
+                    found = true;
+                }
+
+                // A match may start anywhere in the text, so no bit is shifted in on the left.
+                positiveHorizontal <<= 1;
+                negativeHorizontal <<= 1;
+                positiveVertical = negativeHorizontal | ~(xv | positiveHorizontal);
+                negativeVertical = positiveHorizontal & xv;
+            }
+            return found;
+        }
+    }
+}
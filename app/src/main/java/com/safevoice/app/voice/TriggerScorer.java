@@ -0,0 +1,86 @@
+package com.safevoice.app.voice;
+
+/**
+ * The frame-by-frame decision logic of the streaming engine, kept free of Android classes so
+ * it can be driven from recorded audio on a plain JVM.
+ *
+ * Frames go into an AudioRingBuffer. Every few frames the latest window is scored by the
+ * KeywordSpotter, and the mean of the last few scores is compared with the thresholds, which
+ * filters single-window spikes. Not thread-safe: the audio thread owns it.
+ */
+public class TriggerScorer {
+
+    /**
+     * What a frame led to.
+     */
+    public enum Event { NONE, SUSPECTED, DETECTED }
+
+    // Score the window every 8 frames (160 ms at 20 ms frames); the window itself is much
+    // longer, so a phrase is always seen in several overlapping windows.
+    static final int FRAMES_PER_HOP = 8;
+    static final int SMOOTHING_WINDOWS = 3;
+    static final float DETECTION_THRESHOLD = 0.8f;
+    // A smoothed score this high reports a suspected trigger once per rise.
+    static final float SUSPECT_THRESHOLD = 0.5f;
+
+    private final KeywordSpotter spotter;
+    private final int windowSamples;
+
+    // Everything the scorer touches is allocated once, up front.
+    private final AudioRingBuffer ringBuffer;
+    private final float[] window;
+    private final float[] recentScores = new float[SMOOTHING_WINDOWS];
+    private int scoreIndex = 0;
+    private int framesSinceScore = 0;
+    private boolean suspected = false;
+
+    public TriggerScorer(KeywordSpotter spotter) {
+        this.spotter = spotter;
+        this.windowSamples = spotter.getWindowSamples();
+        this.ringBuffer = new AudioRingBuffer(windowSamples);
+        this.window = new float[windowSamples];
+    }
+
+    /**
+     * Adds one frame of audio and scores the window if a hop has passed.
+     *
+     * @param frame  16-bit PCM samples.
+     * @param length How many samples of the frame are valid.
+     * @return DETECTED when the smoothed score crosses the detection threshold, SUSPECTED the
+     * first time it crosses the suspect threshold after having been below it, NONE otherwise.
+     */
+    public Event onFrame(short[] frame, int length) {
+        ringBuffer.write(frame, 0, length);
+        if (++framesSinceScore < FRAMES_PER_HOP || !ringBuffer.hasAtLeast(windowSamples)) {
+            return Event.NONE;
+        }
+        framesSinceScore = 0;
+
+        ringBuffer.readLatest(window, windowSamples);
+        recentScores[scoreIndex] = spotter.score(window);
+        scoreIndex = (scoreIndex + 1) % SMOOTHING_WINDOWS;
+
+        float sum = 0f;
+        for (float score : recentScores) {
+            sum += score;
+        }
+        float smoothed = sum / SMOOTHING_WINDOWS;
+        if (smoothed >= DETECTION_THRESHOLD) {
+            return Event.DETECTED;
+        }
+        if (smoothed < SUSPECT_THRESHOLD) {
+            suspected = false;
+        } else if (!suspected) {
+            suspected = true;
+            return Event.SUSPECTED;
+        }
+        return Event.NONE;
+    }
+
+    /**
+     * @return The total number of samples seen, used to time detections.
+     */
+    public long getSamplesSeen() {
+        return ringBuffer.getTotalWritten();
+    }
+}
@@ -0,0 +1,167 @@
+package com.safevoice.app.webrtc;
+
+import android.util.Log;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+import org.webrtc.RtpParameters;
+import org.webrtc.RtpSender;
+
+import java.util.Locale;
+
+/**
+ * Steps the audio send bitrate along a small ladder as the link gets better or worse.
+ *
+ * Each stats report gives the send bitrate, and the remote end's RTCP receiver reports give
+ * packet loss, jitter and round-trip time. Heavy loss or a very slow round trip steps down
+ * at once. Sustained clean intervals step back up one rung at a time, so a brief lull does
+ * not push the bitrate straight back into congestion. Opus in-band FEC, negotiated by
+ * OpusAudioProfile, covers the loss in between.
+ *
+ * The metrics are aggregated per call and logged by logSummary() when the call ends.
+ * Stats arrive on WebRTC's signaling thread, which is the only thread that touches the state.
+ */
+public class AudioQualityController implements CallStatsPoller.Listener {
+
+    private static final String TAG = "AudioQualityController";
+
+    // Narrowband Opus is intelligible at the bottom rung and gains little past the top one.
+    static final int[] BITRATE_LADDER_BPS = {6000, 8000, 12000, 16000, OpusAudioProfile.MAX_AVERAGE_BITRATE_BPS};
+    private static final int INITIAL_STEP = 2;
+    private static final double STEP_DOWN_LOSS = 0.08;
+    private static final double STEP_DOWN_RTT_MS = 1000;
+    private static final double STEP_UP_LOSS = 0.02;
+    private static final int GOOD_INTERVALS_TO_STEP_UP = 3;
+
+    private final RtpSender audioSender;
+    private int step = INITIAL_STEP;
+    private int goodIntervals = 0;
+
+    // Previous outbound counters, for the per-interval send bitrate.
+    private long lastBytesSent = -1;
+    private long lastTimestampUs = -1;
+
+    // Per-call aggregates.
+    private int intervals = 0;
+    private double bitrateSumBps = 0;
+    private double lossSum = 0;
+    private double maxLoss = 0;
+    private double jitterSumMs = 0;
+    private double maxJitterMs = 0;
+    private int stepChanges = 0;
+
+    public AudioQualityController(RtpSender audioSender) {
+        this.audioSender = audioSender;
+    }
+
+    /**
+     * Applies the starting bitrate. Call once the sender is negotiated.
+     */
+    public void start() {
+        applyStep();
+    }
+
+    @Override
+    public void onStatsReport(RTCStatsReport report) {
+        Double sendBitrateBps = null;
+        Double loss = null;
+        Double jitterMs = null;
+        Double rttMs = null;
+
+        RTCStats outbound = RtcStatsUtil.findAudio(report, "outbound-rtp");
+        if (outbound != null && RtcStatsUtil.getLong(outbound, "bytesSent") >= 0) {
+            sendBitrateBps = updateSendBitrate(RtcStatsUtil.getLong(outbound, "bytesSent"), (long) outbound.getTimestampUs());
+        }
+        RTCStats remoteInbound = RtcStatsUtil.findAudio(report, "remote-inbound-rtp");
+        if (remoteInbound != null) {
+            loss = RtcStatsUtil.getDouble(remoteInbound, "fractionLost");
+            Double jitterSeconds = RtcStatsUtil.getDouble(remoteInbound, "jitter");
+            Double rttSeconds = RtcStatsUtil.getDouble(remoteInbound, "roundTripTime");
+            jitterMs = (jitterSeconds != null) ? jitterSeconds * 1000 : null;
+            rttMs = (rttSeconds != null) ? rttSeconds * 1000 : null;
+        }
+        if (loss == null) {
+            // No receiver report yet; nothing to adapt to.
+            return;
+        }
+
+        record(sendBitrateBps, loss, jitterMs);
+        adapt(loss, rttMs);
+        Log.d(TAG, String.format(Locale.US, "send %s kbps, loss %.1f%%, jitter %s ms, rtt %s ms, cap %d kbps",
+                sendBitrateBps != null ? String.format(Locale.US, "%.1f", sendBitrateBps / 1000) : "?",
+                loss * 100, jitterMs != null ? String.format(Locale.US, "%.0f", jitterMs) : "?",
+                rttMs != null ? String.format(Locale.US, "%.0f", rttMs) : "?", BITRATE_LADDER_BPS[step] / 1000));
+    }
+
+    private void adapt(double loss, Double rttMs) {
+        boolean congested = loss > STEP_DOWN_LOSS || (rttMs != null && rttMs > STEP_DOWN_RTT_MS);
+        if (congested) {
+            goodIntervals = 0;
+            if (step > 0) {
+                step--;
+                applyStep();
+            }
+        } else if (loss < STEP_UP_LOSS) {
+            goodIntervals++;
+            if (goodIntervals >= GOOD_INTERVALS_TO_STEP_UP && step < BITRATE_LADDER_BPS.length - 1) {
+                goodIntervals = 0;
+                step++;
+                applyStep();
+            }
+        } else {
+            goodIntervals = 0;
+        }
+    }
+
+    private void applyStep() {
+        int bitrateBps = BITRATE_LADDER_BPS[step];
+        RtpParameters parameters = audioSender.getParameters();
+        for (RtpParameters.Encoding encoding : parameters.encodings) {
+            encoding.maxBitrateBps = bitrateBps;
+        }
+        if (audioSender.setParameters(parameters)) {
+            stepChanges++;
+            Log.i(TAG, "Audio bitrate cap set to " + bitrateBps + " bps.");
+        } else {
+            Log.w(TAG, "Could not set the audio bitrate cap to " + bitrateBps + " bps.");
+        }
+    }
+
+    private Double updateSendBitrate(long bytesSent, long timestampUs) {
+        Double bitrateBps = null;
+        if (lastTimestampUs >= 0 && timestampUs > lastTimestampUs && bytesSent >= lastBytesSent) {
+            bitrateBps = (bytesSent - lastBytesSent) * 8 * 1e6 / (timestampUs - lastTimestampUs);
+        }
+        lastBytesSent = bytesSent;
+        lastTimestampUs = timestampUs;
+        return bitrateBps;
+    }
+
+    private void record(Double sendBitrateBps, double loss, Double jitterMs) {
+        intervals++;
+        if (sendBitrateBps != null) {
+            bitrateSumBps += sendBitrateBps;
+        }
+        lossSum += loss;
+        maxLoss = Math.max(maxLoss, loss);
+        if (jitterMs != null) {
+            jitterSumMs += jitterMs;
+            maxJitterMs = Math.max(maxJitterMs, jitterMs);
+        }
+    }
+
+    /**
+     * Logs this call's mean send bitrate, packet loss and jitter.
+     */
+    public void logSummary() {
+        if (intervals == 0) {
+            Log.i(TAG, "No audio quality stats were collected for this call.");
+            return;
+        }
+        Log.i(TAG, String.format(Locale.US,
+                "Call audio over %d intervals: mean send %.1f kbps, loss mean %.1f%% max %.1f%%, "
+                        + "jitter mean %.0f ms max %.0f ms, final cap %d kbps, %d bitrate change(s).",
+                intervals, bitrateSumBps / intervals / 1000, lossSum / intervals * 100, maxLoss * 100,
+                jitterSumMs / intervals, maxJitterMs, BITRATE_LADDER_BPS[step] / 1000, stepChanges));
+    }
+}
@@ -0,0 +1,58 @@
+package com.safevoice.app.webrtc;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * Records how long it takes from the trigger until the WebRTC call is established.
+ * Counters are kept per setup mode in SharedPreferences, so cold starts, a pre-warmed
+ * factory and an adopted speculative call can be compared across the fleet.
+ */
+public class CallSetupLatencyRecorder {
+
+    private static final String TAG = "CallSetupLatencyRecorder";
+    private static final String PREFS_NAME = "SafeVoiceCallMetrics";
+
+    public static final String MODE_COLD = "cold";
+    public static final String MODE_WARM = "warm";
+    public static final String MODE_SPECULATIVE = "speculative";
+
+    private final SharedPreferences metricsPrefs;
+
+    public CallSetupLatencyRecorder(Context context) {
+        this.metricsPrefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds one trigger-to-established measurement.
+     *
+     * @param mode      How the call was set up, e.g. {@link #MODE_WARM}.
+     * @param latencyMs Milliseconds from the trigger to the ICE connection reaching CONNECTED.
+     */
+    public void record(String mode, long latencyMs) {
+        long count = metricsPrefs.getLong(mode + "_count", 0) + 1;
+        long total = metricsPrefs.getLong(mode + "_total_ms", 0) + latencyMs;
+        long min = Math.min(metricsPrefs.getLong(mode + "_min_ms", Long.MAX_VALUE), latencyMs);
+        long max = Math.max(metricsPrefs.getLong(mode + "_max_ms", 0), latencyMs);
+
+        metricsPrefs.edit()
+                .putLong(mode + "_count", count)
+                .putLong(mode + "_total_ms", total)
+                .putLong(mode + "_min_ms", min)
+                .putLong(mode + "_max_ms", max)
+                .putLong(mode + "_last_ms", latencyMs)
+                .apply();
+
+        Log.i(TAG, "Trigger-to-call latency (" + mode + "): " + latencyMs + " ms, mean "
+                + (total / count) + " ms over " + count + " calls.");
+    }
+
+    /**
+     * @return The mean latency for a mode in milliseconds, or -1 if nothing was recorded yet.
+     */
+    public long getMeanLatencyMs(String mode) {
+        long count = metricsPrefs.getLong(mode + "_count", 0);
+        return count == 0 ? -1 : metricsPrefs.getLong(mode + "_total_ms", 0) / count;
+    }
+}
@@ -0,0 +1,287 @@
+package com.safevoice.app.webrtc;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.Map;
+
+/**
+ * Collects call-quality telemetry from CallStatsPoller reports into compact time series.
+ *
+ * Each report adds one sample: round-trip time, send and receive bitrate, packet loss in both
+ * directions and receive jitter. Samples live in fixed-size float ring buffers, so a long call
+ * keeps its most recent CAPACITY samples in a few kilobytes. The collector also tracks the
+ * selected ICE candidate pair, which tells whether the call went direct, through STUN or over
+ * a TURN relay. finish() turns all of it into a CallStatsRecord.
+ *
+ * Collection starts with the call, before ICE connects, so a call that never connects still
+ * leaves a record: its failure, and the state its most advanced candidate pair reached.
+ */
+public class CallStatsCollector implements CallStatsPoller.Listener {
+
+    // Ten minutes at the two-second poll interval.
+    public static final int DEFAULT_CAPACITY = 300;
+
+    static final int RTT_MS = 0;
+    static final int SEND_KBPS = 1;
+    static final int RECEIVE_KBPS = 2;
+    static final int LOSS_IN_PERCENT = 3;
+    static final int LOSS_OUT_PERCENT = 4;
+    static final int JITTER_MS = 5;
+    static final String[] METRIC_NAMES = {"rtt_ms", "send_kbps", "receive_kbps", "loss_in_pct", "loss_out_pct", "jitter_ms"};
+
+    // The failure recorded for a call that ended before ICE connected, when nothing more
+    // specific was reported.
+    public static final String FAILURE_NOT_CONNECTED = "not_connected";
+
+    // Candidate pair states from least to most advanced; a failed pair ranks lowest so any
+    // pair still being checked wins over it.
+    private static final String[] PAIR_STATE_RANK = {"failed", "frozen", "waiting", "in-progress", "succeeded"};
+
+    private final long startedAtMs;
+    private final String remoteUid;
+    private final String setupMode;
+    private long setupMs = -1;
+    private String failure;
+
+    // Ring buffers: offsetMs[i] and series[metric][i] form sample i; head is the next slot.
+    private final int[] offsetMs;
+    private final float[][] series;
+    private int head = 0;
+    private int size = 0;
+    private long totalSamples = 0;
+
+    // Previous cumulative counters, for per-interval rates.
+    private long firstTimestampUs = -1;
+    private long lastTimestampUs = -1;
+    private long lastBytesSent = -1;
+    private long lastBytesReceived = -1;
+    private long lastPacketsLost = -1;
+    private long lastPacketsReceived = -1;
+
+    private long bytesSent = 0;
+    private long bytesReceived = 0;
+    private String localCandidateType;
+    private String remoteCandidateType;
+    private String transportProtocol;
+    private String networkType;
+    private String relayProtocol;
+    private String candidatePairState;
+
+    /**
+     * @param capacity    How many samples to keep.
+     * @param startedAtMs Wall-clock time the call started, to name the record.
+     * @param remoteUid   The uid of the other end, which tells apart the peers of a group call
+     *                    that all share one start time; null if unknown.
+     * @param setupMode   How the call was set up, one of the CallSetupLatencyRecorder modes.
+     */
+    public CallStatsCollector(int capacity, long startedAtMs, @Nullable String remoteUid, String setupMode) {
+        this.startedAtMs = startedAtMs;
+        this.remoteUid = remoteUid;
+        this.setupMode = setupMode;
+        this.offsetMs = new int[capacity];
+        this.series = new float[METRIC_NAMES.length][capacity];
+    }
+
+    /**
+     * Records the setup time the first time ICE connects; reconnects do not change it.
+     *
+     * @param setupMs Milliseconds from starting the call until ICE connected.
+     */
+    public synchronized void onConnected(long setupMs) {
+        if (this.setupMs < 0) {
+            this.setupMs = setupMs;
+        }
+    }
+
+    /**
+     * Records why the call failed, e.g. "ice_failed". The first failure reported is kept.
+     */
+    public synchronized void onFailed(String reason) {
+        if (failure == null) {
+            failure = reason;
+        }
+    }
+
+    @Override
+    public synchronized void onStatsReport(RTCStatsReport report) {
+        long timestampUs = (long) report.getTimestampUs();
+        if (firstTimestampUs < 0) {
+            firstTimestampUs = timestampUs;
+        }
+        double intervalUs = (lastTimestampUs >= 0 && timestampUs > lastTimestampUs) ? timestampUs - lastTimestampUs : -1;
+
+        float sendKbps = Float.NaN;
+        float receiveKbps = Float.NaN;
+        float lossInPercent = Float.NaN;
+        float lossOutPercent = Float.NaN;
+        float jitterMs = Float.NaN;
+        float rttMs = Float.NaN;
+
+        RTCStats outbound = RtcStatsUtil.findAudio(report, "outbound-rtp");
+        if (outbound != null) {
+            long sent = RtcStatsUtil.getLong(outbound, "bytesSent");
+            if (sent >= 0) {
+                if (intervalUs > 0 && lastBytesSent >= 0 && sent >= lastBytesSent) {
+                    sendKbps = (float) ((sent - lastBytesSent) * 8 * 1000 / intervalUs);
+                }
+                lastBytesSent = sent;
+                bytesSent = sent;
+            }
+        }
+
+        RTCStats inbound = RtcStatsUtil.findAudio(report, "inbound-rtp");
+        if (inbound != null) {
+            long received = RtcStatsUtil.getLong(inbound, "bytesReceived");
+            if (received >= 0) {
+                if (intervalUs > 0 && lastBytesReceived >= 0 && received >= lastBytesReceived) {
+                    receiveKbps = (float) ((received - lastBytesReceived) * 8 * 1000 / intervalUs);
+                }
+                lastBytesReceived = received;
+                bytesReceived = received;
+            }
+            long lost = RtcStatsUtil.getLong(inbound, "packetsLost");
+            long packets = RtcStatsUtil.getLong(inbound, "packetsReceived");
+            if (lost >= 0 && packets >= 0) {
+                if (lastPacketsLost >= 0) {
+                    long lostDelta = Math.max(0, lost - lastPacketsLost);
+                    long expected = lostDelta + Math.max(0, packets - lastPacketsReceived);
+                    lossInPercent = (expected > 0) ? 100f * lostDelta / expected : 0f;
+                }
+                lastPacketsLost = lost;
+                lastPacketsReceived = packets;
+            }
+            Double jitterSeconds = RtcStatsUtil.getDouble(inbound, "jitter");
+            if (jitterSeconds != null) {
+                jitterMs = (float) (jitterSeconds * 1000);
+            }
+        }
+
+        RTCStats remoteInbound = RtcStatsUtil.findAudio(report, "remote-inbound-rtp");
+        if (remoteInbound != null) {
+            Double fractionLost = RtcStatsUtil.getDouble(remoteInbound, "fractionLost");
+            if (fractionLost != null) {
+                lossOutPercent = (float) (fractionLost * 100);
+            }
+            Double rttSeconds = RtcStatsUtil.getDouble(remoteInbound, "roundTripTime");
+            if (rttSeconds != null) {
+                rttMs = (float) (rttSeconds * 1000);
+            }
+        }
+
+        RTCStats pair = findSelectedCandidatePair(report.getStatsMap());
+        String pairState = (pair != null) ? RtcStatsUtil.getString(pair, "state") : mostAdvancedPairState(report.getStatsMap());
+        if (pairState != null) {
+            candidatePairState = pairState;
+        }
+        if (pair != null) {
+            // The ICE round trip is measured on every connectivity check, so prefer it.
+            Double pairRttSeconds = RtcStatsUtil.getDouble(pair, "currentRoundTripTime");
+            if (pairRttSeconds != null) {
+                rttMs = (float) (pairRttSeconds * 1000);
+            }
+            updateCandidates(report.getStatsMap(), pair);
+        }
+        lastTimestampUs = timestampUs;
+
+        offsetMs[head] = (int) ((timestampUs - firstTimestampUs) / 1000);
+        series[RTT_MS][head] = rttMs;
+        series[SEND_KBPS][head] = sendKbps;
+        series[RECEIVE_KBPS][head] = receiveKbps;
+        series[LOSS_IN_PERCENT][head] = lossInPercent;
+        series[LOSS_OUT_PERCENT][head] = lossOutPercent;
+        series[JITTER_MS][head] = jitterMs;
+        head = (head + 1) % offsetMs.length;
+        size = Math.min(size + 1, offsetMs.length);
+        totalSamples++;
+    }
+
+    /**
+     * The transport entry names the selected pair; older builds only flag it on the pair.
+     */
+    private static RTCStats findSelectedCandidatePair(Map<String, RTCStats> statsMap) {
+        for (RTCStats stats : statsMap.values()) {
+            if ("transport".equals(stats.getType())) {
+                String pairId = RtcStatsUtil.getString(stats, "selectedCandidatePairId");
+                if (pairId != null && statsMap.containsKey(pairId)) {
+                    return statsMap.get(pairId);
+                }
+            }
+        }
+        for (RTCStats stats : statsMap.values()) {
+            if ("candidate-pair".equals(stats.getType())
+                    && Boolean.TRUE.equals(stats.getMembers().get("nominated"))
+                    && "succeeded".equals(RtcStatsUtil.getString(stats, "state"))) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The state of the candidate pair that got furthest, or null if there are none.
+     */
+    private static String mostAdvancedPairState(Map<String, RTCStats> statsMap) {
+        String best = null;
+        int bestRank = -1;
+        for (RTCStats stats : statsMap.values()) {
+            if (!"candidate-pair".equals(stats.getType())) {
+                continue;
+            }
+            String state = RtcStatsUtil.getString(stats, "state");
+            int rank = rank(state);
+            if (state != null && rank > bestRank) {
+                best = state;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    private static int rank(String pairState) {
+        for (int i = 0; i < PAIR_STATE_RANK.length; i++) {
+            if (PAIR_STATE_RANK[i].equals(pairState)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void updateCandidates(Map<String, RTCStats> statsMap, RTCStats pair) {
+        RTCStats local = statsMap.get(RtcStatsUtil.getString(pair, "localCandidateId"));
+        RTCStats remote = statsMap.get(RtcStatsUtil.getString(pair, "remoteCandidateId"));
+        if (local != null) {
+            localCandidateType = RtcStatsUtil.getString(local, "candidateType");
+            transportProtocol = RtcStatsUtil.getString(local, "protocol");
+            networkType = RtcStatsUtil.getString(local, "networkType");
+            relayProtocol = RtcStatsUtil.getString(local, "relayProtocol");
+        }
+        if (remote != null) {
+            remoteCandidateType = RtcStatsUtil.getString(remote, "candidateType");
+        }
+    }
+
+    /**
+     * @return A summary of the call with the retained samples, oldest first. A call that
+     * never connected and reported no failure is recorded as FAILURE_NOT_CONNECTED.
+     */
+    public synchronized CallStatsRecord finish() {
+        int[] orderedOffsets = new int[size];
+        float[][] orderedSeries = new float[METRIC_NAMES.length][size];
+        int oldest = (head - size + offsetMs.length) % offsetMs.length;
+        for (int i = 0; i < size; i++) {
+            int slot = (oldest + i) % offsetMs.length;
+            orderedOffsets[i] = offsetMs[slot];
+            for (int metric = 0; metric < METRIC_NAMES.length; metric++) {
+                orderedSeries[metric][i] = series[metric][slot];
+            }
+        }
+        long durationMs = (lastTimestampUs >= 0) ? (lastTimestampUs - firstTimestampUs) / 1000 : 0;
+        String callFailure = (failure == null && setupMs < 0) ? FAILURE_NOT_CONNECTED : failure;
+        return new CallStatsRecord(startedAtMs, remoteUid, setupMs, setupMode, durationMs, totalSamples,
+                bytesSent, bytesReceived, localCandidateType, remoteCandidateType, transportProtocol,
+                networkType, relayProtocol, callFailure, candidatePairState, orderedOffsets, orderedSeries);
+    }
+}
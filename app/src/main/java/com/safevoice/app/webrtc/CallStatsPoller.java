@@ -0,0 +1,80 @@
+package com.safevoice.app.webrtc;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStatsCollectorCallback;
+import org.webrtc.RTCStatsReport;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Polls PeerConnection.getStats() on a fixed interval while a call is up and hands every
+ * report to its listeners, so everything that watches call quality shares one poll.
+ */
+public class CallStatsPoller {
+
+    /**
+     * Receives each stats report, on WebRTC's signaling thread.
+     */
+    public interface Listener {
+        void onStatsReport(RTCStatsReport report);
+    }
+
+    private final PeerConnection peerConnection;
+    private final long intervalMs;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private volatile boolean running = false;
+
+    private final RTCStatsCollectorCallback statsCallback = new RTCStatsCollectorCallback() {
+        @Override
+        public void onStatsDelivered(RTCStatsReport report) {
+            if (!running) {
+                return;
+            }
+            for (Listener listener : listeners) {
+                listener.onStatsReport(report);
+            }
+        }
+    };
+
+    private final Runnable poll = new Runnable() {
+        @Override
+        public void run() {
+            if (!running) {
+                return;
+            }
+            peerConnection.getStats(statsCallback);
+            handler.postDelayed(this, intervalMs);
+        }
+    };
+
+    public CallStatsPoller(PeerConnection peerConnection, long intervalMs) {
+        this.peerConnection = peerConnection;
+        this.intervalMs = intervalMs;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        handler.post(poll);
+    }
+
+    /**
+     * Stops polling. A report already requested is dropped. Call before closing the
+     * peer connection.
+     */
+    public void stop() {
+        running = false;
+        handler.removeCallbacks(poll);
+    }
+}
@@ -0,0 +1,306 @@
+package com.safevoice.app.webrtc;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The quality summary of one finished call, with the time series it was computed from.
+ *
+ * The summary answers the questions that matter for tuning STUN and TURN: how long setup
+ * took, which candidate types were selected, whether media went through a relay, and what
+ * round-trip time, loss and jitter the call saw. A call that did not connect, or dropped,
+ * carries its failure and the last state of its candidate pair. Missing samples are NaN and
+ * are skipped by every aggregate.
+ */
+public class CallStatsRecord {
+
+    /**
+     * Column names for {@link #toSummaryCsvRow()}, so summaries from many calls can be
+     * concatenated into one table.
+     */
+    public static final String SUMMARY_CSV_HEADER = "started_at_ms,remote_uid,setup_mode,setup_ms,duration_ms,samples,failure,"
+            + "local_candidate,remote_candidate,protocol,network,relay_protocol,candidate_pair_state,"
+            + "rtt_mean_ms,rtt_p95_ms,rtt_max_ms,loss_in_mean_pct,loss_in_max_pct,loss_out_mean_pct,"
+            + "jitter_mean_ms,jitter_max_ms,send_mean_kbps,receive_mean_kbps,bytes_sent,bytes_received";
+
+    private final long startedAtMs;
+    private final String remoteUid;
+    private final long setupMs;
+    private final String setupMode;
+    private final long durationMs;
+    private final long samples;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final String localCandidateType;
+    private final String remoteCandidateType;
+    private final String transportProtocol;
+    private final String networkType;
+    private final String relayProtocol;
+    private final String failure;
+    private final String candidatePairState;
+    private final int[] offsetMs;
+    private final float[][] series;
+
+    CallStatsRecord(long startedAtMs, String remoteUid, long setupMs, String setupMode, long durationMs, long samples,
+                    long bytesSent, long bytesReceived, String localCandidateType, String remoteCandidateType,
+                    String transportProtocol, String networkType, String relayProtocol,
+                    String failure, String candidatePairState, int[] offsetMs, float[][] series) {
+        this.startedAtMs = startedAtMs;
+        this.remoteUid = remoteUid;
+        this.setupMs = setupMs;
+        this.setupMode = setupMode;
+        this.durationMs = durationMs;
+        this.samples = samples;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.localCandidateType = localCandidateType;
+        this.remoteCandidateType = remoteCandidateType;
+        this.transportProtocol = transportProtocol;
+        this.networkType = networkType;
+        this.relayProtocol = relayProtocol;
+        this.failure = failure;
+        this.candidatePairState = candidatePairState;
+        this.offsetMs = offsetMs;
+        this.series = series;
+    }
+
+    public long getStartedAtMs() {
+        return startedAtMs;
+    }
+
+    /**
+     * @return The uid of the other end, or null if unknown. The peers of a group call share
+     * one start time, so this is what tells their records apart.
+     */
+    @Nullable
+    public String getRemoteUid() {
+        return remoteUid;
+    }
+
+    public long getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * @return Why the call failed, e.g. "ice_failed" or "not_connected", or null if it ended
+     * normally.
+     */
+    @Nullable
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return The last reported state of the selected candidate pair, or of the pair that got
+     * furthest if none was selected; null if no stats were collected.
+     */
+    @Nullable
+    public String getCandidatePairState() {
+        return candidatePairState;
+    }
+
+    /**
+     * @return true if either end of the selected candidate pair was a TURN relay.
+     */
+    public boolean isRelayed() {
+        return "relay".equals(localCandidateType) || "relay".equals(remoteCandidateType);
+    }
+
+    public double getMeanRttMs() {
+        return mean(series[CallStatsCollector.RTT_MS]);
+    }
+
+    public double getP95RttMs() {
+        return percentile(series[CallStatsCollector.RTT_MS], 0.95);
+    }
+
+    public double getMeanLossInPercent() {
+        return mean(series[CallStatsCollector.LOSS_IN_PERCENT]);
+    }
+
+    /**
+     * Converts this record into a JSONObject: the summary, plus the series unless only the
+     * summary is wanted.
+     *
+     * @return A JSONObject representation of the record, or null on error.
+     */
+    @Nullable
+    public JSONObject toJSONObject(boolean includeSeries) {
+        JSONObject jsonObject = new JSONObject();
+        try {
+            jsonObject.put("started_at_ms", startedAtMs);
+            jsonObject.putOpt("remote_uid", remoteUid);
+            jsonObject.put("setup_mode", setupMode);
+            jsonObject.put("setup_ms", setupMs);
+            jsonObject.put("duration_ms", durationMs);
+            jsonObject.put("samples", samples);
+            jsonObject.putOpt("failure", failure);
+
+            JSONObject path = new JSONObject();
+            path.putOpt("local_candidate", localCandidateType);
+            path.putOpt("remote_candidate", remoteCandidateType);
+            path.putOpt("protocol", transportProtocol);
+            path.putOpt("network", networkType);
+            path.putOpt("relay_protocol", relayProtocol);
+            path.putOpt("candidate_pair_state", candidatePairState);
+            path.put("relayed", isRelayed());
+            jsonObject.put("path", path);
+
+            JSONObject summary = new JSONObject();
+            putStat(summary, "rtt_mean_ms", getMeanRttMs());
+            putStat(summary, "rtt_p95_ms", getP95RttMs());
+            putStat(summary, "rtt_max_ms", max(series[CallStatsCollector.RTT_MS]));
+            putStat(summary, "loss_in_mean_pct", getMeanLossInPercent());
+            putStat(summary, "loss_in_max_pct", max(series[CallStatsCollector.LOSS_IN_PERCENT]));
+            putStat(summary, "loss_out_mean_pct", mean(series[CallStatsCollector.LOSS_OUT_PERCENT]));
+            putStat(summary, "jitter_mean_ms", mean(series[CallStatsCollector.JITTER_MS]));
+            putStat(summary, "jitter_max_ms", max(series[CallStatsCollector.JITTER_MS]));
+            putStat(summary, "send_mean_kbps", mean(series[CallStatsCollector.SEND_KBPS]));
+            putStat(summary, "receive_mean_kbps", mean(series[CallStatsCollector.RECEIVE_KBPS]));
+            summary.put("bytes_sent", bytesSent);
+            summary.put("bytes_received", bytesReceived);
+            jsonObject.put("summary", summary);
+
+            if (includeSeries) {
+                JSONObject seriesObject = new JSONObject();
+                JSONArray offsets = new JSONArray();
+                for (int offset : offsetMs) {
+                    offsets.put(offset);
+                }
+                seriesObject.put("offset_ms", offsets);
+                for (int metric = 0; metric < series.length; metric++) {
+                    JSONArray values = new JSONArray();
+                    for (float value : series[metric]) {
+                        // JSON has no NaN; a gap in the series is null.
+                        values.put(Float.isNaN(value) ? JSONObject.NULL : (Object) round(value));
+                    }
+                    seriesObject.put(CallStatsCollector.METRIC_NAMES[metric], values);
+                }
+                jsonObject.put("series", seriesObject);
+            }
+            return jsonObject;
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @return The time series as CSV, one row per sample, with a header row. Gaps are empty.
+     */
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder();
+        csv.append("offset_ms");
+        for (String name : CallStatsCollector.METRIC_NAMES) {
+            csv.append(',').append(name);
+        }
+        csv.append('\n');
+        for (int i = 0; i < offsetMs.length; i++) {
+            csv.append(offsetMs[i]);
+            for (float[] values : series) {
+                csv.append(',');
+                if (!Float.isNaN(values[i])) {
+                    csv.append(round(values[i]));
+                }
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * @return One line matching {@link #SUMMARY_CSV_HEADER}, without a line break.
+     */
+    public String toSummaryCsvRow() {
+        return startedAtMs + "," + csvField(remoteUid) + "," + csvField(setupMode) + "," + setupMs + "," + durationMs + "," + samples + ","
+                + csvField(failure) + ","
+                + csvField(localCandidateType) + "," + csvField(remoteCandidateType) + ","
+                + csvField(transportProtocol) + "," + csvField(networkType) + "," + csvField(relayProtocol) + ","
+                + csvField(candidatePairState) + ","
+                + csvNumber(getMeanRttMs()) + "," + csvNumber(getP95RttMs()) + ","
+                + csvNumber(max(series[CallStatsCollector.RTT_MS])) + ","
+                + csvNumber(getMeanLossInPercent()) + ","
+                + csvNumber(max(series[CallStatsCollector.LOSS_IN_PERCENT])) + ","
+                + csvNumber(mean(series[CallStatsCollector.LOSS_OUT_PERCENT])) + ","
+                + csvNumber(mean(series[CallStatsCollector.JITTER_MS])) + ","
+                + csvNumber(max(series[CallStatsCollector.JITTER_MS])) + ","
+                + csvNumber(mean(series[CallStatsCollector.SEND_KBPS])) + ","
+                + csvNumber(mean(series[CallStatsCollector.RECEIVE_KBPS])) + ","
+                + bytesSent + "," + bytesReceived;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%s call%s, setup %d ms, %d ms over %s/%s (%s, pair %s), rtt mean %.0f ms p95 %.0f ms, loss in %.1f%%",
+                setupMode, failure != null ? " failed (" + failure + ")" : "", setupMs, durationMs,
+                localCandidateType, remoteCandidateType, isRelayed() ? "relayed" : "direct", candidatePairState,
+                getMeanRttMs(), getP95RttMs(), getMeanLossInPercent());
+    }
+
+    private static void putStat(JSONObject object, String key, double value) throws JSONException {
+        if (!Double.isNaN(value)) {
+            object.put(key, round(value));
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    private static String csvNumber(double value) {
+        return Double.isNaN(value) ? "" : String.valueOf(round(value));
+    }
+
+    private static String csvField(String value) {
+        // Candidate types and protocols are plain tokens; guard against the odd comma anyway.
+        return value == null ? "" : value.replace(',', ' ');
+    }
+
+    static double mean(float[] values) {
+        double sum = 0;
+        int count = 0;
+        for (float value : values) {
+            if (!Float.isNaN(value)) {
+                sum += value;
+                count++;
+            }
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    static double max(float[] values) {
+        double max = Double.NaN;
+        for (float value : values) {
+            if (!Float.isNaN(value) && (Double.isNaN(max) || value > max)) {
+                max = value;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Nearest-rank percentile over the values that are present.
+     */
+    static double percentile(float[] values, double fraction) {
+        float[] present = new float[values.length];
+        int count = 0;
+        for (float value : values) {
+            if (!Float.isNaN(value)) {
+                present[count++] = value;
+            }
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        Arrays.sort(present, 0, count);
+        int rank = (int) Math.ceil(fraction * count);
+        return present[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,152 @@
+package com.safevoice.app.webrtc;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the quality records of recent calls on the device, for export when tuning STUN and
+ * TURN. Each call is written to its own file under files/call_stats, named by its start time
+ * and the other end's uid, since the peers of a group call share a start time, in the format chosen by the "call_stats_export_format" setting: "json" (summary and series,
+ * the default), "csv" (the series, plus a line in a shared summary table) or "none".
+ *
+ * Writes happen on a background thread so the end of a call never waits on the disk. Only the
+ * newest MAX_CALLS records are kept.
+ */
+public class CallStatsStore {
+
+    private static final String TAG = "CallStatsStore";
+    private static final String SETTINGS_PREFS_NAME = "SafeVoiceSettingsPrefs";
+    private static final String KEY_EXPORT_FORMAT = "call_stats_export_format";
+    private static final String DIRECTORY_NAME = "call_stats";
+    private static final String SUMMARY_FILE_NAME = "summary.csv";
+
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_NONE = "none";
+
+    private static final int MAX_CALLS = 20;
+
+    private static CallStatsStore instance;
+
+    private final File directory;
+    private final SharedPreferences settingsPrefs;
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+
+    private CallStatsStore(Context context) {
+        Context appContext = context.getApplicationContext();
+        this.directory = new File(appContext.getFilesDir(), DIRECTORY_NAME);
+        this.settingsPrefs = appContext.getSharedPreferences(SETTINGS_PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized CallStatsStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new CallStatsStore(context);
+        }
+        return instance;
+    }
+
+    /**
+     * @return The directory holding the exported records, for sharing them off the device.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes a record in the configured format, in the background.
+     */
+    public void save(final CallStatsRecord record) {
+        final String format = settingsPrefs.getString(KEY_EXPORT_FORMAT, FORMAT_JSON);
+        Log.i(TAG, "Call quality: " + record);
+        // Kept even without samples: a call that failed during setup is the one worth reading.
+        if (FORMAT_NONE.equals(format)) {
+            return;
+        }
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    Log.e(TAG, "Could not create " + directory);
+                    return;
+                }
+                String baseName = fileBaseName(record);
+                if (FORMAT_CSV.equals(format)) {
+                    write(new File(directory, baseName + ".csv"), record.toCsv(), false);
+                    File summary = new File(directory, SUMMARY_FILE_NAME);
+                    String header = summary.exists() ? "" : CallStatsRecord.SUMMARY_CSV_HEADER + "\n";
+                    write(summary, header + record.toSummaryCsvRow() + "\n", true);
+                } else {
+                    JSONObject json = record.toJSONObject(true);
+                    if (json != null) {
+                        write(new File(directory, baseName + ".json"), json.toString(), false);
+                    }
+                }
+                prune();
+            }
+        });
+    }
+
+    /**
+     * @return "call_{startedAtMs}_{remoteUid}", or "call_{startedAtMs}" if the uid is unknown.
+     */
+    static String fileBaseName(CallStatsRecord record) {
+        String baseName = "call_" + record.getStartedAtMs();
+        String remoteUid = record.getRemoteUid();
+        if (remoteUid == null || remoteUid.isEmpty()) {
+            return baseName;
+        }
+        // Firebase uids are alphanumeric; keep any other character out of the file name.
+        return baseName + "_" + remoteUid.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    private void write(File file, String content, boolean append) {
+        try (FileOutputStream out = new FileOutputStream(file, append)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(content);
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Deletes the oldest per-call files beyond MAX_CALLS. The summary table is kept whole.
+     */
+    private void prune() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Names embed the start time in milliseconds, which has the same width for centuries.
+        File[] calls = new File[files.length];
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().startsWith("call_")) {
+                calls[count++] = file;
+            }
+        }
+        if (count <= MAX_CALLS) {
+            return;
+        }
+        Arrays.sort(calls, 0, count, (a, b) -> a.getName().compareTo(b.getName()));
+        for (int i = 0; i < count - MAX_CALLS; i++) {
+            if (!calls[i].delete()) {
+                Log.w(TAG, "Could not delete " + calls[i].getName());
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.safevoice.app.webrtc;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
@@ -18,67 +21,159 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
-public class FirebaseSignalingClient {
+/**
+ * Exchanges WebRTC offers, answers and ICE candidates through the Realtime Database.
+ *
+ * Outgoing ICE candidates are coalesced for ICE_BATCH_WINDOW_MS and written in one
+ * updateChildren() call, and incoming ones are read with a ChildEventListener, so each
+ * candidate costs one write per batch and is delivered exactly once. Message counts are
+ * logged when the call ends.
+ *
+ * Within a session, each client reads only the nodes addressed to it and writes only the
+ * nodes addressed to the other end, so a client never hears its own offer or candidates. The
+ * callee's nodes are "{calleeUid}" for the offer and "{calleeUid}_ice" for candidates. The
+ * caller's nodes are keyed per callee, "{callerUid}_{calleeUid}" and
+ * "{callerUid}_{calleeUid}_ice", so the answers of several callees never collide.
+ *
+ * A group call shares one session between several clients: the owner creates it with
+ * createSharedCallSession() and calls each callee through a client that joins it with
+ * joinSharedCallSession().
+ *
+ * Hanging up writes {type: "end_call"} over the other end's offer/answer node and removes
+ * the rest of that caller-callee pair's nodes in the same update, so the other end hears the
+ * hang-up on the node it already listens to. It consumes the marker like any other signal,
+ * and once the last pair is gone the session node is empty and disappears. An end that has
+ * heard the hang-up does not send one back.
+ */
+public class FirebaseSignalingClient implements SignalingTransport {
 
     private static final String TAG = "FirebaseSignalingClient";
     private static final String CALL_SESSIONS_NODE = "call_sessions";
+    private static final String END_CALL_TYPE = "end_call";
+    // Candidates usually arrive in bursts a few milliseconds apart during gathering.
+    private static final long ICE_BATCH_WINDOW_MS = 50;
 
     private final FirebaseDatabase database;
     private final String currentUserUid;
+    // Set on the main thread, read from WebRTC's signaling thread. Guarded by pendingCandidates.
     private DatabaseReference callSessionRef;
-    private SignalingListener listener;
+    private SignalingTransport.Listener listener;
+    // true when another client owns callSessionRef and removes it at the end of the call.
+    private boolean sharedSession = false;
+    // true when this client joined with joinCallSession() and answers the call.
+    private boolean callee = false;
+    // The uid of the other end, which keys the caller's nodes.
+    private String remoteUserUid;
+    // true once the other end has hung up, so endCall() need not tell it.
+    private volatile boolean remoteEnded = false;
 
     private ValueEventListener offerListener;
-    private ValueEventListener answerListener;
-    private ValueEventListener iceCandidateListener;
+    private ChildEventListener iceCandidateListener;
+    private DatabaseReference offerRef;
+    private DatabaseReference iceCandidateRef;
 
-    public interface SignalingListener {
-        void onOfferReceived(SessionDescription sessionDescription);
-        void onAnswerReceived(SessionDescription sessionDescription);
-        void onIceCandidateReceived(IceCandidate iceCandidate);
-        void onCallEnded();
-    }
+    // Candidates waiting for the current batch window to close. Guarded by pendingCandidates.
+    private final Map<String, Object> pendingCandidates = new HashMap<>();
+    private String pendingTargetNode;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushCandidates = new Runnable() {
+        @Override
+        public void run() {
+            flushIceCandidates();
+        }
+    };
+
+    // Per-call signaling traffic, for tuning the batch window.
+    private int writesSent = 0;
+    private int candidatesSent = 0;
+    private int candidatesReceived = 0;
 
     public FirebaseSignalingClient() {
         this.database = FirebaseDatabase.getInstance();
         this.currentUserUid = Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
     }
 
-    public void setListener(SignalingListener listener) {
+    @Override
+    public void setListener(SignalingTransport.Listener listener) {
         this.listener = listener;
     }
 
+    @Override
     public void createCallSession(String targetUserUid) {
         // A unique session ID is created by the caller
-        this.callSessionRef = database.getReference(CALL_SESSIONS_NODE).push();
-        listenForSignals(targetUserUid);
+        setCallSessionRef(database.getReference(CALL_SESSIONS_NODE).push());
+        this.remoteUserUid = targetUserUid;
+        listenForSignals();
+    }
+
+    @Override
+    public String createSharedCallSession() {
+        DatabaseReference sessionRef = database.getReference(CALL_SESSIONS_NODE).push();
+        setCallSessionRef(sessionRef);
+        return sessionRef.getKey();
+    }
+
+    @Override
+    public void joinSharedCallSession(String sessionId, String targetUserUid) {
+        setCallSessionRef(database.getReference(CALL_SESSIONS_NODE).child(sessionId));
+        this.sharedSession = true;
+        this.remoteUserUid = targetUserUid;
+        listenForSignals();
     }
 
+    @Override
     public void joinCallSession(String sessionId) {
-        this.callSessionRef = database.getReference(CALL_SESSIONS_NODE).child(sessionId);
-        // The callee needs to know who the caller is to send signals back
-        callSessionRef.child("callerUid").addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                String callerUid = snapshot.getValue(String.class);
-                if (callerUid != null) {
-                    listenForSignals(callerUid);
-                }
-            }
-            @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                Log.e(TAG, "Failed to get caller UID", error.toException());
-            }
-        });
+        setCallSessionRef(database.getReference(CALL_SESSIONS_NODE).child(sessionId));
+        this.callee = true;
+        // The offer is addressed to this user's nodes; the caller's uid comes with the call.
+        listenForSignals();
+    }
+
+    private void setCallSessionRef(DatabaseReference sessionRef) {
+        synchronized (pendingCandidates) {
+            callSessionRef = sessionRef;
+        }
+    }
+
+    /**
+     * @return The session, or null once the call has ended. Safe to call from any thread.
+     */
+    private DatabaseReference getCallSessionRef() {
+        synchronized (pendingCandidates) {
+            return callSessionRef;
+        }
+    }
+
+    /**
+     * @return The node this client reads its offer or answer from.
+     */
+    private String ownNode() {
+        return callee ? currentUserUid : currentUserUid + "_" + remoteUserUid;
     }
 
-    private void listenForSignals(String remoteUserUid) {
+    /**
+     * @return The node that signals for the given uid are written to.
+     */
+    private String nodeFor(String targetUserUid) {
+        return callee ? targetUserUid + "_" + currentUserUid : targetUserUid;
+    }
+
+    /**
+     * Listens on this client's own nodes of the session.
+     */
+    private void listenForSignals() {
         // Listener for offer or answer
         offerListener = new ValueEventListener() {
             @Override
             public void onDataChange(@NonNull DataSnapshot snapshot) {
                 if (snapshot.exists()) {
                     String type = snapshot.child("type").getValue(String.class);
+                    if (END_CALL_TYPE.equals(type)) {
+                        remoteEnded = true;
+                        snapshot.getRef().removeValue();
+                        listener.onCallEnded();
+                        return;
+                    }
                     String sdp = snapshot.child("sdp").getValue(String.class);
                     if (type != null && sdp != null) {
                         SessionDescription sessionDescription = new SessionDescription(SessionDescription.Type.fromCanonicalForm(type.toLowerCase()), sdp);
@@ -99,87 +194,192 @@ public class FirebaseSignalingClient {
             }
         };
 
-        // Listener for ICE candidates
-        iceCandidateListener = new ValueEventListener() {
+        // Listener for ICE candidates: each child is one candidate, delivered once.
+        iceCandidateListener = new ChildEventListener() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                if (snapshot.exists()) {
-                    for(DataSnapshot candidateSnapshot : snapshot.getChildren()) {
-                        String sdpMid = candidateSnapshot.child("sdpMid").getValue(String.class);
-                        int sdpMLineIndex = candidateSnapshot.child("sdpMLineIndex").getValue(Integer.class);
-                        String sdp = candidateSnapshot.child("sdp").getValue(String.class);
-                        if(sdpMid != null && sdp != null) {
-                            IceCandidate iceCandidate = new IceCandidate(sdpMid, sdpMLineIndex, sdp);
-                            listener.onIceCandidateReceived(iceCandidate);
-                        }
-                    }
-                    // Consume all candidates
-                    snapshot.getRef().removeValue();
+            public void onChildAdded(@NonNull DataSnapshot candidateSnapshot, String previousChildName) {
+                String sdpMid = candidateSnapshot.child("sdpMid").getValue(String.class);
+                Integer sdpMLineIndex = candidateSnapshot.child("sdpMLineIndex").getValue(Integer.class);
+                String sdp = candidateSnapshot.child("sdp").getValue(String.class);
+                if (sdpMid != null && sdpMLineIndex != null && sdp != null) {
+                    candidatesReceived++;
+                    listener.onIceCandidateReceived(new IceCandidate(sdpMid, sdpMLineIndex, sdp));
                 }
             }
             @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, String previousChildName) {}
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {}
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, String previousChildName) {}
+            @Override
             public void onCancelled(@NonNull DatabaseError error) {
                 Log.e(TAG, "ICE candidate listener cancelled", error.toException());
             }
         };
 
-        callSessionRef.child(remoteUserUid).addValueEventListener(offerListener);
-        callSessionRef.child(remoteUserUid + "_ice").addValueEventListener(iceCandidateListener);
+        offerRef = callSessionRef.child(ownNode());
+        iceCandidateRef = callSessionRef.child(ownNode() + "_ice");
+        offerRef.addValueEventListener(offerListener);
+        iceCandidateRef.addChildEventListener(iceCandidateListener);
     }
 
 
+    @Override
     public void sendOffer(SessionDescription sdp, String targetUserUid) {
-        if (callSessionRef == null) {
+        if (getCallSessionRef() == null) {
             createCallSession(targetUserUid);
         }
+        DatabaseReference sessionRef = getCallSessionRef();
+        if (sessionRef == null) {
+            return;
+        }
+        remoteUserUid = targetUserUid;
         Map<String, Object> offerData = new HashMap<>();
         offerData.put("type", "offer");
         offerData.put("sdp", sdp.description);
 
-        callSessionRef.child("callerUid").setValue(currentUserUid);
-        callSessionRef.child(targetUserUid).setValue(offerData);
+        // One multi-path write for both the caller and the offer.
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("callerUid", currentUserUid);
+        updates.put(nodeFor(targetUserUid), offerData);
+        sessionRef.updateChildren(updates);
+        writesSent++;
     }
 
+    @Override
     public void sendAnswer(SessionDescription sdp, String targetUserUid) {
+        DatabaseReference sessionRef = getCallSessionRef();
+        if (sessionRef == null) {
+            // The call ended while the answer was being created.
+            return;
+        }
         Map<String, Object> answerData = new HashMap<>();
         answerData.put("type", "answer");
         answerData.put("sdp", sdp.description);
-        callSessionRef.child(targetUserUid).setValue(answerData);
+        remoteUserUid = targetUserUid;
+        sessionRef.child(nodeFor(targetUserUid)).setValue(answerData);
+        writesSent++;
     }
 
+    /**
+     * Queues a candidate for the next batch. Safe to call from WebRTC's signaling thread.
+     */
+    @Override
     public void sendIceCandidate(IceCandidate iceCandidate, String targetUserUid) {
         Map<String, Object> candidateData = new HashMap<>();
         candidateData.put("sdpMid", iceCandidate.sdpMid);
         candidateData.put("sdpMLineIndex", iceCandidate.sdpMLineIndex);
         candidateData.put("sdp", iceCandidate.sdp);
 
-        callSessionRef.child(targetUserUid + "_ice").push().setValue(candidateData);
+        // push() keys are generated locally and sort by time, so the batch keeps its order.
+        String targetNode = nodeFor(targetUserUid) + "_ice";
+        synchronized (pendingCandidates) {
+            if (callSessionRef == null) {
+                // The call ended while this candidate was gathered.
+                return;
+            }
+            String key = callSessionRef.child(targetNode).push().getKey();
+            boolean firstInBatch = pendingCandidates.isEmpty();
+            pendingCandidates.put(key, candidateData);
+            pendingTargetNode = targetNode;
+            if (firstInBatch) {
+                handler.postDelayed(flushCandidates, ICE_BATCH_WINDOW_MS);
+            }
+        }
+    }
+
+    /**
+     * Writes every queued candidate in a single updateChildren() call.
+     */
+    private void flushIceCandidates() {
+        Map<String, Object> batch;
+        String targetNode;
+        DatabaseReference sessionRef;
+        synchronized (pendingCandidates) {
+            sessionRef = callSessionRef;
+            if (pendingCandidates.isEmpty() || sessionRef == null) {
+                pendingCandidates.clear();
+                return;
+            }
+            batch = new HashMap<>(pendingCandidates);
+            targetNode = pendingTargetNode;
+            pendingCandidates.clear();
+        }
+        // endCall() may clear callSessionRef from here on, so only the captured reference is used.
+        sessionRef.child(targetNode).updateChildren(batch);
+        writesSent++;
+        candidatesSent += batch.size();
     }
 
+    @Override
     public void endCall() {
-        if (callSessionRef != null) {
+        handler.removeCallbacks(flushCandidates);
+        DatabaseReference sessionRef;
+        synchronized (pendingCandidates) {
+            pendingCandidates.clear();
+            sessionRef = callSessionRef;
+            callSessionRef = null;
+        }
+        if (sessionRef != null) {
             // Remove listeners to stop receiving events
             if (offerListener != null) {
-                callSessionRef.removeEventListener(offerListener);
+                offerRef.removeEventListener(offerListener);
+                offerListener = null;
             }
             if (iceCandidateListener != null) {
-                callSessionRef.removeEventListener(iceCandidateListener);
+                iceCandidateRef.removeEventListener(iceCandidateListener);
+                iceCandidateListener = null;
             }
-            // Signal the other user that the call is over
-            Map<String, Object> endCallData = new HashMap<>();
-            endCallData.put("type", "end_call");
-            callSessionRef.setValue(endCallData);
-
-            // Clean up the entire session node from the database
-            callSessionRef.removeValue();
-            callSessionRef = null;
+            Log.i(TAG, "Signaling for call: " + writesSent + " write(s), " + candidatesSent
+                    + " candidate(s) sent, " + candidatesReceived + " received.");
+            writesSent = 0;
+            candidatesSent = 0;
+            candidatesReceived = 0;
+            if (remoteUserUid != null) {
+                // Only this pair's nodes are ours to touch, so the other callees of a group call
+                // keep theirs. The other end's node carries the hang-up.
+                String peerNode = nodeFor(remoteUserUid);
+                Map<String, Object> updates = new HashMap<>();
+                updates.put(ownNode(), null);
+                updates.put(ownNode() + "_ice", null);
+                updates.put(peerNode + "_ice", null);
+                if (remoteEnded) {
+                    updates.put(peerNode, null);
+                } else {
+                    Map<String, Object> endCallData = new HashMap<>();
+                    endCallData.put("type", END_CALL_TYPE);
+                    updates.put(peerNode, endCallData);
+                }
+                if (!sharedSession && !callee) {
+                    updates.put("callerUid", null);
+                }
+                sessionRef.updateChildren(updates);
+            } else if (callee) {
+                // Left before answering; the caller gives up on its own.
+                Map<String, Object> removals = new HashMap<>();
+                removals.put(ownNode(), null);
+                removals.put(ownNode() + "_ice", null);
+                sessionRef.updateChildren(removals);
+            } else if (!sharedSession) {
+                // The owner of a session that holds no pair of its own, e.g. a group call's,
+                // whose joined clients have already sent their hang-ups. Removing the whole
+                // session could delete those before the callees read them.
+                sessionRef.child("callerUid").removeValue();
+            }
+            remoteUserUid = null;
+            remoteEnded = false;
+            sharedSession = false;
+            callee = false;
         }
         if (listener != null) {
             listener.onCallEnded();
         }
     }
 
+    @Override
     public String getSessionId() {
-        return (callSessionRef != null) ? callSessionRef.getKey() : null;
+        DatabaseReference sessionRef = getCallSessionRef();
+        return (sessionRef != null) ? sessionRef.getKey() : null;
     }
   }
@@ -0,0 +1,526 @@
+package com.safevoice.app.webrtc;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.webrtc.AudioSource;
+import org.webrtc.AudioTrack;
+import org.webrtc.DataChannel;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnection;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtpParameters;
+import org.webrtc.RtpReceiver;
+import org.webrtc.RtpSender;
+import org.webrtc.SdpObserver;
+import org.webrtc.SessionDescription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Calls several contacts at once over WebRTC, with one peer connection per contact.
+ *
+ * Every peer connection sends the same local AudioTrack, so the microphone is opened once
+ * however many contacts are called. All peers join one shared signaling session, so the
+ * single session ID carried by the FCM alert works for every recipient. If
+ * PeerConnectionWarmer holds a speculative call to one of the contacts, usually the primary
+ * contact, that contact's peer adopts it, with its offer and gathered ICE candidates, and
+ * sends the shared track on its audio sender.
+ *
+ * The uplink is capped at a total bitrate. Until someone answers, the cap is split evenly.
+ * The first contact to answer then gets priority: PRIORITY_SHARE of the cap for their peer,
+ * with the rest split between the others. A peer whose share would fall below
+ * MIN_PEER_BITRATE_BPS stops sending rather than push the total over the cap.
+ *
+ * Each peer records its own CallStatsRecord from the moment its peer connection exists, so
+ * contacts that never answered or whose connection failed show up in the exported stats.
+ *
+ * Reports through WebRTCManager.WebRTCListener: established when the first peer connects,
+ * ended once every peer has ended.
+ */
+public class GroupCallManager {
+
+    private static final String TAG = "GroupCallManager";
+    private static final String AUDIO_TRACK_ID = "ARDAMSa0";
+
+    public static final int DEFAULT_UPLINK_CAP_BPS = 64000;
+    // Opus stays intelligible for speech down to about 6 kbps.
+    static final int MIN_PEER_BITRATE_BPS = 6000;
+    // More than this buys nothing for narrowband Opus.
+    static final int MAX_PEER_BITRATE_BPS = OpusAudioProfile.MAX_AVERAGE_BITRATE_BPS;
+    static final float PRIORITY_SHARE = 0.5f;
+
+    private final Context context;
+    private final WebRTCManager.WebRTCListener listener;
+    private final int uplinkCapBps;
+    private final SignalingTransport.Factory transportFactory;
+    private final SignalingTransport sessionClient;
+    private PeerConnectionFactory peerConnectionFactory;
+    private boolean ownsFactory;
+    private volatile String setupMode;
+    private AudioSource audioSource;
+    private AudioTrack localAudioTrack;
+    // When startCall() ran, for the setup time in each peer's stats record.
+    private long callStartedAtMs;
+    private long callStartedElapsedMs;
+
+    // Guarded by this object's lock; peers report from WebRTC and Firebase threads.
+    private final List<Peer> peers = new ArrayList<>();
+    private Peer priorityPeer;
+    private boolean established = false;
+    private boolean ended = false;
+
+    public GroupCallManager(Context context, WebRTCManager.WebRTCListener listener, int uplinkCapBps) {
+        this(context, listener, uplinkCapBps, new SignalingTransport.Factory() {
+            @Override
+            public SignalingTransport create() {
+                return new FirebaseSignalingClient();
+            }
+        });
+    }
+
+    /**
+     * @param transportFactory Creates the session's transport and then one per peer.
+     */
+    public GroupCallManager(Context context, WebRTCManager.WebRTCListener listener, int uplinkCapBps,
+                            SignalingTransport.Factory transportFactory) {
+        this.context = context;
+        this.listener = listener;
+        this.uplinkCapBps = uplinkCapBps;
+        this.transportFactory = transportFactory;
+        this.sessionClient = transportFactory.create();
+
+        PeerConnectionFactory warmFactory = PeerConnectionWarmer.getInstance(context).getWarmFactory();
+        if (warmFactory != null) {
+            peerConnectionFactory = warmFactory;
+            setupMode = CallSetupLatencyRecorder.MODE_WARM;
+        } else {
+            peerConnectionFactory = WebRTCManager.createPeerConnectionFactory(context);
+            ownsFactory = true;
+            setupMode = CallSetupLatencyRecorder.MODE_COLD;
+        }
+    }
+
+    /**
+     * @return How the call was set up, one of the CallSetupLatencyRecorder modes.
+     */
+    public String getSetupMode() {
+        return setupMode;
+    }
+
+    /**
+     * @return The most contacts that can be called at once without exceeding the uplink cap.
+     */
+    public int getMaxPeers() {
+        return Math.max(1, uplinkCapBps / MIN_PEER_BITRATE_BPS);
+    }
+
+    /**
+     * Creates the shared signaling session so its ID can go out with the alerts before the
+     * calls start.
+     *
+     * @return The session ID of the group call.
+     */
+    public synchronized String prepareCall() {
+        if (sessionClient.getSessionId() == null) {
+            sessionClient.createSharedCallSession();
+        }
+        return sessionClient.getSessionId();
+    }
+
+    /**
+     * Opens a peer connection to every contact, in order, up to getMaxPeers().
+     *
+     * @param targetUserUids The uids to call, most important first.
+     */
+    public synchronized void startCall(List<String> targetUserUids) {
+        String sessionId = prepareCall();
+        callStartedAtMs = System.currentTimeMillis();
+        callStartedElapsedMs = SystemClock.elapsedRealtime();
+        if (audioSource == null) {
+            audioSource = peerConnectionFactory.createAudioSource(OpusAudioProfile.audioSourceConstraints());
+            localAudioTrack = peerConnectionFactory.createAudioTrack(AUDIO_TRACK_ID, audioSource);
+            localAudioTrack.setEnabled(true);
+        }
+        PeerConnection.RTCConfiguration rtcConfig = WebRTCManager.createRtcConfiguration(context);
+
+        int limit = Math.min(targetUserUids.size(), getMaxPeers());
+        if (limit < targetUserUids.size()) {
+            Log.w(TAG, "Uplink cap allows " + limit + " of " + targetUserUids.size() + " contacts.");
+        }
+        for (int i = 0; i < limit; i++) {
+            Peer peer = new Peer(targetUserUids.get(i));
+            if (peer.start(sessionId, rtcConfig)) {
+                peers.add(peer);
+            }
+        }
+        Log.i(TAG, "Calling " + peers.size() + " contact(s) in session " + sessionId);
+        if (peers.isEmpty()) {
+            endCall();
+            return;
+        }
+        reallocateBitrates();
+    }
+
+    /**
+     * Hangs up on every peer and removes the shared session.
+     */
+    public void endCall() {
+        List<Peer> toEnd;
+        synchronized (this) {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            toEnd = new ArrayList<>(peers);
+        }
+        for (Peer peer : toEnd) {
+            peer.end();
+        }
+        sessionClient.endCall();
+        if (listener != null) {
+            listener.onWebRTCCallEnded();
+        }
+    }
+
+    public void cleanup() {
+        endCall();
+        if (audioSource != null) {
+            audioSource.dispose();
+            audioSource = null;
+        }
+        if (peerConnectionFactory != null && ownsFactory) {
+            peerConnectionFactory.dispose();
+            PeerConnectionFactory.shutdownInternalTracer();
+        }
+        peerConnectionFactory = null;
+    }
+
+    private void onPeerAnswered(Peer peer) {
+        synchronized (this) {
+            if (priorityPeer != null || peer.ended) {
+                return;
+            }
+            Log.i(TAG, "First answer from " + peer.uid + ". Giving it priority.");
+            priorityPeer = peer;
+            reallocateBitrates();
+        }
+    }
+
+    private void onPeerConnected(Peer peer) {
+        synchronized (this) {
+            if (established || ended) {
+                return;
+            }
+            established = true;
+        }
+        Log.i(TAG, "First peer connected: " + peer.uid);
+        if (listener != null) {
+            listener.onWebRTCCallEstablished();
+        }
+    }
+
+    private void onPeerEnded(Peer peer) {
+        boolean allEnded;
+        synchronized (this) {
+            if (ended) {
+                return;
+            }
+            if (priorityPeer == peer) {
+                priorityPeer = null;
+            }
+            allEnded = true;
+            for (Peer other : peers) {
+                allEnded &= other.ended;
+            }
+            if (!allEnded) {
+                reallocateBitrates();
+            }
+        }
+        if (allEnded) {
+            endCall();
+        }
+    }
+
+    /**
+     * Applies allocateBitrates() to the peers that are still live. Caller holds the lock.
+     */
+    private void reallocateBitrates() {
+        List<Peer> live = new ArrayList<>();
+        for (Peer peer : peers) {
+            if (!peer.ended) {
+                live.add(peer);
+            }
+        }
+        int[] bitrates = allocateBitrates(live.size(), live.indexOf(priorityPeer), uplinkCapBps);
+        for (int i = 0; i < live.size(); i++) {
+            live.get(i).applyMaxBitrate(bitrates[i]);
+        }
+    }
+
+    /**
+     * Splits the uplink cap between peers.
+     *
+     * @param peerCount     The number of live peers.
+     * @param priorityIndex The peer that answered first, or -1 if nobody has yet.
+     * @param capBps        The total uplink cap.
+     * @return The bitrate for each peer in bits per second; 0 means the peer must not send.
+     */
+    static int[] allocateBitrates(int peerCount, int priorityIndex, int capBps) {
+        int[] bitrates = new int[peerCount];
+        if (peerCount == 0) {
+            return bitrates;
+        }
+        int remaining = capBps;
+        int others = peerCount;
+        if (priorityIndex >= 0) {
+            int priority = (peerCount == 1) ? capBps : (int) (capBps * PRIORITY_SHARE);
+            bitrates[priorityIndex] = clamp(priority, Math.min(MIN_PEER_BITRATE_BPS, capBps), MAX_PEER_BITRATE_BPS);
+            remaining -= bitrates[priorityIndex];
+            others--;
+        }
+        if (others == 0) {
+            return bitrates;
+        }
+        // Peers that do not fit at the minimum bitrate go silent, latest in the call order first.
+        int fitting = Math.min(others, remaining / MIN_PEER_BITRATE_BPS);
+        int share = (fitting > 0) ? Math.min(remaining / fitting, MAX_PEER_BITRATE_BPS) : 0;
+        int assigned = 0;
+        for (int i = 0; i < peerCount; i++) {
+            if (i == priorityIndex) {
+                continue;
+            }
+            bitrates[i] = (assigned < fitting) ? share : 0;
+            assigned++;
+        }
+        return bitrates;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * One contact in the group call: its peer connection and its view of the shared session.
+     */
+    private class Peer implements PeerConnection.Observer, SignalingTransport.Listener {
+
+        private final String uid;
+        private final SignalingTransport signalingClient = transportFactory.create();
+        private PeerConnection peerConnection;
+        private RtpSender audioSender;
+        // The adopted speculative call's own audio source, released when the peer ends.
+        private AudioSource speculativeAudioSource;
+        private String peerSetupMode = ownsFactory ? CallSetupLatencyRecorder.MODE_COLD : CallSetupLatencyRecorder.MODE_WARM;
+        private CallStatsPoller statsPoller;
+        private volatile CallStatsCollector callStatsCollector;
+        private int appliedBitrateBps = -1;
+        // Guarded by the GroupCallManager lock.
+        private boolean ended = false;
+
+        Peer(String uid) {
+            this.uid = uid;
+        }
+
+        boolean start(String sessionId, PeerConnection.RTCConfiguration rtcConfig) {
+            SpeculativeCall speculativeCall = PeerConnectionWarmer.getInstance(context).takeSpeculativeCall(uid);
+            if (speculativeCall != null) {
+                adopt(sessionId, speculativeCall);
+                return true;
+            }
+            peerConnection = peerConnectionFactory.createPeerConnection(rtcConfig, this);
+            if (peerConnection == null) {
+                Log.e(TAG, "PeerConnection creation failed for " + uid);
+                return false;
+            }
+            startStatsCollection();
+            audioSender = peerConnection.addTrack(localAudioTrack, Collections.singletonList("stream1"));
+            signalingClient.setListener(this);
+            signalingClient.joinSharedCallSession(sessionId, uid);
+
+            peerConnection.createOffer(new SdpObserver() {
+                @Override
+                public void onCreateSuccess(SessionDescription createdOffer) {
+                    final SessionDescription sessionDescription = OpusAudioProfile.apply(createdOffer);
+                    peerConnection.setLocalDescription(new SdpObserver() {
+                        @Override
+                        public void onSetSuccess() {
+                            signalingClient.sendOffer(sessionDescription, uid);
+                        }
+                        @Override
+                        public void onCreateSuccess(SessionDescription sdp) {}
+                        @Override
+                        public void onSetFailure(String s) { Log.e(TAG, "Failed to set local description for " + uid + ": " + s); }
+                        @Override
+                        public void onCreateFailure(String s) {}
+                    }, sessionDescription);
+                }
+                @Override
+                public void onSetSuccess() {}
+                @Override
+                public void onCreateFailure(String s) { Log.e(TAG, "Failed to create offer for " + uid + ": " + s); }
+                @Override
+                public void onSetFailure(String s) {}
+            }, OpusAudioProfile.sdpConstraints());
+            return true;
+        }
+
+        /**
+         * Takes over a speculative call to this contact. Its offer and buffered candidates
+         * are sent once the peer has joined the session.
+         */
+        private void adopt(String sessionId, SpeculativeCall speculativeCall) {
+            Log.d(TAG, "Adopting the speculative call to " + uid);
+            setupMode = CallSetupLatencyRecorder.MODE_SPECULATIVE;
+            peerSetupMode = CallSetupLatencyRecorder.MODE_SPECULATIVE;
+            peerConnection = speculativeCall.getPeerConnection();
+            startStatsCollection();
+            audioSender = speculativeCall.getAudioSender();
+            speculativeAudioSource = speculativeCall.getAudioSource();
+            // Send the group's track so every peer carries the same microphone audio.
+            audioSender.setTrack(localAudioTrack, false);
+            signalingClient.setListener(this);
+            signalingClient.joinSharedCallSession(sessionId, uid);
+            speculativeCall.attach(this, new SpeculativeCall.OfferListener() {
+                @Override
+                public void onOfferReady(SessionDescription offer) {
+                    signalingClient.sendOffer(offer, uid);
+                }
+            });
+        }
+
+        /**
+         * Polls this peer's stats into its own collector from before it connects.
+         */
+        private void startStatsCollection() {
+            callStatsCollector = new CallStatsCollector(CallStatsCollector.DEFAULT_CAPACITY, callStartedAtMs, uid, peerSetupMode);
+            statsPoller = new CallStatsPoller(peerConnection, WebRTCManager.STATS_INTERVAL_MS);
+            statsPoller.addListener(callStatsCollector);
+            statsPoller.start();
+        }
+
+        /**
+         * Caps or silences this peer's audio sender. Caller holds the GroupCallManager lock.
+         */
+        void applyMaxBitrate(int bitrateBps) {
+            if (audioSender == null || bitrateBps == appliedBitrateBps) {
+                return;
+            }
+            RtpParameters parameters = audioSender.getParameters();
+            for (RtpParameters.Encoding encoding : parameters.encodings) {
+                encoding.active = bitrateBps > 0;
+                encoding.maxBitrateBps = (bitrateBps > 0) ? bitrateBps : null;
+            }
+            if (audioSender.setParameters(parameters)) {
+                appliedBitrateBps = bitrateBps;
+                Log.d(TAG, "Uplink for " + uid + ": " + bitrateBps + " bps");
+            }
+        }
+
+        void end() {
+            synchronized (GroupCallManager.this) {
+                if (ended) {
+                    return;
+                }
+                ended = true;
+            }
+            if (statsPoller != null) {
+                statsPoller.stop();
+                statsPoller = null;
+            }
+            if (callStatsCollector != null) {
+                CallStatsStore.getInstance(context).save(callStatsCollector.finish());
+                callStatsCollector = null;
+            }
+            if (peerConnection != null) {
+                peerConnection.close();
+            }
+            if (speculativeAudioSource != null) {
+                speculativeAudioSource.dispose();
+                speculativeAudioSource = null;
+            }
+            signalingClient.endCall();
+            onPeerEnded(this);
+        }
+
+        // PeerConnection.Observer methods
+        @Override
+        public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
+            Log.d(TAG, uid + " onIceConnectionChange: " + iceConnectionState);
+            CallStatsCollector collector = callStatsCollector;
+            if (iceConnectionState == PeerConnection.IceConnectionState.CONNECTED) {
+                if (collector != null) {
+                    collector.onConnected(SystemClock.elapsedRealtime() - callStartedElapsedMs);
+                }
+                onPeerConnected(this);
+            } else if (iceConnectionState == PeerConnection.IceConnectionState.FAILED || iceConnectionState == PeerConnection.IceConnectionState.DISCONNECTED) {
+                if (collector != null) {
+                    collector.onFailed("ice_" + iceConnectionState.name().toLowerCase(Locale.US));
+                }
+                end();
+            }
+        }
+        @Override
+        public void onIceCandidate(IceCandidate iceCandidate) {
+            signalingClient.sendIceCandidate(iceCandidate, uid);
+        }
+        @Override
+        public void onSignalingChange(PeerConnection.SignalingState signalingState) {}
+        @Override
+        public void onIceConnectionReceivingChange(boolean b) {}
+        @Override
+        public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {}
+        @Override
+        public void onIceCandidatesRemoved(IceCandidate[] iceCandidates) {}
+        @Override
+        public void onAddStream(MediaStream mediaStream) {}
+        @Override
+        public void onRemoveStream(MediaStream mediaStream) {}
+        @Override
+        public void onDataChannel(DataChannel dataChannel) {}
+        @Override
+        public void onRenegotiationNeeded() {}
+        @Override
+        public void onAddTrack(RtpReceiver rtpReceiver, MediaStream[] mediaStreams) {
+            Log.d(TAG, "Remote audio track received from " + uid);
+        }
+
+        // SignalingTransport.Listener methods
+        @Override
+        public void onOfferReceived(SessionDescription sessionDescription) {
+            // The group caller only sends offers.
+        }
+
+        @Override
+        public void onAnswerReceived(SessionDescription sessionDescription) {
+            Log.d(TAG, "Answer received from " + uid);
+            peerConnection.setRemoteDescription(new SdpObserver() {
+                @Override
+                public void onSetSuccess() {
+                    onPeerAnswered(Peer.this);
+                }
+                @Override
+                public void onCreateSuccess(SessionDescription sdp) {}
+                @Override
+                public void onSetFailure(String s) { Log.e(TAG, "Failed to set remote description for " + uid + ": " + s); }
+                @Override
+                public void onCreateFailure(String s) {}
+            }, OpusAudioProfile.apply(sessionDescription));
+        }
+
+        @Override
+        public void onIceCandidateReceived(IceCandidate iceCandidate) {
+            peerConnection.addIceCandidate(iceCandidate);
+        }
+
+        @Override
+        public void onCallEnded() {
+            end();
+        }
+    }
+}
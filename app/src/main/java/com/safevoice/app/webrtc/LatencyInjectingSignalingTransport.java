@@ -0,0 +1,143 @@
+package com.safevoice.app.webrtc;
+
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps a SignalingTransport and holds every outgoing signal back for a simulated one-way
+ * network delay plus random jitter. Signals still leave in the order they were sent, as
+ * they would over one ordered connection. Wrapping both ends of a call gives a signaling
+ * round trip of twice the delay.
+ */
+public class LatencyInjectingSignalingTransport implements SignalingTransport {
+
+    private final SignalingTransport delegate;
+    private final long delayMs;
+    private final long jitterMs;
+    private final Random random;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // Signals waiting for their delay, oldest first. Guarded by this object's lock.
+    private final Queue<Runnable> inFlight = new ArrayDeque<>();
+    private long lastDueNanos = 0;
+    private final Runnable sendOldest = new Runnable() {
+        @Override
+        public void run() {
+            Runnable send;
+            synchronized (LatencyInjectingSignalingTransport.this) {
+                send = inFlight.poll();
+            }
+            if (send != null) {
+                send.run();
+            }
+        }
+    };
+
+    /**
+     * @param delegate The transport that actually carries the signals.
+     * @param delayMs  The one-way delay added to every signal.
+     * @param jitterMs Up to this much extra delay, drawn uniformly per signal.
+     * @param seed     Seeds the jitter so benchmark runs are repeatable.
+     */
+    public LatencyInjectingSignalingTransport(SignalingTransport delegate, long delayMs, long jitterMs, long seed) {
+        this.delegate = delegate;
+        this.delayMs = delayMs;
+        this.jitterMs = jitterMs;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        delegate.setListener(listener);
+    }
+
+    @Override
+    public void createCallSession(String targetUserUid) {
+        delegate.createCallSession(targetUserUid);
+    }
+
+    @Override
+    public void joinCallSession(String sessionId) {
+        delegate.joinCallSession(sessionId);
+    }
+
+    @Override
+    public String createSharedCallSession() {
+        return delegate.createSharedCallSession();
+    }
+
+    @Override
+    public void joinSharedCallSession(String sessionId, String targetUserUid) {
+        delegate.joinSharedCallSession(sessionId, targetUserUid);
+    }
+
+    @Override
+    public void sendOffer(final SessionDescription sdp, final String targetUserUid) {
+        sendLater(new Runnable() {
+            @Override
+            public void run() {
+                delegate.sendOffer(sdp, targetUserUid);
+            }
+        });
+    }
+
+    @Override
+    public void sendAnswer(final SessionDescription sdp, final String targetUserUid) {
+        sendLater(new Runnable() {
+            @Override
+            public void run() {
+                delegate.sendAnswer(sdp, targetUserUid);
+            }
+        });
+    }
+
+    @Override
+    public void sendIceCandidate(final IceCandidate iceCandidate, final String targetUserUid) {
+        sendLater(new Runnable() {
+            @Override
+            public void run() {
+                delegate.sendIceCandidate(iceCandidate, targetUserUid);
+            }
+        });
+    }
+
+    /**
+     * Ends the call after the signals already in flight, then stops the delay thread.
+     */
+    @Override
+    public void endCall() {
+        sendLater(new Runnable() {
+            @Override
+            public void run() {
+                delegate.endCall();
+                scheduler.shutdown();
+            }
+        });
+    }
+
+    @Override
+    public String getSessionId() {
+        return delegate.getSessionId();
+    }
+
+    private synchronized void sendLater(Runnable send) {
+        long extraMs = (jitterMs > 0) ? (long) (random.nextDouble() * jitterMs) : 0;
+        long dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs + extraMs);
+        // Jitter must not reorder signals.
+        dueNanos = Math.max(dueNanos, lastDueNanos);
+        lastDueNanos = dueNanos;
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        // Each tick sends the oldest signal, so ticks that fire in a different order than
+        // they were scheduled still cannot reorder the signals.
+        inFlight.add(send);
+        scheduler.schedule(sendOldest, dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,363 @@
+package com.safevoice.app.webrtc;
+
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A SignalingTransport that connects transports in the same process through a shared
+ * {@link Network}, for exercising and benchmarking call setup without Firebase.
+ *
+ * Each transport acts for one local uid. Signals are routed by the same node names that
+ * FirebaseSignalingClient uses: "{calleeUid}" towards a callee and "{callerUid}_{calleeUid}"
+ * towards the caller's client for that callee. A transport receives exactly the signals
+ * written to its own node, so an addressing mistake that would lose or misdeliver a signal in
+ * the database does the same here. Signals are delivered in order on the network's executor,
+ * like listener callbacks from the Realtime Database. Signals sent before their recipient
+ * joins wait for it, as they would in the database.
+ *
+ * Ending the session owner's transport ends the call for every member. Ending any other
+ * transport, a callee or a peer joined to a shared session, only tells the other end of that
+ * one call, so the rest of a group call carries on.
+ */
+public class LoopbackSignalingTransport implements SignalingTransport {
+
+    /**
+     * The in-memory signaling server shared by every transport of a test or benchmark run.
+     * Also counts the signals it carries.
+     */
+    public static class Network {
+
+        private final Executor deliveryExecutor;
+        private final Map<String, List<LoopbackSignalingTransport>> sessions = new HashMap<>();
+        private final Map<String, List<Signal>> undelivered = new HashMap<>();
+        private int nextSessionId = 0;
+        private boolean shutDown = false;
+
+        private final AtomicInteger offers = new AtomicInteger();
+        private final AtomicInteger answers = new AtomicInteger();
+        private final AtomicInteger candidates = new AtomicInteger();
+
+        /**
+         * Delivers signals on a private background thread.
+         */
+        public Network() {
+            this(Executors.newSingleThreadExecutor());
+        }
+
+        /**
+         * @param deliveryExecutor Runs listener callbacks. Must run tasks in submission order.
+         */
+        public Network(Executor deliveryExecutor) {
+            this.deliveryExecutor = deliveryExecutor;
+        }
+
+        public int getOfferCount() {
+            return offers.get();
+        }
+
+        public int getAnswerCount() {
+            return answers.get();
+        }
+
+        public int getIceCandidateCount() {
+            return candidates.get();
+        }
+
+        public void resetCounts() {
+            offers.set(0);
+            answers.set(0);
+            candidates.set(0);
+        }
+
+        /**
+         * Drops every later signal and stops the delivery thread if this network created it.
+         */
+        public synchronized void shutdown() {
+            shutDown = true;
+            if (deliveryExecutor instanceof ExecutorService) {
+                ((ExecutorService) deliveryExecutor).shutdown();
+            }
+        }
+
+        private synchronized String newSessionId() {
+            return "loopback-" + (nextSessionId++);
+        }
+
+        private synchronized void join(String sessionId, LoopbackSignalingTransport transport) {
+            List<LoopbackSignalingTransport> members = sessions.get(sessionId);
+            if (members == null) {
+                members = new ArrayList<>();
+                sessions.put(sessionId, members);
+            }
+            members.add(transport);
+
+            List<Signal> waiting = undelivered.get(sessionId);
+            if (waiting == null) {
+                return;
+            }
+            for (Iterator<Signal> it = waiting.iterator(); it.hasNext(); ) {
+                Signal signal = it.next();
+                if (transport.accepts(signal)) {
+                    it.remove();
+                    deliver(transport, signal);
+                }
+            }
+        }
+
+        private synchronized void leave(String sessionId, LoopbackSignalingTransport transport) {
+            List<LoopbackSignalingTransport> members = sessions.get(sessionId);
+            if (members != null) {
+                members.remove(transport);
+            }
+        }
+
+        private synchronized void send(String sessionId, Signal signal) {
+            switch (signal.type) {
+                case OFFER:
+                    offers.incrementAndGet();
+                    break;
+                case ANSWER:
+                    answers.incrementAndGet();
+                    break;
+                case CANDIDATE:
+                    candidates.incrementAndGet();
+                    break;
+                default:
+                    break;
+            }
+            List<LoopbackSignalingTransport> members = sessions.get(sessionId);
+            if (members != null) {
+                for (LoopbackSignalingTransport member : members) {
+                    if (member.accepts(signal)) {
+                        deliver(member, signal);
+                        return;
+                    }
+                }
+            }
+            if (signal.type == Signal.Type.END) {
+                // Nobody left to tell.
+                return;
+            }
+            List<Signal> waiting = undelivered.get(sessionId);
+            if (waiting == null) {
+                waiting = new ArrayList<>();
+                undelivered.put(sessionId, waiting);
+            }
+            waiting.add(signal);
+        }
+
+        /**
+         * Tells every member except those acting for endedBy that the call is over, and drops
+         * the session.
+         */
+        private synchronized void endSession(String sessionId, String endedBy) {
+            List<LoopbackSignalingTransport> members = sessions.remove(sessionId);
+            undelivered.remove(sessionId);
+            if (members == null) {
+                return;
+            }
+            for (LoopbackSignalingTransport member : members) {
+                if (!member.localUid.equals(endedBy)) {
+                    deliver(member, new Signal(Signal.Type.END, endedBy, member.ownNode(), null, null));
+                }
+            }
+        }
+
+        /**
+         * Caller holds the lock.
+         */
+        private void deliver(final LoopbackSignalingTransport transport, final Signal signal) {
+            if (shutDown) {
+                // Signals still in flight when a run is torn down have nowhere to go.
+                return;
+            }
+            deliveryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    transport.onSignal(signal);
+                }
+            });
+        }
+    }
+
+    /**
+     * One message on the loopback network.
+     */
+    private static class Signal {
+        enum Type { OFFER, ANSWER, CANDIDATE, END }
+
+        final Type type;
+        final String fromUid;
+        // The node the signal is written to, as FirebaseSignalingClient names it.
+        final String node;
+        final SessionDescription sdp;
+        final IceCandidate candidate;
+
+        Signal(Type type, String fromUid, String node, SessionDescription sdp, IceCandidate candidate) {
+            this.type = type;
+            this.fromUid = fromUid;
+            this.node = node;
+            this.sdp = sdp;
+            this.candidate = candidate;
+        }
+    }
+
+    private final Network network;
+    private final String localUid;
+    private volatile Listener listener;
+    private String sessionId;
+    // The peer this transport talks to, or null until the first signal arrives.
+    private volatile String remoteUid;
+    private boolean ownsSession = true;
+    // true when this transport joined with joinCallSession() and answers the call.
+    private volatile boolean callee = false;
+
+    /**
+     * @param network  The network shared with the other end of the call.
+     * @param localUid The uid this transport sends as and receives for.
+     */
+    public LoopbackSignalingTransport(Network network, String localUid) {
+        this.network = network;
+        this.localUid = localUid;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void createCallSession(String targetUserUid) {
+        sessionId = network.newSessionId();
+        remoteUid = targetUserUid;
+        ownsSession = true;
+        callee = false;
+        network.join(sessionId, this);
+    }
+
+    @Override
+    public void joinCallSession(String sessionId) {
+        this.sessionId = sessionId;
+        // The caller owns the session; hanging up only ends this callee's call.
+        this.ownsSession = false;
+        this.callee = true;
+        network.join(sessionId, this);
+    }
+
+    @Override
+    public String createSharedCallSession() {
+        sessionId = network.newSessionId();
+        ownsSession = true;
+        return sessionId;
+    }
+
+    @Override
+    public void joinSharedCallSession(String sessionId, String targetUserUid) {
+        this.sessionId = sessionId;
+        this.remoteUid = targetUserUid;
+        this.ownsSession = false;
+        this.callee = false;
+        network.join(sessionId, this);
+    }
+
+    @Override
+    public void sendOffer(SessionDescription sdp, String targetUserUid) {
+        if (sessionId == null) {
+            createCallSession(targetUserUid);
+        }
+        network.send(sessionId, new Signal(Signal.Type.OFFER, localUid, nodeFor(targetUserUid), sdp, null));
+    }
+
+    @Override
+    public void sendAnswer(SessionDescription sdp, String targetUserUid) {
+        network.send(sessionId, new Signal(Signal.Type.ANSWER, localUid, nodeFor(targetUserUid), sdp, null));
+    }
+
+    @Override
+    public void sendIceCandidate(IceCandidate iceCandidate, String targetUserUid) {
+        if (sessionId == null) {
+            return;
+        }
+        network.send(sessionId, new Signal(Signal.Type.CANDIDATE, localUid, nodeFor(targetUserUid), null, iceCandidate));
+    }
+
+    @Override
+    public void endCall() {
+        if (sessionId != null) {
+            if (ownsSession) {
+                network.endSession(sessionId, localUid);
+            } else {
+                network.leave(sessionId, this);
+                String peer = remoteUid;
+                if (peer != null) {
+                    network.send(sessionId, new Signal(Signal.Type.END, localUid, nodeFor(peer), null, null));
+                }
+            }
+            sessionId = null;
+        }
+        Listener current = listener;
+        if (current != null) {
+            current.onCallEnded();
+        }
+    }
+
+    @Override
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return The node this transport reads, as in FirebaseSignalingClient.
+     */
+    private String ownNode() {
+        return callee ? localUid : localUid + "_" + remoteUid;
+    }
+
+    /**
+     * @return The node that signals for the given uid are written to.
+     */
+    private String nodeFor(String targetUserUid) {
+        return callee ? targetUserUid + "_" + localUid : targetUserUid;
+    }
+
+    /**
+     * @return true if the signal was written to this transport's node.
+     */
+    private boolean accepts(Signal signal) {
+        return signal.node.equals(ownNode());
+    }
+
+    private void onSignal(Signal signal) {
+        if (remoteUid == null) {
+            remoteUid = signal.fromUid;
+        }
+        Listener current = listener;
+        if (current == null) {
+            return;
+        }
+        switch (signal.type) {
+            case OFFER:
+                current.onOfferReceived(signal.sdp);
+                break;
+            case ANSWER:
+                current.onAnswerReceived(signal.sdp);
+                break;
+            case CANDIDATE:
+                current.onIceCandidateReceived(signal.candidate);
+                break;
+            case END:
+                current.onCallEnded();
+                break;
+        }
+    }
+}
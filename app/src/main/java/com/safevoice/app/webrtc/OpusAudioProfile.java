@@ -0,0 +1,138 @@
+package com.safevoice.app.webrtc;
+
+import org.webrtc.MediaConstraints;
+import org.webrtc.SessionDescription;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The audio profile for emergency calls: narrowband mono Opus with in-band FEC and DTX,
+ * which keeps speech intelligible on a weak 2G/3G link.
+ *
+ * Opus is configured through the fmtp line of the SDP. Both the local and the remote
+ * description are rewritten: the local one asks the remote end to encode this way, and the
+ * remote one configures our own encoder, whatever the other side asked for.
+ */
+public final class OpusAudioProfile {
+
+    // Narrowband: nothing above 4 kHz is captured or played back.
+    static final int SAMPLE_RATE_HZ = 8000;
+    // The ceiling of the bitrate ladder; AudioQualityController steps below it at runtime.
+    static final int MAX_AVERAGE_BITRATE_BPS = 20000;
+
+    private static final Pattern OPUS_RTPMAP = Pattern.compile("a=rtpmap:(\\d+) opus/48000(?:/2)?", Pattern.CASE_INSENSITIVE);
+    private static final String LINE_END = "\r\n";
+
+    private OpusAudioProfile() {}
+
+    /**
+     * @return The description with the Opus parameters of this profile applied.
+     */
+    public static SessionDescription apply(SessionDescription description) {
+        return new SessionDescription(description.type, mungeSdp(description.description));
+    }
+
+    /**
+     * Sets this profile's Opus parameters on the Opus fmtp line, adding the line if the
+     * SDP has none. Other codecs and unrelated parameters are left alone.
+     *
+     * @return The rewritten SDP, or the input unchanged if it does not offer Opus.
+     */
+    static String mungeSdp(String sdp) {
+        Matcher rtpmap = OPUS_RTPMAP.matcher(sdp);
+        if (!rtpmap.find()) {
+            return sdp;
+        }
+        String payloadType = rtpmap.group(1);
+        String fmtpPrefix = "a=fmtp:" + payloadType + " ";
+
+        StringBuilder out = new StringBuilder(sdp.length() + 128);
+        boolean fmtpFound = false;
+        String[] lines = sdp.split(LINE_END, -1);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.startsWith(fmtpPrefix)) {
+                line = fmtpPrefix + mergeParameters(line.substring(fmtpPrefix.length()));
+                fmtpFound = true;
+            }
+            out.append(line);
+            if (i < lines.length - 1) {
+                out.append(LINE_END);
+            }
+        }
+        if (fmtpFound) {
+            return out.toString();
+        }
+
+        // No fmtp line for Opus yet; add one right after its rtpmap line.
+        int insertAt = sdp.indexOf(LINE_END, rtpmap.end());
+        String fmtpLine = fmtpPrefix + mergeParameters("");
+        if (insertAt < 0) {
+            return sdp + LINE_END + fmtpLine;
+        }
+        return sdp.substring(0, insertAt + LINE_END.length()) + fmtpLine + LINE_END
+                + sdp.substring(insertAt + LINE_END.length());
+    }
+
+    private static String mergeParameters(String existing) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (String parameter : existing.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int equals = trimmed.indexOf('=');
+            if (equals < 0) {
+                parameters.put(trimmed, null);
+            } else {
+                parameters.put(trimmed.substring(0, equals), trimmed.substring(equals + 1));
+            }
+        }
+        parameters.put("minptime", "10");
+        parameters.put("useinbandfec", "1");
+        parameters.put("usedtx", "1");
+        parameters.put("stereo", "0");
+        parameters.put("sprop-stereo", "0");
+        parameters.put("maxplaybackrate", String.valueOf(SAMPLE_RATE_HZ));
+        parameters.put("sprop-maxcapturerate", String.valueOf(SAMPLE_RATE_HZ));
+        parameters.put("maxaveragebitrate", String.valueOf(MAX_AVERAGE_BITRATE_BPS));
+
+        StringBuilder merged = new StringBuilder();
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            if (merged.length() > 0) {
+                merged.append(';');
+            }
+            merged.append(entry.getKey());
+            if (entry.getValue() != null) {
+                merged.append('=').append(entry.getValue());
+            }
+        }
+        return merged.toString();
+    }
+
+    /**
+     * @return Constraints for the local AudioSource: the platform's voice processing on, so
+     * the encoder spends its few bits on speech rather than noise and echo.
+     */
+    public static MediaConstraints audioSourceConstraints() {
+        MediaConstraints constraints = new MediaConstraints();
+        constraints.mandatory.add(new MediaConstraints.KeyValuePair("googEchoCancellation", "true"));
+        constraints.mandatory.add(new MediaConstraints.KeyValuePair("googNoiseSuppression", "true"));
+        constraints.mandatory.add(new MediaConstraints.KeyValuePair("googAutoGainControl", "true"));
+        constraints.mandatory.add(new MediaConstraints.KeyValuePair("googHighpassFilter", "true"));
+        return constraints;
+    }
+
+    /**
+     * @return Constraints for createOffer() and createAnswer(): audio only.
+     */
+    public static MediaConstraints sdpConstraints() {
+        MediaConstraints constraints = new MediaConstraints();
+        constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveAudio", "true"));
+        constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveVideo", "false"));
+        return constraints;
+    }
+}
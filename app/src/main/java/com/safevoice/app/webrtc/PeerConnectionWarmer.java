@@ -0,0 +1,166 @@
+package com.safevoice.app.webrtc;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.webrtc.PeerConnectionFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Takes WebRTC setup off the emergency path.
+ *
+ * warmUp() initializes WebRTC and builds the PeerConnectionFactory in the background while
+ * the listening service runs, so WebRTCManager can reuse it instead of paying native
+ * initialization after the trigger. speculate() goes a step further when the trigger is only
+ * suspected: it creates a peer connection to the primary contact and starts its offer and ICE
+ * gathering. Nothing is sent; if the trigger is confirmed WebRTCManager adopts the call,
+ * otherwise it is discarded after SPECULATION_TTL_MS. Prefixes such as "help" come up in
+ * ordinary speech, so a new speculation starts at most once per MIN_SPECULATION_INTERVAL_MS.
+ *
+ * The factory is shared for the life of the process and is never disposed.
+ */
+public class PeerConnectionWarmer {
+
+    private static final String TAG = "PeerConnectionWarmer";
+    private static final String SETTINGS_PREFS_NAME = "SafeVoiceSettingsPrefs";
+    private static final String KEY_CALL_PREFERENCE = "call_preference";
+    private static final String CALL_PREF_WEBRTC = "webrtc";
+    private static final String KEY_PREWARM = "webrtc_prewarm";
+    // A suspected trigger is confirmed within a few seconds or not at all.
+    private static final long SPECULATION_TTL_MS = 30000;
+    // Each speculation opens a peer connection and sends STUN requests, so a user who says
+    // "help" every few sentences must not keep one open all day.
+    static final long MIN_SPECULATION_INTERVAL_MS = 2 * 60 * 1000;
+
+    private static PeerConnectionWarmer instance;
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile PeerConnectionFactory factory;
+    private boolean warming = false;
+
+    // Guarded by this object's lock; the trigger arrives on the main thread but the call is
+    // adopted from an alert dispatcher thread.
+    private SpeculativeCall speculativeCall;
+    private long lastSpeculationElapsedMs = -1;
+
+    private final Runnable speculationExpiry = new Runnable() {
+        @Override
+        public void run() {
+            final SpeculativeCall expired;
+            synchronized (PeerConnectionWarmer.this) {
+                expired = speculativeCall;
+                speculativeCall = null;
+            }
+            if (expired != null) {
+                Log.d(TAG, "Trigger not confirmed. Discarding the speculative call.");
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        expired.dispose();
+                    }
+                });
+            }
+        }
+    };
+
+    private PeerConnectionWarmer(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized PeerConnectionWarmer getInstance(Context context) {
+        if (instance == null) {
+            instance = new PeerConnectionWarmer(context);
+        }
+        return instance;
+    }
+
+    /**
+     * @return true if the user prefers WebRTC calls and has not turned pre-warming off.
+     */
+    public static boolean isEnabled(Context context) {
+        SharedPreferences settingsPrefs = context.getSharedPreferences(SETTINGS_PREFS_NAME, Context.MODE_PRIVATE);
+        return settingsPrefs.getBoolean(KEY_PREWARM, true)
+                && CALL_PREF_WEBRTC.equals(settingsPrefs.getString(KEY_CALL_PREFERENCE, "standard"));
+    }
+
+    /**
+     * Builds the shared factory in the background. Safe to call repeatedly.
+     */
+    public synchronized void warmUp() {
+        if (factory != null || warming) {
+            return;
+        }
+        warming = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                PeerConnectionFactory created = WebRTCManager.createPeerConnectionFactory(context);
+                factory = created;
+                Log.d(TAG, "PeerConnectionFactory warmed up in " + (System.currentTimeMillis() - start) + " ms.");
+            }
+        });
+    }
+
+    /**
+     * @return The shared factory, or null if warmUp() has not finished yet.
+     */
+    public PeerConnectionFactory getWarmFactory() {
+        return factory;
+    }
+
+    /**
+     * Starts a speculative call to the given contact if the factory is warm, no speculation
+     * is already running and none started in the last MIN_SPECULATION_INTERVAL_MS.
+     */
+    public synchronized void speculate(final String targetUserUid) {
+        final PeerConnectionFactory warmFactory = factory;
+        if (warmFactory == null || targetUserUid == null || speculativeCall != null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (lastSpeculationElapsedMs >= 0 && now - lastSpeculationElapsedMs < MIN_SPECULATION_INTERVAL_MS) {
+            Log.d(TAG, "Trigger suspected again too soon. Not speculating.");
+            return;
+        }
+        lastSpeculationElapsedMs = now;
+        Log.d(TAG, "Trigger suspected. Preparing a speculative call.");
+        final SpeculativeCall call = new SpeculativeCall(targetUserUid);
+        speculativeCall = call;
+        mainHandler.postDelayed(speculationExpiry, SPECULATION_TTL_MS);
+        // Reading the TURN credentials touches the keystore, so keep it off the main thread.
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!call.start(warmFactory, WebRTCManager.createRtcConfiguration(context))) {
+                    Log.w(TAG, "Could not create the speculative peer connection.");
+                }
+            }
+        });
+    }
+
+    /**
+     * Hands over the speculative call if one is ready for this contact. The caller owns it
+     * from then on.
+     *
+     * @return The speculative call, or null if there is none to adopt.
+     */
+    synchronized SpeculativeCall takeSpeculativeCall(String targetUserUid) {
+        SpeculativeCall call = speculativeCall;
+        if (call == null || call.getPeerConnection() == null || call.hasFailed()
+                || !call.getTargetUserUid().equals(targetUserUid)) {
+            return null;
+        }
+        speculativeCall = null;
+        mainHandler.removeCallbacks(speculationExpiry);
+        return call;
+    }
+}
@@ -0,0 +1,58 @@
+package com.safevoice.app.webrtc;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.Map;
+
+/**
+ * Helpers for reading members out of RTCStatsReport entries, whose numeric members arrive
+ * as whichever boxed type the native layer picked.
+ */
+final class RtcStatsUtil {
+
+    private RtcStatsUtil() {}
+
+    /**
+     * @return true if the entry describes an audio stream.
+     */
+    static boolean isAudio(RTCStats stats) {
+        Map<String, Object> members = stats.getMembers();
+        // Older WebRTC builds report mediaType instead of kind.
+        Object kind = members.containsKey("kind") ? members.get("kind") : members.get("mediaType");
+        return "audio".equals(kind);
+    }
+
+    /**
+     * @return The member as a double, or null if it is missing or not a number.
+     */
+    static Double getDouble(RTCStats stats, String member) {
+        Object value = stats.getMembers().get(member);
+        return (value instanceof Number) ? ((Number) value).doubleValue() : null;
+    }
+
+    /**
+     * @return The member as a long, or -1 if it is missing or not a number.
+     */
+    static long getLong(RTCStats stats, String member) {
+        Object value = stats.getMembers().get(member);
+        return (value instanceof Number) ? ((Number) value).longValue() : -1;
+    }
+
+    static String getString(RTCStats stats, String member) {
+        Object value = stats.getMembers().get(member);
+        return (value != null) ? value.toString() : null;
+    }
+
+    /**
+     * @return The first audio entry of the given type, or null if the report has none.
+     */
+    static RTCStats findAudio(RTCStatsReport report, String type) {
+        for (RTCStats stats : report.getStatsMap().values()) {
+            if (type.equals(stats.getType()) && isAudio(stats)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+}
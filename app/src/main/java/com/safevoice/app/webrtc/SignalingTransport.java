@@ -0,0 +1,74 @@
+package com.safevoice.app.webrtc;
+
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+/**
+ * Carries WebRTC offers, answers and ICE candidates between the two ends of a call.
+ *
+ * FirebaseSignalingClient is the production transport. LoopbackSignalingTransport connects
+ * transports inside one process, and LatencyInjectingSignalingTransport wraps either one to
+ * simulate a slow network, so call setup can be exercised without a Firebase project.
+ */
+public interface SignalingTransport {
+
+    /**
+     * Receives signals from the remote end. Implementations may call it on any thread.
+     */
+    interface Listener {
+        void onOfferReceived(SessionDescription sessionDescription);
+        void onAnswerReceived(SessionDescription sessionDescription);
+        void onIceCandidateReceived(IceCandidate iceCandidate);
+        void onCallEnded();
+    }
+
+    /**
+     * Creates a new transport for each peer of a group call.
+     */
+    interface Factory {
+        SignalingTransport create();
+    }
+
+    void setListener(Listener listener);
+
+    /**
+     * Creates a session for an outgoing call and starts listening for the callee.
+     */
+    void createCallSession(String targetUserUid);
+
+    /**
+     * Joins a session created by the caller, as the callee. Ending this transport only ends
+     * this callee's call, so it also works for a session shared by a group call.
+     */
+    void joinCallSession(String sessionId);
+
+    /**
+     * Creates a session for a group call without listening for any callee. Ending this
+     * transport ends the whole session.
+     *
+     * @return The session ID to hand to the peers and the recipients.
+     */
+    String createSharedCallSession();
+
+    /**
+     * Joins a session created by createSharedCallSession() to call one of its callees.
+     * Ending this transport only ends the call with that callee.
+     */
+    void joinSharedCallSession(String sessionId, String targetUserUid);
+
+    void sendOffer(SessionDescription sdp, String targetUserUid);
+
+    void sendAnswer(SessionDescription sdp, String targetUserUid);
+
+    void sendIceCandidate(IceCandidate iceCandidate, String targetUserUid);
+
+    /**
+     * Stops listening, tells the remote end the call is over and reports onCallEnded().
+     */
+    void endCall();
+
+    /**
+     * @return The current session ID, or null if there is no session.
+     */
+    String getSessionId();
+}
@@ -0,0 +1,234 @@
+package com.safevoice.app.webrtc;
+
+import android.util.Log;
+
+import org.webrtc.AudioSource;
+import org.webrtc.AudioTrack;
+import org.webrtc.DataChannel;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnection;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtpReceiver;
+import org.webrtc.RtpSender;
+import org.webrtc.SdpObserver;
+import org.webrtc.SessionDescription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A peer connection set up before anyone has asked for a call: the local audio track is
+ * added, the offer is created and set as the local description, and ICE gathering starts.
+ * Nothing is sent until a WebRTCManager attaches; the offer and every candidate gathered so
+ * far are then handed over in order, and later events are forwarded as they happen.
+ *
+ * PeerConnection callbacks arrive on the WebRTC signaling thread, so all state is guarded
+ * by this object's lock.
+ */
+class SpeculativeCall implements PeerConnection.Observer {
+
+    private static final String TAG = "SpeculativeCall";
+    private static final String AUDIO_TRACK_ID = "ARDAMSa0";
+
+    /**
+     * Receives the offer once it is ready and an owner has attached.
+     */
+    interface OfferListener {
+        void onOfferReady(SessionDescription offer);
+    }
+
+    private final String targetUserUid;
+    private volatile PeerConnection peerConnection;
+    private volatile AudioSource audioSource;
+    private volatile RtpSender audioSender;
+
+    private SessionDescription offer;
+    private final List<IceCandidate> pendingCandidates = new ArrayList<>();
+    private PeerConnection.Observer observer;
+    private OfferListener offerListener;
+    private boolean failed = false;
+
+    SpeculativeCall(String targetUserUid) {
+        this.targetUserUid = targetUserUid;
+    }
+
+    /**
+     * Creates the peer connection and starts the offer.
+     *
+     * @return false if the peer connection could not be created.
+     */
+    boolean start(PeerConnectionFactory factory, PeerConnection.RTCConfiguration rtcConfig) {
+        peerConnection = factory.createPeerConnection(rtcConfig, this);
+        if (peerConnection == null) {
+            return false;
+        }
+        audioSource = factory.createAudioSource(OpusAudioProfile.audioSourceConstraints());
+        AudioTrack localAudioTrack = factory.createAudioTrack(AUDIO_TRACK_ID, audioSource);
+        localAudioTrack.setEnabled(true);
+        audioSender = peerConnection.addTrack(localAudioTrack, Collections.singletonList("stream1"));
+
+        peerConnection.createOffer(new SdpObserver() {
+            @Override
+            public void onCreateSuccess(SessionDescription createdOffer) {
+                final SessionDescription sessionDescription = OpusAudioProfile.apply(createdOffer);
+                peerConnection.setLocalDescription(new SdpObserver() {
+                    @Override
+                    public void onSetSuccess() {
+                        Log.d(TAG, "Speculative offer ready.");
+                        onOfferSet(sessionDescription);
+                    }
+                    @Override
+                    public void onCreateSuccess(SessionDescription sdp) {}
+                    @Override
+                    public void onSetFailure(String s) {
+                        Log.e(TAG, "Failed to set speculative local description: " + s);
+                        markFailed();
+                    }
+                    @Override
+                    public void onCreateFailure(String s) {}
+                }, sessionDescription);
+            }
+            @Override
+            public void onSetSuccess() {}
+            @Override
+            public void onCreateFailure(String s) {
+                Log.e(TAG, "Failed to create speculative offer: " + s);
+                markFailed();
+            }
+            @Override
+            public void onSetFailure(String s) {}
+        }, OpusAudioProfile.sdpConstraints());
+        return true;
+    }
+
+    String getTargetUserUid() {
+        return targetUserUid;
+    }
+
+    PeerConnection getPeerConnection() {
+        return peerConnection;
+    }
+
+    AudioSource getAudioSource() {
+        return audioSource;
+    }
+
+    RtpSender getAudioSender() {
+        return audioSender;
+    }
+
+    synchronized boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * Hands the call over to its owner. The offer is delivered first, then any buffered ICE
+     * candidates, so the remote side never sees a candidate before the offer. Delivery holds
+     * the lock so a candidate gathered meanwhile cannot overtake the replay; the signaling
+     * calls it makes only queue writes and do not block.
+     */
+    synchronized void attach(PeerConnection.Observer observer, OfferListener offerListener) {
+        this.observer = observer;
+        this.offerListener = offerListener;
+        deliverIfReady();
+    }
+
+    private synchronized void onOfferSet(SessionDescription sessionDescription) {
+        offer = sessionDescription;
+        deliverIfReady();
+    }
+
+    private void deliverIfReady() {
+        if (offer == null || offerListener == null) {
+            // Candidates keep buffering until both the offer and the owner are there.
+            return;
+        }
+        offerListener.onOfferReady(offer);
+        Log.d(TAG, "Replaying " + pendingCandidates.size() + " buffered ICE candidates.");
+        for (IceCandidate candidate : pendingCandidates) {
+            observer.onIceCandidate(candidate);
+        }
+        pendingCandidates.clear();
+    }
+
+    private synchronized void markFailed() {
+        failed = true;
+    }
+
+    /**
+     * Releases the peer connection if nobody attached before the speculation expired.
+     */
+    void dispose() {
+        if (peerConnection != null) {
+            peerConnection.close();
+            peerConnection = null;
+        }
+        if (audioSource != null) {
+            audioSource.dispose();
+            audioSource = null;
+        }
+    }
+
+    private synchronized PeerConnection.Observer attachedObserver() {
+        return offer != null && offerListener != null ? observer : null;
+    }
+
+    // PeerConnection.Observer methods, forwarded once attached
+    @Override
+    public synchronized void onIceCandidate(IceCandidate iceCandidate) {
+        if (offer == null || offerListener == null) {
+            pendingCandidates.add(iceCandidate);
+            return;
+        }
+        observer.onIceCandidate(iceCandidate);
+    }
+
+    @Override
+    public void onSignalingChange(PeerConnection.SignalingState signalingState) {
+        PeerConnection.Observer target = attachedObserver();
+        if (target != null) {
+            target.onSignalingChange(signalingState);
+        }
+    }
+
+    @Override
+    public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
+        PeerConnection.Observer target = attachedObserver();
+        if (target != null) {
+            target.onIceConnectionChange(iceConnectionState);
+        }
+    }
+
+    @Override
+    public void onIceConnectionReceivingChange(boolean b) {}
+
+    @Override
+    public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
+        Log.d(TAG, "onIceGatheringChange: " + iceGatheringState);
+    }
+
+    @Override
+    public void onIceCandidatesRemoved(IceCandidate[] iceCandidates) {}
+
+    @Override
+    public void onAddStream(MediaStream mediaStream) {}
+
+    @Override
+    public void onRemoveStream(MediaStream mediaStream) {}
+
+    @Override
+    public void onDataChannel(DataChannel dataChannel) {}
+
+    @Override
+    public void onRenegotiationNeeded() {}
+
+    @Override
+    public void onAddTrack(RtpReceiver rtpReceiver, MediaStream[] mediaStreams) {
+        PeerConnection.Observer target = attachedObserver();
+        if (target != null) {
+            target.onAddTrack(rtpReceiver, mediaStreams);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.safevoice.app.webrtc;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.security.crypto.EncryptedSharedPreferences;
@@ -10,11 +11,11 @@ import org.webrtc.AudioSource;
 import org.webrtc.AudioTrack;
 import org.webrtc.DataChannel;
 import org.webrtc.IceCandidate;
-import org.webrtc.MediaConstraints;
 import org.webrtc.MediaStream;
 import org.webrtc.PeerConnection;
 import org.webrtc.PeerConnectionFactory;
 import org.webrtc.RtpReceiver;
+import org.webrtc.RtpSender;
 import org.webrtc.SdpObserver;
 import org.webrtc.SessionDescription;
 
@@ -23,18 +24,45 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
-public class WebRTCManager implements FirebaseSignalingClient.SignalingListener {
+/**
+ * Runs one WebRTC audio call over a SignalingTransport, FirebaseSignalingClient by default.
+ *
+ * If PeerConnectionWarmer has already built a PeerConnectionFactory, it is reused instead of
+ * initializing WebRTC on the emergency path. If it also holds a speculative call for the
+ * same contact, created while the trigger was only suspected, startCall() adopts that peer
+ * connection with its offer and gathered ICE candidates instead of starting from scratch.
+ *
+ * Every description is rewritten to OpusAudioProfile before it is applied. Stats are polled
+ * by CallStatsPoller from the moment the call starts, so CallStatsCollector also records calls
+ * that fail during setup. Once connected, AudioQualityController adapts the send bitrate from
+ * the same reports.
+ */
+public class WebRTCManager implements SignalingTransport.Listener {
 
     private static final String TAG = "WebRTCManager";
     private static final String AUDIO_TRACK_ID = "ARDAMSa0";
+    static final long STATS_INTERVAL_MS = 2000;
 
     private final Context context;
-    private final FirebaseSignalingClient signalingClient;
+    private final SignalingTransport signalingClient;
     private PeerConnectionFactory peerConnectionFactory;
+    // false when the factory is the warmer's shared one, which outlives this manager.
+    private boolean ownsFactory;
+    private String setupMode;
     private PeerConnection peerConnection;
     private AudioSource audioSource;
     private AudioTrack localAudioTrack;
+    private RtpSender audioSender;
+    private CallStatsPoller statsPoller;
+    private AudioQualityController audioQualityController;
+    private volatile CallStatsCollector callStatsCollector;
+    // false for synthetic calls, such as benchmarks, whose stats must not be exported.
+    private volatile boolean saveCallStats = true;
+    // When startCall() or answerCall() ran, for the setup time in the call's stats record.
+    private long callStartedAtMs;
+    private long callStartedElapsedMs;
 
     private String targetUserUid;
     private final WebRTCListener listener;
@@ -45,33 +73,100 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
     }
 
     public WebRTCManager(Context context, WebRTCListener listener) {
+        this(context, listener, new FirebaseSignalingClient());
+    }
+
+    public WebRTCManager(Context context, WebRTCListener listener, SignalingTransport signalingTransport) {
         this.context = context;
         this.listener = listener;
-        this.signalingClient = new FirebaseSignalingClient();
+        this.signalingClient = signalingTransport;
         this.signalingClient.setListener(this);
         initializePeerConnectionFactory();
     }
 
     // --- THIS IS THE FIX ---
     // This public method allows other classes like EmergencyHandlerService to get the session ID.
-    public FirebaseSignalingClient getSignalingClient() {
+    public SignalingTransport getSignalingClient() {
         return this.signalingClient;
     }
 
     private void initializePeerConnectionFactory() {
+        PeerConnectionFactory warmFactory = PeerConnectionWarmer.getInstance(context).getWarmFactory();
+        if (warmFactory != null) {
+            peerConnectionFactory = warmFactory;
+            ownsFactory = false;
+            setupMode = CallSetupLatencyRecorder.MODE_WARM;
+            return;
+        }
+        peerConnectionFactory = createPeerConnectionFactory(context);
+        ownsFactory = true;
+        setupMode = CallSetupLatencyRecorder.MODE_COLD;
+    }
+
+    static PeerConnectionFactory createPeerConnectionFactory(Context context) {
         PeerConnectionFactory.InitializationOptions initializationOptions = PeerConnectionFactory.InitializationOptions.builder(context)
                 .createInitializationOptions();
         PeerConnectionFactory.initialize(initializationOptions);
 
         PeerConnectionFactory.Options options = new PeerConnectionFactory.Options();
-        peerConnectionFactory = PeerConnectionFactory.builder()
+        return PeerConnectionFactory.builder()
                 .setOptions(options)
                 .createPeerConnectionFactory();
     }
 
-    public void startCall(String targetUserUid) {
+    /**
+     * Controls whether the call's quality record is saved to CallStatsStore when it ends.
+     * On by default; benchmarks turn it off so their calls never reach the exported records.
+     */
+    public void setSaveCallStats(boolean saveCallStats) {
+        this.saveCallStats = saveCallStats;
+    }
+
+    /**
+     * @return How this call was set up, one of the CallSetupLatencyRecorder modes.
+     */
+    public String getSetupMode() {
+        return setupMode;
+    }
+
+    /**
+     * Creates the signaling session for an outgoing call without starting it, so the
+     * session ID can be sent to contacts while the call is still being set up.
+     *
+     * @param targetUserUid The uid of the user who will be called.
+     * @return The session ID of the new call session.
+     */
+    public String prepareCall(String targetUserUid) {
+        this.targetUserUid = targetUserUid;
+        if (signalingClient.getSessionId() == null) {
+            signalingClient.createCallSession(targetUserUid);
+        }
+        return signalingClient.getSessionId();
+    }
+
+    public void startCall(final String targetUserUid) {
         this.targetUserUid = targetUserUid;
+        markCallStarted();
+
+        SpeculativeCall speculativeCall = PeerConnectionWarmer.getInstance(context).takeSpeculativeCall(targetUserUid);
+        if (speculativeCall != null) {
+            Log.d(TAG, "Adopting the speculative call.");
+            setupMode = CallSetupLatencyRecorder.MODE_SPECULATIVE;
+            this.peerConnection = speculativeCall.getPeerConnection();
+            this.audioSource = speculativeCall.getAudioSource();
+            this.audioSender = speculativeCall.getAudioSender();
+            startStatsCollection();
+            speculativeCall.attach(peerConnectionObserver, new SpeculativeCall.OfferListener() {
+                @Override
+                public void onOfferReady(SessionDescription offer) {
+                    signalingClient.sendOffer(offer, targetUserUid);
+                }
+            });
+            return;
+        }
+
         this.peerConnection = createPeerConnection();
+        startStatsCollection();
         if (this.peerConnection == null) {
             Log.e(TAG, "PeerConnection creation failed.");
             return;
@@ -83,11 +178,12 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
             @Override
             public void onCreateSuccess(SessionDescription sessionDescription) {
                 Log.d(TAG, "Offer created successfully.");
+                final SessionDescription offer = OpusAudioProfile.apply(sessionDescription);
                 peerConnection.setLocalDescription(new SdpObserver() {
                     @Override
                     public void onSetSuccess() {
                         Log.d(TAG, "Local description set successfully for offer.");
-                        signalingClient.sendOffer(sessionDescription, targetUserUid);
+                        signalingClient.sendOffer(offer, targetUserUid);
                     }
                     @Override
                     public void onCreateSuccess(SessionDescription sdp) {}
@@ -95,7 +191,7 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
                     public void onSetFailure(String s) { Log.e(TAG, "Failed to set local description for offer: " + s); }
                     @Override
                     public void onCreateFailure(String s) {}
-                }, sessionDescription);
+                }, offer);
             }
             @Override
             public void onSetSuccess() {}
@@ -103,13 +199,15 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
             public void onCreateFailure(String s) { Log.e(TAG, "Failed to create offer: " + s); }
             @Override
             public void onSetFailure(String s) {}
-        }, new MediaConstraints());
+        }, OpusAudioProfile.sdpConstraints());
     }
 
     public void answerCall(String sessionId, String callerUid) {
         this.targetUserUid = callerUid;
+        markCallStarted();
         this.signalingClient.joinCallSession(sessionId);
         this.peerConnection = createPeerConnection();
+        startStatsCollection();
         if (this.peerConnection == null) {
             Log.e(TAG, "PeerConnection creation failed.");
             return;
@@ -117,7 +215,19 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
         createAndSetLocalAudioTrack();
     }
 
+    private void markCallStarted() {
+        callStartedAtMs = System.currentTimeMillis();
+        callStartedElapsedMs = SystemClock.elapsedRealtime();
+    }
+
     private PeerConnection createPeerConnection() {
+        return peerConnectionFactory.createPeerConnection(createRtcConfiguration(context), peerConnectionObserver);
+    }
+
+    /**
+     * Builds the ICE server configuration shared by regular and speculative calls.
+     */
+    static PeerConnection.RTCConfiguration createRtcConfiguration(Context context) {
         List<PeerConnection.IceServer> iceServers = new ArrayList<>();
         // Add Google's public STUN server
         iceServers.add(PeerConnection.IceServer.builder("stun:stun.l.google.com:19302").createIceServer());
@@ -149,57 +259,123 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
             Log.e(TAG, "Could not read EncryptedSharedPreferences", e);
         }
 
-        PeerConnection.RTCConfiguration rtcConfig = new PeerConnection.RTCConfiguration(iceServers);
-        return peerConnectionFactory.createPeerConnection(rtcConfig, new PeerConnection.Observer() {
-            @Override
-            public void onSignalingChange(PeerConnection.SignalingState signalingState) {
-                Log.d(TAG, "onSignalingChange: " + signalingState);
-            }
-            @Override
-            public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
-                Log.d(TAG, "onIceConnectionChange: " + iceConnectionState);
-                if (iceConnectionState == PeerConnection.IceConnectionState.CONNECTED) {
-                    listener.onWebRTCCallEstablished();
-                } else if (iceConnectionState == PeerConnection.IceConnectionState.FAILED || iceConnectionState == PeerConnection.IceConnectionState.DISCONNECTED) {
-                    endCall();
+        return new PeerConnection.RTCConfiguration(iceServers);
+    }
+
+    private final PeerConnection.Observer peerConnectionObserver = new PeerConnection.Observer() {
+        @Override
+        public void onSignalingChange(PeerConnection.SignalingState signalingState) {
+            Log.d(TAG, "onSignalingChange: " + signalingState);
+        }
+        @Override
+        public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
+            Log.d(TAG, "onIceConnectionChange: " + iceConnectionState);
+            if (iceConnectionState == PeerConnection.IceConnectionState.CONNECTED) {
+                startQualityMonitoring();
+                listener.onWebRTCCallEstablished();
+            } else if (iceConnectionState == PeerConnection.IceConnectionState.FAILED || iceConnectionState == PeerConnection.IceConnectionState.DISCONNECTED) {
+                CallStatsCollector collector = callStatsCollector;
+                if (collector != null) {
+                    collector.onFailed("ice_" + iceConnectionState.name().toLowerCase(Locale.US));
                 }
+                endCall();
             }
-            @Override
-            public void onIceConnectionReceivingChange(boolean b) {}
-            @Override
-            public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
-                Log.d(TAG, "onIceGatheringChange: " + iceGatheringState);
-            }
-            @Override
-            public void onIceCandidate(IceCandidate iceCandidate) {
-                Log.d(TAG, "onIceCandidate: sending candidate");
-                signalingClient.sendIceCandidate(iceCandidate, targetUserUid);
-            }
-            @Override
-            public void onIceCandidatesRemoved(IceCandidate[] iceCandidates) {}
-            @Override
-            public void onAddStream(MediaStream mediaStream) {}
-            @Override
-            public void onRemoveStream(MediaStream mediaStream) {}
-            @Override
-            public void onDataChannel(DataChannel dataChannel) {}
-            @Override
-            public void onRenegotiationNeeded() {}
-            @Override
-            public void onAddTrack(RtpReceiver rtpReceiver, MediaStream[] mediaStreams) {
-                Log.d(TAG, "Remote audio track received.");
-            }
-        });
-    }
+        }
+        @Override
+        public void onIceConnectionReceivingChange(boolean b) {}
+        @Override
+        public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
+            Log.d(TAG, "onIceGatheringChange: " + iceGatheringState);
+        }
+        @Override
+        public void onIceCandidate(IceCandidate iceCandidate) {
+            Log.d(TAG, "onIceCandidate: sending candidate");
+            signalingClient.sendIceCandidate(iceCandidate, targetUserUid);
+        }
+        @Override
+        public void onIceCandidatesRemoved(IceCandidate[] iceCandidates) {}
+        @Override
+        public void onAddStream(MediaStream mediaStream) {}
+        @Override
+        public void onRemoveStream(MediaStream mediaStream) {}
+        @Override
+        public void onDataChannel(DataChannel dataChannel) {}
+        @Override
+        public void onRenegotiationNeeded() {}
+        @Override
+        public void onAddTrack(RtpReceiver rtpReceiver, MediaStream[] mediaStreams) {
+            Log.d(TAG, "Remote audio track received.");
+        }
+    };
 
     private void createAndSetLocalAudioTrack() {
-        audioSource = peerConnectionFactory.createAudioSource(new MediaConstraints());
+        audioSource = peerConnectionFactory.createAudioSource(OpusAudioProfile.audioSourceConstraints());
         localAudioTrack = peerConnectionFactory.createAudioTrack(AUDIO_TRACK_ID, audioSource);
         localAudioTrack.setEnabled(true);
-        peerConnection.addTrack(localAudioTrack, Collections.singletonList("stream1"));
+        audioSender = peerConnection.addTrack(localAudioTrack, Collections.singletonList("stream1"));
+    }
+
+    /**
+     * Creates the call's CallStatsCollector and starts polling stats into it, as soon as the
+     * call starts, so a call that fails during setup is recorded too. Without a peer
+     * connection the record only carries the failure.
+     */
+    private synchronized void startStatsCollection() {
+        if (callStatsCollector != null) {
+            return;
+        }
+        callStatsCollector = new CallStatsCollector(CallStatsCollector.DEFAULT_CAPACITY, callStartedAtMs, targetUserUid, setupMode);
+        if (peerConnection == null) {
+            callStatsCollector.onFailed("peer_connection_failed");
+            return;
+        }
+        statsPoller = new CallStatsPoller(peerConnection, STATS_INTERVAL_MS);
+        statsPoller.addListener(callStatsCollector);
+        statsPoller.start();
+    }
+
+    /**
+     * Records the setup time and starts adapting the send bitrate. Runs on the signaling
+     * thread when ICE connects, which may happen again after a reconnect.
+     */
+    private synchronized void startQualityMonitoring() {
+        if (statsPoller == null) {
+            return;
+        }
+        callStatsCollector.onConnected(SystemClock.elapsedRealtime() - callStartedElapsedMs);
+        if (audioQualityController != null || audioSender == null) {
+            return;
+        }
+        audioQualityController = new AudioQualityController(audioSender);
+        statsPoller.addListener(audioQualityController);
+        audioQualityController.start();
+    }
+
+    /**
+     * Stops polling and saves the call's record, whether or not the call ever connected.
+     */
+    private synchronized void stopQualityMonitoring() {
+        if (callStatsCollector == null) {
+            return;
+        }
+        if (statsPoller != null) {
+            statsPoller.stop();
+            statsPoller = null;
+        }
+        if (audioQualityController != null) {
+            audioQualityController.logSummary();
+            audioQualityController = null;
+        }
+        CallStatsRecord record = callStatsCollector.finish();
+        if (saveCallStats) {
+            CallStatsStore.getInstance(context).save(record);
+        }
+        callStatsCollector = null;
     }
 
     public void endCall() {
+        stopQualityMonitoring();
+        audioSender = null;
         if (peerConnection != null) {
             peerConnection.close();
             peerConnection = null;
@@ -211,7 +387,7 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
         signalingClient.endCall();
     }
 
-    // FirebaseSignalingClient.SignalingListener methods
+    // SignalingTransport.Listener methods
     @Override
     public void onOfferReceived(SessionDescription sessionDescription) {
         Log.d(TAG, "Offer received.");
@@ -222,8 +398,9 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
                     Log.d(TAG, "Remote description set for offer.");
                     peerConnection.createAnswer(new SdpObserver() {
                         @Override
-                        public void onCreateSuccess(SessionDescription answerSdp) {
+                        public void onCreateSuccess(SessionDescription createdAnswer) {
                             Log.d(TAG, "Answer created successfully.");
+                            final SessionDescription answerSdp = OpusAudioProfile.apply(createdAnswer);
                             peerConnection.setLocalDescription(new SdpObserver() {
                                 @Override
                                 public void onSetSuccess() {
@@ -244,7 +421,7 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
                         public void onCreateFailure(String s) { Log.e(TAG, "Failed to create answer: " + s); }
                         @Override
                         public void onSetFailure(String s) {}
-                    }, new MediaConstraints());
+                    }, OpusAudioProfile.sdpConstraints());
                 }
                 @Override
                 public void onCreateSuccess(SessionDescription sdp) {}
@@ -252,7 +429,7 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
                 public void onSetFailure(String s) { Log.e(TAG, "Failed to set remote description for offer: " + s); }
                 @Override
                 public void onCreateFailure(String s) {}
-            }, sessionDescription);
+            }, OpusAudioProfile.apply(sessionDescription));
         }
     }
 
@@ -271,7 +448,7 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
                 public void onSetFailure(String s) { Log.e(TAG, "Failed to set remote description for answer: " + s); }
                 @Override
                 public void onCreateFailure(String s) {}
-            }, sessionDescription);
+            }, OpusAudioProfile.apply(sessionDescription));
         }
     }
 
@@ -293,10 +470,10 @@ public class WebRTCManager implements FirebaseSignalingClient.SignalingListener
 
     public void cleanup() {
         endCall();
-        if (peerConnectionFactory != null) {
+        if (peerConnectionFactory != null && ownsFactory) {
             peerConnectionFactory.dispose();
-            peerConnectionFactory = null;
+            PeerConnectionFactory.shutdownInternalTracer();
         }
-        PeerConnectionFactory.shutdownInternalTracer();
+        peerConnectionFactory = null;
     }
 }
\ No newline at end of file
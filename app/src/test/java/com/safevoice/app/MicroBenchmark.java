@@ -0,0 +1,90 @@
+package com.safevoice.app;
+
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * A small timing loop for the JVM microbenchmarks under src/test.
+ *
+ * Benchmarks are ordinary JUnit tests that call {@link #assumeEnabled()} first, so a plain
+ * test run skips them. Run them with {@code ./gradlew testDebugUnitTest -Pbenchmarks}. Each
+ * measurement warms the operation up, then reports wall time and heap bytes allocated per
+ * operation on the calling thread.
+ */
+public final class MicroBenchmark {
+
+    /**
+     * One benchmarked operation. The return value is folded into a sink so the JIT cannot
+     * discard the work.
+     */
+    public interface Operation {
+        long run();
+    }
+
+    public static final class Result {
+        public final String name;
+        public final double nanosPerOp;
+        // -1 if the JVM cannot count allocations per thread.
+        public final double bytesPerOp;
+
+        Result(String name, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-48s %12.1f ns/op %12.1f B/op", name, nanosPerOp, bytesPerOp);
+        }
+    }
+
+    private static volatile long sink;
+
+    private MicroBenchmark() {}
+
+    /**
+     * Skips the calling test unless benchmarks were requested.
+     */
+    public static void assumeEnabled() {
+        assumeTrue("Run with -Pbenchmarks to enable microbenchmarks.", Boolean.getBoolean("benchmarks"));
+    }
+
+    /**
+     * Runs the operation warmupOps times untimed, then measureOps times timed, and prints
+     * the result.
+     */
+    public static Result measure(String name, int warmupOps, int measureOps, Operation operation) {
+        long accumulator = 0;
+        for (int i = 0; i < warmupOps; i++) {
+            accumulator += operation.run();
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < measureOps; i++) {
+            accumulator += operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+        sink += accumulator;
+
+        double bytesPerOp = (allocatedBefore < 0) ? -1 : (double) (allocatedAfter - allocatedBefore) / measureOps;
+        Result result = new Result(name, (double) elapsed / measureOps, bytesPerOp);
+        System.out.println(result);
+        return result;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
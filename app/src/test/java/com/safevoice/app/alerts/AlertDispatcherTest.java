@@ -0,0 +1,264 @@
+package com.safevoice.app.alerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.safevoice.app.models.Contact;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives AlertDispatcher with fake channels whose progress the test controls through latches,
+ * so ordering is proven without relying on timing.
+ */
+public class AlertDispatcherTest {
+
+    private static final long WAIT_SECONDS = 5;
+    private static final EmergencyAlert ALERT = new EmergencyAlert("caller", "Test User", null, null,
+            new ArrayList<Contact>(), null);
+
+    private final AlertDispatcher dispatcher = new AlertDispatcher();
+
+    /**
+     * A channel that reaches its recipients one by one. Before each recipient it waits for
+     * its gate, if it has one.
+     */
+    private static class FakeChannel implements AlertChannel {
+        final String name;
+        final ChannelPolicy policy;
+        final List<String> recipients;
+        final CountDownLatch gate;
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        int failuresBeforeSuccess = 0;
+
+        FakeChannel(String name, ChannelPolicy policy, CountDownLatch gate, String... recipients) {
+            this.name = name;
+            this.policy = policy;
+            this.gate = gate;
+            this.recipients = Arrays.asList(recipients);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public ChannelPolicy getPolicy() {
+            return policy;
+        }
+
+        @Override
+        public void send(EmergencyAlert alert, DeliveryListener deliveries) throws Exception {
+            started.countDown();
+            if (calls.incrementAndGet() <= failuresBeforeSuccess) {
+                throw new Exception("Simulated failure " + calls.get());
+            }
+            for (String recipient : recipients) {
+                if (gate != null) {
+                    gate.await();
+                }
+                deliveries.onDelivered(recipient);
+            }
+        }
+    }
+
+    /**
+     * Records the callbacks and lets the test wait for them.
+     */
+    private static class RecordingListener implements AlertDispatcher.DispatchListener {
+        final CountDownLatch firstAlert = new CountDownLatch(1);
+        final CountDownLatch complete = new CountDownLatch(1);
+        volatile String firstChannel;
+        volatile DispatchReport report;
+        final AtomicInteger firstAlertCalls = new AtomicInteger();
+
+        @Override
+        public void onFirstAlertSent(String channelName, long elapsedMs) {
+            firstAlertCalls.incrementAndGet();
+            firstChannel = channelName;
+            firstAlert.countDown();
+        }
+
+        @Override
+        public void onDispatchComplete(DispatchReport report) {
+            this.report = report;
+            complete.countDown();
+        }
+    }
+
+    private static ChannelPolicy policy(long deadlineMs, int maxAttempts) {
+        return new ChannelPolicy(deadlineMs, maxAttempts, 10);
+    }
+
+    private static Map<String, DispatchReport.ChannelResult> byName(DispatchReport report) {
+        Map<String, DispatchReport.ChannelResult> results = new HashMap<>();
+        for (DispatchReport.ChannelResult result : report.getResults()) {
+            results.put(result.getChannelName(), result);
+        }
+        return results;
+    }
+
+    @After
+    public void shutDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void firstSmsGoesOutWhileOtherChannelsAreStillBlocked() throws InterruptedException {
+        CountDownLatch slowGate = new CountDownLatch(1);
+        FakeChannel sms = new FakeChannel("sms", policy(5000, 1), null, "+100");
+        FakeChannel fcm = new FakeChannel("fcm", policy(5000, 1), slowGate, "uid-1");
+        FakeChannel call = new FakeChannel("phone_call", policy(5000, 1), slowGate, "+100");
+        RecordingListener listener = new RecordingListener();
+
+        dispatcher.dispatch(ALERT, Arrays.<AlertChannel>asList(fcm, call, sms), listener);
+
+        assertTrue(listener.firstAlert.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("sms", listener.firstChannel);
+        // The slow channels are running but have not reached anyone yet.
+        assertTrue(fcm.started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(call.started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, listener.complete.getCount());
+
+        slowGate.countDown();
+        assertTrue(listener.complete.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        for (DispatchReport.ChannelResult result : listener.report.getResults()) {
+            assertEquals(DispatchReport.Status.SUCCEEDED, result.getStatus());
+        }
+        assertEquals(1, listener.firstAlertCalls.get());
+    }
+
+    @Test
+    public void firstAlertFiresAtTheFirstRecipientNotAtChannelCompletion() throws InterruptedException {
+        // The gate opens once for the first recipient; the second waits until the test releases it.
+        final CountDownLatch secondRecipient = new CountDownLatch(1);
+        AlertChannel sms = new FakeChannel("sms", policy(5000, 1), null) {
+            @Override
+            public void send(EmergencyAlert alert, DeliveryListener deliveries) throws Exception {
+                deliveries.onDelivered("+100");
+                secondRecipient.await();
+                deliveries.onDelivered("+200");
+            }
+        };
+        RecordingListener listener = new RecordingListener();
+
+        dispatcher.dispatch(ALERT, Arrays.asList(sms), listener);
+
+        assertTrue(listener.firstAlert.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, listener.complete.getCount());
+        secondRecipient.countDown();
+        assertTrue(listener.complete.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        DispatchReport.ChannelResult result = listener.report.getResults().get(0);
+        assertEquals(2, result.getRecipientsReached());
+        assertTrue(result.getFirstDeliveredAtMs() >= 0);
+    }
+
+    @Test
+    public void channelThatReachesNobodyFailsWithoutRetrying() throws InterruptedException {
+        FakeChannel fcm = new FakeChannel("fcm", policy(5000, 3), null);
+        RecordingListener listener = new RecordingListener();
+
+        dispatcher.dispatch(ALERT, Arrays.<AlertChannel>asList(fcm), listener);
+
+        assertTrue(listener.complete.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        DispatchReport.ChannelResult result = listener.report.getResults().get(0);
+        assertEquals(DispatchReport.Status.FAILED, result.getStatus());
+        assertEquals(0, result.getRecipientsReached());
+        assertEquals(1, result.getAttempts());
+        assertEquals(-1, listener.report.getTimeToFirstAlertMs());
+        assertEquals(0, listener.firstAlertCalls.get());
+    }
+
+    @Test
+    public void smsWithNoNumberToSendToFailsWithoutRetrying() throws InterruptedException {
+        // ALERT has no contacts, so the SMS manager is never used.
+        RecordingListener listener = new RecordingListener();
+
+        dispatcher.dispatch(ALERT, Arrays.<AlertChannel>asList(new SmsAlertChannel()), listener);
+
+        assertTrue(listener.complete.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        DispatchReport.ChannelResult result = listener.report.getResults().get(0);
+        assertEquals(DispatchReport.Status.FAILED, result.getStatus());
+        assertEquals(1, result.getAttempts());
+        assertEquals("No recipient reached", result.getError());
+    }
+
+    @Test
+    public void failedAttemptsAreRetriedUpToTheLimit() throws InterruptedException {
+        FakeChannel sms = new FakeChannel("sms", policy(5000, 3), null, "+100");
+        sms.failuresBeforeSuccess = 2;
+        FakeChannel fcm = new FakeChannel("fcm", policy(5000, 2), null, "uid-1");
+        fcm.failuresBeforeSuccess = 5;
+        RecordingListener listener = new RecordingListener();
+
+        dispatcher.dispatch(ALERT, Arrays.<AlertChannel>asList(sms, fcm), listener);
+
+        assertTrue(listener.complete.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        Map<String, DispatchReport.ChannelResult> results = byName(listener.report);
+        assertEquals(DispatchReport.Status.SUCCEEDED, results.get("sms").getStatus());
+        assertEquals(3, results.get("sms").getAttempts());
+        assertEquals(DispatchReport.Status.FAILED, results.get("fcm").getStatus());
+        assertEquals(2, results.get("fcm").getAttempts());
+        assertNotNull(results.get("fcm").getError());
+    }
+
+    @Test
+    public void hungChannelTimesOutWithoutHoldingUpTheReport() throws InterruptedException {
+        CountDownLatch never = new CountDownLatch(1);
+        FakeChannel sms = new FakeChannel("sms", policy(5000, 1), null, "+100");
+        FakeChannel fcm = new FakeChannel("fcm", policy(200, 1), never, "uid-1");
+        RecordingListener listener = new RecordingListener();
+
+        dispatcher.dispatch(ALERT, Arrays.<AlertChannel>asList(sms, fcm), listener);
+
+        assertTrue(listener.complete.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        Map<String, DispatchReport.ChannelResult> results = byName(listener.report);
+        assertEquals(DispatchReport.Status.SUCCEEDED, results.get("sms").getStatus());
+        assertEquals(DispatchReport.Status.TIMED_OUT, results.get("fcm").getStatus());
+        assertEquals(0, results.get("fcm").getRecipientsReached());
+    }
+
+    @Test
+    public void partialDeliveryBeforeATimeoutStillCounts() throws InterruptedException {
+        final CountDownLatch never = new CountDownLatch(1);
+        AlertChannel sms = new FakeChannel("sms", policy(200, 1), null) {
+            @Override
+            public void send(EmergencyAlert alert, DeliveryListener deliveries) throws Exception {
+                deliveries.onDelivered("+100");
+                never.await();
+            }
+        };
+        RecordingListener listener = new RecordingListener();
+
+        dispatcher.dispatch(ALERT, Arrays.asList(sms), listener);
+
+        assertTrue(listener.complete.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        DispatchReport.ChannelResult result = listener.report.getResults().get(0);
+        assertEquals(DispatchReport.Status.TIMED_OUT, result.getStatus());
+        assertEquals(1, result.getRecipientsReached());
+        assertFalse(listener.report.getTimeToFirstAlertMs() < 0);
+        assertEquals(1, listener.firstAlertCalls.get());
+    }
+
+    @Test
+    public void emptyChannelListCompletesImmediately() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        dispatcher.dispatch(ALERT, new ArrayList<AlertChannel>(), listener);
+        assertTrue(listener.complete.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(listener.report.getResults().isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package com.safevoice.app.utils;
+
+import com.safevoice.app.MicroBenchmark;
+import com.safevoice.app.models.Contact;
+
+import org.json.JSONArray;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Measures ContactStore at 10, 100 and 1,000 contacts: one journal append (with its fsync)
+ * against rewriting the whole list as the SharedPreferences storage did, reopening the
+ * journal, and an indexed phone lookup.
+ */
+public class ContactStoreBenchmark {
+
+    private static final int[] SIZES = {10, 100, 1000};
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Contact> contacts(int count) {
+        List<Contact> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            contacts.add(new Contact("Contact " + i, String.format("+1 (555) %07d", i), (i % 2 == 0) ? "uid-" + i : null));
+        }
+        return contacts;
+    }
+
+    @Test
+    public void appendVersusFullRewrite() throws IOException {
+        MicroBenchmark.assumeEnabled();
+        for (int size : SIZES) {
+            final List<Contact> contacts = contacts(size);
+            final ContactStore store = new ContactStore(folder.newFile(), DIRECT, null);
+            store.importAll(null, contacts);
+            final Contact extra = new Contact("Extra", "+15559999999");
+
+            MicroBenchmark.measure("journal append, " + size + " contacts", 50, 200, new MicroBenchmark.Operation() {
+                private boolean added;
+
+                @Override
+                public long run() {
+                    // Alternate add and remove so the store stays at the same size.
+                    if (added) {
+                        store.removePriorityContact(extra);
+                    } else {
+                        store.addPriorityContact(extra);
+                    }
+                    added = !added;
+                    return store.getSnapshot().getVersion();
+                }
+            });
+
+            final File rewriteFile = folder.newFile();
+            MicroBenchmark.measure("full JSON rewrite, " + size + " contacts", 50, 200, new MicroBenchmark.Operation() {
+                @Override
+                public long run() {
+                    JSONArray array = new JSONArray();
+                    for (Contact contact : contacts) {
+                        array.put(contact.toJSONObject());
+                    }
+                    byte[] bytes = array.toString().getBytes(StandardCharsets.UTF_8);
+                    try (FileOutputStream out = new FileOutputStream(rewriteFile)) {
+                        out.write(bytes);
+                        out.getFD().sync();
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                    return bytes.length;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void reopenAndLookup() throws IOException {
+        MicroBenchmark.assumeEnabled();
+        for (int size : SIZES) {
+            final File journal = folder.newFile();
+            new ContactStore(journal, DIRECT, null).importAll(null, contacts(size));
+
+            MicroBenchmark.measure("reopen journal, " + size + " contacts", 100, 1000, new MicroBenchmark.Operation() {
+                @Override
+                public long run() {
+                    return new ContactStore(journal, DIRECT, null).getSnapshot().getPriorityContacts().size();
+                }
+            });
+
+            final ContactsSnapshot snapshot = new ContactStore(journal, DIRECT, null).getSnapshot();
+            final String phone = String.format("+1 555 %07d", size - 1);
+            MicroBenchmark.measure("findByPhone, " + size + " contacts", 100_000, 1_000_000, new MicroBenchmark.Operation() {
+                @Override
+                public long run() {
+                    return snapshot.findByPhone(phone) != null ? 1 : 0;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.safevoice.app.models.Contact;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+public class ContactStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Holds queued writes until the test runs them, standing in for the write thread.
+     */
+    private static class QueuedExecutor implements Executor {
+        final Queue<Runnable> pending = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+
+        void runAll() {
+            while (!pending.isEmpty()) {
+                pending.poll().run();
+            }
+        }
+    }
+
+    private static class RecordingListener implements ContactStore.Listener {
+        final List<ContactsSnapshot> snapshots = new ArrayList<>();
+
+        @Override
+        public void onContactsChanged(ContactsSnapshot snapshot) {
+            snapshots.add(snapshot);
+        }
+    }
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File journal() {
+        return new File(folder.getRoot(), "contacts.journal");
+    }
+
+    private ContactStore open(File journal) {
+        return new ContactStore(journal, DIRECT, null);
+    }
+
+    @Test
+    public void changesSurviveReopening() {
+        ContactStore store = open(journal());
+        store.setPrimaryContact(new Contact("Ann", "+1 555 0100"));
+        store.addPriorityContact(new Contact("Bob", "+1 555 0101", "uid-bob"));
+        store.addPriorityContact(new Contact("Cy", "+1 555 0102"));
+        store.removePriorityContact(new Contact("Cy", "+1 555 0102"));
+
+        ContactsSnapshot reopened = open(journal()).getSnapshot();
+        assertEquals("Ann", reopened.getPrimaryContact().getName());
+        assertEquals(1, reopened.getPriorityContacts().size());
+        assertNotNull(reopened.findByUid("uid-bob"));
+        assertNotNull(reopened.findByPhone("+15550101"));
+        assertNull(reopened.findByPhone("+15550102"));
+    }
+
+    @Test
+    public void changesReachMemoryOnlyAfterTheWrite() {
+        QueuedExecutor writes = new QueuedExecutor();
+        RecordingListener listener = new RecordingListener();
+        ContactStore store = new ContactStore(journal(), writes, listener);
+
+        store.addPriorityContact(new Contact("Bob", "+15550101", "uid-bob"));
+        assertTrue(store.getSnapshot().getPriorityContacts().isEmpty());
+        assertTrue(listener.snapshots.isEmpty());
+
+        writes.runAll();
+        assertEquals(1, store.getSnapshot().getPriorityContacts().size());
+        assertEquals(1, listener.snapshots.size());
+        assertEquals(store.getSnapshot().getVersion(), listener.snapshots.get(0).getVersion());
+    }
+
+    @Test
+    public void removalQueuedBehindAnAddFindsTheAddedContact() {
+        QueuedExecutor writes = new QueuedExecutor();
+        ContactStore store = new ContactStore(journal(), writes, null);
+
+        // Editing a contact deletes the old one and adds the new one before either is written.
+        store.addPriorityContact(new Contact("Bob", "+15550101"));
+        store.removePriorityContact(new Contact("Bob", "+15550101"));
+        store.addPriorityContact(new Contact("Robert", "+15550101"));
+        writes.runAll();
+
+        List<Contact> contacts = store.getSnapshot().getPriorityContacts();
+        assertEquals(1, contacts.size());
+        assertEquals("Robert", contacts.get(0).getName());
+    }
+
+    @Test
+    public void failedWriteLeavesTheContactsAsTheyWere() throws IOException {
+        // A directory where the journal should be makes every append fail.
+        File unwritable = folder.newFolder("contacts.journal");
+        RecordingListener listener = new RecordingListener();
+        ContactStore store = new ContactStore(unwritable, DIRECT, listener);
+
+        store.addPriorityContact(new Contact("Bob", "+15550101"));
+        store.setPrimaryContact(new Contact("Ann", "+15550100"));
+
+        assertTrue(store.getSnapshot().getPriorityContacts().isEmpty());
+        assertNull(store.getSnapshot().getPrimaryContact());
+        assertTrue(listener.snapshots.isEmpty());
+        assertFalse(store.importAll(null, Collections.singletonList(new Contact("Cy", "+15550102"))));
+    }
+
+    @Test
+    public void removingAnUnknownContactWritesNothing() {
+        RecordingListener listener = new RecordingListener();
+        ContactStore store = new ContactStore(journal(), DIRECT, listener);
+        store.removePriorityContact(new Contact("Nobody", "+15550199"));
+        assertFalse(journal().exists());
+        assertTrue(listener.snapshots.isEmpty());
+    }
+
+    @Test
+    public void journalIsCompactedOnceMostlyStale() throws IOException {
+        ContactStore store = open(journal());
+        Contact keep = new Contact("Keep", "+15550100");
+        store.addPriorityContact(keep);
+        for (int i = 0; i < 100; i++) {
+            Contact churn = new Contact("Churn " + i, "+1555020" + i);
+            store.addPriorityContact(churn);
+            store.removePriorityContact(churn);
+        }
+
+        List<String> lines = Files.readAllLines(journal().toPath(), StandardCharsets.UTF_8);
+        assertTrue("journal has " + lines.size() + " lines", lines.size() < 40);
+        assertEquals(Arrays.asList("Keep"), names(open(journal()).getSnapshot()));
+    }
+
+    @Test
+    public void tornFinalLineIsSkipped() throws IOException {
+        ContactStore store = open(journal());
+        store.addPriorityContact(new Contact("Bob", "+15550101"));
+        Files.write(journal().toPath(), "{\"op\":\"put\",\"con".getBytes(StandardCharsets.UTF_8),
+                java.nio.file.StandardOpenOption.APPEND);
+
+        assertEquals(Arrays.asList("Bob"), names(open(journal()).getSnapshot()));
+    }
+
+    @Test
+    public void importAllReplacesEverything() {
+        ContactStore store = open(journal());
+        store.addPriorityContact(new Contact("Old", "+15550100"));
+        assertTrue(store.importAll(new Contact("Ann", "+15550101"),
+                Arrays.asList(new Contact("Bob", "+15550102"), new Contact("Cy", "+15550103"))));
+
+        ContactsSnapshot reopened = open(journal()).getSnapshot();
+        assertEquals("Ann", reopened.getPrimaryContact().getName());
+        assertEquals(Arrays.asList("Bob", "Cy"), names(reopened));
+    }
+
+    private static List<String> names(ContactsSnapshot snapshot) {
+        List<String> names = new ArrayList<>();
+        for (Contact contact : snapshot.getPriorityContacts()) {
+            names.add(contact.getName());
+        }
+        return names;
+    }
+}
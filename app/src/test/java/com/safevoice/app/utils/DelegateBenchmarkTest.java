@@ -0,0 +1,72 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class DelegateBenchmarkTest {
+
+    private static final InterpreterConfig CPU_1 = new InterpreterConfig(InterpreterConfig.Backend.CPU, 1);
+    private static final InterpreterConfig XNNPACK_2 = new InterpreterConfig(InterpreterConfig.Backend.XNNPACK, 2);
+    private static final InterpreterConfig NNAPI_1 = new InterpreterConfig(InterpreterConfig.Backend.NNAPI, 1);
+
+    @Test
+    public void fastestPicksTheLowestSuccessfulMedian() {
+        List<DelegateBenchmark.Result> results = Arrays.asList(
+                new DelegateBenchmark.Result(CPU_1, 9_000_000L, null),
+                new DelegateBenchmark.Result(XNNPACK_2, 3_000_000L, null),
+                new DelegateBenchmark.Result(NNAPI_1, 5_000_000L, null));
+        assertEquals(XNNPACK_2, DelegateBenchmark.fastest(results));
+    }
+
+    @Test
+    public void fastestIgnoresFailedCandidates() {
+        // A failed run reports -1, which must not win.
+        List<DelegateBenchmark.Result> results = Arrays.asList(
+                new DelegateBenchmark.Result(NNAPI_1, -1, new IllegalStateException("no driver")),
+                new DelegateBenchmark.Result(CPU_1, 9_000_000L, null));
+        assertEquals(CPU_1, DelegateBenchmark.fastest(results));
+    }
+
+    @Test
+    public void fastestIsNullWhenEveryCandidateFailed() {
+        List<DelegateBenchmark.Result> results = Arrays.asList(
+                new DelegateBenchmark.Result(CPU_1, -1, new IllegalStateException()),
+                new DelegateBenchmark.Result(NNAPI_1, -1, new UnsatisfiedLinkError()));
+        assertNull(DelegateBenchmark.fastest(results));
+        assertNull(DelegateBenchmark.fastest(Arrays.<DelegateBenchmark.Result>asList()));
+    }
+
+    @Test
+    public void defaultCandidatesAreDistinctAndIncludeTheDefault() {
+        List<InterpreterConfig> candidates = DelegateBenchmark.defaultCandidates();
+        assertTrue(candidates.contains(InterpreterConfig.DEFAULT));
+        assertEquals(candidates.size(), new HashSet<>(candidates).size());
+        for (InterpreterConfig candidate : candidates) {
+            assertEquals(candidate, InterpreterConfig.decode(candidate.encode()));
+        }
+    }
+
+    @Test
+    public void runReportsEveryCandidateInOrderWithoutThrowing() {
+        // Not a model, and on the JVM the native library is missing as well: either way every
+        // candidate fails, and the failure is reported rather than thrown.
+        List<InterpreterConfig> candidates = Arrays.asList(CPU_1, XNNPACK_2, NNAPI_1);
+        ByteBuffer notAModel = ByteBuffer.allocateDirect(64);
+        List<DelegateBenchmark.Result> results = new DelegateBenchmark().run(notAModel, candidates);
+        assertEquals(candidates.size(), results.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            assertEquals(candidates.get(i), results.get(i).getConfig());
+            assertFalse(results.get(i).isSuccessful());
+        }
+        assertNull(DelegateBenchmark.fastest(results));
+    }
+}
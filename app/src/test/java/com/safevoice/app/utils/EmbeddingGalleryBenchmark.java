@@ -0,0 +1,85 @@
+package com.safevoice.app.utils;
+
+import com.safevoice.app.MicroBenchmark;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * bestMatch and topK over galleries of 1, 100 and 10,000 face embeddings, against the
+ * per-pair cosine similarity (three running sums, a norm per pair) the gallery replaced.
+ */
+public class EmbeddingGalleryBenchmark {
+
+    private static final int DIMENSION = FaceVerifier.EMBEDDING_SIZE;
+    private static final int[] SIZES = {1, 100, 10_000};
+
+    @Test
+    public void searchAtGallerySizes() {
+        MicroBenchmark.assumeEnabled();
+        Random random = new Random(7);
+        final float[] query = randomEmbedding(random);
+        for (int size : SIZES) {
+            final EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION, size);
+            final float[][] raw = new float[size][];
+            for (int i = 0; i < size; i++) {
+                raw[i] = randomEmbedding(random);
+                gallery.add("e" + i, raw[i]);
+            }
+            // Keep the total work per measurement roughly constant across sizes.
+            int ops = Math.max(100, 2_000_000 / size);
+
+            MicroBenchmark.measure("pairwise cosine, " + size + " embeddings", ops / 5, ops, new MicroBenchmark.Operation() {
+                @Override
+                public long run() {
+                    int best = 0;
+                    double bestScore = Double.NEGATIVE_INFINITY;
+                    for (int i = 0; i < raw.length; i++) {
+                        double score = cosine(query, raw[i]);
+                        if (score > bestScore) {
+                            bestScore = score;
+                            best = i;
+                        }
+                    }
+                    return best;
+                }
+            });
+            MicroBenchmark.measure("bestMatch, " + size + " embeddings", ops / 5, ops, new MicroBenchmark.Operation() {
+                @Override
+                public long run() {
+                    return gallery.bestMatch(query).getIndex();
+                }
+            });
+            MicroBenchmark.measure("topK(5), " + size + " embeddings", ops / 5, ops, new MicroBenchmark.Operation() {
+                @Override
+                public long run() {
+                    return gallery.topK(query, 5).size();
+                }
+            });
+        }
+    }
+
+    private static float[] randomEmbedding(Random random) {
+        float[] embedding = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            embedding[i] = (float) random.nextGaussian();
+        }
+        return embedding;
+    }
+
+    /**
+     * FaceVerifier.calculateSimilarity, without the instance it needs.
+     */
+    private static double cosine(float[] a, float[] b) {
+        double dotProduct = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < DIMENSION; i++) {
+            dotProduct += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+}
@@ -0,0 +1,133 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class EmbeddingGalleryTest {
+
+    private static final int DIMENSION = 8;
+
+    private static float[] unit(int axis) {
+        float[] embedding = new float[DIMENSION];
+        embedding[axis] = 1f;
+        return embedding;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    @Test
+    public void bestMatchIsTheClosestEmbedding() {
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION, 1);
+        gallery.add("x", unit(0));
+        gallery.add("y", unit(1));
+        gallery.add("z", unit(2));
+
+        float[] query = unit(1);
+        query[0] = 0.5f;
+        EmbeddingGallery.Match match = gallery.bestMatch(query);
+        assertEquals(1, match.getIndex());
+        assertEquals("y", match.getLabel());
+        assertEquals(cosine(query, unit(1)), match.getScore(), 1e-5);
+    }
+
+    @Test
+    public void topKIsOrderedByScoreAndMatchesAFullSort() {
+        Random random = new Random(42);
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION, 4);
+        List<float[]> stored = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            float[] embedding = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                embedding[d] = (float) random.nextGaussian();
+            }
+            stored.add(embedding);
+            gallery.add("e" + i, embedding);
+        }
+        float[] query = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            query[d] = (float) random.nextGaussian();
+        }
+
+        List<Double> expected = new ArrayList<>();
+        for (float[] embedding : stored) {
+            expected.add(cosine(query, embedding));
+        }
+        Collections.sort(expected, Collections.<Double>reverseOrder());
+
+        List<EmbeddingGallery.Match> top = gallery.topK(query, 10);
+        assertEquals(10, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            EmbeddingGallery.Match match = top.get(i);
+            assertEquals("rank " + i, expected.get(i), match.getScore(), 1e-5);
+            assertEquals("e" + match.getIndex(), match.getLabel());
+            assertEquals(cosine(query, stored.get(match.getIndex())), match.getScore(), 1e-5);
+            if (i > 0) {
+                assertTrue(top.get(i - 1).getScore() >= match.getScore());
+            }
+        }
+        assertEquals(gallery.bestMatch(query).getIndex(), top.get(0).getIndex());
+    }
+
+    @Test
+    public void topKReturnsAtMostTheGallerySize() {
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION, 4);
+        gallery.add("x", unit(0));
+        gallery.add("y", unit(1));
+        List<EmbeddingGallery.Match> top = gallery.topK(unit(1), 5);
+        assertEquals(2, top.size());
+        assertEquals("y", top.get(0).getLabel());
+        assertTrue(gallery.topK(unit(1), 0).isEmpty());
+    }
+
+    @Test
+    public void zeroEmbeddingsAreRejectedAndZeroQueriesMatchNothing() {
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION, 4);
+        assertEquals(-1, gallery.add("zero", new float[DIMENSION]));
+        assertEquals(0, gallery.size());
+        gallery.add("x", unit(0));
+        assertNull(gallery.bestMatch(new float[DIMENSION]));
+        assertTrue(gallery.topK(new float[DIMENSION], 3).isEmpty());
+    }
+
+    @Test
+    public void emptyGalleryMatchesNothing() {
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION, 4);
+        assertNull(gallery.bestMatch(unit(0)));
+        assertTrue(gallery.topK(unit(0), 3).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addRejectsAWrongLength() {
+        new EmbeddingGallery(DIMENSION, 4).add("short", new float[DIMENSION - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bestMatchRejectsAWrongLength() {
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION, 4);
+        gallery.add("x", unit(0));
+        gallery.bestMatch(new float[DIMENSION + 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void topKRejectsAWrongLength() {
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION, 4);
+        gallery.add("x", unit(0));
+        gallery.topK(new float[DIMENSION + 1], 1);
+    }
+}
@@ -0,0 +1,94 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Feeds FaceVerificationSession match scores shaped like a live selfie check. Uses the
+ * settings KycActivity uses: threshold 0.8, early margin 0.05, 3 to 8 scores, 45 frames.
+ */
+public class FaceVerificationSessionTest {
+
+    private static final double THRESHOLD = 0.8;
+    private static final double EARLY_MARGIN = 0.05;
+    private static final int MIN_SCORES = 3;
+    private static final int MAX_SCORES = 8;
+    private static final int MAX_FRAMES = 45;
+
+    private static FaceVerificationSession kycSession() {
+        return new FaceVerificationSession(THRESHOLD, EARLY_MARGIN, MIN_SCORES, MAX_SCORES, MAX_FRAMES);
+    }
+
+    @Test
+    public void acceptsEarlyWhenClearlyAboveTheThreshold() {
+        FaceVerificationSession session = kycSession();
+        assertEquals(FaceVerificationSession.Decision.PENDING, session.onFrameScored(0.9f));
+        assertEquals(FaceVerificationSession.Decision.PENDING, session.onFrameScored(0.92f));
+        assertEquals(FaceVerificationSession.Decision.ACCEPT, session.onFrameScored(0.88f));
+        assertEquals(MIN_SCORES, session.getScoreCount());
+    }
+
+    @Test
+    public void rejectsEarlyWhenClearlyBelowTheThreshold() {
+        FaceVerificationSession session = kycSession();
+        assertEquals(FaceVerificationSession.Decision.PENDING, session.onFrameScored(0.5f));
+        assertEquals(FaceVerificationSession.Decision.PENDING, session.onFrameScored(0.45f));
+        assertEquals(FaceVerificationSession.Decision.REJECT, session.onFrameScored(0.55f));
+    }
+
+    @Test
+    public void staysPendingInsideTheMarginUntilMaxScoresForcesADecision() {
+        FaceVerificationSession accepted = kycSession();
+        FaceVerificationSession rejected = kycSession();
+        for (int i = 1; i < MAX_SCORES; i++) {
+            assertEquals("Score " + i, FaceVerificationSession.Decision.PENDING, accepted.onFrameScored(0.82f));
+            assertEquals("Score " + i, FaceVerificationSession.Decision.PENDING, rejected.onFrameScored(0.78f));
+        }
+        assertEquals(FaceVerificationSession.Decision.ACCEPT, accepted.onFrameScored(0.82f));
+        assertEquals(FaceVerificationSession.Decision.REJECT, rejected.onFrameScored(0.78f));
+        assertEquals(MAX_SCORES, accepted.getScoreCount());
+    }
+
+    @Test
+    public void givesUpAfterMaxFramesOfSkippedFrames() {
+        FaceVerificationSession session = kycSession();
+        for (int i = 1; i < MAX_FRAMES; i++) {
+            assertEquals("Frame " + i, FaceVerificationSession.Decision.PENDING, session.onFrameSkipped());
+        }
+        assertEquals(FaceVerificationSession.Decision.INCONCLUSIVE, session.onFrameSkipped());
+        assertEquals(0, session.getScoreCount());
+        assertTrue(Double.isNaN(session.getAggregateScore()));
+    }
+
+    @Test
+    public void givesUpWhenTooFewFramesWereScoredByMaxFrames() {
+        FaceVerificationSession session = kycSession();
+        session.onFrameScored(0.9f);
+        for (int i = 2; i < MAX_FRAMES; i++) {
+            session.onFrameSkipped();
+        }
+        assertEquals(FaceVerificationSession.Decision.INCONCLUSIVE, session.onFrameScored(0.9f));
+    }
+
+    @Test
+    public void trimmedMeanIgnoresASingleOutlier() {
+        // A margin this wide never decides early, so all five scores are averaged.
+        FaceVerificationSession blink = new FaceVerificationSession(THRESHOLD, 1.0, MIN_SCORES, 5, MAX_FRAMES);
+        FaceVerificationSession reflection = new FaceVerificationSession(THRESHOLD, 1.0, MIN_SCORES, 5, MAX_FRAMES);
+        float[] blinkScores = {0.9f, 0.9f, 0.05f, 0.9f, 0.9f};
+        float[] reflectionScores = {0.6f, 0.6f, 1.0f, 0.6f, 0.6f};
+        FaceVerificationSession.Decision blinkDecision = null;
+        FaceVerificationSession.Decision reflectionDecision = null;
+        for (int i = 0; i < 5; i++) {
+            blinkDecision = blink.onFrameScored(blinkScores[i]);
+            reflectionDecision = reflection.onFrameScored(reflectionScores[i]);
+        }
+
+        assertEquals(FaceVerificationSession.Decision.ACCEPT, blinkDecision);
+        assertEquals(0.9, blink.getAggregateScore(), 1e-6);
+        assertEquals(FaceVerificationSession.Decision.REJECT, reflectionDecision);
+        assertEquals(0.6, reflection.getAggregateScore(), 1e-6);
+    }
+}
@@ -0,0 +1,49 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class InterpreterConfigTest {
+
+    @Test
+    public void encodeDecodeRoundTripsEveryBackend() {
+        for (InterpreterConfig.Backend backend : InterpreterConfig.Backend.values()) {
+            for (int threads : new int[]{1, 4, 16}) {
+                InterpreterConfig config = new InterpreterConfig(backend, threads);
+                InterpreterConfig decoded = InterpreterConfig.decode(config.encode());
+                assertEquals(config, decoded);
+                assertEquals(config.hashCode(), decoded.hashCode());
+            }
+        }
+    }
+
+    @Test
+    public void encodingIsStable() {
+        // Saved in preferences, so the format must not change between releases.
+        assertEquals("XNNPACK:4", InterpreterConfig.DEFAULT.encode());
+        assertEquals(new InterpreterConfig(InterpreterConfig.Backend.NNAPI, 1), InterpreterConfig.decode("NNAPI:1"));
+    }
+
+    @Test
+    public void decodeRejectsInvalidEncodings() {
+        assertNull(InterpreterConfig.decode(null));
+        assertNull(InterpreterConfig.decode(""));
+        assertNull(InterpreterConfig.decode("XNNPACK"));
+        assertNull(InterpreterConfig.decode("GPU:2"));
+        assertNull(InterpreterConfig.decode("xnnpack:2"));
+        assertNull(InterpreterConfig.decode("CPU:0"));
+        assertNull(InterpreterConfig.decode("CPU:-1"));
+        assertNull(InterpreterConfig.decode("CPU:x"));
+        assertNull(InterpreterConfig.decode("CPU:"));
+    }
+
+    @Test
+    public void configsDifferByBackendAndThreads() {
+        InterpreterConfig config = new InterpreterConfig(InterpreterConfig.Backend.CPU, 2);
+        assertNotEquals(config, new InterpreterConfig(InterpreterConfig.Backend.XNNPACK, 2));
+        assertNotEquals(config, new InterpreterConfig(InterpreterConfig.Backend.CPU, 4));
+    }
+}
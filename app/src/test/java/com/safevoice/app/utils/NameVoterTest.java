@@ -0,0 +1,118 @@
+package com.safevoice.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Feeds NameVoter frame-by-frame OCR lines shaped like ML Kit's output for an ID card held in
+ * front of the camera: the name line, card furniture that is not name-like, and the usual
+ * single-frame misreads. Uses the thresholds KycActivity uses: 3 votes, a lead of 2.
+ */
+public class NameVoterTest {
+
+    private static final int VOTES_TO_SETTLE = 3;
+    private static final int LEAD_TO_SETTLE = 2;
+
+    private static List<String> frame(String... lines) {
+        return Arrays.asList(lines);
+    }
+
+    private static final List<String> CLEAN = frame(
+            "IDENTITY CARD NO 4821 0093", "Name", "Priya Sharma", "Date of Birth", "12/03/1990");
+    private static final List<String> MISREAD = frame(
+            "IDENTITY CARD NO 4821 0093", "Name", "Priya Sharrna", "Date of Birth", "12/03/1990");
+    private static final List<String> BLURRED = frame(
+            "IDENTITY CARD N0 4B21", "Narne", "Date of Birth", "12/03/199O");
+    private static final List<String> HEADER_ONLY = frame(
+            "Republic Of Examplia");
+
+    @Test
+    public void settlesAfterEnoughCleanFrames() {
+        NameVoter voter = new NameVoter(VOTES_TO_SETTLE, LEAD_TO_SETTLE);
+        assertNull(voter.offerFrame(CLEAN));
+        assertNull(voter.offerFrame(CLEAN));
+        assertEquals("Priya Sharma", voter.offerFrame(CLEAN));
+        assertEquals("Priya Sharma", voter.getSettledName());
+    }
+
+    @Test
+    public void waitsUntilTheLeaderIsClearlyAhead() {
+        NameVoter voter = new NameVoter(VOTES_TO_SETTLE, LEAD_TO_SETTLE);
+        assertNull(voter.offerFrame(CLEAN));
+        assertNull(voter.offerFrame(MISREAD));
+        assertNull(voter.offerFrame(CLEAN));
+        assertNull(voter.offerFrame(MISREAD));
+        // Three votes, but only one ahead of the misreading.
+        assertNull(voter.offerFrame(CLEAN));
+        assertEquals("Priya Sharma", voter.offerFrame(CLEAN));
+    }
+
+    @Test
+    public void framesWithoutANameCastNoVote() {
+        NameVoter voter = new NameVoter(VOTES_TO_SETTLE, LEAD_TO_SETTLE);
+        for (int i = 0; i < 10; i++) {
+            assertNull(voter.offerFrame(BLURRED));
+        }
+        assertNull(voter.offerFrame(CLEAN));
+        assertNull(voter.offerFrame(BLURRED));
+        assertNull(voter.offerFrame(CLEAN));
+        assertEquals("Priya Sharma", voter.offerFrame(CLEAN));
+    }
+
+    @Test
+    public void occasionalHeaderReadsDoNotWin() {
+        NameVoter voter = new NameVoter(VOTES_TO_SETTLE, LEAD_TO_SETTLE);
+        assertNull(voter.offerFrame(HEADER_ONLY));
+        assertNull(voter.offerFrame(CLEAN));
+        assertNull(voter.offerFrame(CLEAN));
+        // Three votes against one.
+        assertEquals("Priya Sharma", voter.offerFrame(CLEAN));
+    }
+
+    @Test
+    public void onlyTheFirstNameLikeLineOfAFrameVotes() {
+        NameVoter voter = new NameVoter(VOTES_TO_SETTLE, LEAD_TO_SETTLE);
+        List<String> withHeader = frame("Republic Of Examplia", "Priya Sharma");
+        assertNull(voter.offerFrame(withHeader));
+        assertNull(voter.offerFrame(withHeader));
+        assertEquals("Republic Of Examplia", voter.offerFrame(withHeader));
+    }
+
+    @Test
+    public void spacingDifferencesCountAsOneCandidate() {
+        NameVoter voter = new NameVoter(VOTES_TO_SETTLE, LEAD_TO_SETTLE);
+        assertNull(voter.offerFrame(frame("Priya Sharma")));
+        assertNull(voter.offerFrame(frame("Priya  Sharma")));
+        assertEquals("Priya Sharma", voter.offerFrame(frame("Priya Sharma ")));
+    }
+
+    @Test
+    public void settledNameIsFinal() {
+        NameVoter voter = new NameVoter(VOTES_TO_SETTLE, LEAD_TO_SETTLE);
+        for (int i = 0; i < 3; i++) {
+            voter.offerFrame(CLEAN);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Priya Sharma", voter.offerFrame(MISREAD));
+        }
+    }
+
+    @Test
+    public void nameLikeLines() {
+        assertTrue(NameVoter.isNameLike("Priya Sharma"));
+        assertTrue(NameVoter.isNameLike("John A. Smith"));
+        assertTrue(NameVoter.isNameLike("PRIYA SHARMA"));
+        assertFalse(NameVoter.isNameLike("Priya"));
+        assertFalse(NameVoter.isNameLike("Date of Birth"));
+        assertFalse(NameVoter.isNameLike("12/03/1990"));
+        assertFalse(NameVoter.isNameLike("Permanent Account Number Card"));
+        assertFalse(NameVoter.isNameLike("Maximiliana Bartholomewsworth Esq"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.safevoice.app.voice;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AudioRingBufferTest {
+
+    private static final float EPSILON = 1e-6f;
+
+    @Test
+    public void readLatestReturnsNewestSamplesOldestFirstAcrossTheWrap() {
+        AudioRingBuffer buffer = new AudioRingBuffer(4);
+        buffer.write(new short[]{1, 2, 3}, 0, 3);
+        buffer.write(new short[]{4, 5, 6}, 0, 3);
+
+        float[] window = new float[4];
+        buffer.readLatest(window, 4);
+        assertArrayEquals(new float[]{3 / 32768f, 4 / 32768f, 5 / 32768f, 6 / 32768f}, window, EPSILON);
+        assertEquals(6, buffer.getTotalWritten());
+    }
+
+    @Test
+    public void writeLongerThanCapacityKeepsOnlyTheTail() {
+        AudioRingBuffer buffer = new AudioRingBuffer(3);
+        buffer.write(new short[]{10, 20, 30, 40, 50}, 0, 5);
+
+        float[] window = new float[3];
+        buffer.readLatest(window, 3);
+        assertArrayEquals(new float[]{30 / 32768f, 40 / 32768f, 50 / 32768f}, window, EPSILON);
+        assertEquals(5, buffer.getTotalWritten());
+    }
+
+    @Test
+    public void hasAtLeastCountsEverySampleWritten() {
+        AudioRingBuffer buffer = new AudioRingBuffer(8);
+        buffer.write(new short[5], 0, 5);
+        assertFalse(buffer.hasAtLeast(8));
+        buffer.write(new short[5], 0, 3);
+        assertTrue(buffer.hasAtLeast(8));
+        buffer.clear();
+        assertFalse(buffer.hasAtLeast(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowLargerThanBufferIsRejected() {
+        new AudioRingBuffer(4).readLatest(new float[5], 5);
+    }
+}
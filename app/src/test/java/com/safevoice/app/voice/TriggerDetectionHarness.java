@@ -0,0 +1,135 @@
+package com.safevoice.app.voice;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Feeds WAV fixtures through the streaming engine's TriggerScorer, 20 ms at a time as
+ * AudioRecord would deliver them, and reports detection latency and false positives.
+ *
+ * Fixtures are labeled by name. {@code trigger_<onsetMs>[_anything].wav} holds one trigger
+ * phrase starting at onsetMs; latency is measured from that onset to the detection.
+ * {@code background[_anything].wav} holds no trigger, so every detection in it is a false
+ * positive. After a detection the scorer is recreated, as the service restarts listening.
+ *
+ * Any KeywordSpotter can be measured. The TFLite model needs the Android runtime, so the
+ * JVM tests use a stand-in spotter; recordings made on a device can be run the same way.
+ */
+final class TriggerDetectionHarness {
+
+    private static final int FRAME_MILLIS = 20;
+    private static final Pattern TRIGGER_NAME = Pattern.compile("trigger_(\\d+)(?:_.*)?\\.wav");
+    private static final Pattern BACKGROUND_NAME = Pattern.compile("background(?:_.*)?\\.wav");
+
+    /**
+     * Creates a fresh spotter for each fixture.
+     */
+    interface SpotterFactory {
+        KeywordSpotter create();
+    }
+
+    static final class Report {
+        int triggerFixtures;
+        int detected;
+        long latencySumMs;
+        long maxLatencyMs;
+        double backgroundSeconds;
+        int falsePositives;
+
+        double getDetectionRate() {
+            return triggerFixtures == 0 ? Double.NaN : (double) detected / triggerFixtures;
+        }
+
+        double getMeanLatencyMs() {
+            return detected == 0 ? Double.NaN : (double) latencySumMs / detected;
+        }
+
+        double getFalsePositivesPerHour() {
+            return backgroundSeconds == 0 ? Double.NaN : falsePositives * 3600 / backgroundSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "detected %d/%d trigger fixtures, latency mean %.0f ms max %d ms, "
+                            + "%d false positive(s) in %.0f s of background (%.1f/h)",
+                    detected, triggerFixtures, getMeanLatencyMs(), maxLatencyMs,
+                    falsePositives, backgroundSeconds, getFalsePositivesPerHour());
+        }
+    }
+
+    private TriggerDetectionHarness() {}
+
+    /**
+     * Runs every labeled fixture in a directory. Files with other names are ignored.
+     */
+    static Report run(File directory, SpotterFactory factory) throws IOException {
+        Report report = new Report();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return report;
+        }
+        for (File file : files) {
+            Matcher trigger = TRIGGER_NAME.matcher(file.getName());
+            if (trigger.matches()) {
+                long latencyMs = detectionLatencyMs(WavFixture.read(file), Long.parseLong(trigger.group(1)), factory);
+                report.triggerFixtures++;
+                if (latencyMs >= 0) {
+                    report.detected++;
+                    report.latencySumMs += latencyMs;
+                    report.maxLatencyMs = Math.max(report.maxLatencyMs, latencyMs);
+                }
+            } else if (BACKGROUND_NAME.matcher(file.getName()).matches()) {
+                WavFixture fixture = WavFixture.read(file);
+                report.backgroundSeconds += fixture.getDurationSeconds();
+                report.falsePositives += countDetections(fixture, factory);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * @return Milliseconds from the onset to the first detection at or after it, or -1 if the
+     * trigger was missed. A detection before the onset also counts as a miss.
+     */
+    static long detectionLatencyMs(WavFixture fixture, long onsetMs, SpotterFactory factory) {
+        TriggerScorer scorer = newScorer(fixture, factory);
+        int frameSamples = fixture.sampleRate * FRAME_MILLIS / 1000;
+        short[] frame = new short[frameSamples];
+        for (int offset = 0; offset + frameSamples <= fixture.samples.length; offset += frameSamples) {
+            System.arraycopy(fixture.samples, offset, frame, 0, frameSamples);
+            if (scorer.onFrame(frame, frameSamples) == TriggerScorer.Event.DETECTED) {
+                long detectedAtMs = (offset + frameSamples) * 1000L / fixture.sampleRate;
+                return detectedAtMs >= onsetMs ? detectedAtMs - onsetMs : -1;
+            }
+        }
+        return -1;
+    }
+
+    static int countDetections(WavFixture fixture, SpotterFactory factory) {
+        TriggerScorer scorer = newScorer(fixture, factory);
+        int frameSamples = fixture.sampleRate * FRAME_MILLIS / 1000;
+        short[] frame = new short[frameSamples];
+        int detections = 0;
+        for (int offset = 0; offset + frameSamples <= fixture.samples.length; offset += frameSamples) {
+            System.arraycopy(fixture.samples, offset, frame, 0, frameSamples);
+            if (scorer.onFrame(frame, frameSamples) == TriggerScorer.Event.DETECTED) {
+                detections++;
+                scorer = newScorer(fixture, factory);
+            }
+        }
+        return detections;
+    }
+
+    private static TriggerScorer newScorer(WavFixture fixture, SpotterFactory factory) {
+        KeywordSpotter spotter = factory.create();
+        if (spotter.getSampleRate() != fixture.sampleRate) {
+            throw new IllegalArgumentException("Fixture is " + fixture.sampleRate + " Hz but the spotter expects "
+                    + spotter.getSampleRate() + " Hz.");
+        }
+        return new TriggerScorer(spotter);
+    }
+}
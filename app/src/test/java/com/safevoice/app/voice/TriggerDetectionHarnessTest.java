@@ -0,0 +1,131 @@
+package com.safevoice.app.voice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Runs the harness over synthetic fixtures: a loud 1 s "phrase" in quiet noise stands in for
+ * a trigger, and short loud bursts in the same noise stand in for background chatter.
+ */
+public class TriggerDetectionHarnessTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Rule
+    public TemporaryFolder fixtures = new TemporaryFolder();
+
+    /**
+     * Scores a window by the loudness of its last half second; a sustained phrase saturates it.
+     */
+    private static class LoudnessSpotter implements KeywordSpotter {
+        @Override
+        public int getSampleRate() {
+            return SAMPLE_RATE;
+        }
+
+        @Override
+        public int getWindowSamples() {
+            return SAMPLE_RATE;
+        }
+
+        @Override
+        public float score(float[] window) {
+            double sumOfSquares = 0;
+            int start = window.length / 2;
+            for (int i = start; i < window.length; i++) {
+                sumOfSquares += window[i] * window[i];
+            }
+            double rms = Math.sqrt(sumOfSquares / (window.length - start));
+            return (float) Math.min(1.0, rms / 0.25);
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    private static final TriggerDetectionHarness.SpotterFactory LOUDNESS = new TriggerDetectionHarness.SpotterFactory() {
+        @Override
+        public KeywordSpotter create() {
+            return new LoudnessSpotter();
+        }
+    };
+
+    private static short[] noise(int seconds, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[seconds * SAMPLE_RATE];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (random.nextGaussian() * 300);
+        }
+        return samples;
+    }
+
+    private static void addTone(short[] samples, int startMs, int durationMs) {
+        int start = startMs * SAMPLE_RATE / 1000;
+        int end = Math.min(samples.length, start + durationMs * SAMPLE_RATE / 1000);
+        for (int i = start; i < end; i++) {
+            samples[i] += (short) (16000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+        }
+    }
+
+    private void writeTrigger(int onsetMs, long seed) throws IOException {
+        short[] samples = noise(4, seed);
+        addTone(samples, onsetMs, 1000);
+        new WavFixture(SAMPLE_RATE, samples).write(fixtures.newFile("trigger_" + onsetMs + "_" + seed + ".wav"));
+    }
+
+    private void writeBackground(long seed) throws IOException {
+        short[] samples = noise(30, seed);
+        for (int burstMs = 1000; burstMs < 29000; burstMs += 1700) {
+            addTone(samples, burstMs, 100);
+        }
+        new WavFixture(SAMPLE_RATE, samples).write(fixtures.newFile("background_" + seed + ".wav"));
+    }
+
+    @Test
+    public void wavFixturesRoundTrip() throws IOException {
+        short[] samples = {0, 1, -1, Short.MAX_VALUE, Short.MIN_VALUE};
+        File file = fixtures.newFile("roundtrip.wav");
+        new WavFixture(SAMPLE_RATE, samples).write(file);
+
+        WavFixture read = WavFixture.read(file);
+        assertEquals(SAMPLE_RATE, read.sampleRate);
+        assertEquals(samples.length, read.samples.length);
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(samples[i], read.samples[i]);
+        }
+    }
+
+    @Test
+    public void detectsTriggersQuicklyWithoutFalsePositives() throws IOException {
+        writeTrigger(1000, 1);
+        writeTrigger(1500, 2);
+        writeTrigger(2200, 3);
+        writeBackground(4);
+        writeBackground(5);
+
+        TriggerDetectionHarness.Report report = TriggerDetectionHarness.run(fixtures.getRoot(), LOUDNESS);
+        String message = "Trigger detection: " + report;
+
+        assertEquals(message, 3, report.triggerFixtures);
+        assertEquals(message, 1.0, report.getDetectionRate(), 0.0);
+        // Three smoothed hops of 160 ms plus the time for the phrase to fill the scored half second.
+        assertTrue(message, report.maxLatencyMs < 1000);
+        assertEquals(message, 60.0, report.backgroundSeconds, 0.01);
+        assertEquals(message, 0, report.falsePositives);
+    }
+
+    @Test
+    public void detectionBeforeTheLabeledOnsetIsAMiss() {
+        short[] samples = noise(3, 6);
+        addTone(samples, 0, 1500);
+        assertEquals(-1, TriggerDetectionHarness.detectionLatencyMs(new WavFixture(SAMPLE_RATE, samples), 2500, LOUDNESS));
+    }
+}
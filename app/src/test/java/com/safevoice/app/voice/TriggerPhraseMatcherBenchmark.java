@@ -0,0 +1,72 @@
+package com.safevoice.app.voice;
+
+import com.safevoice.app.MicroBenchmark;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compares TriggerPhraseMatcher with the original {@code toLowerCase().contains("help help")}
+ * scan over a batch of N-best recognition hypotheses, most of which do not contain a trigger.
+ */
+public class TriggerPhraseMatcherBenchmark {
+
+    private static final String[] N_BEST = {
+            "I need to go to the store later today",
+            "i need to go to the stores later today",
+            "I need to go to this store later to day",
+            "Can you help me with the groceries",
+            "can you help me with groceries",
+            "Please call me when you get home tonight",
+            "please call me when you get home to night",
+            "what time does the bus leave from the station",
+            "Help help somebody please",
+            "help help some body please",
+    };
+
+    @Test
+    public void containsScanVersusMatcher() {
+        MicroBenchmark.assumeEnabled();
+        final TriggerPhraseMatcher oneMatcher = new TriggerPhraseMatcher(Arrays.asList("help help"));
+        final TriggerPhraseMatcher threeMatcher = new TriggerPhraseMatcher(Arrays.asList(TriggerPhraseMatcher.DEFAULT_PHRASES));
+
+        MicroBenchmark.measure("contains scan, 1 phrase, 10 hypotheses", 200_000, 1_000_000, new MicroBenchmark.Operation() {
+            @Override
+            public long run() {
+                long hits = 0;
+                for (String hypothesis : N_BEST) {
+                    if (hypothesis.toLowerCase(Locale.ROOT).contains("help help")) {
+                        hits++;
+                    }
+                }
+                return hits;
+            }
+        });
+        MicroBenchmark.measure("matcher, 1 phrase, 10 hypotheses", 200_000, 1_000_000, new MicroBenchmark.Operation() {
+            @Override
+            public long run() {
+                long hits = 0;
+                for (String hypothesis : N_BEST) {
+                    if (oneMatcher.match(hypothesis) != null) {
+                        hits++;
+                    }
+                }
+                return hits;
+            }
+        });
+        MicroBenchmark.measure("matcher, 3 phrases, 10 hypotheses", 200_000, 1_000_000, new MicroBenchmark.Operation() {
+            @Override
+            public long run() {
+                long hits = 0;
+                for (String hypothesis : N_BEST) {
+                    if (threeMatcher.match(hypothesis) != null) {
+                        hits++;
+                    }
+                }
+                return hits;
+            }
+        });
+    }
+}
@@ -0,0 +1,119 @@
+package com.safevoice.app.voice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+public class TriggerPhraseMatcherTest {
+
+    private final TriggerPhraseMatcher matcher = new TriggerPhraseMatcher(Arrays.asList(TriggerPhraseMatcher.DEFAULT_PHRASES));
+
+    @Test
+    public void matchesExactPhraseAnywhereInTheHypothesis() {
+        assertEquals("help help", matcher.match("please help help me"));
+        assertEquals("bachao bachao", matcher.match("koi bachao bachao"));
+        assertEquals("socorro socorro", matcher.match("socorro socorro"));
+    }
+
+    @Test
+    public void ignoresCaseAndPunctuation() {
+        assertEquals("help help", matcher.match("HELP, Help!"));
+        assertEquals("help help", matcher.match("  help...\nhelp  "));
+    }
+
+    @Test
+    public void toleratesOneEditInANinePhrase() {
+        assertEquals("help help", matcher.match("helphelp"));
+        assertEquals("help help", matcher.match("help halp"));
+    }
+
+    @Test
+    public void partialResultsNeedTheLastWordInFull() {
+        assertNull(matcher.matchPartial("help hel"));
+        assertNull(matcher.matchPartial("help halp"));
+        assertNull(matcher.matchPartial("socorro socorr"));
+        assertEquals("help help", matcher.matchPartial("please help help"));
+        assertEquals("help help", matcher.matchPartial("please help help me"));
+    }
+
+    @Test
+    public void partialResultsAllowEditsBeforeTheLastWord() {
+        assertEquals("help help", matcher.matchPartial("helphelp"));
+        assertEquals("help help", matcher.matchPartial("halp help"));
+        assertEquals("bachao bachao", matcher.matchPartial("bachau bachao"));
+    }
+
+    @Test
+    public void partialResultsNeedTheLastWordToEndOnAWordBoundary() {
+        assertNull(matcher.matchPartial("help helping"));
+        assertEquals("mayday", new TriggerPhraseMatcher(Collections.singletonList("mayday")).matchPartial("mayday mayday"));
+        assertNull(new TriggerPhraseMatcher(Collections.singletonList("mayday")).matchPartial("maydays"));
+        assertNull(matcher.matchPartial(null));
+    }
+
+    @Test
+    public void rejectsUnrelatedOrDistantText() {
+        assertNull(matcher.match("help"));
+        assertNull(matcher.match("hello hello"));
+        assertNull(matcher.match("what a lovely day"));
+        assertNull(matcher.match(""));
+        assertNull(matcher.match(null));
+    }
+
+    @Test
+    public void lowercasingDoesNotDependOnTheDefaultLocale() {
+        Locale saved = Locale.getDefault();
+        try {
+            // In Turkish, "I".toLowerCase() is a dotless i.
+            Locale.setDefault(new Locale("tr", "TR"));
+            TriggerPhraseMatcher turkish = new TriggerPhraseMatcher(Collections.singletonList("imdat imdat"));
+            assertEquals("imdat imdat", turkish.match("IMDAT IMDAT"));
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+    @Test
+    public void matchesPhraseAtTheEndOfALongHypothesis() {
+        StringBuilder hypothesis = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            hypothesis.append("some words ");
+        }
+        hypothesis.append("help help");
+        assertEquals("help help", matcher.match(hypothesis));
+    }
+
+    @Test
+    public void matchPrefixFindsTheFirstWordOfAMultiWordPhrase() {
+        assertEquals("help help", matcher.matchPrefix("help"));
+        assertEquals("socorro socorro", matcher.matchPrefix("Socorro!"));
+        assertNull(matcher.matchPrefix("hello"));
+        assertNull(matcher.matchPrefix(null));
+    }
+
+    @Test
+    public void singleWordPhrasesHaveNoPrefix() {
+        TriggerPhraseMatcher single = new TriggerPhraseMatcher(Collections.singletonList("mayday"));
+        assertEquals("mayday", single.match("mayday"));
+        assertNull(single.matchPrefix("mayday"));
+    }
+
+    @Test
+    public void emptyAndNullPhrasesAreIgnored() {
+        TriggerPhraseMatcher sparse = new TriggerPhraseMatcher(Arrays.asList("", null, "  ", "help help"));
+        assertEquals("help help", sparse.match("help help"));
+        assertNull(sparse.match("anything else"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void phrasesLongerThanTheAutomatonAreRejected() {
+        char[] tooLong = new char[65];
+        Arrays.fill(tooLong, 'a');
+        new TriggerPhraseMatcher(Collections.singletonList(new String(tooLong)));
+    }
+}
@@ -0,0 +1,100 @@
+package com.safevoice.app.voice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TriggerScorerTest {
+
+    private static final int WINDOW = 64;
+    private static final int FRAME = 8;
+
+    /**
+     * Returns the queued scores in order, then zero.
+     */
+    private static class ScriptedSpotter implements KeywordSpotter {
+        private final float[] scores;
+        private int next = 0;
+
+        ScriptedSpotter(float... scores) {
+            this.scores = scores;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return 16000;
+        }
+
+        @Override
+        public int getWindowSamples() {
+            return WINDOW;
+        }
+
+        @Override
+        public float score(float[] window) {
+            return next < scores.length ? scores[next++] : 0f;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    /**
+     * Feeds frames until the spotter has been asked for every scripted score and returns
+     * the events of the scoring hops, in order.
+     */
+    private static List<TriggerScorer.Event> run(float... scores) {
+        TriggerScorer scorer = new TriggerScorer(new ScriptedSpotter(scores));
+        short[] frame = new short[FRAME];
+        List<TriggerScorer.Event> events = new ArrayList<>();
+        // Fill the first window without scoring.
+        for (int i = 0; i < WINDOW / FRAME - 1; i++) {
+            scorer.onFrame(frame, FRAME);
+        }
+        for (int hop = 0; hop < scores.length; hop++) {
+            TriggerScorer.Event event = TriggerScorer.Event.NONE;
+            for (int i = 0; i < TriggerScorer.FRAMES_PER_HOP; i++) {
+                TriggerScorer.Event frameEvent = scorer.onFrame(frame, FRAME);
+                if (frameEvent != TriggerScorer.Event.NONE) {
+                    event = frameEvent;
+                }
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    @Test
+    public void singleWindowSpikeIsSmoothedAway() {
+        List<TriggerScorer.Event> events = run(0f, 1f, 0f, 0f, 0f);
+        for (TriggerScorer.Event event : events) {
+            assertEquals(TriggerScorer.Event.NONE, event);
+        }
+    }
+
+    @Test
+    public void sustainedHighScoresDetectOnceTheMeanCrossesTheThreshold() {
+        List<TriggerScorer.Event> events = run(0.9f, 0.9f, 0.9f);
+        assertEquals(TriggerScorer.Event.NONE, events.get(0));
+        assertEquals(TriggerScorer.Event.SUSPECTED, events.get(1));
+        assertEquals(TriggerScorer.Event.DETECTED, events.get(2));
+    }
+
+    @Test
+    public void suspectedIsReportedOncePerRise() {
+        // Mean rises past 0.5, stays there, falls below, then rises again.
+        List<TriggerScorer.Event> events = run(0.6f, 0.6f, 0.6f, 0.6f, 0f, 0f, 0f, 0.7f, 0.7f, 0.7f);
+        int suspected = 0;
+        for (TriggerScorer.Event event : events) {
+            if (event == TriggerScorer.Event.SUSPECTED) {
+                suspected++;
+            }
+            assertNotEquals(TriggerScorer.Event.DETECTED, event);
+        }
+        assertEquals(2, suspected);
+    }
+}
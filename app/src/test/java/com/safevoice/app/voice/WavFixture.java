@@ -0,0 +1,81 @@
+package com.safevoice.app.voice;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads and writes 16-bit mono PCM WAV files, the format the detection fixtures are
+ * recorded in.
+ */
+final class WavFixture {
+
+    final int sampleRate;
+    final short[] samples;
+
+    WavFixture(int sampleRate, short[] samples) {
+        this.sampleRate = sampleRate;
+        this.samples = samples;
+    }
+
+    static WavFixture read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(bytes);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != 0x46464952 || buffer.getInt(8) != 0x45564157) { // "RIFF", "WAVE"
+            throw new IOException(file + " is not a WAV file.");
+        }
+        int sampleRate = -1;
+        int position = 12;
+        while (position + 8 <= bytes.length) {
+            int chunkId = buffer.getInt(position);
+            int chunkSize = buffer.getInt(position + 4);
+            int body = position + 8;
+            if (chunkId == 0x20746d66) { // "fmt "
+                short format = buffer.getShort(body);
+                short channels = buffer.getShort(body + 2);
+                short bitsPerSample = buffer.getShort(body + 14);
+                if (format != 1 || channels != 1 || bitsPerSample != 16) {
+                    throw new IOException(file + " must be 16-bit mono PCM.");
+                }
+                sampleRate = buffer.getInt(body + 4);
+            } else if (chunkId == 0x61746164) { // "data"
+                if (sampleRate < 0) {
+                    throw new IOException(file + " has no fmt chunk before its data.");
+                }
+                int count = Math.min(chunkSize, bytes.length - body) / 2;
+                short[] samples = new short[count];
+                for (int i = 0; i < count; i++) {
+                    samples[i] = buffer.getShort(body + 2 * i);
+                }
+                return new WavFixture(sampleRate, samples);
+            }
+            position = body + chunkSize + (chunkSize & 1);
+        }
+        throw new IOException(file + " has no data chunk.");
+    }
+
+    void write(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(44 + samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x46464952).putInt(36 + samples.length * 2).putInt(0x45564157);
+        buffer.putInt(0x20746d66).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(sampleRate).putInt(sampleRate * 2).putShort((short) 2).putShort((short) 16);
+        buffer.putInt(0x61746164).putInt(samples.length * 2);
+        for (short sample : samples) {
+            buffer.putShort(sample);
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(buffer.array());
+        }
+    }
+
+    double getDurationSeconds() {
+        return (double) samples.length / sampleRate;
+    }
+}
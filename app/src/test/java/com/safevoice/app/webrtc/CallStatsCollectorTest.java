@@ -0,0 +1,117 @@
+package com.safevoice.app.webrtc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class CallStatsCollectorTest {
+
+    private static final long STARTED_AT_MS = 1_700_000_000_000L;
+    private static final String REMOTE_UID = "uid-primary";
+
+    private static RTCStats candidatePair(String id, String state) {
+        Map<String, Object> members = new HashMap<>();
+        members.put("state", state);
+        members.put("localCandidateId", id + "-local");
+        members.put("remoteCandidateId", id + "-remote");
+        return new RTCStats(0, "candidate-pair", id, members);
+    }
+
+    private static RTCStats transport(String selectedPairId) {
+        Map<String, Object> members = new HashMap<>();
+        members.put("selectedCandidatePairId", selectedPairId);
+        return new RTCStats(0, "transport", "transport", members);
+    }
+
+    private static RTCStatsReport report(long timestampUs, RTCStats... entries) {
+        Map<String, RTCStats> stats = new HashMap<>();
+        for (RTCStats entry : entries) {
+            stats.put(entry.getId(), entry);
+        }
+        return new RTCStatsReport(timestampUs, stats);
+    }
+
+    @Test
+    public void callThatNeverConnectedIsRecordedAsNotConnected() {
+        CallStatsCollector collector = new CallStatsCollector(10, STARTED_AT_MS, REMOTE_UID, CallSetupLatencyRecorder.MODE_WARM);
+        CallStatsRecord record = collector.finish();
+        assertEquals(CallStatsCollector.FAILURE_NOT_CONNECTED, record.getFailure());
+        assertEquals(0, record.getSampleCount());
+        assertNull(record.getCandidatePairState());
+        assertEquals(-1, record.toJSONObject(false).optLong("setup_ms"));
+    }
+
+    @Test
+    public void setupFailureKeepsTheFirstReasonAndTheFurthestPairState() {
+        CallStatsCollector collector = new CallStatsCollector(10, STARTED_AT_MS, REMOTE_UID, CallSetupLatencyRecorder.MODE_COLD);
+        collector.onStatsReport(report(1_000_000, candidatePair("a", "waiting"), candidatePair("b", "in-progress"),
+                candidatePair("c", "failed")));
+        collector.onStatsReport(report(3_000_000, candidatePair("a", "failed"), candidatePair("b", "failed")));
+        collector.onFailed("ice_failed");
+        collector.onFailed("ice_disconnected");
+
+        CallStatsRecord record = collector.finish();
+        assertEquals("ice_failed", record.getFailure());
+        assertEquals("failed", record.getCandidatePairState());
+        assertEquals(2, record.getSampleCount());
+        JSONObject json = record.toJSONObject(false);
+        assertEquals("ice_failed", json.optString("failure"));
+        assertEquals("failed", json.optJSONObject("path").optString("candidate_pair_state"));
+    }
+
+    @Test
+    public void connectedCallKeepsTheFirstSetupTimeAndTheSelectedPairState() {
+        CallStatsCollector collector = new CallStatsCollector(10, STARTED_AT_MS, REMOTE_UID, CallSetupLatencyRecorder.MODE_WARM);
+        collector.onStatsReport(report(1_000_000, candidatePair("a", "in-progress")));
+        collector.onConnected(850);
+        collector.onStatsReport(report(3_000_000, transport("a"), candidatePair("a", "succeeded"),
+                candidatePair("b", "failed")));
+        // A reconnect later in the call does not change the setup time.
+        collector.onConnected(12_000);
+
+        CallStatsRecord record = collector.finish();
+        assertNull(record.getFailure());
+        assertEquals("succeeded", record.getCandidatePairState());
+        JSONObject json = record.toJSONObject(false);
+        assertEquals(850, json.optLong("setup_ms"));
+        assertEquals(false, json.has("failure"));
+    }
+
+    @Test
+    public void summaryRowMatchesTheHeader() {
+        CallStatsCollector collector = new CallStatsCollector(10, STARTED_AT_MS, REMOTE_UID, CallSetupLatencyRecorder.MODE_WARM);
+        collector.onStatsReport(report(1_000_000, candidatePair("a", "in-progress")));
+        collector.onFailed("ice_failed");
+        String row = collector.finish().toSummaryCsvRow();
+        assertEquals(CallStatsRecord.SUMMARY_CSV_HEADER.split(",", -1).length, row.split(",", -1).length);
+    }
+
+    @Test
+    public void groupPeersSharingAStartTimeGetDistinctRecords() {
+        CallStatsRecord primary = new CallStatsCollector(10, STARTED_AT_MS, REMOTE_UID,
+                CallSetupLatencyRecorder.MODE_WARM).finish();
+        CallStatsRecord other = new CallStatsCollector(10, STARTED_AT_MS, "uid-other",
+                CallSetupLatencyRecorder.MODE_WARM).finish();
+
+        assertEquals("call_" + STARTED_AT_MS + "_uid-primary", CallStatsStore.fileBaseName(primary));
+        assertNotEquals(CallStatsStore.fileBaseName(primary), CallStatsStore.fileBaseName(other));
+        assertEquals(REMOTE_UID, primary.toJSONObject(false).optString("remote_uid"));
+        assertEquals("uid-other", other.toSummaryCsvRow().split(",", -1)[1]);
+    }
+
+    @Test
+    public void recordWithoutARemoteUidIsNamedByItsStartTime() {
+        CallStatsRecord record = new CallStatsCollector(10, STARTED_AT_MS, null,
+                CallSetupLatencyRecorder.MODE_WARM).finish();
+        assertEquals("call_" + STARTED_AT_MS, CallStatsStore.fileBaseName(record));
+        assertEquals(false, record.toJSONObject(false).has("remote_uid"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.safevoice.app.webrtc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Covers how GroupCallManager splits the uplink cap between the peers of a group call.
+ */
+public class GroupCallManagerTest {
+
+    private static final int NO_PRIORITY = -1;
+
+    private static int[] allocate(int peerCount, int priorityIndex, int capBps) {
+        int[] bitrates = GroupCallManager.allocateBitrates(peerCount, priorityIndex, capBps);
+        int total = 0;
+        for (int bitrate : bitrates) {
+            total += bitrate;
+        }
+        assertTrue("Total " + total + " bps is over the " + capBps + " bps cap", total <= capBps);
+        return bitrates;
+    }
+
+    @Test
+    public void splitsTheCapEvenlyBeforeAnyoneAnswers() {
+        assertArrayEquals(new int[] {12000, 12000, 12000}, allocate(3, NO_PRIORITY, 36000));
+    }
+
+    @Test
+    public void givesTheFirstToAnswerThePriorityShare() {
+        assertArrayEquals(new int[] {10000, 10000, 20000}, allocate(3, 2, 40000));
+        // Alone in the call, the priority peer gets the whole cap.
+        assertArrayEquals(new int[] {16000}, allocate(1, 0, 16000));
+    }
+
+    @Test
+    public void clampsEachPeerToTheMaximumBitrate() {
+        int max = GroupCallManager.MAX_PEER_BITRATE_BPS;
+        assertArrayEquals(new int[] {max, max}, allocate(2, NO_PRIORITY, 64000));
+        assertArrayEquals(new int[] {max, max, max}, allocate(3, 0, 64000));
+        assertArrayEquals(new int[] {max}, allocate(1, 0, 64000));
+    }
+
+    @Test
+    public void silencesPeersThatDoNotFitAtTheMinimumBitrate() {
+        // Three fit at 6 kbps; the last two in call order go silent.
+        assertArrayEquals(new int[] {6666, 6666, 6666, 0, 0}, allocate(5, NO_PRIORITY, 20000));
+        // The priority peer keeps its share; of the rest, only two fit.
+        assertArrayEquals(new int[] {6000, 6000, 0, 12000}, allocate(4, 3, 24000));
+    }
+
+    @Test
+    public void capBelowTheMinimumGoesToThePriorityPeerOnly() {
+        assertArrayEquals(new int[] {0, 0}, allocate(2, NO_PRIORITY, 4000));
+        assertArrayEquals(new int[] {4000, 0}, allocate(2, 0, 4000));
+    }
+
+    @Test
+    public void noPeersGetNothing() {
+        assertArrayEquals(new int[0], allocate(0, NO_PRIORITY, 64000));
+    }
+}
@@ -0,0 +1,127 @@
+package com.safevoice.app.webrtc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class LoopbackSignalingTransportTest {
+
+    private static final String CALLER = "caller";
+    private static final String CALLEE = "callee";
+
+    /**
+     * Records every signal a transport delivered, in order.
+     */
+    private static class RecordingListener implements SignalingTransport.Listener {
+        final List<String> received = new ArrayList<>();
+
+        @Override
+        public void onOfferReceived(SessionDescription sessionDescription) {
+            received.add("offer:" + sessionDescription.description);
+        }
+
+        @Override
+        public void onAnswerReceived(SessionDescription sessionDescription) {
+            received.add("answer:" + sessionDescription.description);
+        }
+
+        @Override
+        public void onIceCandidateReceived(IceCandidate iceCandidate) {
+            received.add("candidate:" + iceCandidate.sdp);
+        }
+
+        @Override
+        public void onCallEnded() {
+            received.add("ended");
+        }
+    }
+
+    private LoopbackSignalingTransport.Network network;
+    private RecordingListener callerListener;
+    private RecordingListener calleeListener;
+    private LoopbackSignalingTransport caller;
+    private LoopbackSignalingTransport callee;
+
+    @Before
+    public void setUp() {
+        network = new LoopbackSignalingTransport.Network(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        callerListener = new RecordingListener();
+        calleeListener = new RecordingListener();
+        caller = new LoopbackSignalingTransport(network, CALLER);
+        caller.setListener(callerListener);
+        callee = new LoopbackSignalingTransport(network, CALLEE);
+        callee.setListener(calleeListener);
+    }
+
+    @Test
+    public void oneToOneCallRoutesBothWays() {
+        caller.createCallSession(CALLEE);
+        callee.joinCallSession(caller.getSessionId());
+
+        caller.sendOffer(new SessionDescription(SessionDescription.Type.OFFER, "o"), CALLEE);
+        caller.sendIceCandidate(new IceCandidate("0", 0, "c1"), CALLEE);
+        callee.sendAnswer(new SessionDescription(SessionDescription.Type.ANSWER, "a"), CALLER);
+        callee.sendIceCandidate(new IceCandidate("0", 0, "c2"), CALLER);
+
+        List<String> expectedAtCallee = new ArrayList<>();
+        expectedAtCallee.add("offer:o");
+        expectedAtCallee.add("candidate:c1");
+        assertEquals(expectedAtCallee, calleeListener.received);
+        List<String> expectedAtCaller = new ArrayList<>();
+        expectedAtCaller.add("answer:a");
+        expectedAtCaller.add("candidate:c2");
+        assertEquals(expectedAtCaller, callerListener.received);
+    }
+
+    @Test
+    public void signalsSentBeforeTheCalleeJoinsWaitForIt() {
+        caller.sendOffer(new SessionDescription(SessionDescription.Type.OFFER, "o"), CALLEE);
+        caller.sendIceCandidate(new IceCandidate("0", 0, "c1"), CALLEE);
+        assertTrue(calleeListener.received.isEmpty());
+
+        callee.joinCallSession(caller.getSessionId());
+        assertEquals(2, calleeListener.received.size());
+        assertEquals("offer:o", calleeListener.received.get(0));
+    }
+
+    @Test
+    public void misaddressedSignalsAreNotDelivered() {
+        // As in the database, a signal written to nobody's node is never read.
+        caller.createCallSession(CALLEE);
+        callee.joinCallSession(caller.getSessionId());
+        callee.sendAnswer(new SessionDescription(SessionDescription.Type.ANSWER, "a"), "someone-else");
+        caller.sendOffer(new SessionDescription(SessionDescription.Type.OFFER, "o"), CALLER);
+        assertTrue(callerListener.received.isEmpty());
+        assertTrue(calleeListener.received.isEmpty());
+    }
+
+    @Test
+    public void eitherEndHangingUpEndsTheOther() {
+        caller.createCallSession(CALLEE);
+        callee.joinCallSession(caller.getSessionId());
+        caller.sendOffer(new SessionDescription(SessionDescription.Type.OFFER, "o"), CALLEE);
+        callee.endCall();
+        assertEquals("ended", callerListener.received.get(callerListener.received.size() - 1));
+
+        LoopbackSignalingTransport secondCallee = new LoopbackSignalingTransport(network, CALLEE);
+        RecordingListener secondListener = new RecordingListener();
+        secondCallee.setListener(secondListener);
+        caller.createCallSession(CALLEE);
+        secondCallee.joinCallSession(caller.getSessionId());
+        caller.endCall();
+        assertEquals("ended", secondListener.received.get(secondListener.received.size() - 1));
+    }
+}
@@ -0,0 +1,89 @@
+package com.safevoice.app.webrtc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Runs OpusAudioProfile.mungeSdp over audio sections shaped like the ones libwebrtc produces.
+ */
+public class OpusAudioProfileTest {
+
+    private static final String PROFILE = "minptime=10;useinbandfec=1;usedtx=1;stereo=0;sprop-stereo=0"
+            + ";maxplaybackrate=8000;sprop-maxcapturerate=8000;maxaveragebitrate=20000";
+
+    private static String sdp(String... lines) {
+        StringBuilder sdp = new StringBuilder();
+        for (String line : lines) {
+            sdp.append(line).append("\r\n");
+        }
+        return sdp.toString();
+    }
+
+    @Test
+    public void mergesIntoTheExistingOpusFmtpLine() {
+        String input = sdp(
+                "m=audio 9 UDP/TLS/RTP/SAVPF 111 63 9",
+                "a=rtpmap:111 opus/48000/2",
+                "a=fmtp:111 minptime=20;useinbandfec=0;x-custom=7",
+                "a=rtpmap:63 red/48000/2");
+
+        assertEquals(sdp(
+                "m=audio 9 UDP/TLS/RTP/SAVPF 111 63 9",
+                "a=rtpmap:111 opus/48000/2",
+                "a=fmtp:111 minptime=10;useinbandfec=1;x-custom=7;usedtx=1;stereo=0;sprop-stereo=0"
+                        + ";maxplaybackrate=8000;sprop-maxcapturerate=8000;maxaveragebitrate=20000",
+                "a=rtpmap:63 red/48000/2"), OpusAudioProfile.mungeSdp(input));
+    }
+
+    @Test
+    public void insertsTheFmtpLineAfterTheRtpmapWhenMissing() {
+        String input = sdp(
+                "m=audio 9 UDP/TLS/RTP/SAVPF 111 0",
+                "a=rtpmap:111 opus/48000/2",
+                "a=rtpmap:0 PCMU/8000");
+
+        assertEquals(sdp(
+                "m=audio 9 UDP/TLS/RTP/SAVPF 111 0",
+                "a=rtpmap:111 opus/48000/2",
+                "a=fmtp:111 " + PROFILE,
+                "a=rtpmap:0 PCMU/8000"), OpusAudioProfile.mungeSdp(input));
+    }
+
+    @Test
+    public void insertsTheFmtpLineWhenTheSdpHasNoTrailingLineEnd() {
+        String input = "m=audio 9 UDP/TLS/RTP/SAVPF 111\r\na=rtpmap:111 opus/48000/2";
+
+        assertEquals(input + "\r\na=fmtp:111 " + PROFILE, OpusAudioProfile.mungeSdp(input));
+    }
+
+    @Test
+    public void passesSdpWithoutOpusThroughUnchanged() {
+        String input = sdp(
+                "m=audio 9 UDP/TLS/RTP/SAVPF 0 8",
+                "a=rtpmap:0 PCMU/8000",
+                "a=rtpmap:8 PCMA/8000");
+
+        assertSame(input, OpusAudioProfile.mungeSdp(input));
+    }
+
+    @Test
+    public void leavesOtherCodecsFmtpLinesAlone() {
+        String input = sdp(
+                "m=audio 9 UDP/TLS/RTP/SAVPF 111 63 110",
+                "a=rtpmap:111 opus/48000/2",
+                "a=fmtp:111 useinbandfec=1",
+                "a=rtpmap:63 red/48000/2",
+                "a=fmtp:63 111/111",
+                "a=rtpmap:110 telephone-event/48000",
+                "a=fmtp:110 0-15");
+
+        String output = OpusAudioProfile.mungeSdp(input);
+
+        assertTrue(output, output.contains("\r\na=fmtp:63 111/111\r\n"));
+        assertTrue(output, output.contains("\r\na=fmtp:110 0-15\r\n"));
+        assertTrue(output, output.contains("\r\na=fmtp:111 useinbandfec=1;minptime=10;usedtx=1;"));
+    }
+}
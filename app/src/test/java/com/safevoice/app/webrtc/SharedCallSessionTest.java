@@ -0,0 +1,213 @@
+package com.safevoice.app.webrtc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Drives the signaling of a group call over LoopbackSignalingTransport: one caller client
+ * per callee joined to a shared session, and one client on each callee's device.
+ */
+public class SharedCallSessionTest {
+
+    private static final String CALLER = "caller";
+    private static final String ALICE = "alice";
+    private static final String BOB = "bob";
+
+    /**
+     * Records what a transport delivered, as the SDP strings and candidate lines it carried.
+     */
+    private static class RecordingListener implements SignalingTransport.Listener {
+        final List<String> offers = new ArrayList<>();
+        final List<String> answers = new ArrayList<>();
+        final List<String> candidates = new ArrayList<>();
+        int callsEnded = 0;
+
+        @Override
+        public void onOfferReceived(SessionDescription sessionDescription) {
+            offers.add(sessionDescription.description);
+        }
+
+        @Override
+        public void onAnswerReceived(SessionDescription sessionDescription) {
+            answers.add(sessionDescription.description);
+        }
+
+        @Override
+        public void onIceCandidateReceived(IceCandidate iceCandidate) {
+            candidates.add(iceCandidate.sdp);
+        }
+
+        @Override
+        public void onCallEnded() {
+            callsEnded++;
+        }
+    }
+
+    private LoopbackSignalingTransport.Network network;
+    private LoopbackSignalingTransport owner;
+    private String sessionId;
+
+    @Before
+    public void setUp() {
+        // Deliver on the sending thread, so every assertion sees the signals already delivered.
+        network = new LoopbackSignalingTransport.Network(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        owner = new LoopbackSignalingTransport(network, CALLER);
+        sessionId = owner.createSharedCallSession();
+    }
+
+    private LoopbackSignalingTransport join(String localUid, RecordingListener listener) {
+        LoopbackSignalingTransport transport = new LoopbackSignalingTransport(network, localUid);
+        transport.setListener(listener);
+        return transport;
+    }
+
+    private static SessionDescription offer(String description) {
+        return new SessionDescription(SessionDescription.Type.OFFER, description);
+    }
+
+    private static SessionDescription answer(String description) {
+        return new SessionDescription(SessionDescription.Type.ANSWER, description);
+    }
+
+    private static IceCandidate candidate(String sdp) {
+        return new IceCandidate("0", 0, sdp);
+    }
+
+    @Test
+    public void everyCalleeAnswersItsOwnPeer() {
+        RecordingListener alicePeer = new RecordingListener();
+        RecordingListener bobPeer = new RecordingListener();
+        RecordingListener aliceDevice = new RecordingListener();
+        RecordingListener bobDevice = new RecordingListener();
+        LoopbackSignalingTransport toAlice = join(CALLER, alicePeer);
+        LoopbackSignalingTransport toBob = join(CALLER, bobPeer);
+        toAlice.joinSharedCallSession(sessionId, ALICE);
+        toBob.joinSharedCallSession(sessionId, BOB);
+        LoopbackSignalingTransport alice = join(ALICE, aliceDevice);
+        LoopbackSignalingTransport bob = join(BOB, bobDevice);
+        alice.joinCallSession(sessionId);
+        bob.joinCallSession(sessionId);
+
+        toAlice.sendOffer(offer("offer-alice"), ALICE);
+        toBob.sendOffer(offer("offer-bob"), BOB);
+        toAlice.sendIceCandidate(candidate("caller-to-alice"), ALICE);
+        alice.sendAnswer(answer("answer-alice"), CALLER);
+        bob.sendAnswer(answer("answer-bob"), CALLER);
+        alice.sendIceCandidate(candidate("alice"), CALLER);
+        bob.sendIceCandidate(candidate("bob"), CALLER);
+
+        assertEquals(listOf("offer-alice"), aliceDevice.offers);
+        assertEquals(listOf("caller-to-alice"), aliceDevice.candidates);
+        assertEquals(listOf("offer-bob"), bobDevice.offers);
+        assertTrue(bobDevice.candidates.isEmpty());
+
+        assertEquals(listOf("answer-alice"), alicePeer.answers);
+        assertEquals(listOf("alice"), alicePeer.candidates);
+        assertEquals(listOf("answer-bob"), bobPeer.answers);
+        assertEquals(listOf("bob"), bobPeer.candidates);
+        // Nobody hears their own signals.
+        assertTrue(alicePeer.offers.isEmpty());
+        assertTrue(bobPeer.offers.isEmpty());
+        assertTrue(aliceDevice.answers.isEmpty());
+
+        assertEquals(2, network.getOfferCount());
+        assertEquals(2, network.getAnswerCount());
+        assertEquals(3, network.getIceCandidateCount());
+    }
+
+    @Test
+    public void offersWaitForCalleesThatJoinLate() {
+        RecordingListener alicePeer = new RecordingListener();
+        RecordingListener bobPeer = new RecordingListener();
+        LoopbackSignalingTransport toAlice = join(CALLER, alicePeer);
+        LoopbackSignalingTransport toBob = join(CALLER, bobPeer);
+        toAlice.joinSharedCallSession(sessionId, ALICE);
+        toBob.joinSharedCallSession(sessionId, BOB);
+        toAlice.sendOffer(offer("offer-alice"), ALICE);
+        toBob.sendOffer(offer("offer-bob"), BOB);
+
+        // Bob opens the alert first.
+        RecordingListener bobDevice = new RecordingListener();
+        LoopbackSignalingTransport bob = join(BOB, bobDevice);
+        bob.joinCallSession(sessionId);
+        RecordingListener aliceDevice = new RecordingListener();
+        LoopbackSignalingTransport alice = join(ALICE, aliceDevice);
+        alice.joinCallSession(sessionId);
+
+        assertEquals(listOf("offer-bob"), bobDevice.offers);
+        assertEquals(listOf("offer-alice"), aliceDevice.offers);
+
+        bob.sendAnswer(answer("answer-bob"), CALLER);
+        assertEquals(listOf("answer-bob"), bobPeer.answers);
+        assertTrue(alicePeer.answers.isEmpty());
+    }
+
+    @Test
+    public void calleeHangingUpEndsOnlyItsOwnCall() {
+        RecordingListener alicePeer = new RecordingListener();
+        RecordingListener bobPeer = new RecordingListener();
+        RecordingListener aliceDevice = new RecordingListener();
+        RecordingListener bobDevice = new RecordingListener();
+        LoopbackSignalingTransport toAlice = join(CALLER, alicePeer);
+        LoopbackSignalingTransport toBob = join(CALLER, bobPeer);
+        toAlice.joinSharedCallSession(sessionId, ALICE);
+        toBob.joinSharedCallSession(sessionId, BOB);
+        LoopbackSignalingTransport alice = join(ALICE, aliceDevice);
+        LoopbackSignalingTransport bob = join(BOB, bobDevice);
+        alice.joinCallSession(sessionId);
+        bob.joinCallSession(sessionId);
+        toAlice.sendOffer(offer("offer-alice"), ALICE);
+        toBob.sendOffer(offer("offer-bob"), BOB);
+
+        alice.endCall();
+        assertEquals(1, aliceDevice.callsEnded);
+        assertEquals(1, alicePeer.callsEnded);
+        assertEquals(0, bobPeer.callsEnded);
+        assertEquals(0, bobDevice.callsEnded);
+
+        // Bob's call still works.
+        bob.sendAnswer(answer("answer-bob"), CALLER);
+        assertEquals(listOf("answer-bob"), bobPeer.answers);
+
+        owner.endCall();
+        assertEquals(1, bobDevice.callsEnded);
+    }
+
+    @Test
+    public void ownerEndingTheSessionEndsEveryCallee() {
+        RecordingListener aliceDevice = new RecordingListener();
+        RecordingListener bobDevice = new RecordingListener();
+        LoopbackSignalingTransport toAlice = join(CALLER, new RecordingListener());
+        toAlice.joinSharedCallSession(sessionId, ALICE);
+        join(ALICE, aliceDevice).joinCallSession(sessionId);
+        join(BOB, bobDevice).joinCallSession(sessionId);
+
+        owner.endCall();
+        assertEquals(1, aliceDevice.callsEnded);
+        assertEquals(1, bobDevice.callsEnded);
+        assertNull(owner.getSessionId());
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}